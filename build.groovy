@@ -487,6 +487,35 @@ def doIntegration(Rule rule)
 	saw.exec("java  -Dhost=${host} -Dport=${port} -cp ${integrationClassPath} org.testng.TestNG src/integration-test/testng.xml")
 }
 
+//------------------------------------------------------------------------------
+//Build JMH benchmarks
+benchmarkClassPath = new Classpath(junitClasspath)
+		.addPath(testCompileRule.getBuildDirectory())
+
+ivyBenchmarkRule = ivy.getResolveRule("benchmark")
+
+benchmarkBuildRule = new JavaCRule("build/benchmark")
+		.addSourceDir("src/benchmark/java")
+		.addClasspath(benchmarkClassPath)
+		.addDepend(testCompileRule)
+		.addDepend(ivyBenchmarkRule)
+
+new SimpleRule("benchmark").setDescription("Runs the JMH benchmarks." +
+		"\n\t-D bench <regex> - only run benchmarks matching the regex, ie RangeAggregator." +
+		"\n\t-D jmh <options> - options passed to JMH, ie \"-f 1 -wi 3 -i 5 -rf json\".")
+		.setMakeAction("doBenchmark")
+		.addDepend(benchmarkBuildRule)
+		.addDepend(ivyBenchmarkRule)
+
+def doBenchmark(Rule rule)
+{
+	benchmarkClassPath.addPaths(ivyBenchmarkRule.getClasspath())
+	benchmarkClassPath.addPath("build/benchmark")
+	options = saw.getProperty("jmh", "")
+	bench = saw.getProperty("bench", "")
+	saw.exec("java -cp ${benchmarkClassPath} org.openjdk.jmh.Main ${options} ${bench}")
+}
+
 //------------------------------------------------------------------------------
 //Build Docs
 new SimpleRule("docs").setDescription("Build Sphinx Documentation")
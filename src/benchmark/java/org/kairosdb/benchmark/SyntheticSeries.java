@@ -0,0 +1,80 @@
+package org.kairosdb.benchmark;
+
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.datapoints.DoubleDataPoint;
+import org.kairosdb.core.datapoints.LongDataPoint;
+import org.kairosdb.core.datastore.AbstractDataPointGroup;
+
+import java.util.Random;
+
+/**
+ Builds repeatable series for the benchmarks.  The values are a random walk
+ so aggregators and encoders see something that looks like a real metric.
+ */
+public class SyntheticSeries
+{
+	private SyntheticSeries()
+	{
+	}
+
+	public static DataPoint[] doubleSeries(long startTime, long interval, int count, long seed)
+	{
+		Random random = new Random(seed);
+		DataPoint[] dataPoints = new DataPoint[count];
+		double value = 100.0;
+		for (int i = 0; i < count; i++)
+		{
+			value += random.nextGaussian();
+			dataPoints[i] = new DoubleDataPoint(startTime + i * interval, value);
+		}
+
+		return (dataPoints);
+	}
+
+	public static DataPoint[] longSeries(long startTime, long interval, int count, long seed)
+	{
+		Random random = new Random(seed);
+		DataPoint[] dataPoints = new DataPoint[count];
+		long value = 1000;
+		for (int i = 0; i < count; i++)
+		{
+			value += random.nextInt(21) - 10;
+			dataPoints[i] = new LongDataPoint(startTime + i * interval, value);
+		}
+
+		return (dataPoints);
+	}
+
+	/**
+	 Data point group over an array so a benchmark can create a fresh group
+	 for every invocation without copying the data points.
+	 */
+	public static class ArrayDataPointGroup extends AbstractDataPointGroup
+	{
+		private final DataPoint[] m_dataPoints;
+		private int m_position;
+
+		public ArrayDataPointGroup(String name, DataPoint[] dataPoints)
+		{
+			super(name);
+			m_dataPoints = dataPoints;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return (m_position < m_dataPoints.length);
+		}
+
+		@Override
+		public DataPoint next()
+		{
+			return (m_dataPoints[m_position++]);
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package org.kairosdb.core.aggregator;
+
+import org.kairosdb.benchmark.SyntheticSeries;
+import org.kairosdb.benchmark.SyntheticSeries.ArrayDataPointGroup;
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.datapoints.DoubleDataPointFactory;
+import org.kairosdb.core.datapoints.DoubleDataPointFactoryImpl;
+import org.kairosdb.core.datapoints.LongDataPointFactoryImpl;
+import org.kairosdb.core.datastore.DataPointGroup;
+import org.kairosdb.core.datastore.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ Runs each RangeAggregator over a series with one data point per second.
+ pointsPerRange sets the sampling so the cost of starting a range and of
+ aggregating inside a range can be seen separately.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(java.util.concurrent.TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RangeAggregatorBenchmark
+{
+	private static final int POINT_COUNT = 100000;
+	private static final long INTERVAL = 1000L;
+
+	@Param({"avg", "count", "dev", "first", "gaps", "last", "least_squares",
+			"max", "min", "percentile", "percentile_sketch", "sum"})
+	public String aggregator;
+
+	@Param({"10", "3600"})
+	public int pointsPerRange;
+
+	private RangeAggregator m_aggregator;
+	private DataPoint[] m_series;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		DoubleDataPointFactory dataPointFactory = new DoubleDataPointFactoryImpl();
+		switch (aggregator)
+		{
+			case "avg":
+				m_aggregator = new AvgAggregator(dataPointFactory);
+				break;
+			case "count":
+				m_aggregator = new CountAggregator(new LongDataPointFactoryImpl());
+				break;
+			case "dev":
+				m_aggregator = new StdAggregator(dataPointFactory);
+				break;
+			case "first":
+				m_aggregator = new FirstAggregator(dataPointFactory);
+				break;
+			case "gaps":
+				m_aggregator = new DataGapsMarkingAggregator();
+				break;
+			case "last":
+				m_aggregator = new LastAggregator(dataPointFactory);
+				break;
+			case "least_squares":
+				m_aggregator = new LeastSquaresAggregator(dataPointFactory);
+				break;
+			case "max":
+				m_aggregator = new MaxAggregator(dataPointFactory);
+				break;
+			case "min":
+				m_aggregator = new MinAggregator(dataPointFactory);
+				break;
+			case "percentile":
+				PercentileAggregator percentileAggregator = new PercentileAggregator(dataPointFactory);
+				percentileAggregator.setPercentile(0.95);
+				m_aggregator = percentileAggregator;
+				break;
+			case "percentile_sketch":
+				PercentileAggregator sketchAggregator = new PercentileAggregator(dataPointFactory);
+				sketchAggregator.setPercentile(0.95);
+				sketchAggregator.setAccuracy(0.01);
+				m_aggregator = sketchAggregator;
+				break;
+			case "sum":
+				m_aggregator = new SumAggregator(dataPointFactory);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown aggregator " + aggregator);
+		}
+
+		long start = System.currentTimeMillis() / INTERVAL * INTERVAL;
+		m_series = SyntheticSeries.doubleSeries(start, INTERVAL, POINT_COUNT, 42);
+
+		m_aggregator.setSampling(new Sampling(pointsPerRange, TimeUnit.SECONDS));
+		m_aggregator.setStartTime(start);
+		m_aggregator.setEndTime(start + POINT_COUNT * INTERVAL);
+	}
+
+	@Benchmark
+	public void aggregate(Blackhole blackhole)
+	{
+		DataPointGroup group = m_aggregator.aggregate(new ArrayDataPointGroup("benchmark", m_series));
+		while (group.hasNext())
+			blackhole.consume(group.next());
+
+		group.close();
+	}
+}
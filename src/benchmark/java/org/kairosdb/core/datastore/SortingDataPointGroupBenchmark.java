@@ -0,0 +1,80 @@
+package org.kairosdb.core.datastore;
+
+import org.kairosdb.benchmark.SyntheticSeries;
+import org.kairosdb.benchmark.SyntheticSeries.ArrayDataPointGroup;
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.util.TournamentTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Merges a fixed number of data points spread over groupCount sorted series,
+ which is what a query does for every row it reads for a group.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortingDataPointGroupBenchmark
+{
+	private static final int TOTAL_POINTS = 100000;
+
+	@Param({"2", "16", "256"})
+	public int groupCount;
+
+	private DataPoint[][] m_series;
+
+	@Setup
+	public void setup()
+	{
+		long now = System.currentTimeMillis();
+		int pointsPerGroup = TOTAL_POINTS / groupCount;
+		m_series = new DataPoint[groupCount][];
+		for (int i = 0; i < groupCount; i++)
+		{
+			//Interleave the series so the merge has to switch between them
+			m_series[i] = SyntheticSeries.doubleSeries(now + i, groupCount, pointsPerGroup, i);
+		}
+	}
+
+	@Benchmark
+	public void sortingDataPointGroup(Blackhole blackhole)
+	{
+		SortingDataPointGroup group = new SortingDataPointGroup("benchmark", Order.ASC);
+		for (int i = 0; i < groupCount; i++)
+			group.addIterator(new ArrayDataPointGroup("benchmark", m_series[i]));
+
+		while (group.hasNext())
+			blackhole.consume(group.next());
+
+		group.close();
+	}
+
+	@Benchmark
+	public void tournamentTree(Blackhole blackhole)
+	{
+		TournamentTree<DataPoint> tree = new TournamentTree<>(
+				Comparator.comparingLong(DataPoint::getTimestamp), Order.ASC);
+		for (int i = 0; i < groupCount; i++)
+			tree.addIterator(Arrays.asList(m_series[i]).iterator());
+
+		while (tree.hasNext())
+			blackhole.consume(tree.nextElement());
+	}
+}
@@ -0,0 +1,133 @@
+package org.kairosdb.core.formatter;
+
+import org.kairosdb.benchmark.SyntheticSeries;
+import org.kairosdb.benchmark.SyntheticSeries.ArrayDataPointGroup;
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.datastore.DataPointGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Formats one query result of long or double data points as json and as a
+ binary response to an output that discards it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonResponseBenchmark
+{
+	@Param({"long", "double"})
+	public String type;
+
+	@Param({"100000"})
+	public int pointCount;
+
+	private DataPoint[] m_series;
+
+	@Setup
+	public void setup()
+	{
+		long now = System.currentTimeMillis();
+		if (type.equals("long"))
+			m_series = SyntheticSeries.longSeries(now, 1000, pointCount, 1);
+		else
+			m_series = SyntheticSeries.doubleSeries(now, 1000, pointCount, 1);
+	}
+
+	@Benchmark
+	public long formatQuery() throws FormatterException
+	{
+		CountingWriter writer = new CountingWriter();
+		ArrayDataPointGroup group = new ArrayDataPointGroup("benchmark", m_series);
+		group.addTag("host", "server1");
+
+		JsonResponse response = new JsonResponse(writer);
+		response.begin();
+		response.formatQuery(Collections.<DataPointGroup>singletonList(group), false, pointCount);
+		response.end();
+
+		return (writer.m_count);
+	}
+
+	@Benchmark
+	public long formatQueryBinary() throws FormatterException
+	{
+		CountingOutputStream output = new CountingOutputStream();
+		ArrayDataPointGroup group = new ArrayDataPointGroup("benchmark", m_series);
+		group.addTag("host", "server1");
+
+		BinaryResponse response = new BinaryResponse(output, true);
+		response.begin();
+		response.formatQuery(Collections.<DataPointGroup>singletonList(group), false, pointCount);
+		response.end();
+
+		return (output.m_count);
+	}
+
+	private static class CountingOutputStream extends OutputStream
+	{
+		private long m_count;
+
+		@Override
+		public void write(int b)
+		{
+			m_count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len)
+		{
+			m_count += len;
+		}
+	}
+
+	private static class CountingWriter extends Writer
+	{
+		private long m_count;
+
+		@Override
+		public void write(char[] cbuf, int off, int len)
+		{
+			m_count += len;
+		}
+
+		@Override
+		public void write(int c)
+		{
+			m_count++;
+		}
+
+		@Override
+		public void write(String str, int off, int len)
+		{
+			m_count += len;
+		}
+
+		@Override
+		public void flush()
+		{
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+}
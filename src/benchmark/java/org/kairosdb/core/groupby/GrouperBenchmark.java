@@ -0,0 +1,102 @@
+package org.kairosdb.core.groupby;
+
+import org.kairosdb.benchmark.SyntheticSeries;
+import org.kairosdb.benchmark.SyntheticSeries.ArrayDataPointGroup;
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.TestDataPointFactory;
+import org.kairosdb.core.datastore.DataPointGroup;
+import org.kairosdb.plugin.GroupBy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Groups tagged series by a tag and by value and reads the resulting groups
+ back, the groups are written to temporary files by Grouper.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GrouperBenchmark
+{
+	@Param({"10", "100"})
+	public int seriesCount;
+
+	@Param({"10000"})
+	public int pointsPerSeries;
+
+	private final Grouper m_grouper = new Grouper(new TestDataPointFactory());
+	private DataPoint[][] m_series;
+	private List<GroupBy> m_tagGroupBy;
+	private List<GroupBy> m_tagAndValueGroupBy;
+
+	@Setup
+	public void setup()
+	{
+		long now = System.currentTimeMillis();
+		m_series = new DataPoint[seriesCount][];
+		for (int i = 0; i < seriesCount; i++)
+			m_series[i] = SyntheticSeries.longSeries(now, 1000, pointsPerSeries, i);
+
+		m_tagGroupBy = Collections.<GroupBy>singletonList(new TagGroupBy("host"));
+
+		m_tagAndValueGroupBy = new ArrayList<>();
+		m_tagAndValueGroupBy.add(new TagGroupBy("host"));
+		m_tagAndValueGroupBy.add(new ValueGroupBy(10));
+	}
+
+	private List<DataPointGroup> createGroups()
+	{
+		List<DataPointGroup> groups = new ArrayList<>();
+		for (int i = 0; i < seriesCount; i++)
+		{
+			ArrayDataPointGroup group = new ArrayDataPointGroup("benchmark", m_series[i]);
+			group.addTag("host", "server" + i);
+			group.addTag("dc", "dc" + (i % 3));
+			groups.add(group);
+		}
+
+		return (groups);
+	}
+
+	private void consume(List<DataPointGroup> groups, Blackhole blackhole)
+	{
+		for (DataPointGroup group : groups)
+		{
+			while (group.hasNext())
+				blackhole.consume(group.next());
+
+			group.close();
+		}
+	}
+
+	@Benchmark
+	public void groupByTag(Blackhole blackhole) throws IOException
+	{
+		consume(m_grouper.group(m_tagGroupBy, createGroups()), blackhole);
+	}
+
+	@Benchmark
+	public void groupByTagAndValue(Blackhole blackhole) throws IOException
+	{
+		consume(m_grouper.group(m_tagAndValueGroupBy, createGroups()), blackhole);
+	}
+}
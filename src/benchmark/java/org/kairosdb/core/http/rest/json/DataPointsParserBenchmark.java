@@ -0,0 +1,113 @@
+package org.kairosdb.core.http.rest.json;
+
+import com.google.common.eventbus.Subscribe;
+import com.google.gson.Gson;
+import org.kairosdb.core.KairosDataPointFactory;
+import org.kairosdb.core.TestDataPointFactory;
+import org.kairosdb.eventbus.EventBusConfiguration;
+import org.kairosdb.eventbus.EventBusWithFilters;
+import org.kairosdb.events.DataPointBatchEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Parses a /datapoints request body and posts the events to an event bus with
+ a single subscriber that only counts them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataPointsParserBenchmark
+{
+	@Param({"1", "100"})
+	public int metricCount;
+
+	@Param({"1", "1000"})
+	public int pointsPerMetric;
+
+	private final KairosDataPointFactory m_dataPointFactory = new TestDataPointFactory();
+	private final Gson m_gson = new Gson();
+	private EventBusWithFilters m_eventBus;
+	private String m_json;
+
+	public static class CountingListener
+	{
+		public long count;
+
+		@Subscribe
+		public void putDataPoints(DataPointBatchEvent event)
+		{
+			count += event.size();
+		}
+	}
+
+	@Setup
+	public void setup()
+	{
+		m_eventBus = new EventBusWithFilters(new EventBusConfiguration(new Properties()));
+		m_eventBus.register(new CountingListener());
+
+		Random random = new Random(42);
+		long now = System.currentTimeMillis();
+		StringBuilder sb = new StringBuilder();
+		sb.append('[');
+		for (int metric = 0; metric < metricCount; metric++)
+		{
+			if (metric != 0)
+				sb.append(',');
+
+			sb.append("{\"name\":\"benchmark.metric.").append(metric).append("\",")
+					.append("\"tags\":{\"host\":\"server").append(metric % 20)
+					.append("\",\"dc\":\"dc").append(metric % 3).append("\"},")
+					.append("\"datapoints\":[");
+
+			for (int point = 0; point < pointsPerMetric; point++)
+			{
+				if (point != 0)
+					sb.append(',');
+
+				sb.append('[').append(now + point * 1000L).append(',');
+				if (point % 2 == 0)
+					sb.append(random.nextInt(10000));
+				else
+					sb.append(random.nextDouble() * 10000);
+				sb.append(']');
+			}
+
+			sb.append("]}");
+		}
+		sb.append(']');
+
+		m_json = sb.toString();
+	}
+
+	@Benchmark
+	public int parse() throws Exception
+	{
+		DataPointsParser parser = new DataPointsParser(m_eventBus, new StringReader(m_json),
+				m_gson, m_dataPointFactory);
+
+		ValidationErrors errors = parser.parse();
+		if (errors.size() != 0)
+			throw new IllegalStateException(errors.getFirstError());
+
+		return (parser.getDataPointCount());
+	}
+}
@@ -0,0 +1,106 @@
+package org.kairosdb.core.queue;
+
+import com.google.common.collect.ImmutableSortedMap;
+import org.kairosdb.benchmark.SyntheticSeries;
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.TestDataPointFactory;
+import org.kairosdb.events.DataPointEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Serializes and deserializes queue events in the legacy and the compact
+ dictionary format.  The events cycle through a fixed set of metrics and
+ tags like a steady ingest stream does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataPointEventSerializerBenchmark
+{
+	private static final int EVENT_COUNT = 1024;
+
+	@Param({"legacy", "compact"})
+	public String format;
+
+	private File m_directory;
+	private DataPointEventSerializer m_serializer;
+	private DataPointEvent[] m_events;
+	private byte[][] m_serialized;
+	private int m_position;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		TestDataPointFactory dataPointFactory = new TestDataPointFactory();
+		if (format.equals("compact"))
+		{
+			m_directory = Files.createTempDirectory("serializer_benchmark").toFile();
+			m_serializer = new DataPointEventSerializer(dataPointFactory,
+					new StringDictionary(new File(m_directory, DataPointEventSerializer.DICTIONARY_FILE), 100000));
+		}
+		else
+			m_serializer = new DataPointEventSerializer(dataPointFactory);
+
+		DataPoint[] dataPoints = SyntheticSeries.doubleSeries(System.currentTimeMillis(), 1000, EVENT_COUNT, 42);
+		m_events = new DataPointEvent[EVENT_COUNT];
+		m_serialized = new byte[EVENT_COUNT][];
+		for (int i = 0; i < EVENT_COUNT; i++)
+		{
+			ImmutableSortedMap<String, String> tags = ImmutableSortedMap.of(
+					"host", "server" + (i % 50),
+					"dc", "dc" + (i % 3),
+					"service", "service" + (i % 7));
+
+			m_events[i] = new DataPointEvent("benchmark.metric." + (i % 10), tags, dataPoints[i], 0);
+			m_serialized[i] = m_serializer.serializeEvent(m_events[i]);
+		}
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		m_serializer.close();
+		if (m_directory != null)
+		{
+			new File(m_directory, DataPointEventSerializer.DICTIONARY_FILE).delete();
+			m_directory.delete();
+		}
+	}
+
+	private int nextPosition()
+	{
+		m_position = (m_position + 1) & (EVENT_COUNT - 1);
+		return (m_position);
+	}
+
+	@Benchmark
+	public byte[] serialize()
+	{
+		return (m_serializer.serializeEvent(m_events[nextPosition()]));
+	}
+
+	@Benchmark
+	public DataPointEvent deserialize()
+	{
+		return (m_serializer.deserializeEvent(m_serialized[nextPosition()]));
+	}
+}
@@ -0,0 +1,70 @@
+package org.kairosdb.datastore.cassandra;
+
+import org.kairosdb.core.datapoints.DoubleDataPointFactoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Serializes row keys the way the write path does for every data point that
+ misses the row key cache.  A new row key is created for each call so the
+ cached serialized form is not used.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataPointsRowKeySerializerBenchmark
+{
+	@Param({"1", "5", "20"})
+	public int tagCount;
+
+	private final DataPointsRowKeySerializer m_serializer = new DataPointsRowKeySerializer();
+	private SortedMap<String, String> m_tags;
+	private long m_rowTime;
+	private ByteBuffer m_serialized;
+
+	@Setup
+	public void setup()
+	{
+		m_tags = new TreeMap<>();
+		for (int i = 0; i < tagCount; i++)
+			m_tags.put("tag_name_" + i, "tag_value_" + i);
+
+		m_rowTime = CassandraDatastore.calculateRowTime(System.currentTimeMillis());
+		m_serialized = m_serializer.toByteBuffer(newRowKey());
+	}
+
+	private DataPointsRowKey newRowKey()
+	{
+		return (new DataPointsRowKey("benchmark.metric.name", m_rowTime,
+				DoubleDataPointFactoryImpl.DST_DOUBLE, m_tags));
+	}
+
+	@Benchmark
+	public ByteBuffer toByteBuffer()
+	{
+		return (m_serializer.toByteBuffer(newRowKey()));
+	}
+
+	@Benchmark
+	public DataPointsRowKey fromByteBuffer()
+	{
+		return (m_serializer.fromByteBuffer(m_serialized.duplicate()));
+	}
+}
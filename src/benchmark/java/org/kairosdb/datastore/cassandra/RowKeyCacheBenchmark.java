@@ -0,0 +1,85 @@
+package org.kairosdb.datastore.cassandra;
+
+import org.kairosdb.core.datapoints.DoubleDataPointFactoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Looks up row keys in the row key cache.  The heap cache is DataCache, when
+ keyCount is larger than cacheSize most lookups miss and evict.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowKeyCacheBenchmark
+{
+	@Param({"heap", "off_heap"})
+	public String cacheType;
+
+	@Param({"65536"})
+	public int cacheSize;
+
+	@Param({"10000", "1000000"})
+	public int keyCount;
+
+	private RowKeyCache m_cache;
+	private DataPointsRowKey[] m_rowKeys;
+
+	@Setup
+	public void setup()
+	{
+		if (cacheType.equals("heap"))
+			m_cache = new HeapRowKeyCache(cacheSize);
+		else
+			m_cache = new OffHeapRowKeyCache(cacheSize * 32L);
+
+		long rowTime = CassandraDatastore.calculateRowTime(System.currentTimeMillis());
+		m_rowKeys = new DataPointsRowKey[keyCount];
+		for (int i = 0; i < keyCount; i++)
+		{
+			TreeMap<String, String> tags = new TreeMap<>();
+			tags.put("host", "server" + i);
+			tags.put("dc", "dc" + (i % 3));
+			m_rowKeys[i] = new DataPointsRowKey("benchmark.metric." + (i % 100), rowTime,
+					DoubleDataPointFactoryImpl.DST_DOUBLE, tags);
+		}
+
+		for (DataPointsRowKey rowKey : m_rowKeys)
+			m_cache.cacheItem(rowKey);
+	}
+
+	private DataPointsRowKey randomRowKey()
+	{
+		return (m_rowKeys[ThreadLocalRandom.current().nextInt(keyCount)]);
+	}
+
+	@Benchmark
+	public DataPointsRowKey cacheItem()
+	{
+		return (m_cache.cacheItem(randomRowKey()));
+	}
+
+	@Benchmark
+	@Threads(4)
+	public DataPointsRowKey cacheItemContended()
+	{
+		return (m_cache.cacheItem(randomRowKey()));
+	}
+}
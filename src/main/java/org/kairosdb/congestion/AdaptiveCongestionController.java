@@ -2,37 +2,108 @@ package org.kairosdb.congestion;
 
 /**
  Created by bhawkins on 3/19/16.
+
+ Limits the number of concurrent processes and adjusts the limit from the
+ time processes take to run, in the style of TCP AIMD/Vegas.
+
+ The lowest latency seen over a window of completions is the baseline.  While
+ the smoothed latency stays below baseline * latencyTolerance the limit grows,
+ by one per completion during slow start and by one per limit completions
+ afterwards, as long as all permits are in use.  When the latency goes above
+ it the limit is reduced by DECREASE_FACTOR, at most once per limit
+ completions so a single slow batch does not collapse it.  A failure halves the limit and ends slow start.
  */
 public class AdaptiveCongestionController implements CongestionController
 {
+	private static final double DECREASE_FACTOR = 0.9;
+	private static final double FAILURE_FACTOR = 0.5;
+	private static final double SMOOTHING = 0.2;
+	private static final int BASELINE_WINDOW = 1000;
+
 	private int m_processCounter;
 	private int m_maxProcesses;
 
-	private Object m_processLock = new Object();
+	private final Object m_processLock = new Object();
 	private boolean m_shuttingDown = false;
 	private boolean m_inSlowStart = true;
 
+	private int m_minLimit;
+	private int m_maxLimit;
+	private double m_latencyTolerance;
+	private double m_limit;
+
+	private double m_smoothedLatency = -1;
+	private long m_baselineLatency = Long.MAX_VALUE;
+	private long m_windowMinLatency = Long.MAX_VALUE;
+	private int m_windowCount;
+	private int m_sinceDecrease;
+
 	private void processReturned()
 	{
 		synchronized (m_processLock)
 		{
 			m_processCounter --;
-			m_processLock.notify();
+			m_processLock.notifyAll();
 		}
 	}
 
 	public AdaptiveCongestionController()
 	{
+		this(10, 1, 100, 2.0);
+	}
+
+	/**
+	 @param initialLimit number of concurrent processes to start with
+	 @param minLimit lowest the limit is reduced to
+	 @param maxLimit highest the limit is raised to
+	 @param latencyTolerance how many times the baseline latency is accepted
+	 before the limit is reduced
+	 */
+	public AdaptiveCongestionController(int initialLimit, int minLimit, int maxLimit,
+			double latencyTolerance)
+	{
+		m_latencyTolerance = latencyTolerance;
+		setLimits(initialLimit, minLimit, maxLimit);
+	}
+
+	/**
+	 Changes the bounds of the limit, the current limit is set to initialLimit.
+	 */
+	public void setLimits(int initialLimit, int minLimit, int maxLimit)
+	{
+		synchronized (m_processLock)
+		{
+			m_minLimit = Math.max(1, minLimit);
+			m_maxLimit = Math.max(m_minLimit, maxLimit);
+			m_limit = Math.min(m_maxLimit, Math.max(m_minLimit, initialLimit));
+			m_maxProcesses = (int) m_limit;
+			m_processLock.notifyAll();
+		}
+	}
+
+	public void setLatencyTolerance(double latencyTolerance)
+	{
+		synchronized (m_processLock)
+		{
+			m_latencyTolerance = latencyTolerance;
+		}
 	}
 
 	public void shutdown()
 	{
-		m_shuttingDown = true;
-		m_processLock.notifyAll();
+		synchronized (m_processLock)
+		{
+			m_shuttingDown = true;
+			m_processLock.notifyAll();
+		}
 	}
 
-	@Override
-	public ProcessTracker getProcessTracker()
+	/**
+	 Blocks until a process is available.  The caller hands it back with
+	 finishedProcess, failedProcess or returnProcess.
+	 @return false if the controller is shutting down
+	 */
+	public boolean acquireProcess()
 	{
 		synchronized (m_processLock)
 		{
@@ -48,30 +119,124 @@ public class AdaptiveCongestionController implements CongestionController
 				}
 
 				if (m_shuttingDown)
-					return null;
+					return (false);
 			}
 
 			m_processCounter ++;
 		}
 
+		return (true);
+	}
+
+	@Override
+	public ProcessTracker getProcessTracker()
+	{
+		if (!acquireProcess())
+			return null;
+
 		ProcessTimer pt = new ProcessTimer(this);
 		pt.start();
 
-		//Need an ability to mark certain timings with a version.
-		//Do this durring slow start to track the new processes
-
 		return pt;
 	}
 
-	public void finishedProcess(long microseconds)
+	private void setLimit(double limit)
 	{
+		m_limit = Math.min(m_maxLimit, Math.max(m_minLimit, limit));
+		m_maxProcesses = (int) m_limit;
+	}
+
+	/**
+	 @param latency time the process took, only compared against other
+	 latencies so any unit can be used as long as it is always the same
+	 */
+	public void finishedProcess(long latency)
+	{
+		synchronized (m_processLock)
+		{
+			//Track the lowest latency over a window so the baseline can move up
+			//when the cluster gets slower for reasons other than our load
+			m_windowMinLatency = Math.min(m_windowMinLatency, latency);
+			m_windowCount ++;
+			if (m_windowCount >= BASELINE_WINDOW)
+			{
+				m_baselineLatency = m_windowMinLatency;
+				m_windowMinLatency = Long.MAX_VALUE;
+				m_windowCount = 0;
+			}
+			m_baselineLatency = Math.min(m_baselineLatency, latency);
+
+			if (m_smoothedLatency < 0)
+				m_smoothedLatency = latency;
+			else
+				m_smoothedLatency += SMOOTHING * (latency - m_smoothedLatency);
+
+			m_sinceDecrease ++;
+
+			if (m_smoothedLatency > m_baselineLatency * m_latencyTolerance)
+			{
+				if (m_sinceDecrease >= m_limit)
+				{
+					m_inSlowStart = false;
+					m_sinceDecrease = 0;
+					setLimit(m_limit * DECREASE_FACTOR);
+				}
+			}
+			//Only grow when the limit is actually being used
+			else if (m_processCounter >= m_maxProcesses)
+			{
+				if (m_inSlowStart)
+					setLimit(m_limit + 1);
+				else
+					setLimit(m_limit + 1.0 / m_limit);
+			}
+		}
+
 		processReturned();
-		//Add microseconds to stats
+	}
+
+	/**
+	 Reports a failure without returning a process, used when the process
+	 retries on its own.
+	 */
+	public void reportFailure()
+	{
+		synchronized (m_processLock)
+		{
+			m_inSlowStart = false;
+			m_sinceDecrease = 0;
+			setLimit(m_limit * FAILURE_FACTOR);
+		}
 	}
 
 	public void failedProcess()
 	{
+		reportFailure();
 		processReturned();
-		//Initiate slow start
+	}
+
+	/**
+	 Returns a process without adjusting the limit, used when the failure
+	 was already given to reportFailure.
+	 */
+	public void returnProcess()
+	{
+		processReturned();
+	}
+
+	public double getLimit()
+	{
+		synchronized (m_processLock)
+		{
+			return (m_limit);
+		}
+	}
+
+	public int getProcessCount()
+	{
+		synchronized (m_processLock)
+		{
+			return (m_processCounter);
+		}
 	}
 }
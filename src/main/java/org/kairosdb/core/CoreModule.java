@@ -38,6 +38,8 @@ import org.kairosdb.core.aggregator.LastAggregator;
 import org.kairosdb.core.aggregator.LeastSquaresAggregator;
 import org.kairosdb.core.aggregator.MaxAggregator;
 import org.kairosdb.core.aggregator.MinAggregator;
+import org.kairosdb.core.aggregator.MovingMaxAggregator;
+import org.kairosdb.core.aggregator.MovingMinAggregator;
 import org.kairosdb.core.aggregator.PercentileAggregator;
 import org.kairosdb.core.aggregator.RateAggregator;
 import org.kairosdb.core.aggregator.SamplerAggregator;
@@ -188,6 +190,8 @@ public class CoreModule extends AbstractModule
 		bind(SaveAsAggregator.class);
 		bind(TrimAggregator.class);
 		bind(SmaAggregator.class);
+		bind(MovingMinAggregator.class);
+		bind(MovingMaxAggregator.class);
 		bind(FilterAggregator.class);
 
 		bind(ValueGroupBy.class);
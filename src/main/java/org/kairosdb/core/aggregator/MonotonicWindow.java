@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 KairosDB Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kairosdb.core.aggregator;
+
+/**
+ Moving minimum or maximum kept in a monotonic deque.  The deque only holds
+ values that can still become the result, ordered from the oldest, which is
+ the current result, to the newest.  Each value is added and removed once so
+ the cost per data point does not depend on the size of the window.
+
+ NaN values are left out, the value is NaN if the window only has NaN values.
+ */
+class MonotonicWindow implements MovingWindowAggregator.Window
+{
+	private final boolean m_max;
+	private final int m_size;
+	//Deque as a ring buffer, positions are kept to expire old values
+	private final double[] m_values;
+	private final long[] m_positions;
+	private int m_head;
+	private int m_length;
+	private long m_position;
+
+	MonotonicWindow(int size, boolean max)
+	{
+		m_max = max;
+		m_size = size;
+		m_values = new double[size];
+		m_positions = new long[size];
+	}
+
+	@Override
+	public void add(double value)
+	{
+		m_position++;
+
+		//Drop the oldest value once it is out of the window
+		if (m_length != 0 && m_positions[m_head] <= m_position - m_size)
+		{
+			m_head = (m_head + 1) % m_size;
+			m_length--;
+		}
+
+		if (Double.isNaN(value))
+			return;
+
+		//Values the new one is better than can never be the result again
+		while (m_length != 0 && !isBetter(m_values[(m_head + m_length - 1) % m_size], value))
+			m_length--;
+
+		int tail = (m_head + m_length) % m_size;
+		m_values[tail] = value;
+		m_positions[tail] = m_position;
+		m_length++;
+	}
+
+	private boolean isBetter(double value, double other)
+	{
+		return (m_max ? value > other : value < other);
+	}
+
+	@Override
+	public double getValue()
+	{
+		if (m_length == 0)
+			return (Double.NaN);
+
+		return (m_values[m_head]);
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016 KairosDB Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kairosdb.core.aggregator;
+
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.annotation.FeatureProperty;
+import org.kairosdb.core.annotation.ValidationProperty;
+import org.kairosdb.core.datapoints.DoubleDataPointFactory;
+import org.kairosdb.core.datastore.DataPointGroup;
+import org.kairosdb.core.groupby.GroupByResult;
+import org.kairosdb.plugin.Aggregator;
+
+import java.util.List;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ Base for aggregators that compute a value over the last size data points.
+ The first size - 1 data points only fill the window, after that one data
+ point is returned for each data point read with the timestamp of the data
+ point read.
+ */
+public abstract class MovingWindowAggregator implements Aggregator
+{
+	protected final DoubleDataPointFactory m_dataPointFactory;
+
+	//@NonZero
+	@FeatureProperty(
+			label = "Size",
+			description = "The period of the moving window. This is the number of data point to use each time the value is calculated.",
+			default_value = "10",
+			validations = {
+					@ValidationProperty(
+							expression = "value > 0",
+							message = "Size must be greater than 0."
+					)
+			}
+	)
+	private int m_size;
+
+	public MovingWindowAggregator(DoubleDataPointFactory dataPointFactory)
+	{
+		m_dataPointFactory = dataPointFactory;
+	}
+
+	@Override
+	public boolean canAggregate(String groupType)
+	{
+		return DataPoint.GROUP_NUMBER.equals(groupType);
+	}
+
+	@Override
+	public String getAggregatedGroupType(String groupType)
+	{
+		return m_dataPointFactory.getGroupType();
+	}
+
+	@Override
+	public DataPointGroup aggregate(DataPointGroup dataPointGroup)
+	{
+		checkState(m_size != 0);
+		return new MovingWindowDataPointGroup(dataPointGroup, createWindow(m_size));
+	}
+
+	public void setSize(int size)
+	{
+		m_size = size;
+	}
+
+	/**
+	 Creates the window for one data point group.
+	 */
+	protected abstract Window createWindow(int size);
+
+	/**
+	 Holds the values of the last size data points.
+	 */
+	protected interface Window
+	{
+		/**
+		 Adds a value, dropping the oldest one once the window is full.
+		 */
+		void add(double value);
+
+		/**
+		 Value calculated from the values currently in the window.
+		 */
+		double getValue();
+	}
+
+	private class MovingWindowDataPointGroup implements DataPointGroup
+	{
+		private final DataPointGroup m_innerDataPointGroup;
+		private final Window m_window;
+
+		public MovingWindowDataPointGroup(DataPointGroup innerDataPointGroup, Window window)
+		{
+			m_innerDataPointGroup = innerDataPointGroup;
+			m_window = window;
+
+			for (int i = 0; i < m_size - 1; i++)
+			{
+				if (innerDataPointGroup.hasNext())
+					m_window.add(innerDataPointGroup.next().getDoubleValue());
+			}
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return (m_innerDataPointGroup.hasNext());
+		}
+
+		@Override
+		public DataPoint next()
+		{
+			DataPoint dp = m_innerDataPointGroup.next();
+			m_window.add(dp.getDoubleValue());
+
+			return (m_dataPointFactory.createDataPoint(dp.getTimestamp(), m_window.getValue()));
+		}
+
+		@Override
+		public void remove()
+		{
+			m_innerDataPointGroup.remove();
+		}
+
+		@Override
+		public String getName()
+		{
+			return (m_innerDataPointGroup.getName());
+		}
+
+		@Override
+		public List<GroupByResult> getGroupByResult()
+		{
+			return (m_innerDataPointGroup.getGroupByResult());
+		}
+
+		@Override
+		public void close()
+		{
+			m_innerDataPointGroup.close();
+		}
+
+		@Override
+		public Set<String> getTagNames()
+		{
+			return (m_innerDataPointGroup.getTagNames());
+		}
+
+		@Override
+		public Set<String> getTagValues(String tag)
+		{
+			return (m_innerDataPointGroup.getTagValues(tag));
+		}
+	}
+}
@@ -23,6 +23,7 @@ import org.kairosdb.core.annotation.FeatureProperty;
 import org.kairosdb.core.annotation.ValidationProperty;
 import org.kairosdb.core.datapoints.DoubleDataPointFactory;
 import org.kairosdb.core.http.rest.validation.NonZero;
+import org.kairosdb.util.QuantileSketch;
 import org.kairosdb.util.Reservoir;
 import org.kairosdb.util.UniformReservoir;
 import org.slf4j.Logger;
@@ -32,6 +33,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.lang.Math.floor;
 
 @FeatureComponent(
@@ -80,15 +82,76 @@ public class PercentileAggregator extends RangeAggregator
 	)
 	private double percentile;
 
+	@FeatureProperty(
+			name = "accuracy",
+			label = "Accuracy",
+			description = "Relative accuracy of the percentile, for example 0.01 for 1%. When set the percentile"
+					+ " is read from a quantile sketch of all data points instead of a random sample of 1028 data points.",
+			default_value = "0",
+			validations = {
+					@ValidationProperty(
+							expression = "value >= 0",
+							message = "Accuracy must be greater than or equal to 0."
+					),
+					@ValidationProperty(
+							expression = "value < 1",
+							message = "Accuracy must be smaller than 1."
+					)
+			}
+	)
+	private double m_accuracy;
+
 	public void setPercentile(double percentile)
 	{
 		this.percentile = percentile;
 	}
 
+	/**
+	 Relative accuracy of the quantile sketch, 0 uses a random sample instead.
+	 */
+	public void setAccuracy(double accuracy)
+	{
+		checkArgument(accuracy >= 0 && accuracy < 1, "accuracy must be at least 0 and smaller than 1");
+		m_accuracy = accuracy;
+	}
+
 	@Override
 	protected RangeSubAggregator getSubAggregator()
 	{
-		return (new PercentileDataPointAggregator());
+		if (m_accuracy > 0)
+			return (new SketchPercentileDataPointAggregator(new QuantileSketch(m_accuracy)));
+		else
+			return (new PercentileDataPointAggregator());
+	}
+
+	/**
+	 Reads the percentile from a quantile sketch of every data point in the
+	 range.  The sketch is cleared and reused for each range.
+	 */
+	private class SketchPercentileDataPointAggregator implements RangeSubAggregator
+	{
+		private final QuantileSketch m_sketch;
+
+		public SketchPercentileDataPointAggregator(QuantileSketch sketch)
+		{
+			m_sketch = sketch;
+		}
+
+		@Override
+		public Iterable<DataPoint> getNextDataPoints(long returnTime, Iterator<DataPoint> dataPointRange)
+		{
+			m_sketch.clear();
+			while (dataPointRange.hasNext())
+			{
+				m_sketch.add(dataPointRange.next().getDoubleValue());
+			}
+
+			double percentileValue = 0.0;
+			if (m_sketch.getCount() != 0)
+				percentileValue = m_sketch.getQuantile(percentile);
+
+			return Collections.singletonList(m_dataPointFactory.createDataPoint(returnTime, percentileValue));
+		}
 	}
 
 	private class PercentileDataPointAggregator implements RangeSubAggregator
@@ -18,6 +18,7 @@ import org.joda.time.Chronology;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeField;
 import org.joda.time.DateTimeZone;
+import org.joda.time.DurationField;
 import org.joda.time.chrono.GregorianChronology;
 import org.kairosdb.core.DataPoint;
 import org.kairosdb.core.annotation.FeatureCompoundProperty;
@@ -247,6 +248,8 @@ public abstract class RangeAggregator implements Aggregator, TimezoneAware
         protected Iterator<DataPoint> m_dpIterator;
         /* used for generic range computations */
         private DateTimeField m_unitField;
+        /* width of every range in milliseconds, 0 if the width varies */
+        private long m_rangeWidth;
 
         public RangeDataPointAggregator(DataPointGroup innerDataPointGroup,
                                         RangeSubAggregator subAggregator)
@@ -285,11 +288,20 @@ public abstract class RangeAggregator implements Aggregator, TimezoneAware
                     m_unitField = chronology.millisOfSecond();
                     break;
             }
+
+            //Milliseconds up to weeks have a fixed length unless the time
+            //zone has daylight savings, those ranges are plain arithmetic
+            DurationField durationField = m_unitField.getDurationField();
+            if (chronology.getZone().isFixed() && durationField.isPrecise())
+                m_rangeWidth = durationField.getUnitMillis() * m_sampling.getValue();
         }
 
 
         protected long getStartRange(long timestamp)
         {
+            if (m_rangeWidth != 0)
+                return m_startTime + ((timestamp - m_startTime) / m_rangeWidth) * m_rangeWidth;
+
             long samplingValue = m_sampling.getValue();
             long numberOfPastPeriods = m_unitField.getDifferenceAsLong(timestamp/*getDataPointTime()*/, m_startTime) / samplingValue;
             return m_unitField.add(m_startTime, numberOfPastPeriods * samplingValue);
@@ -297,6 +309,9 @@ public abstract class RangeAggregator implements Aggregator, TimezoneAware
 
         protected long getEndRange(long timestamp)
         {
+            if (m_rangeWidth != 0)
+                return m_startTime + ((timestamp - m_startTime) / m_rangeWidth + 1) * m_rangeWidth;
+
             long samplingValue = m_sampling.getValue();
             long numberOfPastPeriods = m_unitField.getDifferenceAsLong(timestamp/*getDataPointTime()*/, m_startTime) / samplingValue;
             return m_unitField.add(m_startTime, (numberOfPastPeriods + 1) * samplingValue);
@@ -18,154 +18,94 @@ package org.kairosdb.core.aggregator;
 
 
 import com.google.inject.Inject;
-import static com.google.common.base.Preconditions.checkState;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
-
-import org.kairosdb.core.DataPoint;
 import org.kairosdb.core.annotation.FeatureComponent;
-import org.kairosdb.core.annotation.FeatureProperty;
-import org.kairosdb.core.annotation.ValidationProperty;
 import org.kairosdb.core.datapoints.DoubleDataPointFactory;
-import org.kairosdb.core.datastore.DataPointGroup;
-import org.kairosdb.core.groupby.GroupByResult;
-
-import org.kairosdb.plugin.Aggregator;
 
 @FeatureComponent(
         name = "sma",
 		label = "SMA",
 		description = "Simple moving average."
 )
-public class SmaAggregator implements Aggregator
+public class SmaAggregator extends MovingWindowAggregator
 {
-	private DoubleDataPointFactory m_dataPointFactory;
-
-	//@NonZero
-	@FeatureProperty(
-			label = "Size",
-			description = "The period of the moving average. This is the number of data point to use each time the average is calculated.",
-			default_value = "10",
-            validations = {
-					@ValidationProperty(
-							expression = "value > 0",
-							message = "Size must be greater than 0."
-					)
-			}
-	)
-	private int m_size;
-
 	@Inject
 	public SmaAggregator(DoubleDataPointFactory dataPointFactory)
 	{
-		m_dataPointFactory = dataPointFactory;
+		super(dataPointFactory);
 	}
 
 	@Override
-	public boolean canAggregate(String groupType)
+	protected Window createWindow(int size)
 	{
-		return DataPoint.GROUP_NUMBER.equals(groupType);
+		return (new SmaWindow(size));
 	}
 
-	@Override
-	public String getAggregatedGroupType(String groupType)
+	/**
+	 Ring buffer of the window values with a running sum.  NaN and infinite
+	 values are kept out of the sum, while one is in the window the sum is
+	 taken over the whole buffer so the result matches adding the values up.
+	 */
+	private static class SmaWindow implements Window
 	{
-		return m_dataPointFactory.getGroupType();
-	}
+		private final double[] m_values;
+		private int m_next;
+		private int m_count;
+		private int m_nonFiniteCount;
+		private double m_sum;
 
-	@Override
-	public DataPointGroup aggregate(DataPointGroup dataPointGroup)
-	{
-		checkState(m_size != 0);
-		return new SmaDataPointGroup(dataPointGroup);
-	}
-
-	public void setSize(int size)
-	{
-		m_size = size;
-	}
-
-	private class SmaDataPointGroup implements DataPointGroup
-	{
-		private DataPointGroup m_innerDataPointGroup;
-		ArrayList<DataPoint> subSet = new ArrayList<DataPoint>();
-
-		public SmaDataPointGroup(DataPointGroup innerDataPointGroup)
+		private SmaWindow(int size)
 		{
-			m_innerDataPointGroup = innerDataPointGroup;
-
-			for(int i=0;i<m_size-1;i++){
-				if (innerDataPointGroup.hasNext()){
-					subSet.add(innerDataPointGroup.next());
-				}
-			}
+			m_values = new double[size];
 		}
 
 		@Override
-		public boolean hasNext()
+		public void add(double value)
 		{
-			return (m_innerDataPointGroup.hasNext());
-		}
-
-		@Override
-		public DataPoint next()
-		{
-			DataPoint dp = m_innerDataPointGroup.next();
-
-			subSet.add(dp);
-			if(subSet.size()>m_size){
-				subSet.remove(0);
-			}
-			
-			double sum = 0;
-			for(int i=0;i<subSet.size();i++){
-				DataPoint dpt = subSet.get(i);
-				sum += dpt.getDoubleValue();
+			if (m_count == m_values.length)
+				remove(m_values[m_next]);
+			else
+				m_count++;
+
+			m_values[m_next] = value;
+			if (Double.isNaN(value) || Double.isInfinite(value))
+				m_nonFiniteCount++;
+			else
+				m_sum += value;
+
+			m_next++;
+			if (m_next == m_values.length)
+			{
+				m_next = 0;
+				//Start over from the buffer so rounding errors do not add up
+				if (m_nonFiniteCount == 0)
+					m_sum = sum();
 			}
-			
-			dp = m_dataPointFactory.createDataPoint(dp.getTimestamp(), sum / subSet.size());
-
-			//System.out.println(new SimpleDateFormat("MM/dd/yyyy HH:mm").format(dp.getTimestamp())+" "+sum+" "+subSet.size());
-			return (dp);
-		}
-
-		@Override
-		public void remove()
-		{
-			m_innerDataPointGroup.remove();
 		}
 
-		@Override
-		public String getName()
+		private void remove(double value)
 		{
-			return (m_innerDataPointGroup.getName());
+			if (Double.isNaN(value) || Double.isInfinite(value))
+				m_nonFiniteCount--;
+			else
+				m_sum -= value;
 		}
 
-		@Override
-		public List<GroupByResult> getGroupByResult()
+		private double sum()
 		{
-			return (m_innerDataPointGroup.getGroupByResult());
-		}
-
+			double sum = 0;
+			for (int i = 0; i < m_count; i++)
+				sum += m_values[i];
 
-		@Override
-		public void close()
-		{
-			m_innerDataPointGroup.close();
+			return (sum);
 		}
 
 		@Override
-		public Set<String> getTagNames()
+		public double getValue()
 		{
-			return (m_innerDataPointGroup.getTagNames());
-		}
+			if (m_nonFiniteCount != 0)
+				return (sum() / m_count);
 
-		@Override
-		public Set<String> getTagValues(String tag)
-		{
-			return (m_innerDataPointGroup.getTagValues(tag));
+			return (m_sum / m_count);
 		}
 	}
 }
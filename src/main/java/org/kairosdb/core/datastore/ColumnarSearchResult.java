@@ -0,0 +1,524 @@
+/*
+ * Copyright 2016 KairosDB Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.kairosdb.core.datastore;
+
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.KairosDataPointFactory;
+import org.kairosdb.util.BufferedDataOutputStream;
+import org.kairosdb.util.KDataInput;
+import org.kairosdb.util.MemoryMonitor;
+import org.kairosdb.util.StringPool;
+import org.kairosdb.util.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ Query cache file that stores each row as two columns, the delta encoded
+ timestamps followed by the serialized values.  The data file is read back
+ through a single memory mapped buffer so a cache hit does not need a read
+ buffer per row.
+
+ The index is written with a plain DataOutputStream and carries a version
+ number so older index files are treated as a cache miss.
+ */
+public class ColumnarSearchResult implements SearchResult
+{
+	public static final Logger logger = LoggerFactory.getLogger(ColumnarSearchResult.class);
+
+	public static final int FORMAT_VERSION = 1;
+
+	private final String m_metricName;
+	private final List<ColumnMarker> m_columnMarkers;
+	private final File m_dataFile;
+	private final File m_indexFile;
+	private final KairosDataPointFactory m_dataPointFactory;
+	private final StringPool m_stringPool;
+	private final boolean m_keepCacheFiles;
+	private final AtomicInteger m_closeCounter = new AtomicInteger();
+	private boolean m_readFromCache = false;
+
+	private RandomAccessFile m_randomAccessFile;
+	private BufferedDataOutputStream m_dataOutputStream;
+	private MappedByteBuffer m_mappedBuffer;
+
+	//Columns for the row currently being written
+	private ColumnMarker m_currentMarker;
+	private ByteArrayOutputStream m_timestampBytes;
+	private DataOutputStream m_timestampColumn;
+	private ByteArrayOutputStream m_valueBytes;
+	private DataOutputStream m_valueColumn;
+	private long m_lastTimestamp;
+
+
+	private static File getIndexFile(String baseFileName)
+	{
+		return (new File(baseFileName + ".cindex"));
+	}
+
+	private static File getDataFile(String baseFileName)
+	{
+		return (new File(baseFileName + ".cdata"));
+	}
+
+	private ColumnarSearchResult(String metricName, File dataFile, File indexFile,
+			KairosDataPointFactory dataPointFactory, boolean keepCacheFiles)
+	{
+		m_metricName = metricName;
+		m_dataFile = dataFile;
+		m_indexFile = indexFile;
+		m_dataPointFactory = dataPointFactory;
+		m_keepCacheFiles = keepCacheFiles;
+		m_columnMarkers = new ArrayList<ColumnMarker>();
+		m_stringPool = new StringPool();
+	}
+
+	public static ColumnarSearchResult createColumnarSearchResult(String metricName,
+			String baseFileName, KairosDataPointFactory dataPointFactory,
+			boolean keepCacheFiles)
+	{
+		File dataFile = getDataFile(baseFileName);
+		File indexFile = getIndexFile(baseFileName);
+
+		//Just in case the file are there.
+		dataFile.delete();
+		indexFile.delete();
+
+		return (new ColumnarSearchResult(metricName, dataFile, indexFile,
+				dataPointFactory, keepCacheFiles));
+	}
+
+	/**
+	 @param baseFileName base name of file
+	 @param cacheTime The number of seconds to still open the file
+	 @return The ColumnarSearchResult if the file exists or null if it doesn't
+	 */
+	public static ColumnarSearchResult openColumnarSearchResult(String metricName,
+			String baseFileName, int cacheTime, KairosDataPointFactory dataPointFactory,
+			boolean keepCacheFiles) throws IOException
+	{
+		ColumnarSearchResult ret = null;
+		File dataFile = getDataFile(baseFileName);
+		File indexFile = getIndexFile(baseFileName);
+		long now = System.currentTimeMillis();
+
+		if (dataFile.exists() && indexFile.exists() && ((now - dataFile.lastModified()) < ((long)cacheTime * 1000)))
+		{
+			ret = new ColumnarSearchResult(metricName, dataFile, indexFile, dataPointFactory, keepCacheFiles);
+			if (!ret.loadIndex())
+				ret = null;
+		}
+
+		return (ret);
+	}
+
+	private void openCacheFile() throws IOException
+	{
+		//Cache cleanup could have removed the folders
+		m_dataFile.getParentFile().mkdirs();
+		m_randomAccessFile = new RandomAccessFile(m_dataFile, "rw");
+		m_dataOutputStream = BufferedDataOutputStream.create(m_randomAccessFile, 0L);
+	}
+
+	/**
+	 Reads the index file into memory
+	 @return false if the index was written by a different version
+	 */
+	private boolean loadIndex() throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(m_indexFile)));
+		try
+		{
+			if (in.readInt() != FORMAT_VERSION)
+			{
+				logger.debug("Ignoring cache file {} with a different version", m_indexFile);
+				return (false);
+			}
+
+			int size = in.readInt();
+			for (int I = 0; I < size; I++)
+			{
+				ColumnMarker marker = new ColumnMarker();
+				marker.read(in);
+				m_columnMarkers.add(marker);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		m_readFromCache = true;
+		return (true);
+	}
+
+	private void saveIndex() throws IOException
+	{
+		if (m_readFromCache)
+			return; //No need to save if we read it from the file
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(m_indexFile)));
+
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(m_columnMarkers.size());
+		for (ColumnMarker marker : m_columnMarkers)
+		{
+			marker.write(out);
+		}
+
+		out.close();
+	}
+
+	/**
+	 Writes the columns of the current row to the data file
+	 */
+	private void endCurrentRow() throws IOException
+	{
+		if (m_currentMarker == null)
+			return;
+
+		m_timestampColumn.flush();
+		m_valueColumn.flush();
+
+		//Position is only accurate once the buffer is flushed
+		m_dataOutputStream.flush();
+
+		m_currentMarker.m_timestampPosition = m_dataOutputStream.getPosition();
+		m_currentMarker.m_timestampLength = m_timestampBytes.size();
+		m_timestampBytes.writeTo(m_dataOutputStream);
+
+		m_currentMarker.m_valuePosition = m_currentMarker.m_timestampPosition + m_currentMarker.m_timestampLength;
+		m_currentMarker.m_valueLength = m_valueBytes.size();
+		m_valueBytes.writeTo(m_dataOutputStream);
+
+		m_currentMarker = null;
+	}
+
+	@Override
+	public void startDataPointSet(String dataType, Map<String, String> tags) throws IOException
+	{
+		if (m_randomAccessFile == null)
+			openCacheFile();
+
+		endCurrentRow();
+
+		m_currentMarker = new ColumnMarker(dataType, tags);
+		m_columnMarkers.add(m_currentMarker);
+
+		if (m_timestampBytes == null)
+		{
+			m_timestampBytes = new ByteArrayOutputStream();
+			m_timestampColumn = new DataOutputStream(m_timestampBytes);
+			m_valueBytes = new ByteArrayOutputStream();
+			m_valueColumn = new DataOutputStream(m_valueBytes);
+		}
+		else
+		{
+			m_timestampBytes.reset();
+			m_valueBytes.reset();
+		}
+
+		m_lastTimestamp = 0L;
+	}
+
+	@Override
+	public void addDataPoint(DataPoint datapoint) throws IOException
+	{
+		long timestamp = datapoint.getTimestamp();
+		Util.packLong(timestamp - m_lastTimestamp, m_timestampColumn);
+		m_lastTimestamp = timestamp;
+
+		datapoint.writeValueToBuffer(m_valueColumn);
+
+		m_currentMarker.m_dataPointCount ++;
+	}
+
+	/**
+	 Call when finished adding datapoints to the cache file
+	 */
+	@Override
+	public void endDataPoints() throws IOException
+	{
+		if (m_randomAccessFile == null)
+			return;
+
+		endCurrentRow();
+		m_dataOutputStream.flush();
+
+		//Release the write buffers
+		m_timestampBytes = null;
+		m_timestampColumn = null;
+		m_valueBytes = null;
+		m_valueColumn = null;
+	}
+
+	private void mapDataFile() throws IOException
+	{
+		if (m_randomAccessFile == null)
+			openCacheFile();
+
+		FileChannel channel = m_randomAccessFile.getChannel();
+		long size = channel.size();
+
+		//Files larger than what a single buffer can address are mapped per row
+		if (size <= Integer.MAX_VALUE)
+			m_mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+	}
+
+	private ByteBuffer getColumn(long position, long length) throws IOException
+	{
+		if (m_mappedBuffer != null)
+		{
+			ByteBuffer column = m_mappedBuffer.duplicate();
+			column.position((int) position);
+			column.limit((int) (position + length));
+			return (column.slice());
+		}
+		else
+			return (m_randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, position, length));
+	}
+
+	@Override
+	public List<DataPointRow> getRows()
+	{
+		List<DataPointRow> ret = new ArrayList<DataPointRow>();
+		MemoryMonitor mm = new MemoryMonitor(20);
+
+		if (m_columnMarkers.isEmpty())
+			return (ret);
+
+		try
+		{
+			mapDataFile();
+
+			for (ColumnMarker marker : m_columnMarkers)
+			{
+				ret.add(new ColumnarDataPointRow(marker,
+						getColumn(marker.m_timestampPosition, marker.m_timestampLength),
+						getColumn(marker.m_valuePosition, marker.m_valueLength)));
+				m_closeCounter.incrementAndGet();
+				mm.checkMemoryAndThrowException();
+			}
+		}
+		catch (IOException e)
+		{
+			logger.error("Unable to map cache file", e);
+			throw new IllegalStateException(e);
+		}
+
+		return (ret);
+	}
+
+	/**
+	 Closes the underling file handle
+	 */
+	private void close()
+	{
+		try
+		{
+			m_mappedBuffer = null;
+			if (m_randomAccessFile != null)
+				m_randomAccessFile.close();
+
+			if (m_keepCacheFiles)
+				saveIndex();
+			else
+				m_dataFile.delete();
+		}
+		catch (IOException e)
+		{
+			logger.error("Failure closing cache file", e);
+		}
+	}
+
+	protected void decrementClose()
+	{
+		if (m_closeCounter.decrementAndGet() == 0)
+			close();
+	}
+
+	//===========================================================================
+	private class ColumnMarker
+	{
+		private String m_dataType;
+		private Map<String, String> m_tags;
+		private int m_dataPointCount;
+		private long m_timestampPosition;
+		private long m_timestampLength;
+		private long m_valuePosition;
+		private long m_valueLength;
+
+		private ColumnMarker()
+		{
+			m_tags = new HashMap<String, String>();
+		}
+
+		private ColumnMarker(String dataType, Map<String, String> tags)
+		{
+			m_dataType = dataType;
+			m_tags = tags;
+		}
+
+		private void write(DataOutputStream out) throws IOException
+		{
+			out.writeUTF(m_dataType);
+			out.writeInt(m_dataPointCount);
+			out.writeLong(m_timestampPosition);
+			out.writeLong(m_timestampLength);
+			out.writeLong(m_valuePosition);
+			out.writeLong(m_valueLength);
+			out.writeInt(m_tags.size());
+			for (Map.Entry<String, String> tag : m_tags.entrySet())
+			{
+				out.writeUTF(tag.getKey());
+				out.writeUTF(tag.getValue());
+			}
+		}
+
+		private void read(DataInputStream in) throws IOException
+		{
+			m_dataType = m_stringPool.getString(in.readUTF());
+			m_dataPointCount = in.readInt();
+			m_timestampPosition = in.readLong();
+			m_timestampLength = in.readLong();
+			m_valuePosition = in.readLong();
+			m_valueLength = in.readLong();
+
+			int tagCount = in.readInt();
+			for (int I = 0; I < tagCount; I++)
+			{
+				String key = m_stringPool.getString(in.readUTF());
+				String value = m_stringPool.getString(in.readUTF());
+				m_tags.put(key, value);
+			}
+		}
+	}
+
+	//===========================================================================
+	private class ColumnarDataPointRow implements DataPointRow
+	{
+		private final ColumnMarker m_marker;
+		private final DataInput m_timestamps;
+		private final DataInput m_values;
+		private long m_lastTimestamp = 0L;
+		private int m_dataPointsRead = 0;
+
+		private ColumnarDataPointRow(ColumnMarker marker, ByteBuffer timestamps, ByteBuffer values)
+		{
+			m_marker = marker;
+			m_timestamps = KDataInput.createInput(timestamps);
+			m_values = KDataInput.createInput(values);
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return (m_dataPointsRead < m_marker.m_dataPointCount);
+		}
+
+		@Override
+		public DataPoint next()
+		{
+			DataPoint ret = null;
+
+			try
+			{
+				m_lastTimestamp += Util.unpackLong(m_timestamps);
+				ret = m_dataPointFactory.createDataPoint(m_marker.m_dataType, m_lastTimestamp, m_values);
+			}
+			catch (IOException ioe)
+			{
+				logger.error("Error reading next data point.", ioe);
+			}
+
+			m_dataPointsRead ++;
+
+			return (ret);
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getName()
+		{
+			return (m_metricName);
+		}
+
+		@Override
+		public String getDatastoreType()
+		{
+			return (m_marker.m_dataType);
+		}
+
+		@Override
+		public Set<String> getTagNames()
+		{
+			return (m_marker.m_tags.keySet());
+		}
+
+		@Override
+		public String getTagValue(String tag)
+		{
+			return (m_marker.m_tags.get(tag));
+		}
+
+		@Override
+		public int getDataPointCount()
+		{
+			return (m_marker.m_dataPointCount);
+		}
+
+		@Override
+		public void close()
+		{
+			decrementClose();
+		}
+
+		@Override
+		public String toString()
+		{
+			return "ColumnarDataPointRow{" +
+					"m_metricName='" + m_metricName + '\'' +
+					", m_tags=" + m_marker.m_tags +
+					'}';
+		}
+	}
+}
@@ -43,12 +43,13 @@ import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -59,6 +60,10 @@ public class KairosDatastore
 	public static final Logger logger = LoggerFactory.getLogger(KairosDatastore.class);
 	public static final String QUERY_CACHE_DIR = "kairosdb.query_cache.cache_dir";
 	public static final String KEEP_CACHE_FILES = "kairosdb.query_cache.keep_cache_files";
+	public static final String QUERY_CACHE_COLUMNAR = "kairosdb.query_cache.columnar_format";
+	public static final String QUERY_STREAMING = "kairosdb.query_cache.streaming";
+	public static final String QUERY_STREAMING_MAX_POINTS = "kairosdb.query_cache.streaming_max_buffered_points";
+	public static final String QUERY_GROUP_MEMORY_BUDGET = "kairosdb.query_cache.group_memory_budget";
 	public static final String QUERY_METRIC_TIME = "kairosdb.datastore.query_time";
 	public static final String QUERIES_WAITING_METRIC_NAME = "kairosdb.datastore.queries_waiting";
 	public static final String QUERY_SAMPLE_SIZE = "kairosdb.datastore.query_sample_size";
@@ -71,6 +76,10 @@ public class KairosDatastore
 	private String m_baseCacheDir;
 	private volatile String m_cacheDir;
 	private final boolean m_keepCacheFiles;
+	private boolean m_columnarCacheFormat = false;
+	private boolean m_streamingQueries = false;
+	private long m_streamingMaxBufferedPoints = 500000L;
+	private long m_groupMemoryBudget = Grouper.DEFAULT_MEMORY_BUDGET;
 
 	@SuppressWarnings("ResultOfMethodCallIgnored")
 	@Inject
@@ -100,6 +109,34 @@ public class KairosDatastore
 		}
 	}
 
+	@SuppressWarnings("UnusedDeclaration")
+	@Inject(optional = true)
+	public void setColumnarCacheFormat(@Named(QUERY_CACHE_COLUMNAR) boolean columnarCacheFormat)
+	{
+		m_columnarCacheFormat = columnarCacheFormat;
+	}
+
+	@SuppressWarnings("UnusedDeclaration")
+	@Inject(optional = true)
+	public void setStreamingQueries(@Named(QUERY_STREAMING) boolean streamingQueries)
+	{
+		m_streamingQueries = streamingQueries;
+	}
+
+	@SuppressWarnings("UnusedDeclaration")
+	@Inject(optional = true)
+	public void setStreamingMaxBufferedPoints(@Named(QUERY_STREAMING_MAX_POINTS) long maxBufferedPoints)
+	{
+		m_streamingMaxBufferedPoints = maxBufferedPoints;
+	}
+
+	@SuppressWarnings("UnusedDeclaration")
+	@Inject(optional = true)
+	public void setGroupMemoryBudget(@Named(QUERY_GROUP_MEMORY_BUDGET) long groupMemoryBudget)
+	{
+		m_groupMemoryBudget = groupMemoryBudget;
+	}
+
 	@SuppressWarnings("ResultOfMethodCallIgnored")
 	private void setupCacheDirectory()
 	{
@@ -321,14 +358,14 @@ public class KairosDatastore
 		}
 		else
 		{
-			ListMultimap<String, DataPointGroup> typeGroups = ArrayListMultimap.create();
+			ListMultimap<String, DataPointRow> typeGroups = ArrayListMultimap.create();
 
 			//Go through each row grouping them by type
 			for (DataPointRow row : rows)
 			{
 				String groupType = m_dataPointFactory.getGroupType(row.getDatastoreType());
 
-				typeGroups.put(groupType, new DataPointGroupRowWrapper(row));
+				typeGroups.put(groupType, row);
 				mm.checkMemoryAndThrowException();
 			}
 
@@ -340,33 +377,63 @@ public class KairosDatastore
 			{
 				if (tagGroupBy != null)
 				{
-					ListMultimap<String, DataPointGroup> groups = ArrayListMultimap.create();
-					Map<String, TagGroupByResult> groupByResults = new HashMap<String, TagGroupByResult>();
+					List<String> tagNames = tagGroupBy.getTagNames();
+					//Rows are grouped by their values for the tag names, the string key
+					//and the group by result are only built once per group
+					Map<List<String>, List<DataPointGroup>> groups = new HashMap<List<String>, List<DataPointGroup>>();
 
-					for (DataPointGroup dataPointGroup : typeGroups.get(type))
+					for (DataPointRow row : typeGroups.get(type))
 					{
-						//Todo: Add code to datastore implementations to filter by the group by tag
-
-						LinkedHashMap<String, String> matchingTags = getMatchingTags(dataPointGroup, tagGroupBy.getTagNames());
-						String tagsKey = getTagsKey(matchingTags);
-						groups.put(tagsKey, dataPointGroup);
-						groupByResults.put(tagsKey, new TagGroupByResult(tagGroupBy, matchingTags));
+						String[] tagValues = new String[tagNames.size()];
+						for (int i = 0; i < tagValues.length; i++)
+						{
+							String tagValue = row.getTagValue(tagNames.get(i));
+							tagValues[i] = tagValue != null ? tagValue : "";
+						}
+
+						List<String> groupKey = Arrays.asList(tagValues);
+						List<DataPointGroup> group = groups.get(groupKey);
+						if (group == null)
+						{
+							group = new ArrayList<DataPointGroup>();
+							groups.put(groupKey, group);
+						}
+						group.add(new DataPointGroupRowWrapper(row));
 						mm.checkMemoryAndThrowException();
 					}
 
 					//Sort groups by tags
-					TreeSet<String> sortedGroups = new TreeSet<String>(groups.keySet());
+					TreeMap<String, List<DataPointGroup>> sortedGroups = new TreeMap<String, List<DataPointGroup>>();
+					Map<String, TagGroupByResult> groupByResults = new HashMap<String, TagGroupByResult>();
+					for (Map.Entry<List<String>, List<DataPointGroup>> entry : groups.entrySet())
+					{
+						LinkedHashMap<String, String> matchingTags = getMatchingTags(tagNames, entry.getKey());
+						String tagsKey = getTagsKey(matchingTags);
+						List<DataPointGroup> sortedGroup = sortedGroups.get(tagsKey);
+						if (sortedGroup == null)
+						{
+							sortedGroups.put(tagsKey, entry.getValue());
+							groupByResults.put(tagsKey, new TagGroupByResult(tagGroupBy, matchingTags));
+						}
+						else
+							sortedGroup.addAll(entry.getValue());
+					}
 
-					for (String key : sortedGroups)
+					for (Map.Entry<String, List<DataPointGroup>> entry : sortedGroups.entrySet())
 					{
-						SortingDataPointGroup sdpGroup = new SortingDataPointGroup(groups.get(key), groupByResults.get(key), order);
+						SortingDataPointGroup sdpGroup = new SortingDataPointGroup(entry.getValue(),
+								groupByResults.get(entry.getKey()), order);
 						sdpGroup.addGroupByResult(new TypeGroupByResult(type));
 						ret.add(sdpGroup);
 					}
 				}
 				else
 				{
-					ret.add(new SortingDataPointGroup(typeGroups.get(type), new TypeGroupByResult(type), order));
+					List<DataPointGroup> group = new ArrayList<DataPointGroup>();
+					for (DataPointRow row : typeGroups.get(type))
+						group.add(new DataPointGroupRowWrapper(row));
+
+					ret.add(new SortingDataPointGroup(group, new TypeGroupByResult(type), order));
 				}
 			}
 		}
@@ -393,27 +460,41 @@ public class KairosDatastore
 	 Tags are inserted in the order specified in tagNames which is the order
 	 from the query.  We use a linked hashmap so that order is preserved and
 	 the group by responses are sorted in the order specified in the query.
-	 @param datapointGroup
 	 @param tagNames
+	 @param tagValues value of each tag name
 	 @return
 	 */
-	private static LinkedHashMap<String, String> getMatchingTags(DataPointGroup datapointGroup, List<String> tagNames)
+	private static LinkedHashMap<String, String> getMatchingTags(List<String> tagNames, List<String> tagValues)
 	{
 		LinkedHashMap<String, String> matchingTags = new LinkedHashMap<String, String>();
-		for (String tagName : tagNames)
-		{
-			Set<String> tagValues = datapointGroup.getTagValues(tagName);
-			if (tagValues != null)
-			{
-				String tagValue = tagValues.iterator().next();
-				matchingTags.put(tagName, tagValue != null ? tagValue : "");
-			}
-		}
+		for (int i = 0; i < tagNames.size(); i++)
+			matchingTags.put(tagNames.get(i), tagValues.get(i));
 
 		return matchingTags;
 	}
 
 
+	private SearchResult openCachedSearchResult(QueryMetric metric, String baseFileName) throws IOException
+	{
+		if (m_columnarCacheFormat)
+			return (ColumnarSearchResult.openColumnarSearchResult(metric.getName(),
+					baseFileName, metric.getCacheTime(), m_dataPointFactory, m_keepCacheFiles));
+		else
+			return (CachedSearchResult.openCachedSearchResult(metric.getName(),
+					baseFileName, metric.getCacheTime(), m_dataPointFactory, m_keepCacheFiles));
+	}
+
+	private SearchResult createCachedSearchResult(QueryMetric metric, String baseFileName) throws IOException
+	{
+		if (m_columnarCacheFormat)
+			return (ColumnarSearchResult.createColumnarSearchResult(metric.getName(),
+					baseFileName, m_dataPointFactory, m_keepCacheFiles));
+		else
+			return (CachedSearchResult.createCachedSearchResult(metric.getName(),
+					baseFileName, m_dataPointFactory, m_keepCacheFiles));
+	}
+
+
 	private static String calculateFilenameHash(QueryMetric metric) throws NoSuchAlgorithmException, UnsupportedEncodingException
 	{
 		String hashString = metric.getCacheString();
@@ -476,8 +557,7 @@ public class KairosDatastore
 
 				if (m_metric.getCacheTime() > 0)
 				{
-					searchResult = CachedSearchResult.openCachedSearchResult(m_metric.getName(),
-							tempFile, m_metric.getCacheTime(), m_dataPointFactory, m_keepCacheFiles);
+					searchResult = openCachedSearchResult(m_metric, tempFile);
 					if (searchResult != null)
 					{
 						returnedRows = searchResult.getRows();
@@ -485,11 +565,20 @@ public class KairosDatastore
 					}
 				}
 
+				if (searchResult == null && m_streamingQueries &&
+						m_metric.getCacheTime() <= 0 && !m_keepCacheFiles)
+				{
+					//Nothing will read the cache file again so skip writing it
+					searchResult = new StreamingSearchResult(m_metric.getName(),
+							tempFile, m_dataPointFactory, m_streamingMaxBufferedPoints);
+					m_datastore.queryDatabase(m_metric, searchResult);
+					returnedRows = searchResult.getRows();
+				}
+
 				if (searchResult == null)
 				{
 					logger.debug("Cache MISS!");
-					searchResult = CachedSearchResult.createCachedSearchResult(m_metric.getName(),
-							tempFile, m_dataPointFactory, m_keepCacheFiles);
+					searchResult = createCachedSearchResult(m_metric, tempFile);
 					m_datastore.queryDatabase(m_metric, searchResult);
 					returnedRows = searchResult.getRows();
 				}
@@ -516,7 +605,7 @@ public class KairosDatastore
 
 
 			// Now group for all other types of group bys.
-			Grouper grouper = new Grouper(m_dataPointFactory);
+			Grouper grouper = new Grouper(m_dataPointFactory, m_groupMemoryBudget);
 			try
 			{
 				queryResults = grouper.group(removeTagGroupBy(m_metric.getGroupBys()), queryResults);
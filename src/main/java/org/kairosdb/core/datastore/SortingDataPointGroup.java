@@ -85,22 +85,22 @@ public class SortingDataPointGroup extends AbstractDataPointGroup
 	}
 
 
+	/**
+	 Orders by timestamp and then by value, the tournament tree keeps data
+	 points that are still equal in the order their groups were added.
+	 */
 	private static class DataPointComparator implements Comparator<DataPoint>
 	{
 		@Override
 		public int compare(DataPoint point1, DataPoint point2)
 		{
-			long ret = point1.getTimestamp() - point2.getTimestamp();
+			long timestamp1 = point1.getTimestamp();
+			long timestamp2 = point2.getTimestamp();
 
-			if (ret == 0L)
-				ret = Double.compare(point1.getDoubleValue(), point2.getDoubleValue());
+			if (timestamp1 != timestamp2)
+				return (timestamp1 < timestamp2 ? -1 : 1);
 
-			if (ret == 0L)
-			{  //Simple hack to break a tie.
-				ret = System.identityHashCode(point1) - System.identityHashCode(point2);
-			}
-
-			return (ret < 0L ? -1 : 1);
+			return (Double.compare(point1.getDoubleValue(), point2.getDoubleValue()));
 		}
 	}
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2016 KairosDB Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.kairosdb.core.datastore;
+
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.KairosDataPointFactory;
+import org.kairosdb.util.MemoryMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ Search result that hands rows read from the datastore straight to the
+ group/aggregation chain without writing them to a cache file first.
+
+ Data points are held in memory until the number of buffered points exceeds
+ maxBufferedDataPoints or the heap runs low.  At that point everything read so
+ far is spilled into a {@link CachedSearchResult} and the rest of the query
+ is written to disk as before.
+ */
+public class StreamingSearchResult implements SearchResult
+{
+	public static final Logger logger = LoggerFactory.getLogger(StreamingSearchResult.class);
+
+	private final String m_metricName;
+	private final String m_spillFileName;
+	private final KairosDataPointFactory m_dataPointFactory;
+	private final long m_maxBufferedDataPoints;
+	private final MemoryMonitor m_memoryMonitor;
+
+	private final List<StreamingDataPointRow> m_rows;
+	private StreamingDataPointRow m_currentRow;
+	private long m_bufferedDataPoints;
+
+	private CachedSearchResult m_spillResult;
+
+	/**
+	 @param metricName name of the metric being queried
+	 @param spillFileName base file name to use if the result has to be spilled to disk
+	 @param dataPointFactory factory used to read spilled data points back
+	 @param maxBufferedDataPoints number of data points to hold in memory before spilling
+	 */
+	public StreamingSearchResult(String metricName, String spillFileName,
+			KairosDataPointFactory dataPointFactory, long maxBufferedDataPoints)
+	{
+		m_metricName = metricName;
+		m_spillFileName = spillFileName;
+		m_dataPointFactory = dataPointFactory;
+		m_maxBufferedDataPoints = maxBufferedDataPoints;
+		m_memoryMonitor = new MemoryMonitor(1000);
+		m_rows = new ArrayList<>();
+	}
+
+	/**
+	 Returns true if the buffered data points were written out to a cache file
+	 */
+	public boolean isSpilled()
+	{
+		return (m_spillResult != null);
+	}
+
+	@Override
+	public void startDataPointSet(String dataType, Map<String, String> tags) throws IOException
+	{
+		if (m_spillResult != null)
+		{
+			m_spillResult.startDataPointSet(dataType, tags);
+			return;
+		}
+
+		m_currentRow = new StreamingDataPointRow(dataType, tags);
+		m_rows.add(m_currentRow);
+	}
+
+	@Override
+	public void addDataPoint(DataPoint datapoint) throws IOException
+	{
+		if (m_spillResult != null)
+		{
+			m_spillResult.addDataPoint(datapoint);
+			return;
+		}
+
+		m_currentRow.addDataPoint(datapoint);
+		m_bufferedDataPoints ++;
+
+		if (m_bufferedDataPoints > m_maxBufferedDataPoints || m_memoryMonitor.isMemoryLow())
+			spill();
+	}
+
+	@Override
+	public void endDataPoints() throws IOException
+	{
+		if (m_spillResult != null)
+			m_spillResult.endDataPoints();
+	}
+
+	@Override
+	public List<DataPointRow> getRows()
+	{
+		if (m_spillResult != null)
+			return (m_spillResult.getRows());
+
+		return (new ArrayList<DataPointRow>(m_rows));
+	}
+
+	/**
+	 Moves every row buffered so far into a cache file.  All further data points
+	 go directly to the file.
+	 */
+	private void spill() throws IOException
+	{
+		logger.debug("Spilling query results for {} after {} data points", m_metricName, m_bufferedDataPoints);
+
+		m_spillResult = CachedSearchResult.createCachedSearchResult(m_metricName,
+				m_spillFileName, m_dataPointFactory, false);
+
+		for (StreamingDataPointRow row : m_rows)
+		{
+			m_spillResult.startDataPointSet(row.getDatastoreType(), row.m_tags);
+			for (DataPoint dataPoint : row.m_dataPoints)
+				m_spillResult.addDataPoint(dataPoint);
+		}
+
+		m_rows.clear();
+		m_currentRow = null;
+		m_bufferedDataPoints = 0;
+	}
+
+	//===========================================================================
+	private class StreamingDataPointRow implements DataPointRow
+	{
+		private final String m_dataType;
+		private final Map<String, String> m_tags;
+		private List<DataPoint> m_dataPoints;
+		private Iterator<DataPoint> m_iterator;
+
+		private StreamingDataPointRow(String dataType, Map<String, String> tags)
+		{
+			m_dataType = dataType;
+			m_tags = tags;
+			m_dataPoints = new ArrayList<>();
+		}
+
+		private void addDataPoint(DataPoint dataPoint)
+		{
+			m_dataPoints.add(dataPoint);
+		}
+
+		@Override
+		public String getName()
+		{
+			return (m_metricName);
+		}
+
+		@Override
+		public String getDatastoreType()
+		{
+			return (m_dataType);
+		}
+
+		@Override
+		public Set<String> getTagNames()
+		{
+			return (m_tags.keySet());
+		}
+
+		@Override
+		public String getTagValue(String tag)
+		{
+			return (m_tags.get(tag));
+		}
+
+		@Override
+		public int getDataPointCount()
+		{
+			return (m_dataPoints.size());
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			if (m_iterator == null)
+				m_iterator = m_dataPoints.iterator();
+
+			return (m_iterator.hasNext());
+		}
+
+		@Override
+		public DataPoint next()
+		{
+			if (m_iterator == null)
+				m_iterator = m_dataPoints.iterator();
+
+			return (m_iterator.next());
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close()
+		{
+			//Let go of the data points as soon as the row has been consumed
+			m_dataPoints = new ArrayList<>();
+			m_iterator = null;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "StreamingDataPointRow{" +
+					"m_metricName='" + m_metricName + '\'' +
+					", m_tags=" + m_tags +
+					'}';
+		}
+	}
+}
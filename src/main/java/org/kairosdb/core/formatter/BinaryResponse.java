@@ -0,0 +1,311 @@
+/*
+ * Copyright 2016 KairosDB Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.kairosdb.core.formatter;
+
+import org.json.JSONException;
+import org.json.JSONWriter;
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.datastore.DataPointGroup;
+import org.kairosdb.core.groupby.GroupByResult;
+import org.kairosdb.util.BitWriter;
+import org.kairosdb.util.DoubleXorEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.kairosdb.util.Util.packLong;
+import static org.kairosdb.util.Util.packUnsignedLong;
+
+/**
+ Writes query results in a columnar binary format for clients reading large
+ numbers of data points.
+
+ The stream starts with the 4 bytes 'K' 'D' 'R' 1 followed by records.  Each
+ record is a kind byte, the length of the body as a varint and the body.
+ Records of an unknown kind should be skipped.  Strings are a varint length
+ followed by UTF-8 bytes.
+
+ QUERY (1): starts the results of the next metric in the request.  The zigzag
+ varint sample size.
+
+ GROUP (2): starts a group of the current query.  Varint flags (1 = tags were
+ excluded), the name, a varint count of group by results each as a json
+ string, a varint tag count and for each tag the name, a varint value count
+ and the values.
+
+ DATA (3): data points of the current group.  A varint data point count, a
+ value type byte, the timestamps as zigzag varint differences from the
+ previous timestamp of the group (the first from 0) and then the values.
+ Value types are LONG (0) zigzag varint differences from the previous value
+ of the record (the first from 0), DOUBLE (1) 8 byte IEEE 754 doubles,
+ XOR_DOUBLE (2) doubles compressed by DoubleXorEncoder and padded to a whole
+ byte and JSON (3) a json string of each value for other data point types.
+ Doubles that do not compress are written as DOUBLE.
+ */
+public class BinaryResponse implements QueryResponse
+{
+	public static final String CONTENT_TYPE = "application/x-kairosdb-binary-response";
+
+	public static final byte[] MAGIC = {'K', 'D', 'R', 1};
+	public static final int QUERY_RECORD = 1;
+	public static final int GROUP_RECORD = 2;
+	public static final int DATA_RECORD = 3;
+
+	public static final int LONG_VALUES = 0;
+	public static final int DOUBLE_VALUES = 1;
+	public static final int XOR_DOUBLE_VALUES = 2;
+	public static final int JSON_VALUES = 3;
+
+	public static final int FLAG_TAGS_EXCLUDED = 0x1;
+
+	//Most data points written in one DATA record
+	public static final int MAX_BLOCK_SIZE = 4096;
+
+	private final DataOutputStream m_output;
+	private final boolean m_xorDoubles;
+	private final ByteArrayOutputStream m_record = new ByteArrayOutputStream();
+	private final DataOutputStream m_recordOutput = new DataOutputStream(m_record);
+	private final BitWriter m_bitWriter = new BitWriter(1024);
+
+	//Data points of the DATA record being built
+	private final long[] m_timestamps = new long[MAX_BLOCK_SIZE];
+	private final long[] m_longValues = new long[MAX_BLOCK_SIZE];
+	private final double[] m_doubleValues = new double[MAX_BLOCK_SIZE];
+	private final String[] m_jsonValues = new String[MAX_BLOCK_SIZE];
+	private int m_blockType;
+	private int m_blockSize;
+	private long m_lastTimestamp;
+
+	/**
+	 @param output the output is not buffered by the response
+	 @param xorDoubles if true doubles are compressed with DoubleXorEncoder
+	 */
+	public BinaryResponse(OutputStream output, boolean xorDoubles)
+	{
+		m_output = new DataOutputStream(output);
+		m_xorDoubles = xorDoubles;
+	}
+
+	@Override
+	public void begin() throws FormatterException
+	{
+		try
+		{
+			m_output.write(MAGIC);
+		}
+		catch (IOException e)
+		{
+			throw new FormatterException(e);
+		}
+	}
+
+	@Override
+	public void formatQuery(List<DataPointGroup> queryResults, boolean excludeTags, int sampleSize) throws FormatterException
+	{
+		try
+		{
+			m_record.reset();
+			packLong(sampleSize, m_recordOutput);
+			writeRecord(QUERY_RECORD);
+
+			for (DataPointGroup group : queryResults)
+			{
+				m_record.reset();
+				packUnsignedLong(excludeTags ? FLAG_TAGS_EXCLUDED : 0, m_recordOutput);
+				writeString(group.getName());
+
+				List<GroupByResult> groupByResults = group.getGroupByResult();
+				packUnsignedLong(groupByResults.size(), m_recordOutput);
+				for (GroupByResult groupByResult : groupByResults)
+					writeString(groupByResult.toJson());
+
+				if (excludeTags)
+				{
+					packUnsignedLong(0, m_recordOutput);
+				}
+				else
+				{
+					Set<String> tagNames = group.getTagNames();
+					packUnsignedLong(tagNames.size(), m_recordOutput);
+					for (String tagName : tagNames)
+					{
+						writeString(tagName);
+						Set<String> tagValues = group.getTagValues(tagName);
+						packUnsignedLong(tagValues.size(), m_recordOutput);
+						for (String tagValue : tagValues)
+							writeString(tagValue);
+					}
+				}
+				writeRecord(GROUP_RECORD);
+
+				m_lastTimestamp = 0L;
+				while (group.hasNext())
+					addDataPoint(group.next());
+
+				writeBlock();
+			}
+		}
+		catch (IOException | JSONException e)
+		{
+			throw new FormatterException(e);
+		}
+	}
+
+	private void addDataPoint(DataPoint dataPoint) throws IOException, JSONException
+	{
+		int type;
+		if (dataPoint.isLong())
+			type = LONG_VALUES;
+		else if (dataPoint.isDouble())
+			type = m_xorDoubles ? XOR_DOUBLE_VALUES : DOUBLE_VALUES;
+		else
+			type = JSON_VALUES;
+
+		if (m_blockSize != 0 && (type != m_blockType || m_blockSize == MAX_BLOCK_SIZE))
+			writeBlock();
+
+		m_blockType = type;
+		m_timestamps[m_blockSize] = dataPoint.getTimestamp();
+
+		if (type == LONG_VALUES)
+			m_longValues[m_blockSize] = dataPoint.getLongValue();
+		else if (type == JSON_VALUES)
+			m_jsonValues[m_blockSize] = jsonValue(dataPoint);
+		else
+			m_doubleValues[m_blockSize] = dataPoint.getDoubleValue();
+
+		m_blockSize++;
+	}
+
+	private static String jsonValue(DataPoint dataPoint) throws JSONException
+	{
+		//JSONWriter only takes values inside of an array or object
+		StringWriter writer = new StringWriter();
+		JSONWriter jsonWriter = new JSONWriter(writer);
+		jsonWriter.array();
+		dataPoint.writeValueToJson(jsonWriter);
+		jsonWriter.endArray();
+
+		String json = writer.toString();
+		return (json.substring(1, json.length() - 1));
+	}
+
+	private void writeBlock() throws IOException
+	{
+		if (m_blockSize == 0)
+			return;
+
+		if (m_blockType == XOR_DOUBLE_VALUES)
+		{
+			m_bitWriter.reset();
+			DoubleXorEncoder encoder = new DoubleXorEncoder(m_bitWriter);
+			for (int i = 0; i < m_blockSize; i++)
+				encoder.write(m_doubleValues[i]);
+
+			//Noisy values can take more than 64 bits each
+			if (m_bitWriter.getByteCount() >= m_blockSize * 8)
+				m_blockType = DOUBLE_VALUES;
+		}
+
+		m_record.reset();
+		packUnsignedLong(m_blockSize, m_recordOutput);
+		m_recordOutput.writeByte(m_blockType);
+
+		for (int i = 0; i < m_blockSize; i++)
+		{
+			packLong(m_timestamps[i] - m_lastTimestamp, m_recordOutput);
+			m_lastTimestamp = m_timestamps[i];
+		}
+
+		switch (m_blockType)
+		{
+			case LONG_VALUES:
+				long lastValue = 0L;
+				for (int i = 0; i < m_blockSize; i++)
+				{
+					packLong(m_longValues[i] - lastValue, m_recordOutput);
+					lastValue = m_longValues[i];
+				}
+				break;
+			case DOUBLE_VALUES:
+				for (int i = 0; i < m_blockSize; i++)
+					m_recordOutput.writeDouble(m_doubleValues[i]);
+				break;
+			case XOR_DOUBLE_VALUES:
+				m_recordOutput.write(m_bitWriter.getBuffer(), 0, m_bitWriter.getByteCount());
+				break;
+			default:
+				for (int i = 0; i < m_blockSize; i++)
+				{
+					writeString(m_jsonValues[i]);
+					m_jsonValues[i] = null;
+				}
+		}
+
+		writeRecord(DATA_RECORD);
+		m_blockSize = 0;
+	}
+
+	private void writeString(String str) throws IOException
+	{
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		packUnsignedLong(bytes.length, m_recordOutput);
+		m_recordOutput.write(bytes);
+	}
+
+	private void writeRecord(int kind) throws IOException
+	{
+		m_recordOutput.flush();
+		m_output.write(kind);
+		packUnsignedLong(m_record.size(), m_output);
+		m_record.writeTo(m_output);
+	}
+
+	@Override
+	public void appendQuery(InputStream formattedQuery) throws FormatterException
+	{
+		try
+		{
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = formattedQuery.read(buffer)) != -1)
+				m_output.write(buffer, 0, read);
+		}
+		catch (IOException e)
+		{
+			throw new FormatterException(e);
+		}
+	}
+
+	@Override
+	public void end() throws FormatterException
+	{
+		//The end of the stream ends the response
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		m_output.flush();
+	}
+}
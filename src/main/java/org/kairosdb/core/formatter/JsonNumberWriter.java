@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 KairosDB Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.kairosdb.core.formatter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ Writes numbers the same way JSONWriter does but without boxing them or
+ creating a string for each long.
+ */
+class JsonNumberWriter
+{
+	private static final long NEGATIVE_ZERO = Double.doubleToRawLongBits(-0.0);
+	//Double.toString switches to scientific notation at this value
+	private static final double MAX_PLAIN_DOUBLE = 1.0E7;
+
+	private final Writer m_writer;
+	private final char[] m_buffer = new char[20];
+
+	JsonNumberWriter(Writer writer)
+	{
+		m_writer = writer;
+	}
+
+	public void writeLong(long value) throws IOException
+	{
+		if (value == Long.MIN_VALUE)
+		{
+			m_writer.write(Long.toString(value));
+			return;
+		}
+
+		boolean negative = value < 0;
+		if (negative)
+			value = -value;
+
+		int pos = m_buffer.length;
+		do
+		{
+			m_buffer[--pos] = (char) ('0' + (value % 10));
+			value /= 10;
+		} while (value != 0);
+
+		if (negative)
+			m_buffer[--pos] = '-';
+
+		m_writer.write(m_buffer, pos, m_buffer.length - pos);
+	}
+
+	/**
+	 The value must be finite, JSONWriter rejects NaN and infinity.
+	 */
+	public void writeDouble(double value) throws IOException
+	{
+		//Whole numbers come out of JSONObject.numberToString without the ".0"
+		if (value == (long) value && Math.abs(value) < MAX_PLAIN_DOUBLE &&
+				Double.doubleToRawLongBits(value) != NEGATIVE_ZERO)
+		{
+			writeLong((long) value);
+			return;
+		}
+
+		String str = Double.toString(value);
+		int end = str.length();
+		if (str.indexOf('.') > 0 && str.indexOf('E') < 0)
+		{
+			while (str.charAt(end - 1) == '0')
+				end--;
+			if (str.charAt(end - 1) == '.')
+				end--;
+		}
+
+		m_writer.write(str, 0, end);
+	}
+}
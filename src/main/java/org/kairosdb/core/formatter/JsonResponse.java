@@ -19,24 +19,37 @@ package org.kairosdb.core.formatter;
 import org.json.JSONException;
 import org.json.JSONWriter;
 import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.datapoints.DoubleDataPoint;
+import org.kairosdb.core.datapoints.LegacyDoubleDataPoint;
+import org.kairosdb.core.datapoints.LegacyLongDataPoint;
+import org.kairosdb.core.datapoints.LongDataPoint;
 import org.kairosdb.core.datastore.DataPointGroup;
 import org.kairosdb.core.groupby.GroupByResult;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.io.Writer;
 import java.util.List;
 
-public class JsonResponse
+public class JsonResponse implements QueryResponse
 {
 	private Writer m_writer;
 	private JSONWriter m_jsonWriter;
+	private JsonNumberWriter m_numberWriter;
+	private int m_formattedQueries;
+	private int m_appendedQueries;
 
 	public JsonResponse(Writer writer)
 	{
 		m_writer = writer;
 		m_jsonWriter = new JSONWriter(writer);
+		m_numberWriter = new JsonNumberWriter(writer);
 	}
 
+	@Override
 	public void begin() throws FormatterException
 	{
 		try
@@ -58,10 +71,16 @@ public class JsonResponse
 	 * @param sampleSize   Passing a sample size of -1 will cause the attribute to not show up
 	 * @throws FormatterException
 	 */
+	@Override
 	public void formatQuery(List<DataPointGroup> queryResults, boolean excludeTags, int sampleSize) throws FormatterException
 	{
 		try
 		{
+			//The json writer does not know about appended queries
+			if (m_formattedQueries == 0 && m_appendedQueries != 0)
+				m_writer.write(",");
+			m_formattedQueries++;
+
 			m_jsonWriter.object();
 
 			if (sampleSize != -1)
@@ -105,27 +124,13 @@ public class JsonResponse
 				}
 
 				m_jsonWriter.key("values").array();
+				boolean firstValue = true;
 				while (group.hasNext())
 				{
-					DataPoint dataPoint = group.next();
-
-					m_jsonWriter.array().value(dataPoint.getTimestamp());
-					dataPoint.writeValueToJson(m_jsonWriter);
-
-					/*if (dataPoint.isInteger())
-					{
-						m_jsonWriter.value(dataPoint.getLongValue());
-					}
-					else
-					{
-						final double value = dataPoint.getDoubleValue();
-						if (value != value || Double.isInfinite(value))
-						{
-							throw new IllegalStateException("NaN or Infinity:" + value + " data point=" + dataPoint);
-						}
-						m_jsonWriter.value(value);
-					}*/
-					m_jsonWriter.endArray();
+					if (!firstValue)
+						m_writer.write(",");
+					writeDataPoint(group.next());
+					firstValue = false;
 				}
 				m_jsonWriter.endArray();
 				m_jsonWriter.endObject();
@@ -145,6 +150,74 @@ public class JsonResponse
 		}
 	}
 
+	/**
+	 Writes the data point as [timestamp,value].  The JSONWriter is bypassed
+	 for the core number types as this is done for every data point returned.
+	 */
+	private void writeDataPoint(DataPoint dataPoint) throws IOException, JSONException
+	{
+		Class<?> type = dataPoint.getClass();
+		if (type == LongDataPoint.class || type == LegacyLongDataPoint.class)
+		{
+			m_writer.write('[');
+			m_numberWriter.writeLong(dataPoint.getTimestamp());
+			m_writer.write(',');
+			m_numberWriter.writeLong(dataPoint.getLongValue());
+			m_writer.write(']');
+		}
+		else if ((type == DoubleDataPoint.class || type == LegacyDoubleDataPoint.class) &&
+				!Double.isNaN(dataPoint.getDoubleValue()) && !Double.isInfinite(dataPoint.getDoubleValue()))
+		{
+			m_writer.write('[');
+			m_numberWriter.writeLong(dataPoint.getTimestamp());
+			m_writer.write(',');
+			m_numberWriter.writeDouble(dataPoint.getDoubleValue());
+			m_writer.write(']');
+		}
+		else
+		{
+			//Other types, and NaN or infinity, are left to the data point
+			JSONWriter writer = new JSONWriter(m_writer);
+			writer.array().value(dataPoint.getTimestamp());
+			dataPoint.writeValueToJson(writer);
+			writer.endArray();
+		}
+	}
+
+	/**
+	 Appends a query that was already formatted by calling formatQuery on
+	 a JsonResponse without begin and end.  This lets queries be formatted
+	 separately and then written out in order.
+
+	 @param formattedQuery reader of the formatted query, it is read to the end
+	 @throws FormatterException
+	 */
+	public void appendQuery(Reader formattedQuery) throws FormatterException
+	{
+		try
+		{
+			if (m_formattedQueries != 0 || m_appendedQueries != 0)
+				m_writer.write(",");
+			m_appendedQueries++;
+
+			char[] buffer = new char[8192];
+			int read;
+			while ((read = formattedQuery.read(buffer)) != -1)
+				m_writer.write(buffer, 0, read);
+		}
+		catch (IOException e)
+		{
+			throw new FormatterException(e);
+		}
+	}
+
+	@Override
+	public void appendQuery(InputStream formattedQuery) throws FormatterException
+	{
+		appendQuery(new InputStreamReader(formattedQuery, StandardCharsets.UTF_8));
+	}
+
+	@Override
 	public void end() throws FormatterException
 	{
 		try
@@ -157,4 +230,10 @@ public class JsonResponse
 			throw new FormatterException(e);
 		}
 	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		m_writer.flush();
+	}
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 KairosDB Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.kairosdb.core.formatter;
+
+import org.kairosdb.core.datastore.DataPointGroup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ Writes the results of a query request.  begin is called first, then
+ formatQuery or appendQuery for each metric in the request and then end.
+ */
+public interface QueryResponse
+{
+	void begin() throws FormatterException;
+
+	/**
+	 Formats the results of one metric.  The groups are read but not closed.
+
+	 @param sampleSize Passing a sample size of -1 leaves it out
+	 */
+	void formatQuery(List<DataPointGroup> queryResults, boolean excludeTags, int sampleSize) throws FormatterException;
+
+	/**
+	 Appends a metric that was formatted by calling formatQuery on a response
+	 of the same type without calling begin or end.
+	 */
+	void appendQuery(InputStream formattedQuery) throws FormatterException;
+
+	void end() throws FormatterException;
+
+	/**
+	 Flushes what has been written to the underlying stream.
+	 */
+	void flush() throws IOException;
+}
@@ -27,11 +27,14 @@ import java.io.*;
 import java.util.*;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static org.kairosdb.util.Util.packLong;
 import static org.kairosdb.util.Util.unpackLong;
 
 /**
- *  A grouping of data points. The group is written to disk.
+ *  A grouping of data points.  The data points are kept in memory in columns
+ *  (timestamps, storage type ids and serialized values) until the group is
+ *  spilled, from then on the group is written to disk.
  */
 public class Group
 {
@@ -44,21 +47,31 @@ public class Group
 	public static final byte LONG_FLAG = 0x1;
 	public static final byte DOUBLE_FLAG = 0x2;
 
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final String m_filePrefix;
 	private File m_groupCacheFile;
 	private DataOutputStream m_dataOutputStream;
 	private List<GroupByResult> groupByResults;
 	private String name;
 	private HashMultimap<String, String> tags = HashMultimap.create();
-	private int m_dataPointCount; //Number of datapoints written to file
+	private int m_dataPointCount; //Number of datapoints in the group
+
+	//In memory columns, created with the first data point and dropped when
+	//the group is spilled to disk
+	private long[] m_timestamps;
+	private byte[] m_typeIds;
+	private ValueBuffer m_values;
+	private DataOutputStream m_valueOutput;
 
 	private final KairosDataPointFactory dataPointFactory;
 	private final Map<String, Integer> storageTypeIdMap;
 	private final List<DataPointFactory> dataPointFactories;
 
-	private Group(File file, DataPointGroup dataPointGroup, List<GroupByResult> groupByResults,
-			KairosDataPointFactory dataPointFactory) throws FileNotFoundException
+	private Group(String filePrefix, DataPointGroup dataPointGroup, List<GroupByResult> groupByResults,
+			KairosDataPointFactory dataPointFactory)
 	{
-		checkNotNull(file);
+		checkNotNull(filePrefix);
 		checkNotNull(groupByResults);
 		checkNotNull(dataPointGroup);
 
@@ -66,10 +79,7 @@ public class Group
 		storageTypeIdMap = new HashMap<String, Integer>();
 		dataPointFactories = new ArrayList<DataPointFactory>();
 
-		m_groupCacheFile = file;
-
-		m_dataOutputStream = new DataOutputStream(new BufferedOutputStream(
-				new FileOutputStream(m_groupCacheFile)));
+		m_filePrefix = filePrefix;
 
 		this.groupByResults = groupByResults;
 		this.name = dataPointGroup.getName();
@@ -84,18 +94,18 @@ public class Group
 		checkNotNull(groupIds);
 		checkNotNull(groupByResults);
 
-		return new Group(getFile(groupIds), dataPointGroup, groupByResults, dataPointFactory);
+		return new Group(getFilePrefix(groupIds), dataPointGroup, groupByResults, dataPointFactory);
 	}
 
-	private static File getFile(List<Integer> groupIds) throws IOException
+	private static String getFilePrefix(List<Integer> groupIds)
 	{
-		StringBuilder builder = new StringBuilder();
+		StringBuilder builder = new StringBuilder("grouper-");
 		for (Integer groupId : groupIds)
 		{
 			builder.append(groupId);
 		}
 
-		return File.createTempFile("grouper-" + builder.toString(), ".cache");
+		return builder.toString();
 	}
 
 	private int getStorageTypeId(String storageType)
@@ -104,6 +114,7 @@ public class Group
 		if (id == null)
 		{
 			id = dataPointFactories.size();
+			checkState(id < 256, "Too many data point types in one group");
 			storageTypeIdMap.put(storageType, dataPointFactories.size());
 			dataPointFactories.add(dataPointFactory.getFactoryForDataStoreType(storageType));
 		}
@@ -113,13 +124,89 @@ public class Group
 
 	public void addDataPoint(DataPoint dataPoint) throws IOException
 	{
-		m_dataPointCount ++;
-		packLong(dataPoint.getTimestamp(), m_dataOutputStream);
 		int id = getStorageTypeId(dataPoint.getDataStoreDataType());
-		packLong(id, m_dataOutputStream);
+
+		if (m_dataOutputStream != null)
+		{
+			writeDataPoint(dataPoint.getTimestamp(), id, dataPoint);
+		}
+		else
+		{
+			if (m_timestamps == null)
+			{
+				m_timestamps = new long[INITIAL_CAPACITY];
+				m_typeIds = new byte[INITIAL_CAPACITY];
+				m_values = new ValueBuffer();
+				m_valueOutput = new DataOutputStream(m_values);
+			}
+			else if (m_dataPointCount == m_timestamps.length)
+			{
+				m_timestamps = Arrays.copyOf(m_timestamps, m_dataPointCount * 2);
+				m_typeIds = Arrays.copyOf(m_typeIds, m_dataPointCount * 2);
+			}
+
+			m_timestamps[m_dataPointCount] = dataPoint.getTimestamp();
+			m_typeIds[m_dataPointCount] = (byte) id;
+			dataPoint.writeValueToBuffer(m_valueOutput);
+		}
+
+		m_dataPointCount ++;
+	}
+
+	private void writeDataPoint(long timestamp, int typeId, DataPoint dataPoint) throws IOException
+	{
+		packLong(timestamp, m_dataOutputStream);
+		packLong(typeId, m_dataOutputStream);
 		dataPoint.writeValueToBuffer(m_dataOutputStream);
 	}
 
+	/**
+	 Number of bytes used by the in memory columns, 0 before the first data
+	 point is added and once the group is spilled.
+	 */
+	public long getMemorySize()
+	{
+		if (m_timestamps == null)
+			return (0L);
+
+		return (m_timestamps.length * 8L + m_typeIds.length + m_values.getCapacity());
+	}
+
+	public boolean isSpilled()
+	{
+		return (m_dataOutputStream != null);
+	}
+
+	/**
+	 Writes the data points held in memory to a temp file, data points added
+	 after this are written directly to the file.
+	 */
+	public void spill() throws IOException
+	{
+		if (m_dataOutputStream != null)
+			return;
+
+		m_groupCacheFile = File.createTempFile(m_filePrefix, ".cache");
+		m_dataOutputStream = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(m_groupCacheFile)));
+
+		if (m_timestamps != null)
+		{
+			DataInputStream values = m_values.getInputStream();
+			for (int i = 0; i < m_dataPointCount; i++)
+			{
+				int typeId = m_typeIds[i] & 0xFF;
+				DataPoint dataPoint = dataPointFactories.get(typeId).getDataPoint(m_timestamps[i], values);
+				writeDataPoint(m_timestamps[i], typeId, dataPoint);
+			}
+		}
+
+		m_timestamps = null;
+		m_typeIds = null;
+		m_values = null;
+		m_valueOutput = null;
+	}
+
 	public void addGroupByResults(List<GroupByResult> results)
 	{
 		groupByResults.addAll(checkNotNull(results));
@@ -127,6 +214,9 @@ public class Group
 
 	public DataPointGroup getDataPointGroup() throws IOException
 	{
+		if (m_dataOutputStream == null)
+			return (new MemoryDataPointGroup());
+
 		m_dataOutputStream.flush();
 		m_dataOutputStream.close();
 
@@ -145,17 +235,29 @@ public class Group
 		}
 	}
 
-	private class CachedDataPointGroup implements DataPointGroup
+	/**
+	 Gives access to the bytes written so they can be read back without a copy.
+	 */
+	private static class ValueBuffer extends ByteArrayOutputStream
 	{
-		private int m_readCount = 0; //number of datapoints read from file
-		private DataInputStream m_dataInputStream;
+		private ValueBuffer()
+		{
+			super(INITIAL_CAPACITY * 8);
+		}
 
-		private CachedDataPointGroup() throws IOException
+		private int getCapacity()
 		{
-			m_dataInputStream = new DataInputStream(new BufferedInputStream(
-					new FileInputStream(m_groupCacheFile)));
+			return (buf.length);
 		}
 
+		private DataInputStream getInputStream()
+		{
+			return (new DataInputStream(new ByteArrayInputStream(buf, 0, count)));
+		}
+	}
+
+	private abstract class GroupDataPointGroup implements DataPointGroup
+	{
 		@Override
 		public String getName()
 		{
@@ -180,6 +282,63 @@ public class Group
 			return groupByResults;
 		}
 
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private class MemoryDataPointGroup extends GroupDataPointGroup
+	{
+		private int m_readCount = 0;
+		private final DataInputStream m_valueInput = m_values == null ? null : m_values.getInputStream();
+
+		@Override
+		public void close()
+		{
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return (m_readCount < m_dataPointCount);
+		}
+
+		@Override
+		public DataPoint next()
+		{
+			if (m_readCount == m_dataPointCount)
+				return null;
+
+			try
+			{
+				DataPoint dataPoint = dataPointFactories.get(m_typeIds[m_readCount] & 0xFF)
+						.getDataPoint(m_timestamps[m_readCount], m_valueInput);
+				m_readCount ++;
+
+				return (dataPoint);
+			}
+			catch (IOException e)
+			{
+				//Reading from a byte array only fails if the data is corrupt
+				logger.error("Error reading group data point", e);
+				return null;
+			}
+		}
+	}
+
+	private class CachedDataPointGroup extends GroupDataPointGroup
+	{
+		private int m_readCount = 0; //number of datapoints read from file
+		private DataInputStream m_dataInputStream;
+
+		private CachedDataPointGroup() throws IOException
+		{
+			m_dataInputStream = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(m_groupCacheFile)));
+		}
+
 		@Override
 		public void close()
 		{
@@ -230,11 +389,5 @@ public class Group
 
 			return (dataPoint);
 		}
-
-		@Override
-		public void remove()
-		{
-			throw new UnsupportedOperationException();
-		}
 	}
-}
\ No newline at end of file
+}
@@ -19,23 +19,42 @@ import org.kairosdb.core.DataPoint;
 import org.kairosdb.core.KairosDataPointFactory;
 import org.kairosdb.core.datastore.DataPointGroup;
 import org.kairosdb.plugin.GroupBy;
+import org.kairosdb.util.MemoryMonitor;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
- * Groups data points based on a list of GroupBys.
+ * Groups data points based on a list of GroupBys.  Groups are held in memory
+ * until they use more than the memory budget or the heap is running low, then
+ * the largest groups are spilled to disk.
  */
 public class Grouper
 {
+	public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
 	private final KairosDataPointFactory m_dataPointFactory;
+	private final long m_memoryBudget;
 
 	public Grouper(KairosDataPointFactory dataPointFactory)
+	{
+		this(dataPointFactory, DEFAULT_MEMORY_BUDGET);
+	}
+
+	/**
+	 * @param memoryBudget number of bytes the groups of one call to group can
+	 *                     hold in memory, 0 writes every group to disk
+	 */
+	public Grouper(KairosDataPointFactory dataPointFactory, long memoryBudget)
 	{
 		m_dataPointFactory = dataPointFactory;
+		m_memoryBudget = memoryBudget;
 	}
 
 	/**
@@ -50,7 +69,10 @@ public class Grouper
 		if (groupBys.size() < 1)
 			return dataPointGroupList;
 
-		List<DataPointGroup> dataPointGroups = new ArrayList<DataPointGroup>();
+		List<Group> groups = new ArrayList<Group>();
+		List<Group> memoryGroups = new ArrayList<Group>();
+		MemoryMonitor memoryMonitor = new MemoryMonitor(1000);
+		long memoryUsed = 0L;
 		for (DataPointGroup dataPointGroup : dataPointGroupList)
 		{
 			Map<List<Integer>, Group> groupIdsToGroup = new LinkedHashMap<List<Integer>, Group>();
@@ -71,7 +93,24 @@ public class Grouper
 
 				// add to group
 				Group group = getGroup(groupIdsToGroup, dataPointGroup, groupIds, results);
-				group.addDataPoint(dataPoint);
+				if (m_memoryBudget == 0L)
+					group.spill();
+
+				if (group.isSpilled())
+					group.addDataPoint(dataPoint);
+				else
+				{
+					long groupSize = group.getMemorySize();
+					if (groupSize == 0L)
+						memoryGroups.add(group);
+					group.addDataPoint(dataPoint);
+					memoryUsed += group.getMemorySize() - groupSize;
+
+					if (memoryUsed > m_memoryBudget)
+						memoryUsed = spillLargest(memoryGroups, memoryUsed, m_memoryBudget / 2);
+					else if (memoryMonitor.isMemoryLow())
+						memoryUsed = spillLargest(memoryGroups, memoryUsed, 0L);
+				}
 			}
 
 			for (Group group : groupIdsToGroup.values())
@@ -80,16 +119,49 @@ public class Grouper
 				{
 					group.addGroupByResults(dataPointGroup.getGroupByResult());
 				}
-				dataPointGroups.add(group.getDataPointGroup());
+				groups.add(group);
 			}
 
 			dataPointGroup.close();
 		}
 
+		//Groups can be spilled until all data points are added
+		List<DataPointGroup> dataPointGroups = new ArrayList<DataPointGroup>();
+		for (Group group : groups)
+		{
+			dataPointGroups.add(group.getDataPointGroup());
+		}
 
 		return dataPointGroups;
 	}
 
+	/**
+	 * Spills groups, largest first, until no more than target bytes are used.
+	 * @return memory still used
+	 */
+	private long spillLargest(List<Group> memoryGroups, long memoryUsed, long target) throws IOException
+	{
+		Collections.sort(memoryGroups, new Comparator<Group>()
+		{
+			@Override
+			public int compare(Group group1, Group group2)
+			{
+				return Long.compare(group2.getMemorySize(), group1.getMemorySize());
+			}
+		});
+
+		Iterator<Group> iterator = memoryGroups.iterator();
+		while (iterator.hasNext() && memoryUsed > target)
+		{
+			Group group = iterator.next();
+			memoryUsed -= group.getMemorySize();
+			group.spill();
+			iterator.remove();
+		}
+
+		return memoryUsed;
+	}
+
 	private Group getGroup(Map<List<Integer>, Group> groupIdsToGroup, DataPointGroup dataPointGroup, List<Integer> groupIds, List<GroupByResult> results) throws IOException
 	{
 		Group group = groupIdsToGroup.get(groupIds);
@@ -16,6 +16,8 @@
 
 package org.kairosdb.core.http.rest;
 
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonIOException;
@@ -34,10 +36,14 @@ import org.kairosdb.core.datastore.KairosDatastore;
 import org.kairosdb.core.datastore.QueryMetric;
 import org.kairosdb.core.datastore.QueryPlugin;
 import org.kairosdb.core.datastore.QueryPostProcessingPlugin;
+import org.kairosdb.core.exception.DatastoreException;
+import org.kairosdb.core.formatter.BinaryResponse;
 import org.kairosdb.core.formatter.DataFormatter;
 import org.kairosdb.core.formatter.FormatterException;
 import org.kairosdb.core.formatter.JsonFormatter;
 import org.kairosdb.core.formatter.JsonResponse;
+import org.kairosdb.core.formatter.QueryResponse;
+import org.kairosdb.core.http.rest.binary.BinaryDataPointsParser;
 import org.kairosdb.core.http.rest.json.DataPointsParser;
 import org.kairosdb.core.http.rest.json.ErrorResponse;
 import org.kairosdb.core.http.rest.json.JsonResponseBuilder;
@@ -70,6 +76,7 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
@@ -81,10 +88,18 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 
@@ -108,6 +123,12 @@ public class MetricsResource implements KairosMetricReporter
     public static final String INGEST_TIME = "kairosdb.http.ingest_time";
 
     public static final String QUERY_URL = "/datapoints/query";
+    public static final String QUERY_METRIC_THREADS = "kairosdb.query.metric_threads";
+    public static final String QUERY_STREAMING_RESPONSE = "kairosdb.query.streaming_response";
+    public static final String QUERY_BINARY_XOR_DOUBLES = "kairosdb.query.binary_response.xor_doubles";
+
+    private static final int STREAMING_BUFFER_SIZE = 64 * 1024;
+    private static final String JSON_CONTENT_TYPE = MediaType.APPLICATION_JSON + "; charset=UTF-8";
 
     private final KairosDatastore datastore;
     private final EventBusWithFilters m_eventBus;
@@ -162,6 +183,15 @@ public class MetricsResource implements KairosMetricReporter
     @Inject
     private SimpleStatsReporter m_simpleStatsReporter = new SimpleStatsReporter();
 
+    //Runs the metrics of a query in parallel, null when they run one after another
+    private ExecutorService m_queryExecutor;
+    //Most metrics of one request queued or running on m_queryExecutor
+    private int m_queryMetricThreads = 1;
+
+    private boolean m_streamingResponse = false;
+
+    private boolean m_binaryXorDoubles = true;
+
     @Inject
     public MetricsResource(KairosDatastore datastore, QueryParser queryParser,
                            KairosDataPointFactory dataPointFactory, EventBusWithFilters eventBus)
@@ -176,6 +206,49 @@ public class MetricsResource implements KairosMetricReporter
         gson = builder.disableHtmlEscaping().create();
     }
 
+    /**
+     Number of threads used to run the metrics of one query at the same time.
+     Each metric still waits for a permit from the QueryQueuingManager so this
+     does not raise the number of queries running against the datastore.  A
+     request never has more than this many metrics on the executor so one
+     query with many metrics can not fill its queue.
+     */
+    @Inject(optional = true)
+    public void setQueryMetricThreads(@Named(QUERY_METRIC_THREADS) int threads)
+    {
+        m_queryMetricThreads = threads;
+        if (threads > 1)
+        {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactoryBuilder().setNameFormat("query-metric-%d").setDaemon(true).build());
+            executor.allowCoreThreadTimeOut(true);
+            m_queryExecutor = executor;
+        }
+        else
+            m_queryExecutor = null;
+    }
+
+    /**
+     When true queries are written directly to the client, a response file is
+     still used when the query has a QueryPostProcessingPlugin.
+     */
+    @Inject(optional = true)
+    public void setStreamingResponse(@Named(QUERY_STREAMING_RESPONSE) boolean streamingResponse)
+    {
+        m_streamingResponse = streamingResponse;
+    }
+
+    /**
+     When true binary responses XOR encode double values against the previous
+     value in the group.
+     */
+    @Inject(optional = true)
+    public void setBinaryXorDoubles(@Named(QUERY_BINARY_XOR_DOUBLES) boolean binaryXorDoubles)
+    {
+        m_binaryXorDoubles = binaryXorDoubles;
+    }
+
     public static ResponseBuilder setHeaders(ResponseBuilder responseBuilder)
     {
         responseBuilder.header("Access-Control-Allow-Origin", "*");
@@ -305,17 +378,7 @@ public class MetricsResource implements KairosMetricReporter
             m_ingestedDataPoints.addAndGet(parser.getDataPointCount());
             m_ingestTime.addAndGet(parser.getIngestTime());
 
-			if (!validationErrors.hasErrors())
-				return setHeaders(Response.status(Response.Status.NO_CONTENT)).build();
-			else
-			{
-				JsonResponseBuilder builder = new JsonResponseBuilder(Response.Status.BAD_REQUEST);
-				for (String errorMessage : validationErrors.getErrors())
-				{
-					builder.addError(errorMessage);
-				}
-				return builder.build();
-			}
+			return getIngestResponse(validationErrors);
 		}
 		catch (JsonIOException |MalformedJsonException | JsonSyntaxException e)
 		{
@@ -334,6 +397,53 @@ public class MetricsResource implements KairosMetricReporter
 		}
 	}
 
+    /**
+     Adds data points sent in the format read by BinaryDataPointsParser.
+     */
+    @POST
+    @Produces(MediaType.APPLICATION_JSON + "; charset=UTF-8")
+    @Consumes(BinaryDataPointsParser.CONTENT_TYPE)
+    @Path("/datapoints")
+    public Response addBinary(InputStream binary)
+    {
+        try
+        {
+            BinaryDataPointsParser parser = new BinaryDataPointsParser(m_eventBus, binary,
+                    m_kairosDataPointFactory);
+            ValidationErrors validationErrors = parser.parse();
+
+            m_ingestedDataPoints.addAndGet(parser.getDataPointCount());
+            m_ingestTime.addAndGet(parser.getIngestTime());
+
+            return getIngestResponse(validationErrors);
+        }
+        catch (IOException e)
+        {
+            //The request body could not be read
+            return setHeaders(Response.status(Response.Status.BAD_REQUEST).entity(new ErrorResponse(e.getMessage()))).build();
+        }
+        catch (Exception e)
+        {
+            logger.error("Failed to add metric.", e);
+            return setHeaders(Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(new ErrorResponse(e.getMessage()))).build();
+        }
+    }
+
+    private Response getIngestResponse(ValidationErrors validationErrors)
+    {
+        if (!validationErrors.hasErrors())
+            return setHeaders(Response.status(Response.Status.NO_CONTENT)).build();
+        else
+        {
+            JsonResponseBuilder builder = new JsonResponseBuilder(Response.Status.BAD_REQUEST);
+            for (String errorMessage : validationErrors.getErrors())
+            {
+                builder.addError(errorMessage);
+            }
+            return builder.build();
+        }
+    }
+
     @OPTIONS
     @Produces(MediaType.APPLICATION_JSON + "; charset=UTF-8")
     @Path("/datapoints/query/tags")
@@ -433,23 +543,37 @@ public class MetricsResource implements KairosMetricReporter
     }
 
     @GET
-    @Produces(MediaType.APPLICATION_JSON + "; charset=UTF-8")
+    @Produces({JSON_CONTENT_TYPE, BinaryResponse.CONTENT_TYPE})
     @Path(QUERY_URL)
     public Response getQuery(@QueryParam("query") String json, @Context HttpServletRequest request) throws Exception
     {
-        return runQuery(json, request.getRemoteAddr());
+        return runQuery(json, request.getRemoteAddr(), acceptsBinary(request));
     }
 
     @POST
-    @Produces(MediaType.APPLICATION_JSON + "; charset=UTF-8")
+    @Produces({JSON_CONTENT_TYPE, BinaryResponse.CONTENT_TYPE})
     @Path(QUERY_URL)
     public Response postQuery(String json, @Context HttpServletRequest request) throws Exception
     {
-        return runQuery(json, request.getRemoteAddr());
+        return runQuery(json, request.getRemoteAddr(), acceptsBinary(request));
     }
 
+    /**
+     The binary response is only sent to clients that ask for it by name,
+     a wildcard Accept header gets json.
+     */
+    private static boolean acceptsBinary(HttpServletRequest request)
+    {
+        String accept = request.getHeader("Accept");
+        return (accept != null && accept.contains(BinaryResponse.CONTENT_TYPE));
+    }
 
     public Response runQuery(String json, String remoteAddr) throws Exception
+    {
+        return runQuery(json, remoteAddr, false);
+    }
+
+    public Response runQuery(String json, String remoteAddr, boolean binary) throws Exception
     {
         logger.debug(json);
 
@@ -461,81 +585,42 @@ public class MetricsResource implements KairosMetricReporter
             if (json == null)
                 throw new BeanValidationException(new QueryParser.SimpleConstraintViolation("query json", "must not be null or empty"), "");
 
-            File respFile = File.createTempFile("kairos", ".json", new File(datastore.getCacheDir()));
-            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(respFile), "UTF-8"));
+			Query mainQuery = queryParser.parseQueryMetric(json);
+			mainQuery = m_queryPreProcessor.preProcess(mainQuery);
 
-            JsonResponse jsonResponse = new JsonResponse(writer);
-
-            jsonResponse.begin();
-
-			Query mainQuery = queryParser.parseQueryMetric(json);mainQuery = m_queryPreProcessor.preProcess(mainQuery);
-
-			List<QueryMetric> queries = mainQuery.getQueryMetrics();
-
-            int queryCount = 0;
-            for (QueryMetric query : queries)
-            {
-                queryCount++;
-                ThreadReporter.addTag("metric_name", query.getName());
-                ThreadReporter.addTag("query_index", String.valueOf(queryCount));
-
-                DatastoreQuery dq = datastore.createQuery(query);
-                long startQuery = System.currentTimeMillis();
-
-                try
-                {
-                    List<DataPointGroup> results = dq.execute();
-                    jsonResponse.formatQuery(results, query.isExcludeTags(), dq.getSampleSize());
-
-                    ThreadReporter.addDataPoint(QUERY_TIME, System.currentTimeMillis() - startQuery);
-                } finally
-                {
-                    dq.close();
-                }
-            }
+			boolean postProcess = hasPostProcessingPlugin(mainQuery);
+			if (binary && postProcess)
+				throw new QueryException("Query post processing plugins require a json response");
 
-            jsonResponse.end();
-            writer.flush();
-            writer.close();
-
-            ThreadReporter.clearTags();
-            ThreadReporter.addTag("host", hostName);
-
-            //write metrics for query logging
-            long queryTime = System.currentTimeMillis() - ThreadReporter.getReportTime();
-            if (m_logQueries && ((queryTime / 1000) >= m_logQueriesLongerThan))
-            {
-                ThreadReporter.addDataPoint("kairosdb.log.query.remote_address", remoteAddr, m_logQueriesTtl);
-                ThreadReporter.addDataPoint("kairosdb.log.query.json", json, m_logQueriesTtl);
-            }
-
-            ThreadReporter.addTag("request", QUERY_URL);
-            ThreadReporter.addDataPoint(REQUEST_TIME, queryTime);
-
-
-
-			if (m_aggregatedQueryMetrics)
+			ResponseBuilder responseBuilder;
+			if (m_streamingResponse && !postProcess)
 			{
-				ThreadReporter.gatherData(m_statsMap);
+				responseBuilder = Response.status(Response.Status.OK).entity(
+						new QueryStreamingOutput(mainQuery, json, remoteAddr, ThreadReporter.getReportTime(), binary));
 			}
 			else
-			{ThreadReporter.submitData(m_longDataPointFactory,
-					m_stringDataPointFactory, m_eventBus);
-			}
-
-			//System.out.println("About to process plugins");
-			List<QueryPlugin> plugins = mainQuery.getPlugins();
-			for (QueryPlugin plugin : plugins)
 			{
-				if (plugin instanceof QueryPostProcessingPlugin)
+				File respFile = File.createTempFile("kairos", binary ? ".bin" : ".json", new File(datastore.getCacheDir()));
+				try (OutputStream output = new FileOutputStream(respFile))
 				{
-					respFile = ((QueryPostProcessingPlugin)plugin).processQueryResults(respFile);
+					writeQueryResponse(mainQuery, createResponse(output, binary), json, remoteAddr);
 				}
-			}
 
-            ResponseBuilder responseBuilder = Response.status(Response.Status.OK).entity(
-                    new FileStreamingOutput(respFile));
+				//System.out.println("About to process plugins");
+				List<QueryPlugin> plugins = mainQuery.getPlugins();
+				for (QueryPlugin plugin : plugins)
+				{
+					if (plugin instanceof QueryPostProcessingPlugin)
+					{
+						respFile = ((QueryPostProcessingPlugin)plugin).processQueryResults(respFile);
+					}
+				}
+
+				responseBuilder = Response.status(Response.Status.OK).entity(
+						new FileStreamingOutput(respFile));
+			}
 
+			responseBuilder.type(binary ? BinaryResponse.CONTENT_TYPE : JSON_CONTENT_TYPE);
 			setHeaders(responseBuilder);
 			return responseBuilder.build();
 		}
@@ -554,22 +639,22 @@ public class MetricsResource implements KairosMetricReporter
 			logger.error("Query failed.", e);
 			Thread.sleep(1000);
 			System.gc();
-			return setHeaders(Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(new ErrorResponse(e.getMessage()))).build();
+			return setHeaders(Response.status(Response.Status.INTERNAL_SERVER_ERROR).type(MediaType.APPLICATION_JSON_TYPE).entity(new ErrorResponse(e.getMessage()))).build();
 		}
 		catch (IOException e)
 		{
 			logger.error("Failed to open temp folder " + datastore.getCacheDir(), e);
-			return setHeaders(Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(new ErrorResponse(e.getMessage()))).build();
+			return setHeaders(Response.status(Response.Status.INTERNAL_SERVER_ERROR).type(MediaType.APPLICATION_JSON_TYPE).entity(new ErrorResponse(e.getMessage()))).build();
 		}
 		catch (Exception e)
 		{
 			logger.error("Query failed.", e);
-			return setHeaders(Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(new ErrorResponse(e.getMessage()))).build();
+			return setHeaders(Response.status(Response.Status.INTERNAL_SERVER_ERROR).type(MediaType.APPLICATION_JSON_TYPE).entity(new ErrorResponse(e.getMessage()))).build();
 		}
 		catch (OutOfMemoryError e)
 		{
 			logger.error("Out of memory error.", e);
-			return setHeaders(Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(new ErrorResponse(e.getMessage()))).build();
+			return setHeaders(Response.status(Response.Status.INTERNAL_SERVER_ERROR).type(MediaType.APPLICATION_JSON_TYPE).entity(new ErrorResponse(e.getMessage()))).build();
 
 		}finally
 		{
@@ -577,6 +662,258 @@ public class MetricsResource implements KairosMetricReporter
 		}
 	}
 
+	private static boolean hasPostProcessingPlugin(Query query)
+	{
+		for (QueryPlugin plugin : query.getPlugins())
+		{
+			if (plugin instanceof QueryPostProcessingPlugin)
+				return (true);
+		}
+
+		return (false);
+	}
+
+	/**
+	 Creates the response the query is written to, the output is buffered
+	 by the response.
+	 */
+	private QueryResponse createResponse(OutputStream output, boolean binary)
+	{
+		if (binary)
+			return (new BinaryResponse(new BufferedOutputStream(output, STREAMING_BUFFER_SIZE), m_binaryXorDoubles));
+		else
+			return (new JsonResponse(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), STREAMING_BUFFER_SIZE)));
+	}
+
+	/**
+	 Runs the metrics of the query writing the results to the response and
+	 then reports the query stats.
+	 */
+	private void writeQueryResponse(Query mainQuery, QueryResponse response, String json, String remoteAddr)
+			throws DatastoreException, FormatterException, IOException
+	{
+		response.begin();
+
+		List<QueryMetric> queries = mainQuery.getQueryMetrics();
+
+		if (m_queryExecutor != null && queries.size() > 1)
+		{
+			runQueriesInParallel(queries, response);
+		}
+		else
+		{
+			int queryCount = 0;
+			for (QueryMetric query : queries)
+			{
+				queryCount++;
+				ThreadReporter.addTag("metric_name", query.getName());
+				ThreadReporter.addTag("query_index", String.valueOf(queryCount));
+
+				DatastoreQuery dq = datastore.createQuery(query);
+				long startQuery = System.currentTimeMillis();
+
+				try
+				{
+					List<DataPointGroup> results = dq.execute();
+					response.formatQuery(results, query.isExcludeTags(), dq.getSampleSize());
+
+					ThreadReporter.addDataPoint(QUERY_TIME, System.currentTimeMillis() - startQuery);
+				} finally
+				{
+					dq.close();
+				}
+			}
+		}
+
+		response.end();
+		response.flush();
+
+		ThreadReporter.clearTags();
+		ThreadReporter.addTag("host", hostName);
+
+		//write metrics for query logging
+		long queryTime = System.currentTimeMillis() - ThreadReporter.getReportTime();
+		if (m_logQueries && ((queryTime / 1000) >= m_logQueriesLongerThan))
+		{
+			ThreadReporter.addDataPoint("kairosdb.log.query.remote_address", remoteAddr, m_logQueriesTtl);
+			ThreadReporter.addDataPoint("kairosdb.log.query.json", json, m_logQueriesTtl);
+		}
+
+		ThreadReporter.addTag("request", QUERY_URL);
+		ThreadReporter.addDataPoint(REQUEST_TIME, queryTime);
+
+		reportThreadData();
+	}
+
+	private void reportThreadData() throws DatastoreException
+	{
+		if (m_aggregatedQueryMetrics)
+		{
+			ThreadReporter.gatherData(m_statsMap);
+		}
+		else
+		{
+			ThreadReporter.submitData(m_longDataPointFactory,
+					m_stringDataPointFactory, m_eventBus);
+		}
+	}
+
+	/**
+	 Runs each metric on the query executor, formatting it into its own file,
+	 and then appends the files to the response in the order of the metrics.
+	 At most m_queryMetricThreads metrics of the request are submitted at a
+	 time, the next one is submitted as the oldest is appended.
+	 */
+	private void runQueriesInParallel(List<QueryMetric> queries, QueryResponse response)
+			throws DatastoreException, FormatterException, IOException
+	{
+		long reportTime = ThreadReporter.getReportTime();
+		boolean binary = response instanceof BinaryResponse;
+		List<Future<File>> results = new ArrayList<>();
+		boolean complete = false;
+
+		try
+		{
+			while (results.size() < Math.min(queries.size(), m_queryMetricThreads))
+				submitNextQuery(queries, results, reportTime, binary);
+
+			for (int i = 0; i < results.size(); i++)
+			{
+				File queryFile = getQueryFile(results.get(i));
+
+				if (results.size() < queries.size())
+					submitNextQuery(queries, results, reportTime, binary);
+
+				try (InputStream input = new FileInputStream(queryFile))
+				{
+					response.appendQuery(input);
+				}
+				finally
+				{
+					queryFile.delete();
+				}
+			}
+
+			complete = true;
+		}
+		finally
+		{
+			if (!complete)
+			{
+				//Metrics that have not started are dropped, the running ones
+				//are left to finish so their files can be removed.
+				for (Future<File> result : results)
+				{
+					if (!result.cancel(false))
+					{
+						try
+						{
+							result.get().delete();
+						}
+						catch (Exception e)
+						{
+							logger.debug("Metric query failed after the request failed", e);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private void submitNextQuery(List<QueryMetric> queries, List<Future<File>> results,
+			long reportTime, boolean binary)
+	{
+		int index = results.size();
+		results.add(m_queryExecutor.submit(new MetricQuery(queries.get(index), index + 1,
+				reportTime, binary)));
+	}
+
+	private static File getQueryFile(Future<File> result)
+			throws DatastoreException, FormatterException, IOException
+	{
+		try
+		{
+			return (result.get());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new DatastoreException(e);
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			Throwables.propagateIfPossible(cause, DatastoreException.class, FormatterException.class);
+			Throwables.propagateIfInstanceOf(cause, IOException.class);
+			throw new DatastoreException(cause);
+		}
+	}
+
+	/**
+	 Runs one metric of a query and formats the results into a file in
+	 the cache directory.  Reporting is done by the thread running the metric
+	 as the ThreadReporter keeps its data per thread.
+	 */
+	private class MetricQuery implements Callable<File>
+	{
+		private final QueryMetric m_query;
+		private final int m_queryIndex;
+		private final long m_reportTime;
+		private final boolean m_binary;
+
+		private MetricQuery(QueryMetric query, int queryIndex, long reportTime, boolean binary)
+		{
+			m_query = query;
+			m_queryIndex = queryIndex;
+			m_reportTime = reportTime;
+			m_binary = binary;
+		}
+
+		@Override
+		public File call() throws DatastoreException, FormatterException, IOException
+		{
+			ThreadReporter.setReportTime(m_reportTime);
+			ThreadReporter.addTag("host", hostName);
+			ThreadReporter.addTag("metric_name", m_query.getName());
+			ThreadReporter.addTag("query_index", String.valueOf(m_queryIndex));
+
+			File queryFile = File.createTempFile("kairos", ".json", new File(datastore.getCacheDir()));
+			boolean success = false;
+
+			try
+			{
+				DatastoreQuery dq = datastore.createQuery(m_query);
+				long startQuery = System.currentTimeMillis();
+
+				try (OutputStream output = new FileOutputStream(queryFile))
+				{
+					List<DataPointGroup> results = dq.execute();
+					QueryResponse response = createResponse(output, m_binary);
+					response.formatQuery(results, m_query.isExcludeTags(), dq.getSampleSize());
+					response.flush();
+
+					ThreadReporter.addDataPoint(QUERY_TIME, System.currentTimeMillis() - startQuery);
+				}
+				finally
+				{
+					dq.close();
+				}
+
+				reportThreadData();
+				success = true;
+				return (queryFile);
+			}
+			finally
+			{
+				if (!success)
+					queryFile.delete();
+
+				ThreadReporter.clearTags();
+				ThreadReporter.clear();
+			}
+		}
+	}
+
     @OPTIONS
     @Produces(MediaType.APPLICATION_JSON + "; charset=UTF-8")
     @Path("/datapoints/delete")
@@ -774,6 +1111,52 @@ public class MetricsResource implements KairosMetricReporter
         }
     }
 
+	/**
+	 Runs the query while writing the response so the results go straight
+	 to the client instead of through a response file.  The output is buffered
+	 and not flushed so a query that fails early still gets a 500 response,
+	 once the buffer has been sent a failure can only close the connection.
+	 */
+	private class QueryStreamingOutput implements StreamingOutput
+	{
+		private final Query m_query;
+		private final String m_json;
+		private final String m_remoteAddr;
+		private final long m_reportTime;
+		private final boolean m_binary;
+
+		private QueryStreamingOutput(Query query, String json, String remoteAddr, long reportTime, boolean binary)
+		{
+			m_query = query;
+			m_json = json;
+			m_remoteAddr = remoteAddr;
+			m_reportTime = reportTime;
+			m_binary = binary;
+		}
+
+		@Override
+		public void write(OutputStream output) throws IOException, WebApplicationException
+		{
+			ThreadReporter.setReportTime(m_reportTime);
+			ThreadReporter.addTag("host", hostName);
+
+			try
+			{
+				writeQueryResponse(m_query, createResponse(output, m_binary), m_json, m_remoteAddr);
+			}
+			catch (DatastoreException | FormatterException e)
+			{
+				logger.error("Query failed.", e);
+				throw new WebApplicationException(e);
+			}
+			finally
+			{
+				ThreadReporter.clearTags();
+				ThreadReporter.clear();
+			}
+		}
+	}
+
     public static class FileStreamingOutput implements StreamingOutput
     {
         private File m_responseFile;
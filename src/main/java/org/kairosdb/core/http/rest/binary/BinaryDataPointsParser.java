@@ -0,0 +1,317 @@
+package org.kairosdb.core.http.rest.binary;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.eventbus.EventBus;
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.KairosDataPointFactory;
+import org.kairosdb.core.datapoints.DataPointFactory;
+import org.kairosdb.core.http.rest.json.ValidationErrors;
+import org.kairosdb.events.DataPointBatchEvent;
+import org.kairosdb.events.DataPointEvent;
+import org.kairosdb.util.Validator;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.kairosdb.util.Util.unpackLong;
+import static org.kairosdb.util.Util.unpackUnsignedLong;
+
+/**
+ Parses the binary ingest format and posts the data points to the event bus.
+
+ The stream starts with the 4 bytes 'K' 'D' 'B' 1 followed by records.  Each
+ record is a kind byte, the length of the body as a varint and the body.
+ Records of an unknown kind are skipped.
+
+ STRING (1): UTF-8 bytes.  Strings are numbered from 0 in the order they
+ appear and metric records refer to them by number.
+
+ METRIC (2): varint flags (1 = skip validation), varint name, varint data
+ point type, varint ttl, varint tag count followed by a tag name and value for
+ each tag, varint data point count followed by the data points.  Each data
+ point is the zigzag varint difference of its timestamp from the previous one
+ (the first from 0) and the value as written by DataPoint.writeValueToBuffer.
+
+ Validation matches DataPointsParser, errors in one metric do not stop the
+ others from being added.  A metric may not have the same tag name twice.
+ */
+public class BinaryDataPointsParser
+{
+	public static final String CONTENT_TYPE = "application/x-kairosdb-binary";
+
+	public static final byte[] MAGIC = {'K', 'D', 'B', 1};
+	public static final int STRING_RECORD = 1;
+	public static final int METRIC_RECORD = 2;
+	public static final int FLAG_SKIP_VALIDATE = 0x1;
+
+	//Number of data points posted together as one DataPointBatchEvent
+	private static final int POST_BATCH_SIZE = 1000;
+	private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+	//Limits the memory used to share tag maps within a request
+	private static final int MAX_INTERNED = 10000;
+
+	private final EventBus m_eventBus;
+	private final InputStream m_inputStream;
+	private final KairosDataPointFactory m_dataPointFactory;
+
+	private final List<String> m_strings = new ArrayList<>();
+	private final Map<Map<String, String>, ImmutableSortedMap<String, String>> m_tags = new HashMap<>();
+	private List<DataPointEvent> m_batch = new ArrayList<>();
+	private byte[] m_buffer = new byte[1024];
+
+	private int m_dataPointCount;
+	private int m_ingestTime;
+
+	public BinaryDataPointsParser(EventBus eventBus, InputStream stream,
+			KairosDataPointFactory dataPointFactory)
+	{
+		m_eventBus = checkNotNull(eventBus);
+		m_inputStream = checkNotNull(stream);
+		m_dataPointFactory = checkNotNull(dataPointFactory);
+	}
+
+	public int getDataPointCount()
+	{
+		return m_dataPointCount;
+	}
+
+	public int getIngestTime()
+	{
+		return m_ingestTime;
+	}
+
+	public ValidationErrors parse() throws IOException
+	{
+		long start = System.currentTimeMillis();
+		ValidationErrors validationErrors = new ValidationErrors();
+
+		DataInputStream input = new DataInputStream(m_inputStream);
+		try
+		{
+			if (readHeader(input, validationErrors))
+			{
+				int metricCount = 0;
+				int kind;
+				while ((kind = input.read()) != -1)
+				{
+					long length = unpackUnsignedLong(input);
+					if (length > MAX_RECORD_SIZE)
+					{
+						validationErrors.addErrorMessage("Invalid binary data. Record of " + length + " bytes is too large.");
+						break;
+					}
+
+					byte[] body = readBody(input, (int) length);
+
+					if (kind == STRING_RECORD)
+						m_strings.add(new String(body, 0, (int) length, StandardCharsets.UTF_8));
+					else if (kind == METRIC_RECORD)
+					{
+						DataInputStream record = new DataInputStream(new ByteArrayInputStream(body, 0, (int) length));
+						parseMetric(record, validationErrors, metricCount);
+						metricCount++;
+					}
+				}
+			}
+		}
+		catch (EOFException e)
+		{
+			validationErrors.addErrorMessage("Invalid binary data. Unexpected end of input.");
+		}
+		catch (IllegalArgumentException e)
+		{
+			//Thrown for a malformed varint
+			validationErrors.addErrorMessage("Invalid binary data. " + e.getMessage());
+		}
+		finally
+		{
+			//Data points parsed before an error are still written
+			postBatch();
+		}
+
+		m_ingestTime = (int) (System.currentTimeMillis() - start);
+
+		return validationErrors;
+	}
+
+	private boolean readHeader(DataInputStream input, ValidationErrors validationErrors) throws IOException
+	{
+		for (int i = 0; i < MAGIC.length; i++)
+		{
+			int b = input.read();
+			if (b == -1)
+			{
+				validationErrors.addErrorMessage("Invalid binary data. No content due to end of input.");
+				return false;
+			}
+
+			if (b != (MAGIC[i] & 0xFF))
+			{
+				validationErrors.addErrorMessage("Invalid binary data. Unrecognized header.");
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private byte[] readBody(DataInputStream input, int length) throws IOException
+	{
+		if (m_buffer.length < length)
+			m_buffer = new byte[Math.max(length, m_buffer.length * 2)];
+
+		input.readFully(m_buffer, 0, length);
+
+		return m_buffer;
+	}
+
+	private String getString(long id)
+	{
+		if (id < 0 || id >= m_strings.size())
+			return null;
+
+		return m_strings.get((int) id);
+	}
+
+	private void parseMetric(DataInputStream record, ValidationErrors errors, int count) throws IOException
+	{
+		ValidationErrors validationErrors = new ValidationErrors();
+		String context = "metric[" + count + "]";
+		try
+		{
+			long flags = unpackUnsignedLong(record);
+			boolean validate = (flags & FLAG_SKIP_VALIDATE) == 0;
+
+			long nameId = unpackUnsignedLong(record);
+			String name = getString(nameId);
+			if (name == null)
+			{
+				errors.addErrorMessage(context + ".name refers to undefined string " + nameId + ".");
+				return;
+			}
+
+			if (validate)
+				Validator.isNotNullOrEmpty(validationErrors, context + ".name", name);
+			if (!name.isEmpty())
+				context = context + "(name=" + name + ")";
+
+			long typeId = unpackUnsignedLong(record);
+			String type = getString(typeId);
+			if (type == null)
+			{
+				errors.addErrorMessage(context + ".type refers to undefined string " + typeId + ".");
+				return;
+			}
+
+			int ttl = (int) unpackUnsignedLong(record);
+
+			long tagCount = unpackUnsignedLong(record);
+			Map<String, String> tags = new LinkedHashMap<>();
+			for (int i = 0; i < tagCount; i++)
+			{
+				long tagNameId = unpackUnsignedLong(record);
+				long tagValueId = unpackUnsignedLong(record);
+				String tagName = getString(tagNameId);
+				String tagValue = getString(tagValueId);
+				if (tagName == null || tagValue == null)
+				{
+					errors.addErrorMessage(context + ".tag[" + i + "] refers to undefined string " +
+							(tagName == null ? tagNameId : tagValueId) + ".");
+					return;
+				}
+
+				if (validate)
+				{
+					if (Validator.isNotNullOrEmpty(validationErrors, context + ".tag[" + i + "].name", tagName))
+						Validator.isNotNullOrEmpty(validationErrors, context + ".tag[" + tagName + "].value", tagValue);
+				}
+
+				if (tags.put(tagName, tagValue) != null)
+					validationErrors.addErrorMessage(context + ".tag[" + tagName + "] is specified more than once.");
+			}
+
+			if (validate)
+				Validator.isGreaterThanOrEqualTo(validationErrors, context + ".tags count", tags.size(), 1);
+
+			if (!m_dataPointFactory.isRegisteredType(type))
+				validationErrors.addErrorMessage("Unregistered data point type '" + type + "'");
+
+			if (validationErrors.hasErrors())
+				return;
+
+			ImmutableSortedMap<String, String> sortedTags = internTags(tags);
+			DataPointFactory factory = m_dataPointFactory.getFactoryForType(type);
+
+			long dataPointCount = unpackUnsignedLong(record);
+			long timestamp = 0L;
+			for (int i = 0; i < dataPointCount; i++)
+			{
+				try
+				{
+					timestamp += unpackLong(record);
+					DataPoint dataPoint = factory.getDataPoint(timestamp, record);
+					addDataPoint(new DataPointEvent(name, sortedTags, dataPoint, ttl));
+				}
+				catch (IOException | IllegalArgumentException e)
+				{
+					validationErrors.addErrorMessage(context + ".datapoints[" + i + "] could not be read as type '" + type + "'.");
+					break;
+				}
+			}
+		}
+		catch (EOFException e)
+		{
+			validationErrors.addErrorMessage(context + " is truncated.");
+		}
+		catch (IOException | IllegalArgumentException e)
+		{
+			//The record is in memory so anything else is malformed data
+			validationErrors.addErrorMessage(context + " could not be read. " + e.getMessage());
+		}
+		finally
+		{
+			errors.add(validationErrors);
+		}
+	}
+
+	private ImmutableSortedMap<String, String> internTags(Map<String, String> tags)
+	{
+		ImmutableSortedMap<String, String> interned = m_tags.get(tags);
+		if (interned == null)
+		{
+			interned = ImmutableSortedMap.copyOf(tags);
+			if (m_tags.size() < MAX_INTERNED)
+				m_tags.put(interned, interned);
+		}
+
+		return interned;
+	}
+
+	private void addDataPoint(DataPointEvent dataPointEvent)
+	{
+		m_batch.add(dataPointEvent);
+		m_dataPointCount++;
+
+		if (m_batch.size() >= POST_BATCH_SIZE)
+			postBatch();
+	}
+
+	private void postBatch()
+	{
+		if (!m_batch.isEmpty())
+		{
+			m_eventBus.post(new DataPointBatchEvent(m_batch));
+			m_batch = new ArrayList<>();
+		}
+	}
+}
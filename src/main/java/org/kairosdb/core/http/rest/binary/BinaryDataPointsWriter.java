@@ -0,0 +1,112 @@
+package org.kairosdb.core.http.rest.binary;
+
+import org.kairosdb.core.DataPoint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.kairosdb.util.Util.packLong;
+import static org.kairosdb.util.Util.packUnsignedLong;
+
+/**
+ Writes data points in the format read by BinaryDataPointsParser.  Each
+ string is written once and referred to by number after that.
+ */
+public class BinaryDataPointsWriter implements Closeable
+{
+	private final DataOutputStream m_output;
+	private final Map<String, Integer> m_stringIds = new HashMap<>();
+	private final ByteArrayOutputStream m_record = new ByteArrayOutputStream();
+	private final DataOutputStream m_recordOutput = new DataOutputStream(m_record);
+
+	public BinaryDataPointsWriter(OutputStream output) throws IOException
+	{
+		m_output = new DataOutputStream(output);
+		m_output.write(BinaryDataPointsParser.MAGIC);
+	}
+
+	private int getStringId(String str) throws IOException
+	{
+		Integer id = m_stringIds.get(str);
+		if (id == null)
+		{
+			id = m_stringIds.size();
+			m_stringIds.put(str, id);
+			byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+			writeRecord(BinaryDataPointsParser.STRING_RECORD, bytes, bytes.length);
+		}
+
+		return id;
+	}
+
+	private void writeRecord(int kind, byte[] body, int length) throws IOException
+	{
+		m_output.write(kind);
+		packUnsignedLong(length, m_output);
+		m_output.write(body, 0, length);
+	}
+
+	/**
+	 Writes one metric record.  All data points have to be of the given type,
+	 ie the value of getApiDataType.
+	 */
+	public void addMetric(String name, Map<String, String> tags, String type, int ttl,
+			List<DataPoint> dataPoints, boolean skipValidate) throws IOException
+	{
+		//Strings have to be written before the record using them
+		int nameId = getStringId(name);
+		int typeId = getStringId(type);
+		int[] tagIds = new int[tags.size() * 2];
+		int index = 0;
+		for (Map.Entry<String, String> tag : tags.entrySet())
+		{
+			tagIds[index++] = getStringId(tag.getKey());
+			tagIds[index++] = getStringId(tag.getValue());
+		}
+
+		m_record.reset();
+		packUnsignedLong(skipValidate ? BinaryDataPointsParser.FLAG_SKIP_VALIDATE : 0, m_recordOutput);
+		packUnsignedLong(nameId, m_recordOutput);
+		packUnsignedLong(typeId, m_recordOutput);
+		packUnsignedLong(ttl, m_recordOutput);
+		packUnsignedLong(tags.size(), m_recordOutput);
+		for (int tagId : tagIds)
+			packUnsignedLong(tagId, m_recordOutput);
+
+		packUnsignedLong(dataPoints.size(), m_recordOutput);
+		long lastTimestamp = 0L;
+		for (DataPoint dataPoint : dataPoints)
+		{
+			packLong(dataPoint.getTimestamp() - lastTimestamp, m_recordOutput);
+			lastTimestamp = dataPoint.getTimestamp();
+			dataPoint.writeValueToBuffer(m_recordOutput);
+		}
+		m_recordOutput.flush();
+
+		writeRecord(BinaryDataPointsParser.METRIC_RECORD, m_record.toByteArray(), m_record.size());
+	}
+
+	public void addMetric(String name, Map<String, String> tags, String type, int ttl,
+			List<DataPoint> dataPoints) throws IOException
+	{
+		addMetric(name, tags, type, ttl, dataPoints, false);
+	}
+
+	public void flush() throws IOException
+	{
+		m_output.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		m_output.close();
+	}
+}
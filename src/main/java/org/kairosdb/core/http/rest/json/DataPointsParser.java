@@ -22,10 +22,17 @@ import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.internal.LazilyParsedNumber;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import org.kairosdb.core.DataPoint;
 import org.kairosdb.core.KairosDataPointFactory;
+import org.kairosdb.core.datapoints.DataPointFactory;
+import org.kairosdb.core.datapoints.DoubleDataPointFactory;
+import org.kairosdb.core.datapoints.LongDataPointFactory;
 import org.kairosdb.core.exception.DatastoreException;
+import org.kairosdb.events.DataPointBatchEvent;
 import org.kairosdb.events.DataPointEvent;
 import org.kairosdb.util.Util;
 import org.kairosdb.util.ValidationException;
@@ -34,7 +41,12 @@ import org.kairosdb.util.Validator;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.Reader;
-import java.util.Collections;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -43,9 +55,17 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * Originally used Jackson to parse, but this approach failed for a very large JSON because
  * everything was in memory and we would run out of memory. This parser adds metrics as it walks
  * through the stream.
+ *
+ * Metrics are read token by token rather than bound with Gson so a large request
+ * does not build a tree of JsonElements for every data point.
  */
 public class DataPointsParser
 {
+	//Number of data points posted together as one DataPointBatchEvent
+	private static final int POST_BATCH_SIZE = 1000;
+	//Limit on the names and tag maps shared within one request
+	private static final int MAX_INTERNED = 10000;
+
 	private final EventBus m_eventBus;
 	private final Reader inputStream;
 	private final Gson gson;
@@ -63,6 +83,12 @@ public class DataPointsParser
 
 	private int dataPointCount;
 	private int ingestTime;
+	private List<DataPointEvent> m_batch = new ArrayList<>();
+	private final NewMetric m_metric = new NewMetric();
+	private final Map<String, String> m_names = new HashMap<>();
+	private final Map<Map<String, String>, ImmutableSortedMap<String, String>> m_tags = new HashMap<>();
+	private String m_lastType;
+	private DataPointFactory m_lastFactory;
 
 	public DataPointsParser(EventBus eventBus, Reader stream, Gson gson,
 	                        KairosDataPointFactory dataPointFactory)
@@ -115,25 +141,318 @@ public class DataPointsParser
 		{
 			validationErrors.addErrorMessage("Invalid json. No content due to end of input.");
 		}
+		finally
+		{
+			//Data points parsed before an error are still written
+			postBatch();
+		}
 
 		ingestTime = (int)(System.currentTimeMillis() - start);
 
 		return validationErrors;
 	}
 
-	private NewMetric parseMetric(JsonReader reader)
+	private void addDataPoint(DataPointEvent dataPointEvent)
+	{
+		m_batch.add(dataPointEvent);
+		dataPointCount++;
+
+		if (m_batch.size() >= POST_BATCH_SIZE)
+			postBatch();
+	}
+
+	private void postBatch()
+	{
+		if (!m_batch.isEmpty())
+		{
+			m_eventBus.post(new DataPointBatchEvent(m_batch));
+			m_batch = new ArrayList<>();
+		}
+	}
+
+	/**
+	 Reads one metric object token by token into m_metric.  Data point values
+	 that are plain numbers are kept as their literal text and turned straight
+	 into long or double values when the events are created, only strings and
+	 structured values are read as JsonElements.
+	 */
+	private NewMetric parseMetric(JsonReader reader) throws IOException
+	{
+		//Same leniency and exceptions as when Gson bound the metric objects
+		boolean lenient = reader.isLenient();
+		reader.setLenient(true);
+		try
+		{
+			m_metric.reset();
+			readMetric(reader, m_metric);
+		}
+		catch (EOFException | MalformedJsonException | IllegalStateException | NumberFormatException e)
+		{
+			throw new JsonSyntaxException(e);
+		}
+		finally
+		{
+			reader.setLenient(lenient);
+		}
+
+		return m_metric;
+	}
+
+	private void readMetric(JsonReader reader, NewMetric metric) throws IOException
+	{
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			switch (reader.nextName())
+			{
+				case "name":
+					metric.name = readString(reader);
+					break;
+				case "timestamp":
+					metric.timestamp = readLong(reader);
+					break;
+				case "time":
+					metric.time = readLong(reader);
+					break;
+				case "value":
+					metric.value = readElement(reader);
+					break;
+				case "tags":
+					readTags(reader, metric);
+					break;
+				case "datapoints":
+					readDataPoints(reader, metric);
+					break;
+				case "skip_validate":
+					if (reader.peek() == JsonToken.NULL)
+						reader.nextNull();
+					else if (reader.peek() == JsonToken.STRING)
+						metric.skip_validate = Boolean.parseBoolean(reader.nextString());
+					else
+						metric.skip_validate = reader.nextBoolean();
+					break;
+				case "type":
+					metric.type = readString(reader);
+					break;
+				case "ttl":
+					if (reader.peek() == JsonToken.NULL)
+						reader.nextNull();
+					else
+						metric.ttl = reader.nextInt();
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+	}
+
+	private void readTags(JsonReader reader, NewMetric metric) throws IOException
+	{
+		metric.tags.clear();
+		if (reader.peek() == JsonToken.NULL)
+		{
+			reader.nextNull();
+			return;
+		}
+
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			String name = reader.nextName();
+			String value = readString(reader);
+			if (metric.tags.containsKey(name))
+				throw new JsonSyntaxException("duplicate key: " + name);
+
+			metric.tags.put(name, value);
+		}
+		reader.endObject();
+	}
+
+	private void readDataPoints(JsonReader reader, NewMetric metric) throws IOException
+	{
+		metric.clearDataPoints();
+		if (reader.peek() == JsonToken.NULL)
+		{
+			reader.nextNull();
+			return;
+		}
+
+		reader.beginArray();
+		while (reader.hasNext())
+		{
+			if (reader.peek() == JsonToken.NULL)
+			{
+				reader.nextNull();
+				metric.addDataPoint(0, 0L, false, null, null);
+				continue;
+			}
+
+			reader.beginArray();
+			int length = 0;
+			long timestamp = 0L;
+			boolean hasTimestamp = false;
+			Object value = null;
+			String type = null;
+			while (reader.hasNext())
+			{
+				if (length == 0)
+				{
+					JsonToken token = reader.peek();
+					if (token == JsonToken.NULL)
+						reader.nextNull();
+					else
+					{
+						if (token == JsonToken.NUMBER)
+							timestamp = readLongNumber(reader);
+						else
+							timestamp = readElement(reader).getAsLong();
+						hasTimestamp = true;
+					}
+				}
+				else if (length == 1)
+				{
+					//Numbers are kept as text so the type can be found from it
+					if (reader.peek() == JsonToken.NUMBER)
+						value = reader.nextString();
+					else
+						value = readElement(reader);
+				}
+				else if (length == 2)
+				{
+					if (reader.peek() == JsonToken.STRING)
+						type = reader.nextString();
+					else
+						type = readElement(reader).getAsString();
+				}
+				else
+					reader.skipValue();
+
+				length++;
+			}
+			reader.endArray();
+
+			metric.addDataPoint(length, timestamp, hasTimestamp, value, type);
+		}
+		reader.endArray();
+	}
+
+	private JsonElement readElement(JsonReader reader)
+	{
+		return gson.fromJson(reader, JsonElement.class);
+	}
+
+	private static String readString(JsonReader reader) throws IOException
+	{
+		JsonToken token = reader.peek();
+		if (token == JsonToken.NULL)
+		{
+			reader.nextNull();
+			return null;
+		}
+		else if (token == JsonToken.BOOLEAN)
+			return Boolean.toString(reader.nextBoolean());
+		else
+			return reader.nextString();
+	}
+
+	private static Long readLong(JsonReader reader) throws IOException
+	{
+		if (reader.peek() == JsonToken.NULL)
+		{
+			reader.nextNull();
+			return null;
+		}
+
+		return reader.nextLong();
+	}
+
+	/**
+	 Reads a number the way Gson's JsonPrimitive.getAsLong does.  nextLong does
+	 not create a String for integers, when it fails on a fraction the reader
+	 keeps the number so it can still be read as a String.
+	 */
+	private static long readLongNumber(JsonReader reader) throws IOException
 	{
-		NewMetric metric;
 		try
 		{
-			metric = gson.fromJson(reader, NewMetric.class);
+			return reader.nextLong();
 		}
-		catch (IllegalArgumentException e)
+		catch (NumberFormatException e)
 		{
-			// Happens when parsing data points where one of the pair is missing (timestamp or value)
-			throw new JsonSyntaxException("Invalid JSON");
+			return new BigDecimal(reader.nextString()).longValue();
 		}
-		return metric;
+	}
+
+	private String internName(String name)
+	{
+		String interned = m_names.get(name);
+		if (interned == null)
+		{
+			interned = name;
+			if (m_names.size() < MAX_INTERNED)
+				m_names.put(name, name);
+		}
+
+		return interned;
+	}
+
+	/**
+	 Returns the same tag map for metrics with the same tags within a request.
+	 */
+	private ImmutableSortedMap<String, String> internTags(Map<String, String> tags)
+	{
+		ImmutableSortedMap<String, String> interned = m_tags.get(tags);
+		if (interned == null)
+		{
+			interned = ImmutableSortedMap.copyOf(tags);
+			if (m_tags.size() < MAX_INTERNED)
+				m_tags.put(interned, interned);
+		}
+
+		return interned;
+	}
+
+	private DataPointFactory getFactoryForType(String type)
+	{
+		if (!type.equals(m_lastType))
+		{
+			m_lastType = type;
+			m_lastFactory = dataPointFactory.getFactoryForType(type);
+		}
+
+		return m_lastFactory;
+	}
+
+	/**
+	 Creates a data point from a value read by readDataPoints.  Number literals
+	 go straight to the long or double factory when the type has one.
+	 */
+	private DataPoint createDataPoint(String type, long timestamp, Object value) throws IOException
+	{
+		if (value instanceof String)
+		{
+			String literal = (String) value;
+			DataPointFactory factory = getFactoryForType(type);
+
+			if (factory instanceof LongDataPointFactory && literal.indexOf('.') == -1)
+			{
+				try
+				{
+					return ((LongDataPointFactory) factory).createDataPoint(timestamp, Long.parseLong(literal));
+				}
+				catch (NumberFormatException e)
+				{
+					//Exponents and large values are handled by the factory below
+				}
+			}
+			else if (factory instanceof DoubleDataPointFactory)
+				return ((DoubleDataPointFactory) factory).createDataPoint(timestamp, Double.parseDouble(literal));
+
+			return dataPointFactory.createDataPoint(type, timestamp, new JsonPrimitive(new LazilyParsedNumber(literal)));
+		}
+
+		return dataPointFactory.createDataPoint(type, timestamp, (JsonElement) value);
 	}
 
 	private static class Context
@@ -294,7 +613,8 @@ public class DataPointsParser
 
 		if (!validationErrors.hasErrors())
 		{
-			ImmutableSortedMap<String, String> tags = ImmutableSortedMap.copyOf(metric.getTags());
+			String name = internName(metric.getName());
+			ImmutableSortedMap<String, String> tags = internTags(metric.getTags());
 
 			if (metric.getTimestamp() != null && metric.getValue() != null)
 			{
@@ -311,9 +631,8 @@ public class DataPointsParser
 
                 if (type != null) {
                     if (dataPointFactory.isRegisteredType(type)) {
-	                    m_eventBus.post(new DataPointEvent(metric.getName(), tags, dataPointFactory.createDataPoint(
+	                    addDataPoint(new DataPointEvent(name, tags, dataPointFactory.createDataPoint(
 			                    type, metric.getTimestamp(), metric.getValue()), metric.getTtl()));
-                        dataPointCount++;
                     }
                     else {
                         validationErrors.addErrorMessage("Unregistered data point type '" + type + "'");
@@ -321,48 +640,60 @@ public class DataPointsParser
                 }
             }
 
-			if (metric.getDatapoints() != null && metric.getDatapoints().length > 0)
+			if (metric.getDataPointCount() > 0)
 			{
 				int contextCount = 0;
 				SubContext dataPointContext = new SubContext(context, "datapoints");
-				for (JsonElement[] dataPoint : metric.getDatapoints())
+				for (int i = 0; i < metric.getDataPointCount(); i++)
 				{
 					dataPointContext.setCount(contextCount);
-					if (dataPoint.length < 1)
+					int length = metric.m_lengths[i];
+					if (length < 1)
 					{
 						validationErrors.addErrorMessage(dataPointContext.setAttribute("timestamp") +" cannot be null or empty.");
 						continue;
 					}
-					else if (dataPoint.length < 2)
+					else if (length < 2)
 					{
 						validationErrors.addErrorMessage(dataPointContext.setAttribute("value") + " cannot be null or empty.");
 						continue;
 					}
 					else
 					{
-						Long timestamp = null;
-						if (!dataPoint[0].isJsonNull())
-							timestamp = dataPoint[0].getAsLong();
-
-						if (metric.validate() && !Validator.isNotNull(validationErrors, dataPointContext.setAttribute("timestamp"), timestamp))
+						if (!metric.m_hasTimestamp[i])
+						{
+							if (metric.validate())
+								Validator.isNotNull(validationErrors, dataPointContext.setAttribute("timestamp"), null);
 							continue;
+						}
+						long timestamp = metric.m_timestamps[i];
 
 						String type = metric.getType();
-						if (dataPoint.length > 2)
-							type = dataPoint[2].getAsString();
-
-						if (!Validator.isNotNullOrEmpty(validationErrors, dataPointContext.setAttribute("value"), dataPoint[1]))
-							continue;
+						if (length > 2)
+							type = metric.m_types[i];
 
-						if (type == null) {
-                            try {
-                                type = findType(dataPoint[1]);
-                            }
-                            catch (ValidationException e) {
-                                validationErrors.addErrorMessage(context + " " + e.getMessage());
-                                continue;
-                            }
-                        }
+						Object value = metric.m_values[i];
+						if (value instanceof String)
+						{
+							//A number literal, same as findType for a JSON number
+							if (type == null)
+								type = ((String) value).contains(".") ? "double" : "long";
+						}
+						else
+						{
+							if (!Validator.isNotNullOrEmpty(validationErrors, dataPointContext.setAttribute("value"), (JsonElement) value))
+								continue;
+
+							if (type == null) {
+	                            try {
+	                                type = findType((JsonElement) value);
+	                            }
+	                            catch (ValidationException e) {
+	                                validationErrors.addErrorMessage(context + " " + e.getMessage());
+	                                continue;
+	                            }
+	                        }
+						}
 
 						if (!dataPointFactory.isRegisteredType(type))
 						{
@@ -370,9 +701,8 @@ public class DataPointsParser
 							continue;
 						}
 
-						m_eventBus.post(new DataPointEvent(metric.getName(), tags,
-								dataPointFactory.createDataPoint(type, timestamp, dataPoint[1]), metric.getTtl()));
-						dataPointCount ++;
+						addDataPoint(new DataPointEvent(name, tags,
+								createDataPoint(type, timestamp, value), metric.getTtl()));
 					}
 					contextCount++;
 				}
@@ -384,19 +714,71 @@ public class DataPointsParser
 		return !validationErrors.hasErrors();
 	}
 
-	@SuppressWarnings({"MismatchedReadAndWriteOfArray", "UnusedDeclaration"})
+	/**
+	 The fields of one metric object.  A single instance is reused for every
+	 metric in a request, data points are kept in arrays that only grow.
+	 */
+	@SuppressWarnings({"UnusedDeclaration"})
 	private static class NewMetric
 	{
 		private String name;
 		private Long timestamp = null;
 		private Long time = null;
 		private JsonElement value;
-		private Map<String, String> tags;
-		private JsonElement[][] datapoints;
+		private final Map<String, String> tags = new LinkedHashMap<>();
 		private boolean skip_validate = false;
 		private String type;
 		private int ttl = 0;
 
+		//Number of entries in each data point array, 3 or more if it had a type
+		private int[] m_lengths = new int[16];
+		private long[] m_timestamps = new long[16];
+		private boolean[] m_hasTimestamp = new boolean[16];
+		//Number literal as a String or the JsonElement of any other value
+		private Object[] m_values = new Object[16];
+		private String[] m_types = new String[16];
+		private int m_dataPointCount;
+
+		private void reset()
+		{
+			name = null;
+			timestamp = null;
+			time = null;
+			value = null;
+			tags.clear();
+			skip_validate = false;
+			type = null;
+			ttl = 0;
+			clearDataPoints();
+		}
+
+		private void clearDataPoints()
+		{
+			Arrays.fill(m_values, 0, m_dataPointCount, null);
+			Arrays.fill(m_types, 0, m_dataPointCount, null);
+			m_dataPointCount = 0;
+		}
+
+		private void addDataPoint(int length, long timestamp, boolean hasTimestamp, Object value, String type)
+		{
+			if (m_dataPointCount == m_lengths.length)
+			{
+				int size = m_dataPointCount * 2;
+				m_lengths = Arrays.copyOf(m_lengths, size);
+				m_timestamps = Arrays.copyOf(m_timestamps, size);
+				m_hasTimestamp = Arrays.copyOf(m_hasTimestamp, size);
+				m_values = Arrays.copyOf(m_values, size);
+				m_types = Arrays.copyOf(m_types, size);
+			}
+
+			m_lengths[m_dataPointCount] = length;
+			m_timestamps[m_dataPointCount] = timestamp;
+			m_hasTimestamp[m_dataPointCount] = hasTimestamp;
+			m_values[m_dataPointCount] = value;
+			m_types[m_dataPointCount] = type;
+			m_dataPointCount++;
+		}
+
 		private String getName()
 		{
 			return name;
@@ -417,12 +799,12 @@ public class DataPointsParser
 
 		public Map<String, String> getTags()
 		{
-			return tags != null ? tags : Collections.<String, String>emptyMap();
+			return tags;
 		}
 
-		private JsonElement[][] getDatapoints()
+		private int getDataPointCount()
 		{
-			return datapoints;
+			return m_dataPointCount;
 		}
 
 		private boolean validate()
@@ -437,4 +819,4 @@ public class DataPointsParser
 			return ttl;
 		}
 	}
-}
\ No newline at end of file
+}
@@ -4,24 +4,51 @@ import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.io.ByteArrayDataInput;
 import com.google.common.io.ByteArrayDataOutput;
 import com.google.common.io.ByteStreams;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import org.kairosdb.core.CoreModule;
 import org.kairosdb.core.DataPoint;
 import org.kairosdb.core.KairosDataPointFactory;
 import org.kairosdb.events.DataPointEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.inject.Inject;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
 import java.io.IOException;
 import java.util.Map;
 
+import static org.kairosdb.util.Util.packLong;
+import static org.kairosdb.util.Util.packUnsignedLong;
+import static org.kairosdb.util.Util.unpackLong;
+import static org.kairosdb.util.Util.unpackUnsignedLong;
+
 /**
  Created by bhawkins on 10/25/16.
+
+ Events are written in the original format unless compact format is on, then
+ strings are replaced by ids from a StringDictionary.  Compact events start
+ with COMPACT_MARKER followed by a version byte, numbers are varints and
+ strings are dictionary ids.  Both formats can always be read as long as the
+ dictionary file is there, so it is opened even when compact format is off.
  */
 public class DataPointEventSerializer
 {
 	public static final Logger logger = LoggerFactory.getLogger(DataPointEventSerializer.class);
 
+	public static final String COMPACT_FORMAT = "kairosdb.queue_processor.compact_format";
+	public static final String DICTIONARY_SIZE = "kairosdb.queue_processor.dictionary_size";
+	public static final String DICTIONARY_FILE = "kairos_queue_dictionary";
+
+	//The original format starts with the length of the metric name, a first
+	//byte of 0xFF would mean a name of more than 65279 bytes
+	private static final int COMPACT_MARKER = 0xFF;
+	private static final int COMPACT_VERSION = 1;
+
 	private final KairosDataPointFactory m_kairosDataPointFactory;
+	private StringDictionary m_dictionary;
+	private boolean m_compactFormat;
 
 	@Inject
 	public DataPointEventSerializer(KairosDataPointFactory kairosDataPointFactory)
@@ -29,8 +56,104 @@ public class DataPointEventSerializer
 		m_kairosDataPointFactory = kairosDataPointFactory;
 	}
 
+	public DataPointEventSerializer(KairosDataPointFactory kairosDataPointFactory,
+			StringDictionary dictionary)
+	{
+		m_kairosDataPointFactory = kairosDataPointFactory;
+		m_dictionary = dictionary;
+		m_compactFormat = true;
+	}
+
+	@Inject(optional = true)
+	public void setCompactFormat(@Named(COMPACT_FORMAT) boolean compactFormat,
+			@Named(CoreModule.QUEUE_PATH) String queuePath,
+			@Named(DICTIONARY_SIZE) int dictionarySize) throws IOException
+	{
+		m_compactFormat = compactFormat;
+
+		//Compact events may still be in the queue after the format is turned off
+		File dictionaryFile = new File(queuePath, DICTIONARY_FILE);
+		if (compactFormat || dictionaryFile.exists())
+			m_dictionary = new StringDictionary(dictionaryFile, dictionarySize);
+	}
+
+	/**
+	 First queue index the dictionary can read, events before it were written
+	 with a dictionary that has been reset.
+	 */
+	public long getFirstReadableIndex()
+	{
+		if (m_dictionary == null)
+			return (0L);
+
+		return (m_dictionary.getFirstIndex());
+	}
+
+	/**
+	 True if the dictionary is close to full and should be reset once the
+	 queue is drained.
+	 */
+	public boolean isDictionaryNearlyFull()
+	{
+		return (m_dictionary != null && m_dictionary.isNearlyFull());
+	}
+
+	/**
+	 Starts the dictionary over so it does not fill up and stop compacting.
+	 Only call this when every event in the queue has been processed and no
+	 event is being serialized.
+	 @param nextIndex queue index the next event will be written at
+	 */
+	public void resetDictionary(long nextIndex)
+	{
+		if (m_dictionary == null || m_dictionary.size() == 0)
+			return;
+
+		try
+		{
+			m_dictionary.reset(nextIndex);
+		}
+		catch (IOException e)
+		{
+			logger.error("Error resetting string dictionary", e);
+		}
+	}
+
+	/**
+	 Writes out the strings added to the dictionary, called along with the
+	 flush of the queue file.
+	 */
+	public void flush()
+	{
+		try
+		{
+			if (m_dictionary != null)
+				m_dictionary.flush();
+		}
+		catch (IOException e)
+		{
+			logger.error("Error flushing string dictionary", e);
+		}
+	}
+
+	public void close()
+	{
+		try
+		{
+			if (m_dictionary != null)
+				m_dictionary.close();
+		}
+		catch (IOException e)
+		{
+			logger.error("Error closing string dictionary", e);
+		}
+	}
+
 	public byte[] serializeEvent(DataPointEvent dataPointEvent)
 	{
+		if (m_compactFormat && m_dictionary != null)
+			return serializeCompactEvent(dataPointEvent);
+
 		//Todo: Create some adaptive value here, keep stats on if the buffer increases and slowely increase it
 		ByteArrayDataOutput dataOutput = ByteStreams.newDataOutput(64);
 		dataOutput.writeUTF(dataPointEvent.getMetricName());
@@ -56,11 +179,92 @@ public class DataPointEventSerializer
 		return dataOutput.toByteArray();
 	}
 
+	private void writeString(String str, DataOutput dataOutput) throws IOException
+	{
+		int id = m_dictionary.getId(str);
+		packUnsignedLong(id, dataOutput);
+		if (id == 0)
+			dataOutput.writeUTF(str);
+	}
+
+	private String readString(DataInput dataInput) throws IOException
+	{
+		int id = (int) unpackUnsignedLong(dataInput);
+		if (id == 0)
+			return dataInput.readUTF();
+
+		String str = null;
+		if (m_dictionary != null)
+			str = m_dictionary.getString(id);
+
+		if (str == null)
+			throw new IOException("Unknown string dictionary id " + id);
+
+		return str;
+	}
+
+	private byte[] serializeCompactEvent(DataPointEvent dataPointEvent)
+	{
+		ByteArrayDataOutput dataOutput = ByteStreams.newDataOutput(32);
+		try
+		{
+			dataOutput.writeByte(COMPACT_MARKER);
+			dataOutput.writeByte(COMPACT_VERSION);
+			writeString(dataPointEvent.getMetricName(), dataOutput);
+			packUnsignedLong(dataPointEvent.getTtl(), dataOutput);
+			packLong(dataPointEvent.getDataPoint().getTimestamp(), dataOutput);
+			writeString(dataPointEvent.getDataPoint().getDataStoreDataType(), dataOutput);
+			dataPointEvent.getDataPoint().writeValueToBuffer(dataOutput);
+
+			packUnsignedLong(dataPointEvent.getTags().size(), dataOutput);
+			for (Map.Entry<String, String> entry : dataPointEvent.getTags().entrySet())
+			{
+				writeString(entry.getKey(), dataOutput);
+				writeString(entry.getValue(), dataOutput);
+			}
+		}
+		catch (IOException e)
+		{
+			logger.error("Error serializing DataPoint", e);
+		}
+
+		return dataOutput.toByteArray();
+	}
+
+	private DataPointEvent deserializeCompactEvent(ByteArrayDataInput dataInput) throws IOException
+	{
+		int version = dataInput.readUnsignedByte();
+		if (version != COMPACT_VERSION)
+			throw new IOException("Unknown queue event version " + version);
+
+		String metricName = readString(dataInput);
+		int ttl = (int) unpackUnsignedLong(dataInput);
+		long timestamp = unpackLong(dataInput);
+		String storeType = readString(dataInput);
+
+		DataPoint dataPoint = m_kairosDataPointFactory.createDataPoint(storeType, timestamp, dataInput);
+
+		int tagCount = (int) unpackUnsignedLong(dataInput);
+		ImmutableSortedMap.Builder<String, String> builder = ImmutableSortedMap.naturalOrder();
+		for (int I = 0; I < tagCount; I++)
+		{
+			builder.put(readString(dataInput), readString(dataInput));
+		}
+
+		return new DataPointEvent(metricName, builder.build(), dataPoint, ttl);
+	}
+
 	DataPointEvent deserializeEvent(byte[] bytes)
 	{
 		DataPointEvent ret = null;
 		try
 		{
+			if (bytes.length > 0 && (bytes[0] & 0xFF) == COMPACT_MARKER)
+			{
+				ByteArrayDataInput dataInput = ByteStreams.newDataInput(bytes, 1);
+				return deserializeCompactEvent(dataInput);
+			}
+
 			ByteArrayDataInput dataInput = ByteStreams.newDataInput(bytes);
 			String metricName = dataInput.readUTF();
 			int ttl = dataInput.readInt();
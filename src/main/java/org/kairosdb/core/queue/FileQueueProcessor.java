@@ -19,6 +19,8 @@ import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  Created by bhawkins on 12/14/16.
@@ -29,6 +31,9 @@ public class FileQueueProcessor extends QueueProcessor
 	public static final String SECONDS_TILL_CHECKPOINT = "kairosdb.queue_processor.seconds_till_checkpoint";
 
 	private final Object m_lock = new Object();
+	//Held for read while events are serialized and appended, held for write
+	//while the string dictionary is reset
+	private final ReadWriteLock m_serializeLock = new ReentrantReadWriteLock();
 	private final BigArray m_bigArray;
 	private final CircularFifoQueue<IndexedEvent> m_memoryQueue;
 	private final DataPointEventSerializer m_eventSerializer;
@@ -64,18 +69,34 @@ public class FileQueueProcessor extends QueueProcessor
 		m_eventSerializer = eventSerializer;
 		m_nextIndex = m_bigArray.getTailIndex();
 		m_secondsTillCheckpoint = secondsTillCheckpoint;
+
+		//The tail event was already processed, if the dictionary was reset
+		//after it the event can not be read anymore
+		long firstReadable = m_eventSerializer.getFirstReadableIndex();
+		if (firstReadable > m_nextIndex && firstReadable <= m_bigArray.getHeadIndex())
+			m_nextIndex = firstReadable;
 	}
 
 	@Override
 	public void shutdown()
 	{
 		//todo: would like to drain the queue before shutting down.
-		m_bigArray.flush();
+		flush();
 		m_bigArray.close();
+		m_eventSerializer.close();
 
 		super.shutdown();
 	}
 
+	/**
+	 Flushes the queue file along with the dictionary strings its events use.
+	 */
+	private void flush()
+	{
+		m_eventSerializer.flush();
+		m_bigArray.flush();
+	}
+
 	private long incrementIndex(long index)
 	{
 		if (index == Long.MAX_VALUE)
@@ -124,18 +145,94 @@ public class FileQueueProcessor extends QueueProcessor
 
 	public void put(DataPointEvent dataPointEvent)
 	{
-		byte[] eventBytes = m_eventSerializer.serializeEvent(dataPointEvent);
+		m_serializeLock.readLock().lock();
+		try
+		{
+			byte[] eventBytes = m_eventSerializer.serializeEvent(dataPointEvent);
 
-		synchronized (m_lock)
+			synchronized (m_lock)
+			{
+				long index = -1L;
+				//Add data to bigArray first
+				index = m_bigArray.append(eventBytes);
+				//Then stick it into the in memory queue
+				m_memoryQueue.add(new IndexedEvent(dataPointEvent, index));
+
+				//Notify the reader thread if it is waiting for data
+				m_lock.notify();
+			}
+		}
+		finally
+		{
+			m_serializeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 Serializes the events before taking the lock, then appends them all and
+	 wakes the delivery thread once.
+	 */
+	@Override
+	public void put(List<DataPointEvent> dataPointEvents)
+	{
+		if (dataPointEvents.isEmpty())
+			return;
+
+		m_serializeLock.readLock().lock();
+		try
+		{
+			List<byte[]> serializedEvents = new ArrayList<>(dataPointEvents.size());
+			for (DataPointEvent dataPointEvent : dataPointEvents)
+				serializedEvents.add(m_eventSerializer.serializeEvent(dataPointEvent));
+
+			synchronized (m_lock)
+			{
+				for (int i = 0; i < serializedEvents.size(); i++)
+				{
+					long index = m_bigArray.append(serializedEvents.get(i));
+					m_memoryQueue.add(new IndexedEvent(dataPointEvents.get(i), index));
+				}
+
+				m_lock.notify();
+			}
+		}
+		finally
+		{
+			m_serializeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 Resets the string dictionary when it is nearly full and every event in
+	 the queue has been processed, otherwise it only grows until it is full.
+	 Waiting until it is nearly full keeps the strings of the current metrics
+	 from being added again after every batch.  Skipped if events are being
+	 added as the queue is not going to be empty.
+	 @param completedIndex every event up to and including this index is done
+	 */
+	private void resetDictionaryIfDrained(long completedIndex)
+	{
+		if (!m_eventSerializer.isDictionaryNearlyFull())
+			return;
+
+		if (!m_serializeLock.writeLock().tryLock())
+			return;
+
+		try
+		{
+			synchronized (m_lock)
+			{
+				long headIndex = m_bigArray.getHeadIndex();
+				if (incrementIndex(completedIndex) == headIndex && m_nextIndex == headIndex)
+				{
+					flush();
+					m_eventSerializer.resetDictionary(headIndex);
+				}
+			}
+		}
+		finally
 		{
-			long index = -1L;
-			//Add data to bigArray first
-			index = m_bigArray.append(eventBytes);
-			//Then stick it into the in memory queue
-			m_memoryQueue.add(new IndexedEvent(dataPointEvent, index));
-
-			//Notify the reader thread if it is waiting for data
-			m_lock.notify();
+			m_serializeLock.writeLock().unlock();
 		}
 	}
 
@@ -317,6 +414,8 @@ public class FileQueueProcessor extends QueueProcessor
 				m_childCallBack.complete();
 				//Checkpoint big queue
 				m_bigArray.removeBeforeIndex(m_completionIndex);
+				flush();
+				resetDictionaryIfDrained(m_completionIndex);
 			}
 		}
 	}
@@ -72,6 +72,16 @@ public abstract class QueueProcessor implements KairosMetricReporter
 
 	public abstract void put(DataPointEvent dataPointEvent);
 
+	/**
+	 Adds a batch of events to the queue.  Implementations should override this
+	 to add the whole batch at once.
+	 */
+	public void put(List<DataPointEvent> dataPointEvents)
+	{
+		for (DataPointEvent dataPointEvent : dataPointEvents)
+			put(dataPointEvent);
+	}
+
 	/**
 	 @return Returns a Pair containing the latest index
 	 and a list of events from the queue, maybe empty
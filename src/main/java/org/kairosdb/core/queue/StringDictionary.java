@@ -0,0 +1,250 @@
+package org.kairosdb.core.queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ Assigns ids to strings and keeps them in an append only file so events
+ written with the ids can still be read after a restart.  Ids are only
+ reused after a reset.  Once maxSize strings have been added getId returns 0
+ for new strings and the caller has to write them out in full.
+
+ The file is a header followed by one writeUTF record per string, the id of a
+ string is its position in the file starting at 1.  The header holds the
+ first queue index written with the dictionary, events before it used a
+ dictionary that has since been reset.
+
+ New strings are buffered, flush is called when the queue file is flushed.
+ */
+public class StringDictionary
+{
+	public static final Logger logger = LoggerFactory.getLogger(StringDictionary.class);
+
+	private static final int MAGIC = 0x4B534443; //KSDC
+	private static final int FORMAT_VERSION = 2;
+
+	private final ConcurrentHashMap<String, Integer> m_ids = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Integer, String> m_strings = new ConcurrentHashMap<>();
+	private final int m_maxSize;
+	private final Object m_writeLock = new Object();
+	private final File m_file;
+	private DataOutputStream m_output;
+	private int m_nextId = 1;
+	private volatile long m_firstIndex;
+
+	public StringDictionary(File file, int maxSize) throws IOException
+	{
+		m_file = file;
+		m_maxSize = maxSize;
+
+		long validLength = 0;
+		if (file.exists() && file.length() > 0)
+			validLength = load(file);
+
+		if (validLength == 0)
+		{
+			file.getAbsoluteFile().getParentFile().mkdirs();
+			createFile();
+		}
+		else
+		{
+			//Drop a partial record left by a crash
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+			{
+				raf.setLength(validLength);
+			}
+
+			m_output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		}
+	}
+
+	private void createFile() throws IOException
+	{
+		m_output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(m_file)));
+		m_output.writeInt(MAGIC);
+		m_output.writeInt(FORMAT_VERSION);
+		m_output.writeLong(m_firstIndex);
+		m_output.flush();
+	}
+
+	/**
+	 Reads the strings in the file and returns the length of the valid part of
+	 the file, 0 if it can not be used.
+	 */
+	private long load(File file) throws IOException
+	{
+		long validLength = 0;
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			int magic = input.readInt();
+			int version = input.readInt();
+			if (magic != MAGIC || (version != 1 && version != FORMAT_VERSION))
+			{
+				logger.warn("Unrecognized string dictionary " + file.getPath() + ", starting a new one");
+				return (0);
+			}
+
+			//Version 1 did not have a first index
+			if (version == FORMAT_VERSION)
+				m_firstIndex = input.readLong();
+
+			validLength = (version == FORMAT_VERSION ? 16 : 8);
+
+			while (true)
+			{
+				String str = input.readUTF();
+				addString(str);
+				validLength += 2 + utfLength(str);
+			}
+		}
+		catch (EOFException e)
+		{
+			//End of the file
+		}
+
+		return (validLength);
+	}
+
+	private static int utfLength(String str)
+	{
+		int length = 0;
+		for (int i = 0; i < str.length(); i++)
+		{
+			char c = str.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F)
+				length ++;
+			else if (c > 0x07FF)
+				length += 3;
+			else
+				length += 2;
+		}
+
+		return (length);
+	}
+
+	private void addString(String str)
+	{
+		int id = m_nextId++;
+		m_ids.put(str, id);
+		m_strings.put(id, str);
+	}
+
+	/**
+	 Returns the id for the string, adding it if there is room, or 0 if the
+	 string has to be written out in full.
+	 */
+	public int getId(String str)
+	{
+		Integer id = m_ids.get(str);
+		if (id != null)
+			return (id);
+
+		//writeUTF can not store strings this long
+		if (utfLength(str) > 0xFFFF)
+			return (0);
+
+		synchronized (m_writeLock)
+		{
+			id = m_ids.get(str);
+			if (id != null)
+				return (id);
+
+			if (m_ids.size() >= m_maxSize)
+				return (0);
+
+			try
+			{
+				m_output.writeUTF(str);
+			}
+			catch (IOException e)
+			{
+				logger.error("Unable to write to string dictionary", e);
+				return (0);
+			}
+
+			//Only visible to other threads once it is written
+			int newId = m_nextId;
+			m_strings.put(newId, str);
+			m_ids.put(str, newId);
+			m_nextId++;
+
+			return (newId);
+		}
+	}
+
+	/**
+	 Returns the string for the id or null if the id is unknown.
+	 */
+	public String getString(int id)
+	{
+		return (m_strings.get(id));
+	}
+
+	public int size()
+	{
+		return (m_ids.size());
+	}
+
+	/**
+	 True once at least 90% of maxSize strings have been added.
+	 */
+	public boolean isNearlyFull()
+	{
+		return (m_ids.size() >= m_maxSize - m_maxSize / 10);
+	}
+
+	/**
+	 First queue index written after the last reset, events before it can not
+	 be read with this dictionary.
+	 */
+	public long getFirstIndex()
+	{
+		return (m_firstIndex);
+	}
+
+	/**
+	 Removes every string and starts the file over.  The caller makes sure
+	 no event still in the queue uses the old ids.
+	 @param firstIndex queue index the next event will be written at
+	 */
+	public void reset(long firstIndex) throws IOException
+	{
+		synchronized (m_writeLock)
+		{
+			m_output.close();
+			m_ids.clear();
+			m_strings.clear();
+			m_nextId = 1;
+			m_firstIndex = firstIndex;
+			createFile();
+		}
+	}
+
+	public void flush() throws IOException
+	{
+		synchronized (m_writeLock)
+		{
+			m_output.flush();
+		}
+	}
+
+	public void close() throws IOException
+	{
+		synchronized (m_writeLock)
+		{
+			m_output.close();
+		}
+	}
+}
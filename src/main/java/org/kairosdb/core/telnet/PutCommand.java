@@ -18,13 +18,9 @@ package org.kairosdb.core.telnet;
 
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
-import org.jboss.netty.channel.Channel;
 import org.kairosdb.core.datapoints.DoubleDataPointFactory;
 import org.kairosdb.core.datapoints.LongDataPointFactory;
-import org.kairosdb.core.exception.DatastoreException;
 import org.kairosdb.eventbus.EventBusWithFilters;
-import org.kairosdb.util.Util;
-import org.kairosdb.util.ValidationException;
 
 public class PutCommand extends PutMillisecondCommand
 {
@@ -36,15 +32,14 @@ public class PutCommand extends PutMillisecondCommand
 	}
 
 	@Override
-	public void execute(Channel chan, String[] command) throws DatastoreException, ValidationException
+	protected long getTimestamp(long timestamp)
 	{
-		long timestamp = Util.parseLong(command[2]);
 		//Backwards compatible hack for the next 30 years
 		//This allows clients to send seconds to us
 		if (timestamp < 3000000000L)
 			timestamp *= 1000;
 
-		execute(command, timestamp);
+		return (timestamp);
 	}
 
 	@Override
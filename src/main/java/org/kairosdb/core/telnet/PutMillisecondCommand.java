@@ -27,6 +27,7 @@ import org.kairosdb.core.datapoints.LongDataPointFactory;
 import org.kairosdb.core.exception.DatastoreException;
 import org.kairosdb.core.reporting.KairosMetricReporter;
 import org.kairosdb.eventbus.EventBusWithFilters;
+import org.kairosdb.events.DataPointBatchEvent;
 import org.kairosdb.events.DataPointEvent;
 import org.kairosdb.util.Tags;
 import org.kairosdb.util.Util;
@@ -62,10 +63,37 @@ public class PutMillisecondCommand implements TelnetCommand, KairosMetricReporte
 	@Override
 	public void execute(Channel chan, String[] command) throws DatastoreException, ValidationException
 	{
-		long timestamp = Util.parseLong(command[2]);
+		long timestamp = getTimestamp(Util.parseLong(command[2]));
 		execute(command, timestamp);
 	}
 
+	/**
+	 Converts the timestamp sent with the command to milliseconds.
+	 */
+	protected long getTimestamp(long timestamp)
+	{
+		return (timestamp);
+	}
+
+	DataPoint createDataPoint(long timestamp, long value)
+	{
+		return (m_longFactory.createDataPoint(timestamp, value));
+	}
+
+	DataPoint createDataPoint(long timestamp, double value)
+	{
+		return (m_doubleFactory.createDataPoint(timestamp, value));
+	}
+
+	/**
+	 Posts data points parsed by TelnetLineDecoder for this command.
+	 */
+	void postBatch(List<DataPointEvent> events)
+	{
+		m_counter.addAndGet(events.size());
+		m_eventBus.post(new DataPointBatchEvent(events));
+	}
+
 	protected void execute(String[] command, long timestamp) throws ValidationException, DatastoreException
 	{
 		Validator.validateNotNullOrEmpty("metricName", command[1]);
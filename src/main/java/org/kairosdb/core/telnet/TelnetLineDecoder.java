@@ -0,0 +1,434 @@
+package org.kairosdb.core.telnet;
+
+import com.google.common.collect.ImmutableSortedMap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.events.DataPointEvent;
+import org.kairosdb.util.Tags;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ Splits telnet input into lines and parses put and putm lines straight out of
+ the channel buffer.  Consecutive lines for the same put command are returned
+ together as one PutBatch, any other line is returned split into words the
+ way WordSplitter does it.  Lines the fast path does not understand are also
+ passed on as words so the command reports the error as it always has.
+
+ The metric name and tags of a line are looked up by their raw bytes in small
+ per connection caches so a client sending the same series over and over does
+ not create new strings and tag maps for every data point.
+
+ Keeps state so each channel needs its own instance.
+ */
+public class TelnetLineDecoder extends FrameDecoder
+{
+	private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+	private static final String TTL_TAG = "kairos_opt.ttl";
+	private static final int CACHE_SIZE = 1024;
+
+	public static final int MAX_BATCH_SIZE = 1000;
+
+	private static final boolean[] WHITESPACE = new boolean[256];
+
+	static
+	{
+		for (int i = 0; i < WHITESPACE.length; i++)
+			WHITESPACE[i] = Character.isWhitespace((char) i);
+	}
+
+	private static final SeriesTags NO_TAGS = new SeriesTags(
+			Tags.create().put("add", "tag").build(), 0);
+
+	private final int m_maxCommandLength;
+	private final PutMillisecondCommand m_putCommand;
+	private final PutMillisecondCommand m_putmCommand;
+	private final ByteKeyCache<String> m_metricNames = new ByteKeyCache<>(CACHE_SIZE);
+	private final ByteKeyCache<SeriesTags> m_tags = new ByteKeyCache<>(CACHE_SIZE);
+
+	private boolean m_discarding;
+
+	//Word boundaries of the current line
+	private int[] m_wordStarts = new int[16];
+	private int[] m_wordEnds = new int[16];
+	private int m_wordCount;
+
+	public TelnetLineDecoder(int maxCommandLength, CommandProvider commandProvider)
+	{
+		m_maxCommandLength = maxCommandLength;
+		m_putCommand = getPutCommand(commandProvider, "put");
+		m_putmCommand = getPutCommand(commandProvider, "putm");
+	}
+
+	private static PutMillisecondCommand getPutCommand(CommandProvider commandProvider, String name)
+	{
+		TelnetCommand command = commandProvider.getCommand(name);
+		if (command instanceof PutMillisecondCommand)
+			return ((PutMillisecondCommand) command);
+
+		return (null);
+	}
+
+	@Override
+	protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception
+	{
+		PutBatch batch = null;
+
+		while (buffer.readable())
+		{
+			int lineStart = buffer.readerIndex();
+			int lineEnd = buffer.indexOf(lineStart, buffer.writerIndex(), (byte) '\n');
+
+			if (lineEnd == -1)
+			{
+				if (buffer.readableBytes() > m_maxCommandLength)
+				{
+					//Drop everything up to the next new line
+					m_discarding = true;
+					buffer.skipBytes(buffer.readableBytes());
+				}
+				break;
+			}
+
+			int contentEnd = lineEnd;
+			if (contentEnd > lineStart && buffer.getByte(contentEnd - 1) == '\r')
+				contentEnd--;
+
+			if (m_discarding || (contentEnd - lineStart) > m_maxCommandLength)
+			{
+				if (batch != null)
+					return (batch);
+
+				m_discarding = false;
+				buffer.readerIndex(lineEnd + 1);
+				Channels.fireExceptionCaught(ctx, new TooLongFrameException(
+						"frame length exceeds " + m_maxCommandLength));
+				continue;
+			}
+
+			splitWords(buffer, lineStart, contentEnd);
+			PutMillisecondCommand command = getFastPathCommand(buffer);
+			DataPointEvent event = null;
+			if (command != null)
+				event = parsePut(command, buffer);
+
+			if (event == null)
+			{
+				//The line is read again by the next call
+				if (batch != null)
+					return (batch);
+
+				buffer.readerIndex(lineEnd + 1);
+				return (WordSplitter.splitString(buffer.toString(lineStart, contentEnd - lineStart, CHARSET)));
+			}
+
+			if (batch == null)
+				batch = new PutBatch(command);
+			else if (batch.getCommand() != command)
+				return (batch);
+
+			batch.add(event);
+			buffer.readerIndex(lineEnd + 1);
+
+			if (batch.size() >= MAX_BATCH_SIZE)
+				break;
+		}
+
+		return (batch);
+	}
+
+	private void splitWords(ChannelBuffer buffer, int start, int end)
+	{
+		m_wordCount = 0;
+		boolean lastWasSpace = true;
+		for (int i = start; i < end; i++)
+		{
+			boolean space = WHITESPACE[buffer.getByte(i) & 0xFF];
+			if (space && !lastWasSpace)
+				m_wordEnds[m_wordCount++] = i;
+			else if (!space && lastWasSpace)
+			{
+				if (m_wordCount == m_wordStarts.length)
+				{
+					m_wordStarts = Arrays.copyOf(m_wordStarts, m_wordCount * 2);
+					m_wordEnds = Arrays.copyOf(m_wordEnds, m_wordCount * 2);
+				}
+				m_wordStarts[m_wordCount] = i;
+			}
+
+			lastWasSpace = space;
+		}
+
+		if (!lastWasSpace)
+			m_wordEnds[m_wordCount++] = end;
+	}
+
+	private PutMillisecondCommand getFastPathCommand(ChannelBuffer buffer)
+	{
+		if (m_wordCount < 4)
+			return (null);
+
+		int start = m_wordStarts[0];
+		int length = m_wordEnds[0] - start;
+		if ((length != 3 && length != 4) || buffer.getByte(start) != 'p' ||
+				buffer.getByte(start + 1) != 'u' || buffer.getByte(start + 2) != 't')
+			return (null);
+
+		if (length == 3)
+			return (m_putCommand);
+		else if (buffer.getByte(start + 3) == 'm')
+			return (m_putmCommand);
+		else
+			return (null);
+	}
+
+	/**
+	 Returns null if the line has to go through the command instead.
+	 */
+	private DataPointEvent parsePut(PutMillisecondCommand command, ChannelBuffer buffer)
+	{
+		try
+		{
+			long timestamp = command.getTimestamp(parseLong(buffer, m_wordStarts[2], m_wordEnds[2]));
+
+			DataPoint dataPoint;
+			int valueStart = m_wordStarts[3];
+			int valueEnd = m_wordEnds[3];
+			if (buffer.indexOf(valueStart, valueEnd, (byte) '.') != -1)
+				dataPoint = command.createDataPoint(timestamp,
+						Double.parseDouble(buffer.toString(valueStart, valueEnd - valueStart, CHARSET)));
+			else
+				dataPoint = command.createDataPoint(timestamp, parseLong(buffer, valueStart, valueEnd));
+
+			SeriesTags tags = getTags(buffer);
+			if (tags == null)
+				return (null);
+
+			int nameStart = m_wordStarts[1];
+			int nameEnd = m_wordEnds[1];
+			String metricName = m_metricNames.get(buffer, nameStart, nameEnd);
+			if (metricName == null)
+			{
+				metricName = buffer.toString(nameStart, nameEnd - nameStart, CHARSET);
+				m_metricNames.put(buffer, nameStart, nameEnd, metricName);
+			}
+
+			return (new DataPointEvent(metricName, tags.getTags(), dataPoint, tags.getTtl()));
+		}
+		catch (NumberFormatException e)
+		{
+			return (null);
+		}
+	}
+
+	/**
+	 Parses the same numbers as Util.parseLong, longer ones are left to it.
+	 */
+	private static long parseLong(ChannelBuffer buffer, int start, int end)
+	{
+		boolean negative = buffer.getByte(start) == '-';
+		int index = negative ? start + 1 : start;
+		if (index == end || end - index > 18)
+			throw new NumberFormatException();
+
+		long value = 0;
+		for (; index < end; index++)
+		{
+			int digit = buffer.getByte(index) - '0';
+			if (digit < 0 || digit > 9)
+				throw new NumberFormatException();
+
+			value = value * 10 + digit;
+		}
+
+		return (negative ? -value : value);
+	}
+
+	private SeriesTags getTags(ChannelBuffer buffer)
+	{
+		if (m_wordCount == 4)
+			return (NO_TAGS);
+
+		int start = m_wordStarts[4];
+		int end = m_wordEnds[m_wordCount - 1];
+		SeriesTags tags = m_tags.get(buffer, start, end);
+		if (tags == null)
+		{
+			tags = parseTags(buffer);
+			if (tags != null)
+				m_tags.put(buffer, start, end, tags);
+		}
+
+		return (tags);
+	}
+
+	private SeriesTags parseTags(ChannelBuffer buffer)
+	{
+		ImmutableSortedMap.Builder<String, String> builder = Tags.create();
+		int ttl = 0;
+		int tagCount = 0;
+
+		for (int i = 4; i < m_wordCount; i++)
+		{
+			int start = m_wordStarts[i];
+			int end = m_wordEnds[i];
+			int separator = buffer.indexOf(start, end, (byte) '=');
+
+			//Anything other than name=value is left for the command to report
+			if (separator <= start || separator == end - 1 ||
+					buffer.indexOf(separator + 1, end, (byte) '=') != -1)
+				return (null);
+
+			String name = buffer.toString(start, separator - start, CHARSET);
+			String value = buffer.toString(separator + 1, end - separator - 1, CHARSET);
+			if (TTL_TAG.equals(name))
+				ttl = Integer.parseInt(value);
+			else
+			{
+				builder.put(name, value);
+				tagCount++;
+			}
+		}
+
+		if (tagCount == 0)
+			return (ttl == 0 ? NO_TAGS : new SeriesTags(NO_TAGS.getTags(), ttl));
+
+		try
+		{
+			return (new SeriesTags(builder.build(), ttl));
+		}
+		catch (IllegalArgumentException e)
+		{
+			//Duplicate tag name
+			return (null);
+		}
+	}
+
+	/**
+	 Data points from consecutive lines of one put command.
+	 */
+	public static class PutBatch
+	{
+		private final PutMillisecondCommand m_command;
+		private final List<DataPointEvent> m_events = new ArrayList<>();
+
+		private PutBatch(PutMillisecondCommand command)
+		{
+			m_command = command;
+		}
+
+		public PutMillisecondCommand getCommand()
+		{
+			return (m_command);
+		}
+
+		public List<DataPointEvent> getEvents()
+		{
+			return (m_events);
+		}
+
+		private void add(DataPointEvent event)
+		{
+			m_events.add(event);
+		}
+
+		public int size()
+		{
+			return (m_events.size());
+		}
+
+		public void post()
+		{
+			m_command.postBatch(m_events);
+		}
+	}
+
+	private static class SeriesTags
+	{
+		private final ImmutableSortedMap<String, String> m_tags;
+		private final int m_ttl;
+
+		private SeriesTags(ImmutableSortedMap<String, String> tags, int ttl)
+		{
+			m_tags = tags;
+			m_ttl = ttl;
+		}
+
+		public ImmutableSortedMap<String, String> getTags()
+		{
+			return (m_tags);
+		}
+
+		public int getTtl()
+		{
+			return (m_ttl);
+		}
+	}
+
+	/**
+	 Direct mapped cache keyed by a range of bytes in a buffer, a new entry
+	 replaces whatever was in its slot.
+	 */
+	private static class ByteKeyCache<V>
+	{
+		private final byte[][] m_keys;
+		private final int[] m_hashes;
+		private final Object[] m_values;
+		private final int m_mask;
+
+		private ByteKeyCache(int size)
+		{
+			m_keys = new byte[size][];
+			m_hashes = new int[size];
+			m_values = new Object[size];
+			m_mask = size - 1;
+		}
+
+		private static int hash(ChannelBuffer buffer, int start, int end)
+		{
+			int hash = 1;
+			for (int i = start; i < end; i++)
+				hash = 31 * hash + buffer.getByte(i);
+
+			return (hash ^ (hash >>> 16));
+		}
+
+		@SuppressWarnings("unchecked")
+		public V get(ChannelBuffer buffer, int start, int end)
+		{
+			int hash = hash(buffer, start, end);
+			int slot = hash & m_mask;
+			byte[] key = m_keys[slot];
+			if (key == null || m_hashes[slot] != hash || key.length != end - start)
+				return (null);
+
+			for (int i = 0; i < key.length; i++)
+			{
+				if (key[i] != buffer.getByte(start + i))
+					return (null);
+			}
+
+			return ((V) m_values[slot]);
+		}
+
+		public void put(ChannelBuffer buffer, int start, int end, V value)
+		{
+			int hash = hash(buffer, start, end);
+			int slot = hash & m_mask;
+			byte[] key = new byte[end - start];
+			buffer.getBytes(start, key);
+
+			m_keys[slot] = key;
+			m_hashes[slot] = hash;
+			m_values[slot] = value;
+		}
+	}
+}
@@ -33,7 +33,12 @@ import org.slf4j.LoggerFactory;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -43,12 +48,29 @@ public class TelnetServer extends SimpleChannelUpstreamHandler implements Channe
 {
 	private static final Logger logger = LoggerFactory.getLogger(TelnetServer.class);
 
+	public static final String BATCH_INGEST_PROP = "kairosdb.telnetserver.batch_ingest";
+	public static final String INGEST_THREADS_PROP = "kairosdb.telnetserver.ingest_threads";
+
+	//Batches waiting for each ingest thread before the I/O thread has to wait
+	private static final int INGEST_QUEUE_SIZE = 64;
+
 	private final int port;
 	private final CommandProvider commandProvider;
 	private final int maxCommandLength;
 
 	private InetAddress address;
 	private ServerBootstrap serverBootstrap;
+	//Each connection always uses the same single threaded executor so its
+	//batches are posted in the order they were read
+	private ThreadPoolExecutor[] ingestExecutors;
+
+	@Inject(optional = true)
+	@Named(BATCH_INGEST_PROP)
+	private boolean batchIngest = false;
+
+	@Inject(optional = true)
+	@Named(INGEST_THREADS_PROP)
+	private int ingestThreads = 2;
 
 	public TelnetServer(int port,
 			int maxCommandLength,
@@ -79,10 +101,18 @@ public class TelnetServer extends SimpleChannelUpstreamHandler implements Channe
 		ChannelPipeline pipeline = Channels.pipeline();
 
 		// Add the text line codec combination first,
-		DelimiterBasedFrameDecoder frameDecoder = new DelimiterBasedFrameDecoder(
-				maxCommandLength, Delimiters.lineDelimiter());
-		pipeline.addLast("framer", frameDecoder);
-		pipeline.addLast("decoder", new WordSplitter());
+		if (batchIngest)
+		{
+			// put and putm lines are parsed in place and handed over in batches
+			pipeline.addLast("framer", new TelnetLineDecoder(maxCommandLength, commandProvider));
+		}
+		else
+		{
+			DelimiterBasedFrameDecoder frameDecoder = new DelimiterBasedFrameDecoder(
+					maxCommandLength, Delimiters.lineDelimiter());
+			pipeline.addLast("framer", frameDecoder);
+			pipeline.addLast("decoder", new WordSplitter());
+		}
 		pipeline.addLast("encoder", new StringEncoder());
 
 		// and then business logic.
@@ -105,7 +135,11 @@ public class TelnetServer extends SimpleChannelUpstreamHandler implements Channe
 	                            final MessageEvent msgevent)
 	{
 		final Object message = msgevent.getMessage();
-		if (message instanceof String[])
+		if (message instanceof TelnetLineDecoder.PutBatch)
+		{
+			postBatch(msgevent.getChannel(), (TelnetLineDecoder.PutBatch) message);
+		}
+		else if (message instanceof String[])
 		{
 			String[] command = (String[]) message;
 
@@ -139,6 +173,71 @@ public class TelnetServer extends SimpleChannelUpstreamHandler implements Channe
 		}
 	}
 
+	/**
+	 Posts the batch from the ingest thread of the channel so the I/O thread
+	 can go back to reading.  When the ingest thread falls behind the I/O
+	 thread waits for room in its queue which slows down reading from the
+	 client.
+	 */
+	private void postBatch(Channel channel, final TelnetLineDecoder.PutBatch batch)
+	{
+		Runnable post = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					batch.post();
+				}
+				catch (Exception e)
+				{
+					logger.error("Failed to post " + batch.size() + " data points", e);
+				}
+			}
+		};
+
+		ThreadPoolExecutor[] executors = ingestExecutors;
+		if (executors != null)
+			executors[(channel.getId() & Integer.MAX_VALUE) % executors.length].execute(post);
+		else
+			post.run();
+	}
+
+	/**
+	 Waits for room in the queue instead of running the batch on the I/O
+	 thread, which would let it pass batches that are still queued.
+	 */
+	private static class WaitForQueuePolicy implements RejectedExecutionHandler
+	{
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+		{
+			if (executor.isShutdown())
+			{
+				r.run();
+				return;
+			}
+
+			try
+			{
+				executor.getQueue().put(r);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 Turns on parsing put and putm lines in place and posting them in batches.
+	 */
+	void setBatchIngest(boolean batchIngest)
+	{
+		this.batchIngest = batchIngest;
+	}
+
 	private static void log(String message, ChannelHandlerContext ctx)
 	{
 		log(message, ctx, null);
@@ -161,6 +260,20 @@ public class TelnetServer extends SimpleChannelUpstreamHandler implements Channe
 	@Override
 	public void start() throws KairosDBException
 	{
+		if (batchIngest)
+		{
+			checkArgument(ingestThreads > 0, "ingest threads must be greater than zero");
+			ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("telnet-ingest-%d").build();
+			ThreadPoolExecutor[] executors = new ThreadPoolExecutor[ingestThreads];
+			for (int i = 0; i < executors.length; i++)
+			{
+				executors[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+						new ArrayBlockingQueue<Runnable>(INGEST_QUEUE_SIZE), threadFactory,
+						new WaitForQueuePolicy());
+			}
+			ingestExecutors = executors;
+		}
+
 		// Configure the server.
 		serverBootstrap = new ServerBootstrap(
 				new NioServerSocketChannelFactory(
@@ -187,6 +300,31 @@ public class TelnetServer extends SimpleChannelUpstreamHandler implements Channe
 	{
 		if (serverBootstrap != null)
 			serverBootstrap.shutdown();
+
+		if (ingestExecutors != null)
+		{
+			//Let queued batches reach the datastore before it is stopped
+			for (ThreadPoolExecutor executor : ingestExecutors)
+				executor.shutdown();
+
+			try
+			{
+				long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+				for (ThreadPoolExecutor executor : ingestExecutors)
+				{
+					if (!executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+					{
+						logger.warn("Telnet ingest threads did not finish posting data points");
+						break;
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			ingestExecutors = null;
+		}
 	}
 
 	private static String formatCommand(String[] command)
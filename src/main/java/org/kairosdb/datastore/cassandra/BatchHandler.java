@@ -1,6 +1,10 @@
 package org.kairosdb.datastore.cassandra;
 
+import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
 import com.datastax.driver.core.exceptions.UnavailableException;
@@ -17,6 +21,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -37,7 +43,7 @@ public class BatchHandler implements Callable<Boolean>
 	private final List<DataPointEvent> m_events;
 	private final EventCompletionCallBack m_callBack;
 	private final int m_defaultTtl;
-	private final DataCache<DataPointsRowKey> m_rowKeyCache;
+	private final RowKeyCache m_rowKeyCache;
 	private final DataCache<String> m_metricNameCache;
 	private final EventBusWithFilters m_eventBus;
 	private final boolean m_fullBatch;
@@ -46,18 +52,34 @@ public class BatchHandler implements Callable<Boolean>
 	private final Schema m_schema;
 	private final BatchStats m_batchStats;
 	private final LoadBalancingPolicy m_loadBalancingPolicy;
-
+	private final InFlightLimiter m_inFlightLimiter;
+	private final BlockWindows m_blockWindows;
+	private final RowWidths m_rowWidths;
+
+	//Row keys and metric names this attempt added to the caches, they are
+	//taken out again if the attempt fails so the retry writes them
+	private final List<DataPointsRowKey> m_newRowKeys = new ArrayList<>();
+	private final List<String> m_newMetricNames = new ArrayList<>();
+
+	/**
+	 @param blockWindows tracks the windows to be sealed into blocks, null when
+	                     block storage is not enabled
+	 */
 	public BatchHandler(List<DataPointEvent> events, EventCompletionCallBack callBack,
-			int defaultTtl, ConsistencyLevel consistencyLevel, DataCache<DataPointsRowKey>
+			int defaultTtl, ConsistencyLevel consistencyLevel, RowKeyCache
 			rowKeyCache, DataCache<String> metricNameCache, EventBusWithFilters eventBus,
 			Session session, Schema schema,
-			boolean fullBatch, BatchStats batchStats, LoadBalancingPolicy loadBalancingPolicy)
+			boolean fullBatch, BatchStats batchStats, LoadBalancingPolicy loadBalancingPolicy,
+			InFlightLimiter inFlightLimiter, BlockWindows blockWindows, RowWidths rowWidths)
 	{
 		m_consistencyLevel = consistencyLevel;
 		m_session = session;
 		m_schema = schema;
 		m_batchStats = batchStats;
 		m_loadBalancingPolicy = loadBalancingPolicy;
+		m_inFlightLimiter = inFlightLimiter;
+		m_blockWindows = blockWindows;
+		m_rowWidths = rowWidths;
 
 		m_events = events;
 		m_callBack = callBack;
@@ -76,6 +98,8 @@ public class BatchHandler implements Callable<Boolean>
 	private void loadBatch(int limit, CQLBatch batch, Iterator<DataPointEvent> events) throws Exception
 	{
 		int count = 0;
+		//New row keys waiting on the width already stored for their row
+		List<PendingRowKey> pendingRowKeys = new ArrayList<>();
 		while (events.hasNext() && count < limit)
 		{
 			DataPointEvent event = events.next();
@@ -95,23 +119,33 @@ public class BatchHandler implements Callable<Boolean>
 			if (0 == ttl)
 				ttl = m_defaultTtl;
 
+			long rowWidth = m_rowWidths.getRowWidth(metricName);
 			int rowKeyTtl = 0;
-			//Row key will expire 3 weeks after the data in the row expires
+			//Row key will expire one row width after the data in the row expires
 			if (ttl != 0)
-				rowKeyTtl = ttl + ((int) (ROW_WIDTH / 1000));
+				rowKeyTtl = ttl + ((int) (rowWidth / 1000));
 
-			long rowTime = calculateRowTime(dataPoint.getTimestamp());
+			long rowTime = calculateRowTime(dataPoint.getTimestamp(), rowWidth);
 
 			rowKey = new DataPointsRowKey(metricName, rowTime, dataPoint.getDataStoreDataType(),
 					tags);
+			rowKey.setRowWidth(rowWidth);
 
 			//Write out the row key if it is not cached
 			DataPointsRowKey cachedKey = m_rowKeyCache.cacheItem(rowKey);
 			if (cachedKey == null)
 			{
-				batch.addRowKey(metricName, rowKey, rowKeyTtl);
+				m_newRowKeys.add(rowKey);
 
-				m_eventBus.post(new RowKeyEvent(metricName, rowKey, rowKeyTtl));
+				//A wider row may already be written at this row time, its width is kept
+				if (m_rowWidths.getMaxRowWidth(metricName, rowTime) > rowWidth)
+					pendingRowKeys.add(new PendingRowKey(rowKey, ttl, queryRowWidth(rowKey)));
+				else
+				{
+					batch.addRowKey(metricName, rowKey, rowKeyTtl);
+
+					m_eventBus.post(new RowKeyEvent(metricName, rowKey, rowKeyTtl));
+				}
 			}
 			else
 				rowKey = cachedKey;
@@ -120,6 +154,7 @@ public class BatchHandler implements Callable<Boolean>
 			String cachedName = m_metricNameCache.cacheItem(metricName);
 			if (cachedName == null)
 			{
+				m_newMetricNames.add(metricName);
 				if (metricName.length() == 0)
 				{
 					logger.warn(
@@ -133,10 +168,93 @@ public class BatchHandler implements Callable<Boolean>
 			int columnTime = getColumnName(rowTime, dataPoint.getTimestamp());
 
 			batch.addDataPoint(rowKey, columnTime, dataPoint, ttl);
+
+			if (m_blockWindows != null)
+				m_blockWindows.dataPointWritten(rowKey, dataPoint.getTimestamp());
+		}
+
+		//The width queries ran while the rest of the batch was loaded
+		for (PendingRowKey pending : pendingRowKeys)
+		{
+			DataPointsRowKey rowKey = pending.m_rowKey;
+			long rowWidth = Math.max(rowKey.getRowWidth(), getStoredRowWidth(pending.m_widthQuery));
+			int rowKeyTtl = 0;
+			if (pending.m_ttl != 0)
+				rowKeyTtl = pending.m_ttl + ((int) (rowWidth / 1000));
+
+			//The cached row key keeps the width its row time was calculated with
+			if (rowWidth != rowKey.getRowWidth())
+			{
+				rowKey = new DataPointsRowKey(rowKey.getMetricName(), rowKey.getTimestamp(),
+						rowKey.getDataType(), rowKey.getTags());
+				rowKey.setRowWidth(rowWidth);
+			}
+
+			batch.addRowKey(rowKey.getMetricName(), rowKey, rowKeyTtl);
+
+			m_eventBus.post(new RowKeyEvent(rowKey.getMetricName(), rowKey, rowKeyTtl));
 		}
 	}
 
 
+	/**
+	 Creates the batch the statements are added to.
+	 */
+	CQLBatch createBatch()
+	{
+		return (new CQLBatch(m_consistencyLevel, m_session, m_schema,
+				m_batchStats, m_loadBalancingPolicy, m_inFlightLimiter));
+	}
+
+	/**
+	 Takes the row keys and metric names of a failed attempt out of the caches.
+	 */
+	private void uncacheNewItems()
+	{
+		for (DataPointsRowKey rowKey : m_newRowKeys)
+			m_rowKeyCache.removeItem(rowKey);
+
+		for (String metricName : m_newMetricNames)
+			m_metricNameCache.removeKey(metricName);
+
+		m_newRowKeys.clear();
+		m_newMetricNames.clear();
+	}
+
+	/**
+	 Starts reading the width stored with the row key.
+	 */
+	ResultSetFuture queryRowWidth(DataPointsRowKey rowKey)
+	{
+		BoundStatement statement = new BoundStatement(m_schema.psRowKeyWidthQuery);
+		statement.setString(0, rowKey.getMetricName());
+		statement.setTimestamp(1, new Date(rowKey.getTimestamp()));
+		statement.setString(2, rowKey.getDataType());
+		statement.setMap(3, rowKey.getTags());
+		statement.setConsistencyLevel(m_consistencyLevel);
+
+		return (m_session.executeAsync(statement));
+	}
+
+	/**
+	 Width stored with the row key, rows written before widths were stored are
+	 ROW_WIDTH wide.
+	 @return 0 if the row key does not exist
+	 */
+	private static long getStoredRowWidth(ResultSetFuture widthQuery)
+	{
+		ResultSet resultSet = widthQuery.getUninterruptibly();
+		Row row = resultSet.one();
+		if (row == null)
+			return (0);
+
+		String rowWidth = row.getString(0);
+		if (rowWidth == null)
+			return (ROW_WIDTH);
+
+		return (Long.parseLong(rowWidth));
+	}
+
 	@Override
 	public Boolean call() throws Exception
 	{
@@ -150,37 +268,45 @@ public class BatchHandler implements Callable<Boolean>
 
 			//Used to reduce batch size with each retry
 			limit = m_events.size() / divisor;
+			m_newRowKeys.clear();
+			m_newMetricNames.clear();
 			try
 			{
 				Iterator<DataPointEvent> events = m_events.iterator();
+				List<ResultSetFuture> futures = new ArrayList<>();
 
 				while (events.hasNext())
 				{
-					CQLBatch batch = new CQLBatch(m_consistencyLevel, m_session, m_schema,
-							m_batchStats, m_loadBalancingPolicy);
+					CQLBatch batch = createBatch();
 
 					loadBatch(limit, batch, events);
 
-					batch.submitBatch();
-
+					futures.addAll(batch.submitBatch());
 				}
 
+				//Wait for every batch so failures, including row key writes, cause a retry
+				for (ResultSetFuture future : futures)
+					future.getUninterruptibly();
+
 			}
 			//If More exceptions are added to retry they need to be added to AdaptiveExecutorService
 			catch (NoHostAvailableException nae)
 			{
 				//Throw this out so the back off retry can happen
+				uncacheNewItems();
 				logger.error(nae.getMessage());
 				throw nae;
 			}
 			catch (UnavailableException ue)
 			{
 				//Throw this out so the back off retry can happen
+				uncacheNewItems();
 				logger.error(ue.getMessage());
 				throw ue;
 			}
 			catch (Exception e)
 			{
+				uncacheNewItems();
 				if ("Batch too large".equals(e.getMessage()))
 					logger.warn("Batch size is too large");
 				else
@@ -236,4 +362,18 @@ public class BatchHandler implements Callable<Boolean>
 
 		return m_fullBatch;
 	}
+
+	private static class PendingRowKey
+	{
+		private final DataPointsRowKey m_rowKey;
+		private final int m_ttl;
+		private final ResultSetFuture m_widthQuery;
+
+		private PendingRowKey(DataPointsRowKey rowKey, int ttl, ResultSetFuture widthQuery)
+		{
+			m_rowKey = rowKey;
+			m_ttl = ttl;
+			m_widthQuery = widthQuery;
+		}
+	}
 }
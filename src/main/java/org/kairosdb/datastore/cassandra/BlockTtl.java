@@ -0,0 +1,54 @@
+package org.kairosdb.datastore.cassandra;
+
+/**
+ TTL of a block.  Cassandra reports the remaining TTL of a cell so data
+ points written with the same TTL differ by up to the time it took to write
+ them.  Only data points whose remaining TTL is within the tolerance of the
+ reference TTL go into the block, the others are left as cells so a block
+ does not keep data points much longer than they were written for.
+
+ A TTL of 0 means no TTL, such data points only go with each other.
+ */
+public class BlockTtl
+{
+	private final int m_referenceTtl;
+	private final long m_tolerance;
+	private int m_ttl;
+
+	/**
+	 @param referenceTtl remaining TTL in seconds of the existing block or
+	                     of the last cell written
+	 @param tolerance milliseconds the remaining TTL of a data point may be off
+	                  from the reference
+	 */
+	public BlockTtl(int referenceTtl, long tolerance)
+	{
+		m_referenceTtl = referenceTtl;
+		m_tolerance = tolerance;
+		m_ttl = referenceTtl;
+	}
+
+	/**
+	 Adds the TTL of a data point if it can go in the block.
+	 @return false if the data point has to be left as a cell
+	 */
+	public boolean add(int ttl)
+	{
+		if ((ttl == 0) != (m_referenceTtl == 0))
+			return (false);
+
+		if (Math.abs((long) ttl - m_referenceTtl) * 1000L > m_tolerance)
+			return (false);
+
+		m_ttl = Math.max(m_ttl, ttl);
+		return (true);
+	}
+
+	/**
+	 @return TTL in seconds to write the block with, 0 for none
+	 */
+	public int get()
+	{
+		return (m_ttl);
+	}
+}
@@ -0,0 +1,171 @@
+package org.kairosdb.datastore.cassandra;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.kairosdb.datastore.cassandra.CassandraDatastore.ROW_WIDTH;
+
+/**
+ Splits rows into the time windows that are packed into blocks and keeps
+ track of the windows data points were written to since they were sealed.
+ Windows start at the row time, the last window of a row is cut short at
+ the end of the row.
+
+ Only windows written through this node are tracked and they are lost on
+ restart, such windows stay as separate cells and are read as before.
+
+ Blocks written with an earlier window size keep their start, so blocks are
+ searched for back by the largest window size any node has used.
+ */
+public class BlockWindows
+{
+	private final long m_windowSize;
+	private volatile long m_maxWindowSize;
+	private final Set<Window> m_unsealed = ConcurrentHashMap.newKeySet();
+
+	public BlockWindows(long windowSize)
+	{
+		checkArgument(windowSize > 0, "Block window size must be greater than 0");
+		m_windowSize = Math.min(windowSize, ROW_WIDTH);
+		m_maxWindowSize = m_windowSize;
+	}
+
+	public long getWindowSize()
+	{
+		return (m_windowSize);
+	}
+
+	/**
+	 Sets the largest window size blocks may have been written with, it is
+	 never less than the window size of this node.
+	 */
+	public void setMaxWindowSize(long maxWindowSize)
+	{
+		m_maxWindowSize = Math.max(m_windowSize, Math.min(maxWindowSize, ROW_WIDTH));
+	}
+
+	public long getMaxWindowSize()
+	{
+		return (m_maxWindowSize);
+	}
+
+	/**
+	 Earliest start of a block that can hold the data point at timestamp,
+	 whatever window size the block was written with.
+	 */
+	public long getSearchStart(long rowTime, long timestamp)
+	{
+		if (timestamp < rowTime + m_maxWindowSize)
+			return (rowTime);
+
+		return (timestamp - m_maxWindowSize + 1);
+	}
+
+	public long getWindowStart(long rowTime, long timestamp)
+	{
+		if (timestamp <= rowTime)
+			return (rowTime);
+
+		return (rowTime + ((timestamp - rowTime) / m_windowSize) * m_windowSize);
+	}
+
+	/**
+	 Exclusive end of the window starting at windowStart.
+	 */
+	public long getWindowEnd(long rowTime, long rowWidth, long windowStart)
+	{
+		return (Math.min(windowStart + m_windowSize, rowTime + rowWidth));
+	}
+
+	/**
+	 Marks the window of the data point as needing to be sealed.
+	 */
+	public void dataPointWritten(DataPointsRowKey rowKey, long timestamp)
+	{
+		if (DataPointBlock.canStore(rowKey.getDataType()))
+			m_unsealed.add(new Window(rowKey, getWindowStart(rowKey.getTimestamp(), timestamp)));
+	}
+
+	/**
+	 Puts back a window that could not be sealed completely.
+	 */
+	public void addWindow(Window window)
+	{
+		m_unsealed.add(window);
+	}
+
+	/**
+	 Removes and returns the windows that ended at least sealDelay before now.
+	 */
+	public List<Window> takeSealable(long now, long sealDelay)
+	{
+		List<Window> ret = new ArrayList<>();
+
+		Iterator<Window> it = m_unsealed.iterator();
+		while (it.hasNext())
+		{
+			Window window = it.next();
+			if (window.getEnd() <= now - sealDelay)
+			{
+				it.remove();
+				ret.add(window);
+			}
+		}
+
+		return (ret);
+	}
+
+	public int size()
+	{
+		return (m_unsealed.size());
+	}
+
+	public class Window
+	{
+		private final DataPointsRowKey m_rowKey;
+		private final long m_start;
+
+		private Window(DataPointsRowKey rowKey, long start)
+		{
+			m_rowKey = rowKey;
+			m_start = start;
+		}
+
+		public DataPointsRowKey getRowKey()
+		{
+			return (m_rowKey);
+		}
+
+		public long getStart()
+		{
+			return (m_start);
+		}
+
+		public long getEnd()
+		{
+			return (getWindowEnd(m_rowKey.getTimestamp(), m_rowKey.getRowWidth(), m_start));
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (this == o)
+				return true;
+			if (o == null || getClass() != o.getClass())
+				return false;
+
+			Window window = (Window) o;
+			return (m_start == window.m_start && m_rowKey.equals(window.m_rowKey));
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (31 * m_rowKey.hashCode() + (int) (m_start ^ (m_start >>> 32)));
+		}
+	}
+}
@@ -2,6 +2,8 @@ package org.kairosdb.datastore.cassandra;
 
 import com.datastax.driver.core.*;
 import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.kairosdb.core.DataPoint;
 import org.kairosdb.util.KDataOutput;
 
@@ -26,6 +28,9 @@ public class CQLBatch
 	private final ConsistencyLevel m_consistencyLevel;
 	private final long m_now;
 	private final LoadBalancingPolicy m_loadBalancingPolicy;
+	private final InFlightLimiter m_inFlightLimiter;
+
+	private int m_byteCount = 0;
 
 	private Map<Host, BatchStatement> m_batchMap = new HashMap<>();
 
@@ -36,7 +41,7 @@ public class CQLBatch
 	public CQLBatch(
 			ConsistencyLevel consistencyLevel, Session session,
 			Schema schema, BatchStats batchStats,
-			LoadBalancingPolicy loadBalancingPolicy)
+			LoadBalancingPolicy loadBalancingPolicy, InFlightLimiter inFlightLimiter)
 	{
 		m_consistencyLevel = consistencyLevel;
 		m_session = session;
@@ -44,6 +49,7 @@ public class CQLBatch
 		m_batchStats = batchStats;
 		m_now = System.currentTimeMillis();
 		m_loadBalancingPolicy = loadBalancingPolicy;
+		m_inFlightLimiter = inFlightLimiter;
 	}
 
 	public void addRowKey(String metricName, DataPointsRowKey rowKey, int rowKeyTtl)
@@ -68,12 +74,17 @@ public class CQLBatch
 				//.setBytesUnsafe(1, bb)  //Setting timestamp in a more optimal way
 				.setString(2, rowKey.getDataType())
 				.setMap(3, rowKey.getTags())
-				.setInt(4, rowKeyTtl);
+				.setString(4, Long.toString(rowKey.getRowWidth()))
+				.setInt(5, rowKeyTtl);
 				//.setLong(5, m_now);
 
 		bs.setConsistencyLevel(m_consistencyLevel);
 
 		rowKeyBatch.add(bs);
+
+		m_byteCount += 2 * metricName.length() + rowKey.getDataType().length() + 34;
+		for (Map.Entry<String, String> tag : rowKey.getTags().entrySet())
+			m_byteCount += tag.getKey().length() + tag.getValue().length();
 	}
 
 	public void addMetricName(String metricName)
@@ -83,6 +94,8 @@ public class CQLBatch
 		bs.setBytesUnsafe(1, ByteBuffer.wrap(metricName.getBytes(UTF_8)));
 		bs.setConsistencyLevel(m_consistencyLevel);
 		metricNamesBatch.add(bs);
+
+		m_byteCount += ROW_KEY_METRIC_NAMES.length() + metricName.length();
 	}
 
 	public void addDataPoint(DataPointsRowKey rowKey, int columnTime, DataPoint dataPoint, int ttl) throws IOException
@@ -91,12 +104,16 @@ public class CQLBatch
 		dataPoint.writeValueToBuffer(kDataOutput);
 
 		BoundStatement boundStatement = new BoundStatement(m_schema.psDataPointsInsert);
-		boundStatement.setBytesUnsafe(0, DATA_POINTS_ROW_KEY_SERIALIZER.toByteBuffer(rowKey));
+		ByteBuffer serializedKey = DATA_POINTS_ROW_KEY_SERIALIZER.toByteBuffer(rowKey);
+		byte[] value = kDataOutput.getBytes();
+		m_byteCount += serializedKey.remaining() + value.length + 16;
+
 		ByteBuffer b = ByteBuffer.allocate(4);
 		b.putInt(columnTime);
 		b.rewind();
+		boundStatement.setBytesUnsafe(0, serializedKey);
 		boundStatement.setBytesUnsafe(1, b);
-		boundStatement.setBytesUnsafe(2, ByteBuffer.wrap(kDataOutput.getBytes()));
+		boundStatement.setBytesUnsafe(2, ByteBuffer.wrap(value));
 		boundStatement.setInt(3, ttl);
 		boundStatement.setLong(4, m_now);
 		boundStatement.setConsistencyLevel(m_consistencyLevel);
@@ -121,37 +138,80 @@ public class CQLBatch
 		}
 	}
 
-	public void submitBatch()
+	public int getStatementCount()
 	{
-		if (metricNamesBatch.size() != 0)
-		{
-			m_session.executeAsync(metricNamesBatch);
-			m_batchStats.addNameBatch(metricNamesBatch.size());
-		}
+		int count = metricNamesBatch.size() + rowKeyBatch.size() + dataPointBatch.size();
+		for (BatchStatement batchStatement : m_batchMap.values())
+			count += batchStatement.size();
 
-		if (rowKeyBatch.size() != 0)
-		{
-			//rowKeyBatch.enableTracing();
-			m_session.executeAsync(rowKeyBatch);
-			m_batchStats.addRowKeyBatch(rowKeyBatch.size());
-		}
+		return (count);
+	}
 
-		for (BatchStatement batchStatement : m_batchMap.values())
+	public int getByteCount()
+	{
+		return (m_byteCount);
+	}
+
+	private void executeAsync(BatchStatement batchStatement, List<ResultSetFuture> futures)
+	{
+		futures.add(m_session.executeAsync(batchStatement));
+	}
+
+	/**
+	 Sends all statements in the batch asynchronously, the per host data point
+	 batches are sent concurrently.  Blocks while the in flight limit is reached.
+	 @return futures for every statement sent, they have to be checked for
+	 failures by the caller.
+	 */
+	public List<ResultSetFuture> submitBatch()
+	{
+		List<ResultSetFuture> futures = new ArrayList<>();
+
+		final InFlightLimiter.Permit permit = m_inFlightLimiter.acquire(getStatementCount(), m_byteCount);
+
+		try
 		{
-			//batchStatement.enableTracing();
-			if (batchStatement.size() != 0)
+			if (metricNamesBatch.size() != 0)
 			{
-				m_session.execute(batchStatement);
-				//System.out.println(resultSet.getExecutionInfo().getQueryTrace().getTraceId());
-				m_batchStats.addDatapointsBatch(batchStatement.size());
+				executeAsync(metricNamesBatch, futures);
+				m_batchStats.addNameBatch(metricNamesBatch.size());
+			}
+
+			if (rowKeyBatch.size() != 0)
+			{
+				executeAsync(rowKeyBatch, futures);
+				m_batchStats.addRowKeyBatch(rowKeyBatch.size());
 			}
-		}
 
-		//Catch all in case of a load balancing problem
-		if (dataPointBatch.size() != 0)
+			for (BatchStatement batchStatement : m_batchMap.values())
+			{
+				if (batchStatement.size() != 0)
+				{
+					executeAsync(batchStatement, futures);
+					m_batchStats.addDatapointsBatch(batchStatement.size());
+				}
+			}
+
+			//Catch all in case of a load balancing problem
+			if (dataPointBatch.size() != 0)
+			{
+				executeAsync(dataPointBatch, futures);
+				m_batchStats.addDatapointsBatch(dataPointBatch.size());
+			}
+		}
+		finally
 		{
-			m_session.execute(dataPointBatch);
-			m_batchStats.addDatapointsBatch(dataPointBatch.size());
+			//Permits are given back once every statement has completed or failed
+			Futures.successfulAsList(futures).addListener(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					permit.release();
+				}
+			}, MoreExecutors.directExecutor());
 		}
+
+		return (futures);
 	}
 }
@@ -4,6 +4,7 @@ import com.datastax.driver.core.ConsistencyLevel;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -16,10 +17,23 @@ public class CassandraConfiguration
 	public static final String DATAPOINT_TTL = "kairosdb.datastore.cassandra.datapoint_ttl";
 
 	public static final String ROW_KEY_CACHE_SIZE_PROPERTY = "kairosdb.datastore.cassandra.row_key_cache_size";
+	public static final String ROW_KEY_CACHE_OFF_HEAP_BYTES = "kairosdb.datastore.cassandra.row_key_cache_off_heap_bytes";
 	public static final String STRING_CACHE_SIZE_PROPERTY = "kairosdb.datastore.cassandra.string_cache_size";
 
 	public static final String KEYSPACE_PROPERTY = "kairosdb.datastore.cassandra.keyspace";
 	public static final String SIMULTANIOUS_QUERIES = "kairosdb.datastore.cassandra.simultaneous_cql_queries";
+	public static final String SIMULTANEOUS_ROW_KEY_QUERIES = "kairosdb.datastore.cassandra.simultaneous_row_key_queries";
+
+	public static final String MAX_IN_FLIGHT_STATEMENTS = "kairosdb.datastore.cassandra.write_max_in_flight_statements";
+	public static final String MAX_IN_FLIGHT_BYTES = "kairosdb.datastore.cassandra.write_max_in_flight_bytes";
+
+	public static final String INCREMENTAL_CACHE_SIZE = "kairosdb.datastore.cassandra.incremental_cache.max_data_points";
+	public static final String INCREMENTAL_CACHE_EXPIRE = "kairosdb.datastore.cassandra.incremental_cache.expire_seconds";
+	public static final String INCREMENTAL_CACHE_REFETCH_WINDOW = "kairosdb.datastore.cassandra.incremental_cache.refetch_window";
+
+	public static final String BLOCK_STORAGE_ENABLED = "kairosdb.datastore.cassandra.block_storage.enabled";
+	public static final String BLOCK_STORAGE_WINDOW_SIZE = "kairosdb.datastore.cassandra.block_storage.window_size";
+	public static final String BLOCK_STORAGE_SEAL_DELAY = "kairosdb.datastore.cassandra.block_storage.seal_delay";
 
 	@Inject
 	@Named(WRITE_CONSISTENCY_LEVEL)
@@ -37,6 +51,10 @@ public class CassandraConfiguration
 	@Named(ROW_KEY_CACHE_SIZE_PROPERTY)
 	private int m_rowKeyCacheSize = 1024;
 
+	@Inject(optional = true)
+	@Named(ROW_KEY_CACHE_OFF_HEAP_BYTES)
+	private long m_rowKeyCacheOffHeapBytes = 0; //Zero keeps the row key cache on the heap
+
 	@Inject
 	@Named(STRING_CACHE_SIZE_PROPERTY)
 	private int m_stringCacheSize = 1024;
@@ -45,14 +63,54 @@ public class CassandraConfiguration
 	@Named(CassandraModule.CASSANDRA_AUTH_MAP)
 	private Map<String, String> m_cassandraAuthentication;
 
+	@Inject(optional = true)
+	@Named(CassandraModule.CASSANDRA_ROW_WIDTH_MAP)
+	private Map<String, String> m_rowWidths = Collections.emptyMap();
+
 	@Inject
 	@Named(SIMULTANIOUS_QUERIES)
 	private int m_simultaneousQueries = 100;
 
+	@Inject(optional = true)
+	@Named(SIMULTANEOUS_ROW_KEY_QUERIES)
+	private int m_simultaneousRowKeyQueries = 10;
+
 	@Inject
 	@Named(KEYSPACE_PROPERTY)
 	private String m_keyspaceName;
 
+	@Inject(optional = true)
+	@Named(MAX_IN_FLIGHT_STATEMENTS)
+	private int m_maxInFlightStatements = 50000;
+
+	@Inject(optional = true)
+	@Named(MAX_IN_FLIGHT_BYTES)
+	private int m_maxInFlightBytes = 64 * 1024 * 1024;
+
+	@Inject(optional = true)
+	@Named(INCREMENTAL_CACHE_SIZE)
+	private long m_incrementalCacheSize = 0; //Zero disables the cache
+
+	@Inject(optional = true)
+	@Named(INCREMENTAL_CACHE_EXPIRE)
+	private long m_incrementalCacheExpire = 600;
+
+	@Inject(optional = true)
+	@Named(INCREMENTAL_CACHE_REFETCH_WINDOW)
+	private long m_incrementalCacheRefetchWindow = 60000;
+
+	@Inject(optional = true)
+	@Named(BLOCK_STORAGE_ENABLED)
+	private boolean m_blockStorageEnabled = false;
+
+	@Inject(optional = true)
+	@Named(BLOCK_STORAGE_WINDOW_SIZE)
+	private long m_blockStorageWindowSize = 7200000; //2 hours
+
+	@Inject(optional = true)
+	@Named(BLOCK_STORAGE_SEAL_DELAY)
+	private long m_blockStorageSealDelay = 3600000;
+
 
 	public CassandraConfiguration()
 	{
@@ -83,6 +141,11 @@ public class CassandraConfiguration
 		return m_rowKeyCacheSize;
 	}
 
+	public long getRowKeyCacheOffHeapBytes()
+	{
+		return m_rowKeyCacheOffHeapBytes;
+	}
+
 	public int getStringCacheSize()
 	{
 		return m_stringCacheSize;
@@ -93,6 +156,14 @@ public class CassandraConfiguration
 		return m_cassandraAuthentication;
 	}
 
+	/**
+	 Row width in milliseconds by metric name prefix.
+	 */
+	public Map<String, String> getRowWidths()
+	{
+		return m_rowWidths;
+	}
+
 	public String getKeyspaceName()
 	{
 		return m_keyspaceName;
@@ -103,4 +174,49 @@ public class CassandraConfiguration
 		return m_simultaneousQueries;
 	}
 
+	public int getSimultaneousRowKeyQueries()
+	{
+		return m_simultaneousRowKeyQueries;
+	}
+
+	public int getMaxInFlightStatements()
+	{
+		return m_maxInFlightStatements;
+	}
+
+	public int getMaxInFlightBytes()
+	{
+		return m_maxInFlightBytes;
+	}
+
+	public long getIncrementalCacheSize()
+	{
+		return m_incrementalCacheSize;
+	}
+
+	public long getIncrementalCacheExpire()
+	{
+		return m_incrementalCacheExpire;
+	}
+
+	public long getIncrementalCacheRefetchWindow()
+	{
+		return m_incrementalCacheRefetchWindow;
+	}
+
+	public boolean isBlockStorageEnabled()
+	{
+		return m_blockStorageEnabled;
+	}
+
+	public long getBlockStorageWindowSize()
+	{
+		return m_blockStorageWindowSize;
+	}
+
+	public long getBlockStorageSealDelay()
+	{
+		return m_blockStorageSealDelay;
+	}
+
 }
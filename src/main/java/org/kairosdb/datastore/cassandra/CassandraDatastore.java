@@ -20,12 +20,13 @@ import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.exceptions.DriverException;
 import com.datastax.driver.core.policies.LoadBalancingPolicy;
 import com.google.common.collect.SetMultimap;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
-import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Striped;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import org.kairosdb.core.DataPoint;
@@ -35,6 +36,8 @@ import org.kairosdb.core.datapoints.DataPointFactory;
 import org.kairosdb.core.datapoints.LegacyDataPointFactory;
 import org.kairosdb.core.datapoints.LegacyDoubleDataPoint;
 import org.kairosdb.core.datapoints.LegacyLongDataPoint;
+import org.kairosdb.core.datapoints.LongDataPointFactory;
+import org.kairosdb.core.datapoints.LongDataPointFactoryImpl;
 import org.kairosdb.core.datastore.DataPointRow;
 import org.kairosdb.core.datastore.Datastore;
 import org.kairosdb.core.datastore.DatastoreMetricQuery;
@@ -51,6 +54,7 @@ import org.kairosdb.core.queue.QueueProcessor;
 import org.kairosdb.core.reporting.KairosMetricReporter;
 import org.kairosdb.core.reporting.ThreadReporter;
 import org.kairosdb.eventbus.EventBusWithFilters;
+import org.kairosdb.events.DataPointBatchEvent;
 import org.kairosdb.events.DataPointEvent;
 import org.kairosdb.util.IngestExecutorService;
 import org.kairosdb.util.KDataInput;
@@ -63,18 +67,21 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -89,10 +96,19 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 	public static final DataPointsRowKeySerializer DATA_POINTS_ROW_KEY_SERIALIZER = new DataPointsRowKeySerializer();
 
 
-	public static final long ROW_WIDTH = 1814400000L; //3 Weeks wide
+	public static final long ROW_WIDTH = 1814400000L; //3 Weeks wide, the default and widest row, see RowWidths
 
 	public static final String KEY_QUERY_TIME = "kairosdb.datastore.cassandra.key_query_time";
 	public static final String ROW_KEY_COUNT = "kairosdb.datastore.cassandra.row_key_count";
+	public static final String INCREMENTAL_CACHE_HITS = "kairosdb.datastore.cassandra.incremental_cache_hits";
+
+	//Cells written within this time before a window is sealed are left for the next pass
+	//as they may have been written after the window was read
+	private static final long SEAL_WRITE_MARGIN = 600000L;
+	//Service index keys holding every block window size and row width used
+	private static final String DATASTORE_SERVICE = "kairosdb.datastore.cassandra";
+	private static final String BLOCK_WINDOW_SIZES = "block_window_sizes";
+	private static final String ROW_WIDTH_HISTORY = "row_widths";
 
 
 	public static final String ROW_KEY_METRIC_NAMES = "metric_names";
@@ -116,8 +132,14 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 
 	private final BatchStats m_batchStats = new BatchStats();
 
-	private DataCache<DataPointsRowKey> m_rowKeyCache = new DataCache<DataPointsRowKey>(1024);
+	private RowKeyCache m_rowKeyCache = new HeapRowKeyCache(1024);
 	private DataCache<String> m_metricNameCache = new DataCache<String>(1024);
+	private IncrementalQueryCache m_incrementalCache;
+	private final InFlightLimiter m_inFlightLimiter;
+	private BlockWindows m_blockWindows;
+	//Serializes sealing and deleting from the blocks of a row key
+	private final Striped<Lock> m_blockLocks = Striped.lock(64);
+	private final RowWidths m_rowWidths;
 
 	private final KairosDataPointFactory m_kairosDataPointFactory;
 	private final QueueProcessor m_queueProcessor;
@@ -128,6 +150,11 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 	@Inject
 	private SimpleStatsReporter m_simpleStatsReporter = new SimpleStatsReporter();
 
+	@Inject
+	private LongDataPointFactory m_longDataPointFactory = new LongDataPointFactoryImpl();
+
+	private final String m_hostName;
+
 
 	@Inject
 	public CassandraDatastore(@Named("HOSTNAME") final String hostname,
@@ -138,6 +165,7 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 			EventBusWithFilters eventBus,
 			IngestExecutorService congestionExecutor) throws DatastoreException
 	{
+		m_hostName = hostname;
 		m_cassandraClient = cassandraClient;
 		//m_astyanaxClient = astyanaxClient;
 		m_kairosDataPointFactory = kairosDataPointFactory;
@@ -152,9 +180,40 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 
 		m_cassandraConfiguration = cassandraConfiguration;
 
-		m_rowKeyCache = new DataCache<DataPointsRowKey>(m_cassandraConfiguration.getRowKeyCacheSize());
+		if (m_cassandraConfiguration.getRowKeyCacheOffHeapBytes() > 0)
+			m_rowKeyCache = new OffHeapRowKeyCache(m_cassandraConfiguration.getRowKeyCacheOffHeapBytes());
+		else
+			m_rowKeyCache = new HeapRowKeyCache(m_cassandraConfiguration.getRowKeyCacheSize());
 		m_metricNameCache = new DataCache<String>(m_cassandraConfiguration.getStringCacheSize());
 
+		m_inFlightLimiter = new InFlightLimiter(m_cassandraConfiguration.getMaxInFlightStatements(),
+				m_cassandraConfiguration.getMaxInFlightBytes());
+
+		if (m_cassandraConfiguration.getIncrementalCacheSize() > 0)
+		{
+			m_incrementalCache = new IncrementalQueryCache(
+					m_cassandraConfiguration.getIncrementalCacheSize(),
+					m_cassandraConfiguration.getIncrementalCacheExpire(),
+					m_cassandraConfiguration.getIncrementalCacheRefetchWindow());
+		}
+
+		m_rowWidths = new RowWidths(m_cassandraConfiguration.getRowWidths());
+		if (m_rowWidths.hasPrefixes())
+		{
+			m_rowWidths.setHistory(listKeys(DATASTORE_SERVICE, ROW_WIDTH_HISTORY));
+			for (String key : m_rowWidths.getNewHistoryKeys(System.currentTimeMillis()))
+				setValue(DATASTORE_SERVICE, ROW_WIDTH_HISTORY, key, "");
+
+			m_rowWidths.setHistory(listKeys(DATASTORE_SERVICE, ROW_WIDTH_HISTORY));
+		}
+
+		if (m_cassandraConfiguration.isBlockStorageEnabled())
+		{
+			m_blockWindows = new BlockWindows(m_cassandraConfiguration.getBlockStorageWindowSize());
+			setValue(DATASTORE_SERVICE, BLOCK_WINDOW_SIZES, String.valueOf(m_blockWindows.getWindowSize()), "");
+			loadMaxBlockWindowSize();
+		}
+
 		//This needs to be done last as it tells the processor we are ready for data
 		m_queueProcessor.setProcessorHandler(this);
 	}
@@ -164,18 +223,286 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 		return ByteBuffer.wrap(str.getBytes(UTF_8));
 	}
 
+	private static ByteBuffer serializeColumn(int column)
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(4);
+		buffer.putInt(0, column);
+		return buffer;
+	}
+
 
 	public void cleanRowKeyCache()
 	{
-		long currentRow = calculateRowTime(System.currentTimeMillis());
+		m_rowKeyCache.retainCurrentRows(System.currentTimeMillis());
+	}
+
+	/**
+	 Reads the row widths other nodes have used since this one started, only
+	 needed when row widths are configured.
+	 */
+	public void refreshRowWidths()
+	{
+		if (!m_rowWidths.hasPrefixes())
+			return;
+
+		try
+		{
+			m_rowWidths.setHistory(listKeys(DATASTORE_SERVICE, ROW_WIDTH_HISTORY));
+		}
+		catch (DatastoreException e)
+		{
+			logger.error("Failed to read row width history", e);
+		}
+	}
 
-		Set<DataPointsRowKey> keys = m_rowKeyCache.getCachedKeys();
+	/**
+	 Packs the data points of the windows that are ready into blocks.  Called
+	 periodically by the SealBlocks job, does nothing unless block storage
+	 is enabled.
+	 */
+	public void sealBlocks()
+	{
+		if (m_blockWindows == null)
+			return;
 
-		for (DataPointsRowKey key : keys)
+		//Picks up larger window sizes used by other nodes
+		try
 		{
-			if (key.getTimestamp() != currentRow)
+			loadMaxBlockWindowSize();
+		}
+		catch (DatastoreException e)
+		{
+			logger.error("Failed to read block window sizes", e);
+		}
+
+		long now = System.currentTimeMillis();
+		for (BlockWindows.Window window : m_blockWindows.takeSealable(now,
+				m_cassandraConfiguration.getBlockStorageSealDelay()))
+		{
+			try
 			{
-				m_rowKeyCache.removeKey(key);
+				sealBlock(window, now);
+			}
+			catch (Exception e)
+			{
+				logger.error("Failed to seal block for " + window.getRowKey(), e);
+				m_blockWindows.addWindow(window);
+			}
+		}
+	}
+
+	/**
+	 Blocks are searched for back by the largest window size any node has
+	 written blocks with.
+	 */
+	private void loadMaxBlockWindowSize() throws DatastoreException
+	{
+		long maxWindowSize = 0;
+		for (String windowSize : listKeys(DATASTORE_SERVICE, BLOCK_WINDOW_SIZES))
+		{
+			try
+			{
+				maxWindowSize = Math.max(maxWindowSize, Long.parseLong(windowSize));
+			}
+			catch (NumberFormatException e)
+			{
+				logger.warn("Invalid block window size " + windowSize);
+			}
+		}
+
+		m_blockWindows.setMaxWindowSize(maxWindowSize);
+	}
+
+	/**
+	 Merges the cells of the window into its block and deletes the cells.  The
+	 cells are read at the write consistency level so the delete does not
+	 remove cells that were not read.  Cells with a TTL that does not fit the
+	 block are left as cells, see BlockTtl.
+
+	 Holds the lock of the row key so a delete of the row is not undone by
+	 a block made of data points read before the delete.
+	 */
+	private void sealBlock(BlockWindows.Window window, long now) throws IOException
+	{
+		Lock lock = m_blockLocks.get(window.getRowKey());
+		lock.lock();
+		try
+		{
+			packWindow(window, now);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private void packWindow(BlockWindows.Window window, long now) throws IOException
+	{
+		DataPointsRowKey rowKey = window.getRowKey();
+		long rowTime = rowKey.getTimestamp();
+		ByteBuffer key = DATA_POINTS_ROW_KEY_SERIALIZER.toByteBuffer(rowKey);
+		int startColumn = getColumnName(rowTime, window.getStart());
+		int endColumn = getColumnName(rowTime, window.getEnd() - 1);
+		long deleteTimestamp = now - SEAL_WRITE_MARGIN;
+
+		BoundStatement statement = new BoundStatement(m_schema.psDataPointsSealQuery);
+		statement.setBytesUnsafe(0, key);
+		statement.setBytesUnsafe(1, serializeColumn(startColumn));
+		statement.setBytesUnsafe(2, serializeColumn(endColumn));
+		statement.setConsistencyLevel(m_cassandraConfiguration.getDataWriteLevel());
+
+		DataPointFactory dataPointFactory = m_kairosDataPointFactory.getFactoryForDataStoreType(rowKey.getDataType());
+		List<DataPoint> cellDataPoints = new ArrayList<>();
+		List<Integer> cellColumns = new ArrayList<>();
+		List<Integer> cellTtls = new ArrayList<>();
+		long lastWriteTime = Long.MIN_VALUE;
+		int lastWrittenTtl = 0;
+		boolean recentCells = false;
+
+		ResultSet cells = m_session.execute(statement);
+		while (!cells.isExhausted())
+		{
+			Row row = cells.one();
+			int column = row.getBytes(0).getInt();
+			cellDataPoints.add(dataPointFactory.getDataPoint(getColumnTimestamp(rowTime, column),
+					KDataInput.createInput(row.getBytes(1))));
+			cellColumns.add(column);
+			cellTtls.add(row.getInt(2));
+
+			//Cells are written with millisecond timestamps, anything else is left alone
+			long writeTime = row.getLong(3);
+			if (writeTime >= lastWriteTime)
+			{
+				lastWriteTime = writeTime;
+				lastWrittenTtl = row.getInt(2);
+			}
+
+			if (writeTime >= deleteTimestamp && writeTime <= now)
+				recentCells = true;
+		}
+
+		if (cellDataPoints.isEmpty())
+			return;
+
+		statement = new BoundStatement(m_schema.psDataPointBlocksQuery);
+		statement.setBytesUnsafe(0, key);
+		statement.setBytesUnsafe(1, serializeColumn(startColumn));
+		statement.setBytesUnsafe(2, serializeColumn(startColumn + 1));
+		statement.setConsistencyLevel(m_cassandraConfiguration.getDataWriteLevel());
+
+		//Data points written with the same TTL over the window differ by this much
+		long ttlTolerance = window.getEnd() - window.getStart() + m_cassandraConfiguration.getBlockStorageSealDelay();
+		List<DataPoint> blockDataPoints = Collections.emptyList();
+		BlockTtl ttl;
+		Row blockRow = m_session.execute(statement).one();
+		if (blockRow != null)
+		{
+			blockDataPoints = DataPointBlock.decode(blockRow.getBytes(1), window.getStart());
+			ttl = new BlockTtl(blockRow.getInt(2), ttlTolerance);
+		}
+		else
+			ttl = new BlockTtl(lastWrittenTtl, ttlTolerance);
+
+		List<DataPoint> packedDataPoints = new ArrayList<>();
+		List<Integer> keptColumns = new ArrayList<>();
+		for (int i = 0; i < cellDataPoints.size(); i++)
+		{
+			if (ttl.add(cellTtls.get(i)))
+				packedDataPoints.add(cellDataPoints.get(i));
+			else
+				keptColumns.add(cellColumns.get(i));
+		}
+
+		if (packedDataPoints.isEmpty())
+			return;
+
+		writeBlock(key, startColumn, DataPointBlock.encode(rowKey.getDataType(), window.getStart(),
+				DataPointBlock.merge(blockDataPoints, packedDataPoints)), ttl.get());
+
+		//Delete the cells between the ones that are kept
+		int deleteStart = startColumn;
+		for (int keptColumn : keptColumns)
+		{
+			if (keptColumn > deleteStart)
+				deleteSealedCells(key, deleteTimestamp, deleteStart, keptColumn - 1);
+
+			deleteStart = keptColumn + 1;
+		}
+
+		if (deleteStart <= endColumn)
+			deleteSealedCells(key, deleteTimestamp, deleteStart, endColumn);
+
+		//Cells that were not deleted are in the block as well, the next pass removes them
+		if (recentCells)
+			m_blockWindows.addWindow(window);
+	}
+
+	private void deleteSealedCells(ByteBuffer key, long deleteTimestamp, int startColumn, int endColumn)
+	{
+		BoundStatement statement = new BoundStatement(m_schema.psDataPointsSealDelete);
+		statement.setLong(0, deleteTimestamp);
+		statement.setBytesUnsafe(1, key);
+		statement.setBytesUnsafe(2, serializeColumn(startColumn));
+		statement.setBytesUnsafe(3, serializeColumn(endColumn));
+		statement.setConsistencyLevel(m_cassandraConfiguration.getDataWriteLevel());
+		m_session.execute(statement);
+	}
+
+	private void writeBlock(ByteBuffer key, int column, ByteBuffer block, int ttl)
+	{
+		BoundStatement statement = new BoundStatement(m_schema.psDataPointBlocksInsert);
+		statement.setBytesUnsafe(0, key);
+		statement.setBytesUnsafe(1, serializeColumn(column));
+		statement.setBytesUnsafe(2, block);
+		statement.setInt(3, ttl);
+		statement.setConsistencyLevel(m_cassandraConfiguration.getDataWriteLevel());
+		m_session.execute(statement);
+	}
+
+	/**
+	 Removes the data points between startTime and endTime from the blocks of
+	 the row, blocks left empty are deleted.  Called with the lock of the row
+	 key held.
+	 */
+	private void deleteFromBlocks(DataPointsRowKey rowKey, long startTime, long endTime)
+	{
+		long rowTime = rowKey.getTimestamp();
+		ByteBuffer key = DATA_POINTS_ROW_KEY_SERIALIZER.toByteBuffer(rowKey);
+
+		BoundStatement statement = new BoundStatement(m_schema.psDataPointBlocksQuery);
+		statement.setBytesUnsafe(0, key);
+		statement.setBytesUnsafe(1, serializeColumn(getColumnName(rowTime,
+				m_blockWindows.getSearchStart(rowTime, startTime))));
+		statement.setBytesUnsafe(2, serializeColumn(getColumnName(rowTime, endTime) + 1));
+		statement.setConsistencyLevel(m_cassandraConfiguration.getDataWriteLevel());
+
+		ResultSet blocks = m_session.execute(statement);
+		while (!blocks.isExhausted())
+		{
+			Row row = blocks.one();
+			int column = row.getBytes(0).getInt();
+			long windowStart = getColumnTimestamp(rowTime, column);
+
+			List<DataPoint> remaining = new ArrayList<>();
+			List<DataPoint> dataPoints = DataPointBlock.decode(row.getBytes(1), windowStart);
+			for (DataPoint dataPoint : dataPoints)
+			{
+				if (dataPoint.getTimestamp() < startTime || dataPoint.getTimestamp() > endTime)
+					remaining.add(dataPoint);
+			}
+
+			if (remaining.isEmpty())
+			{
+				BoundStatement delete = new BoundStatement(m_schema.psDataPointBlocksDelete);
+				delete.setBytesUnsafe(0, key);
+				delete.setBytesUnsafe(1, serializeColumn(column));
+				delete.setConsistencyLevel(m_cassandraConfiguration.getDataWriteLevel());
+				m_session.execute(delete);
+			}
+			else if (remaining.size() != dataPoints.size())
+			{
+				writeBlock(key, column, DataPointBlock.encode(rowKey.getDataType(), windowStart, remaining),
+						row.getInt(2));
 			}
 		}
 	}
@@ -196,6 +523,12 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 		m_queueProcessor.put(dataPointEvent);
 	}
 
+	@Subscribe
+	public void putDataPoints(DataPointBatchEvent dataPointBatchEvent) throws DatastoreException
+	{
+		m_queueProcessor.put(dataPointBatchEvent.getEvents());
+	}
+
 	@Override
 	public void handleEvents(List<DataPointEvent> events, EventCompletionCallBack eventCompletionCallBack,
 			boolean fullBatch)
@@ -206,9 +539,10 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 				m_cassandraConfiguration.getDatapointTtl(),
 				m_cassandraConfiguration.getDataWriteLevel(),
 				m_rowKeyCache, m_metricNameCache, m_eventBus, m_session,
-				m_schema, fullBatch, m_batchStats, m_loadBalancingPolicy);
+				m_schema, fullBatch, m_batchStats, m_loadBalancingPolicy, m_inFlightLimiter,
+				m_blockWindows, m_rowWidths);
 
-		m_congestionExecutor.submit(batchHandler);
+		m_congestionExecutor.submit(batchHandler, events.size());
 	}
 
 
@@ -391,70 +725,221 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 				"kairosdb.datastore.cassandra.write_batch_size",
 				"table", "row_keys", ret);
 
+		reportCacheStats("row_key", m_rowKeyCache.getAndResetHits(), m_rowKeyCache.getAndResetMisses(),
+				m_rowKeyCache.getAndResetEvictions(), m_rowKeyCache.size(), now, ret);
+		reportCacheStats("metric_name", m_metricNameCache.getAndResetHits(), m_metricNameCache.getAndResetMisses(),
+				m_metricNameCache.getAndResetEvictions(), m_metricNameCache.size(), now, ret);
+
 		return ret;
 	}
 
+	private void addCacheDataPointSet(String metricName, String cacheName, long now,
+			long value, List<DataPointSet> dataPointSets)
+	{
+		DataPointSet dps = new DataPointSet(metricName);
+		dps.addTag("host", m_hostName);
+		dps.addTag("cache", cacheName);
+		dps.addDataPoint(m_longDataPointFactory.createDataPoint(now, value));
+		dataPointSets.add(dps);
+	}
+
+	private void reportCacheStats(String cacheName, long hits, long misses, long evictions,
+			long size, long now, List<DataPointSet> dataPointSets)
+	{
+		String prefix = "kairosdb.datastore.cassandra.cache.";
+		addCacheDataPointSet(prefix + "hits", cacheName, now, hits, dataPointSets);
+		addCacheDataPointSet(prefix + "misses", cacheName, now, misses, dataPointSets);
+		addCacheDataPointSet(prefix + "evictions", cacheName, now, evictions, dataPointSets);
+		addCacheDataPointSet(prefix + "size", cacheName, now, size, dataPointSets);
+	}
+
 	private class QueryListener implements FutureCallback<ResultSet>
 	{
 		private final DataPointsRowKey m_rowKey;
 		private final QueryCallback m_callback;
 		private final Semaphore m_semaphore;
-
-		public QueryListener(DataPointsRowKey rowKey, QueryCallback callback, Semaphore querySemaphor)
+		private final AtomicReference<Throwable> m_failure;
+
+		//Only set when the incremental cache is used for this row
+		private IncrementalQueryCache.CachedRow m_cachedRow;
+		private List<DataPoint> m_fetchedDataPoints;
+		private long m_queryStartTime;
+		private long m_queryEndTime;
+		private long m_fetchStartTime;
+		private long m_readTime;
+
+		//Only set when blocks are read for this row
+		private boolean m_readBlocks;
+		private long m_blockStartTime;
+		private long m_blockEndTime;
+		private Order m_order;
+		private int m_limit;
+
+		/**
+		 @param failure receives the first failure of the query, it is thrown
+		                once all the rows have been read
+		 */
+		public QueryListener(DataPointsRowKey rowKey, QueryCallback callback,
+				Semaphore querySemaphor, AtomicReference<Throwable> failure)
 		{
 			m_rowKey = rowKey;
 			m_callback = callback;
 			m_semaphore = querySemaphor;
+			m_failure = failure;
+		}
+
+		/**
+		 Sets up the listener to combine the cached data points before fetchStartTime
+		 with the ones read from Cassandra and store the result back in the cache.
+		 */
+		public void setIncrementalCache(IncrementalQueryCache.CachedRow cachedRow,
+				long queryStartTime, long queryEndTime, long fetchStartTime)
+		{
+			m_cachedRow = cachedRow;
+			m_fetchedDataPoints = new ArrayList<>();
+			m_queryStartTime = queryStartTime;
+			m_queryEndTime = queryEndTime;
+			m_fetchStartTime = fetchStartTime;
+			m_readTime = System.currentTimeMillis();
+		}
+
+		/**
+		 Sets up the listener to merge the data points of the blocks between
+		 startTime and endTime with the cells, limit is 0 for no limit.
+		 */
+		public void setBlocks(long startTime, long endTime, Order order, int limit)
+		{
+			m_readBlocks = true;
+			m_blockStartTime = startTime;
+			m_blockEndTime = endTime;
+			m_order = order;
+			m_limit = limit;
+		}
+
+		private void addDataPoint(DataPoint dataPoint) throws IOException
+		{
+			if (m_fetchedDataPoints != null)
+				m_fetchedDataPoints.add(dataPoint);
+
+			m_callback.addDataPoint(dataPoint);
+		}
+
+		private DataPoint readCell(Row row, DataPointFactory dataPointFactory) throws IOException
+		{
+			ByteBuffer bytes = row.getBytes(0);
+
+			int columnTime = bytes.getInt();
+
+			ByteBuffer value = row.getBytes(1);
+			long timestamp = getColumnTimestamp(m_rowKey.getTimestamp(), columnTime);
+
+			//If type is legacy type it will point to the same object, no need for equals
+			if (m_rowKey.getDataType() == LegacyDataPointFactory.DATASTORE_TYPE)
+			{
+				if (isLongValue(columnTime))
+				{
+					return (new LegacyLongDataPoint(timestamp,
+							ValueSerializer.getLongFromByteBuffer(value)));
+				}
+				else
+				{
+					return (new LegacyDoubleDataPoint(timestamp,
+							ValueSerializer.getDoubleFromByteBuffer(value)));
+				}
+			}
+			else
+			{
+				return (dataPointFactory.getDataPoint(timestamp, KDataInput.createInput(value)));
+			}
+		}
+
+		/**
+		 Adds the data points of the blocks and the cells in query order.
+		 */
+		private void addMergedDataPoints(ResultSet cells, ResultSet blocks,
+				DataPointFactory dataPointFactory) throws IOException
+		{
+			List<DataPoint> cellDataPoints = new ArrayList<>();
+			while (cells != null && !cells.isExhausted())
+				cellDataPoints.add(readCell(cells.one(), dataPointFactory));
+
+			if (m_order == Order.DESC)
+				Collections.reverse(cellDataPoints);
+
+			List<List<DataPoint>> blockDataPoints = new ArrayList<>();
+			List<Long> blockWriteTimes = new ArrayList<>();
+			while (blocks != null && !blocks.isExhausted())
+			{
+				Row row = blocks.one();
+				long windowStart = getColumnTimestamp(m_rowKey.getTimestamp(), row.getBytes(0).getInt());
+				List<DataPoint> inRange = new ArrayList<>();
+				for (DataPoint dataPoint : DataPointBlock.decode(row.getBytes(1), windowStart))
+				{
+					if (dataPoint.getTimestamp() >= m_blockStartTime && dataPoint.getTimestamp() <= m_blockEndTime)
+						inRange.add(dataPoint);
+				}
+
+				blockDataPoints.add(inRange);
+				blockWriteTimes.add(row.getLong(3));
+			}
+
+			List<DataPoint> dataPoints = DataPointBlock.merge(
+					DataPointBlock.combine(blockDataPoints, blockWriteTimes), cellDataPoints);
+			if (m_order == Order.DESC)
+				Collections.reverse(dataPoints);
+
+			if (m_limit != 0 && dataPoints.size() > m_limit)
+				dataPoints = dataPoints.subList(0, m_limit);
+
+			for (DataPoint dataPoint : dataPoints)
+				addDataPoint(dataPoint);
 		}
 
 		@Override
 		public void onSuccess(@Nullable ResultSet result)
+		{
+			onSuccess(result, null);
+		}
+
+		/**
+		 @param blocks result of the block query, null when blocks are not read
+		 */
+		public void onSuccess(@Nullable ResultSet result, @Nullable ResultSet blocks)
 		{
 			try
 			{
 				m_callback.startDataPointSet(m_rowKey.getDataType(), m_rowKey.getTags());
 
+				if (m_cachedRow != null)
+				{
+					//The fetch start is past the query end when the cache holds the whole range
+					for (DataPoint dataPoint : m_cachedRow.getDataPoints(m_queryStartTime,
+							Math.min(m_fetchStartTime - 1, m_queryEndTime)))
+						m_callback.addDataPoint(dataPoint);
+				}
+
 				DataPointFactory dataPointFactory = null;
 				dataPointFactory = m_kairosDataPointFactory.getFactoryForDataStoreType(m_rowKey.getDataType());
 
-				while (!result.isExhausted())
+				if (m_readBlocks)
 				{
-					Row row = result.one();
-					ByteBuffer bytes = row.getBytes(0);
-
-					int columnTime = bytes.getInt();
-
-					ByteBuffer value = row.getBytes(1);
-					long timestamp = getColumnTimestamp(m_rowKey.getTimestamp(), columnTime);
-
-					//If type is legacy type it will point to the same object, no need for equals
-					if (m_rowKey.getDataType() == LegacyDataPointFactory.DATASTORE_TYPE)
-					{
-						if (isLongValue(columnTime))
-						{
-							m_callback.addDataPoint(
-									new LegacyLongDataPoint(timestamp,
-											ValueSerializer.getLongFromByteBuffer(value)));
-						}
-						else
-						{
-							m_callback.addDataPoint(
-									new LegacyDoubleDataPoint(timestamp,
-											ValueSerializer.getDoubleFromByteBuffer(value)));
-						}
-					}
-					else
-					{
-						m_callback.addDataPoint(
-								dataPointFactory.getDataPoint(timestamp, KDataInput.createInput(value)));
-					}
-
+					addMergedDataPoints(result, blocks, dataPointFactory);
+				}
+				else
+				{
+					while (result != null && !result.isExhausted())
+						addDataPoint(readCell(result.one(), dataPointFactory));
 				}
 
+				if (m_fetchedDataPoints != null)
+				{
+					m_incrementalCache.putRow(m_rowKey, m_cachedRow, m_queryStartTime,
+							m_queryEndTime, m_fetchStartTime, m_readTime, m_fetchedDataPoints);
+				}
 			}
 			catch (IOException e)
 			{
-				e.printStackTrace();
+				m_failure.compareAndSet(null, e);
 			}
 			finally
 			{
@@ -465,14 +950,40 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 		@Override
 		public void onFailure(Throwable t)
 		{
-			System.out.println(t);
+			m_failure.compareAndSet(null, t);
 			m_semaphore.release();
 		}
 	}
 
+	/**
+	 Hands the cell and block results of a row to the QueryListener once both
+	 queries are done.
+	 */
+	private static class BlockQueryListener implements FutureCallback<List<ResultSet>>
+	{
+		private final QueryListener m_queryListener;
+
+		public BlockQueryListener(QueryListener queryListener)
+		{
+			m_queryListener = queryListener;
+		}
+
+		@Override
+		public void onSuccess(@Nullable List<ResultSet> results)
+		{
+			m_queryListener.onSuccess(results.get(0), results.get(1));
+		}
+
+		@Override
+		public void onFailure(Throwable t)
+		{
+			m_queryListener.onFailure(t);
+		}
+	}
+
 
 	private void cqlQueryWithRowKeys(DatastoreMetricQuery query,
-			QueryCallback queryCallback, Iterator<DataPointsRowKey> rowKeys)
+			QueryCallback queryCallback, Iterator<DataPointsRowKey> rowKeys) throws DatastoreException
 	{
 		long timerStart = System.currentTimeMillis();
 		List<ResultSetFuture> queryResults = new ArrayList<>();
@@ -480,96 +991,150 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 		long queryStartTime = query.getStartTime();
 		long queryEndTime = query.getEndTime();
 		boolean useLimit = query.getLimit() != 0;
+		//The cache holds rows in ascending order and complete for a time range
+		boolean useIncrementalCache = m_incrementalCache != null && !useLimit &&
+				query.getOrder() == Order.ASC;
+		int incrementalCacheHits = 0;
 
 		//todo add memory monitor
 
 		ExecutorService resultsExecutor = Executors.newSingleThreadExecutor();
 		//Controls the number of queries sent out at the same time.
 		Semaphore querySemaphor = new Semaphore(m_cassandraConfiguration.getSimultaneousQueries());
+		//First failure of a data point query
+		AtomicReference<Throwable> queryFailure = new AtomicReference<>();
 
-		while (rowKeys.hasNext())
+		try
 		{
-			rowCount ++;
-			DataPointsRowKey rowKey = rowKeys.next();
-			long tierRowTime = rowKey.getTimestamp();
-			int startTime;
-			int endTime;
-			if (queryStartTime < tierRowTime)
-				startTime = 0;
-			else
-				startTime = getColumnName(tierRowTime, queryStartTime);
+			//No point reading more rows once one has failed
+			while (queryFailure.get() == null && rowKeys.hasNext())
+			{
+				rowCount ++;
+				DataPointsRowKey rowKey = rowKeys.next();
+				long tierRowTime = rowKey.getTimestamp();
+				long rowWidth = rowKey.getRowWidth();
+				QueryListener queryListener = new QueryListener(rowKey, queryCallback,
+						querySemaphor, queryFailure);
+				long fetchStartTime = queryStartTime;
+
+				if (useIncrementalCache)
+				{
+					IncrementalQueryCache.CachedRow cachedRow = m_incrementalCache.getRow(rowKey, queryStartTime);
+					fetchStartTime = m_incrementalCache.getFetchStart(cachedRow, queryStartTime);
+					queryListener.setIncrementalCache(cachedRow, queryStartTime, queryEndTime, fetchStartTime);
 
-			if (queryEndTime > (tierRowTime + ROW_WIDTH))
-				endTime = getColumnName(tierRowTime, tierRowTime + ROW_WIDTH) +1;
-			else
-				endTime = getColumnName(tierRowTime, queryEndTime) +1; //add 1 so we get 0x1 for last bit
+					if (cachedRow != null)
+						incrementalCacheHits ++;
 
-			ByteBuffer startBuffer = ByteBuffer.allocate(4);
-			startBuffer.putInt(startTime);
-			startBuffer.rewind();
+					if (fetchStartTime > queryEndTime || fetchStartTime >= tierRowTime + rowWidth)
+					{
+						//Everything is in the cache, the listener is run on the results
+						//executor so the callback is not called from two threads
+						querySemaphor.acquireUninterruptibly();
+						Futures.addCallback(Futures.<ResultSet>immediateFuture(null), queryListener, resultsExecutor);
+						continue;
+					}
+				}
 
-			ByteBuffer endBuffer = ByteBuffer.allocate(4);
-			endBuffer.putInt(endTime);
-			endBuffer.rewind();
+				int startTime;
+				int endTime;
+				if (fetchStartTime < tierRowTime)
+					startTime = 0;
+				else
+					startTime = getColumnName(tierRowTime, fetchStartTime);
 
-			BoundStatement boundStatement;
-			if (useLimit)
-			{
-				if (query.getOrder() == Order.ASC)
-					boundStatement = new BoundStatement(m_schema.psDataPointsQueryAscLimit);
+				if (queryEndTime > (tierRowTime + rowWidth))
+					endTime = getColumnName(tierRowTime, tierRowTime + rowWidth) +1;
 				else
-					boundStatement = new BoundStatement(m_schema.psDataPointsQueryDescLimit);
-			}
-			else
-			{
-				if (query.getOrder() == Order.ASC)
-					boundStatement = new BoundStatement(m_schema.psDataPointsQueryAsc);
+					endTime = getColumnName(tierRowTime, queryEndTime) +1; //add 1 so we get 0x1 for last bit
+
+				ByteBuffer startBuffer = ByteBuffer.allocate(4);
+				startBuffer.putInt(startTime);
+				startBuffer.rewind();
+
+				ByteBuffer endBuffer = ByteBuffer.allocate(4);
+				endBuffer.putInt(endTime);
+				endBuffer.rewind();
+
+				BoundStatement boundStatement;
+				if (useLimit)
+				{
+					if (query.getOrder() == Order.ASC)
+						boundStatement = new BoundStatement(m_schema.psDataPointsQueryAscLimit);
+					else
+						boundStatement = new BoundStatement(m_schema.psDataPointsQueryDescLimit);
+				}
 				else
-					boundStatement = new BoundStatement(m_schema.psDataPointsQueryDesc);
-			}
+				{
+					if (query.getOrder() == Order.ASC)
+						boundStatement = new BoundStatement(m_schema.psDataPointsQueryAsc);
+					else
+						boundStatement = new BoundStatement(m_schema.psDataPointsQueryDesc);
+				}
 
-			boundStatement.setBytesUnsafe(0, DATA_POINTS_ROW_KEY_SERIALIZER.toByteBuffer(rowKey));
-			boundStatement.setBytesUnsafe(1, startBuffer);
-			boundStatement.setBytesUnsafe(2, endBuffer);
+				boundStatement.setBytesUnsafe(0, DATA_POINTS_ROW_KEY_SERIALIZER.toByteBuffer(rowKey));
+				boundStatement.setBytesUnsafe(1, startBuffer);
+				boundStatement.setBytesUnsafe(2, endBuffer);
 
-			if (useLimit)
-				boundStatement.setInt(3, query.getLimit());
+				if (useLimit)
+					boundStatement.setInt(3, query.getLimit());
 
-			boundStatement.setConsistencyLevel(m_cassandraConfiguration.getDataReadLevel());
+				boundStatement.setConsistencyLevel(m_cassandraConfiguration.getDataReadLevel());
 
-			try
-			{
-				querySemaphor.acquire();
-			}
-			catch (InterruptedException e)
-			{
-				e.printStackTrace();
+				querySemaphor.acquireUninterruptibly();
+				ResultSetFuture resultSetFuture = m_session.executeAsync(boundStatement);
+
+				if (m_blockWindows != null && DataPointBlock.canStore(rowKey.getDataType()))
+				{
+					//Blocks are keyed by their start so the block holding the fetch start is included
+					long blockStartTime = m_blockWindows.getSearchStart(tierRowTime, fetchStartTime);
+
+					BoundStatement blockStatement = new BoundStatement(m_schema.psDataPointBlocksQuery);
+					blockStatement.setBytesUnsafe(0, DATA_POINTS_ROW_KEY_SERIALIZER.toByteBuffer(rowKey));
+					blockStatement.setBytesUnsafe(1, serializeColumn(getColumnName(tierRowTime, blockStartTime)));
+					blockStatement.setBytesUnsafe(2, serializeColumn(endTime));
+					blockStatement.setConsistencyLevel(m_cassandraConfiguration.getDataReadLevel());
+
+					queryListener.setBlocks(fetchStartTime, queryEndTime, query.getOrder(), query.getLimit());
+					Futures.addCallback(Futures.allAsList(resultSetFuture, m_session.executeAsync(blockStatement)),
+							new BlockQueryListener(queryListener), resultsExecutor);
+				}
+				else
+					Futures.addCallback(resultSetFuture, queryListener, resultsExecutor);
 			}
-			ResultSetFuture resultSetFuture = m_session.executeAsync(boundStatement);
 
-			Futures.addCallback(resultSetFuture, new QueryListener(rowKey, queryCallback, querySemaphor), resultsExecutor);
+			ThreadReporter.addDataPoint(KEY_QUERY_TIME, System.currentTimeMillis() - timerStart);
+			ThreadReporter.addDataPoint(ROW_KEY_COUNT, rowCount);
+			if (useIncrementalCache)
+				ThreadReporter.addDataPoint(INCREMENTAL_CACHE_HITS, incrementalCacheHits);
+		}
+		catch (DriverException e)
+		{
+			//Row keys are read as the iterator is used so index failures show up here
+			throw new DatastoreException(e);
+		}
+		finally
+		{
+			//Queries already sent still call the callback, wait for them
+			//before returning
+			querySemaphor.acquireUninterruptibly(m_cassandraConfiguration.getSimultaneousQueries());
+			resultsExecutor.shutdown();
 		}
 
-		ThreadReporter.addDataPoint(KEY_QUERY_TIME, System.currentTimeMillis() - timerStart);
-		ThreadReporter.addDataPoint(ROW_KEY_COUNT, rowCount);
+		if (queryFailure.get() != null)
+			throw new DatastoreException(queryFailure.get());
 
 		try
 		{
-			querySemaphor.acquire(m_cassandraConfiguration.getSimultaneousQueries());
 			queryCallback.endDataPoints();
-			resultsExecutor.shutdown();
-		}
-		catch (InterruptedException e)
-		{
-			e.printStackTrace();
 		}
 		catch (IOException e)
 		{
-			e.printStackTrace();
+			throw new DatastoreException(e);
 		}
 	}
 
-	private void deletePartialRow(DataPointsRowKey rowKey, int start, int end)
+	private ResultSetFuture deletePartialRow(DataPointsRowKey rowKey, int start, int end)
 	{
 		BoundStatement statement = new BoundStatement(m_schema.psDataPointsDelete);
 		statement.setBytesUnsafe(0, DATA_POINTS_ROW_KEY_SERIALIZER.toByteBuffer(rowKey));
@@ -584,10 +1149,72 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 		statement.setBytesUnsafe(2, b);
 
 		statement.setConsistencyLevel(m_cassandraConfiguration.getDataReadLevel());
-		m_session.executeAsync(statement);
+		return (m_session.executeAsync(statement));
 	}
 
 
+	/**
+	 Deletes the data points of the query from one row.
+	 @param hasBlocks the row is packed into blocks, the deletes are done when
+	                  this returns
+	 @return true if the whole row was deleted
+	 */
+	private boolean deleteFromRow(DatastoreMetricQuery deleteQuery, DataPointsRowKey rowKey, boolean hasBlocks)
+	{
+		long rowKeyTimestamp = rowKey.getTimestamp();
+		long rowWidth = rowKey.getRowWidth();
+		List<ResultSetFuture> deletes = new ArrayList<>();
+		boolean deletedRow = false;
+
+		if (deleteQuery.getStartTime() <= rowKeyTimestamp && (deleteQuery.getEndTime() >= rowKeyTimestamp + rowWidth - 1))
+		{
+			BoundStatement statement = new BoundStatement(m_schema.psDataPointsDeleteRow);
+			statement.setBytesUnsafe(0, DATA_POINTS_ROW_KEY_SERIALIZER.toByteBuffer(rowKey));
+			statement.setConsistencyLevel(m_cassandraConfiguration.getDataReadLevel());
+			deletes.add(m_session.executeAsync(statement));
+
+			if (hasBlocks)
+			{
+				statement = new BoundStatement(m_schema.psDataPointBlocksDeleteRow);
+				statement.setBytesUnsafe(0, DATA_POINTS_ROW_KEY_SERIALIZER.toByteBuffer(rowKey));
+				statement.setConsistencyLevel(m_cassandraConfiguration.getDataReadLevel());
+				deletes.add(m_session.executeAsync(statement));
+			}
+
+			statement = new BoundStatement(m_schema.psRowKeyIndexDelete);
+			statement.setBytesUnsafe(0, serializeString(rowKey.getMetricName()));
+			statement.setBytesUnsafe(1, DATA_POINTS_ROW_KEY_SERIALIZER.toByteBuffer(rowKey));
+			statement.setConsistencyLevel(m_cassandraConfiguration.getDataReadLevel());
+			m_session.executeAsync(statement);
+			deletedRow = true;
+		}
+		else if (deleteQuery.getStartTime() <= rowKeyTimestamp)
+		{
+			//Delete first portion of row
+			deletes.add(deletePartialRow(rowKey, 0, getColumnName(rowKeyTimestamp, deleteQuery.getEndTime())));
+
+			if (hasBlocks)
+				deleteFromBlocks(rowKey, rowKeyTimestamp, deleteQuery.getEndTime());
+		}
+		else
+		{
+			//Delete last portion of row
+			deletes.add(deletePartialRow(rowKey, getColumnName(rowKeyTimestamp, deleteQuery.getStartTime()),
+					getColumnName(rowKeyTimestamp, rowKeyTimestamp + rowWidth - 1)));
+
+			if (hasBlocks)
+				deleteFromBlocks(rowKey, deleteQuery.getStartTime(), rowKeyTimestamp + rowWidth - 1);
+		}
+
+		if (hasBlocks)
+		{
+			for (ResultSetFuture delete : deletes)
+				delete.getUninterruptibly();
+		}
+
+		return (deletedRow);
+	}
+
 	@Override
 	public void deleteDataPoints(DatastoreMetricQuery deleteQuery) throws DatastoreException
 	{
@@ -605,32 +1232,23 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 		while (rowKeyIterator.hasNext())
 		{
 			DataPointsRowKey rowKey = rowKeyIterator.next();
-			long rowKeyTimestamp = rowKey.getTimestamp();
-			if (deleteQuery.getStartTime() <= rowKeyTimestamp && (deleteQuery.getEndTime() >= rowKeyTimestamp + ROW_WIDTH - 1))
-			{
-				BoundStatement statement = new BoundStatement(m_schema.psDataPointsDeleteRow);
-				statement.setBytesUnsafe(0, DATA_POINTS_ROW_KEY_SERIALIZER.toByteBuffer(rowKey));
-				statement.setConsistencyLevel(m_cassandraConfiguration.getDataReadLevel());
-				m_session.executeAsync(statement);
-
-				statement = new BoundStatement(m_schema.psRowKeyIndexDelete);
-				statement.setBytesUnsafe(0, serializeString(rowKey.getMetricName()));
-				statement.setBytesUnsafe(1, DATA_POINTS_ROW_KEY_SERIALIZER.toByteBuffer(rowKey));
-				statement.setConsistencyLevel(m_cassandraConfiguration.getDataReadLevel());
-				m_session.executeAsync(statement);
-				clearCache = true;
-			}
-			else if (deleteQuery.getStartTime() <= rowKeyTimestamp)
+			if (m_blockWindows != null && DataPointBlock.canStore(rowKey.getDataType()))
 			{
-				//Delete first portion of row
-				deletePartialRow(rowKey, 0, getColumnName(rowKeyTimestamp, deleteQuery.getEndTime()));
+				//A seal of the row waits for the delete to finish so it does not
+				//put back data points it read before the cells were deleted
+				Lock lock = m_blockLocks.get(rowKey);
+				lock.lock();
+				try
+				{
+					clearCache |= deleteFromRow(deleteQuery, rowKey, true);
+				}
+				finally
+				{
+					lock.unlock();
+				}
 			}
 			else
-			{
-				//Delete last portion of row
-				deletePartialRow(rowKey, getColumnName(rowKeyTimestamp, deleteQuery.getStartTime()),
-						getColumnName(rowKeyTimestamp, rowKeyTimestamp + ROW_WIDTH - 1));
-			}
+				clearCache |= deleteFromRow(deleteQuery, rowKey, false);
 		}
 
 		// If index is gone, delete metric name from Strings column family
@@ -655,6 +1273,10 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 
 		if (clearCache)
 			m_rowKeyCache.clear();
+
+		//Deleted data points may still be in the incremental cache
+		if (m_incrementalCache != null)
+			m_incrementalCache.clear();
 	}
 
 	private SortedMap<String, String> getTags(DataPointRow row)
@@ -695,9 +1317,6 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 		{
 			//todo use Iterable.concat to query multiple metrics at the same time.
 			//each filtered iterator will be combined into one and returned.
-			//one issue is that the queries are done in the constructor
-			//would like to do them lazily but would have to through an exception through
-			//hasNext call, ick
 			ret = new CQLFilteredRowKeyIterator(query.getName(), query.getStartTime(),
 					query.getEndTime(), query.getTags());
 		}
@@ -708,7 +1327,33 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 
 	public static long calculateRowTime(long timestamp)
 	{
-		return (timestamp - (Math.abs(timestamp) % ROW_WIDTH));
+		return (calculateRowTime(timestamp, ROW_WIDTH));
+	}
+
+	public static long calculateRowTime(long timestamp, long rowWidth)
+	{
+		return (timestamp - (Math.abs(timestamp) % rowWidth));
+	}
+
+	/**
+	 Earliest row time of a row that can hold startTime, rows are at most
+	 ROW_WIDTH wide but narrower rows are not aligned with the default rows.
+	 */
+	public static long calculateRowSearchStart(long startTime)
+	{
+		return (calculateRowSearchStart(startTime, ROW_WIDTH));
+	}
+
+	/**
+	 Earliest row time of a row holding startTime when no row is wider than
+	 maxRowWidth.
+	 */
+	public static long calculateRowSearchStart(long startTime, long maxRowWidth)
+	{
+		if (startTime - maxRowWidth >= startTime)
+			return (calculateRowTime(startTime, maxRowWidth)); //overflow
+
+		return (startTime - maxRowWidth + 1);
 	}
 
 
@@ -754,21 +1399,41 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 	}
 
 
+	/**
+	 Reads the row keys of a metric from the key indexes as they are needed.
+	 The index queries are sent when the iterator is created, the row_keys
+	 queries are sent as the row times come in from the time index with at
+	 most getSimultaneousRowKeyQueries in flight.  Keys are returned in the
+	 order of the queries so the data queries of the first rows can start
+	 while the index of later rows is still being read.
+
+	 Index read failures are thrown from hasNext as the driver exceptions.
+	 */
 	private class CQLFilteredRowKeyIterator implements Iterator<DataPointsRowKey>
 	{
+		//Start fetching the next page of a result set when fewer rows are left
+		private static final int PREFETCH_ROWS = 100;
+
 		private final SetMultimap<String, String> m_filterTags;
 		private DataPointsRowKey m_nextKey;
-		private final Iterator<ResultSet> m_resultSets;
-		private ResultSet m_currentResultSet;
 		private final String m_metricName;
+		private final long m_startTime;
+		private final int m_maxRowKeyQueries;
+
+		private final Deque<ResultSetFuture> m_legacyQueries = new ArrayDeque<>();
+		private final Deque<ResultSetFuture> m_rowKeyQueries = new ArrayDeque<>();
+		private ResultSetFuture m_rowTimeQuery;
+		private ResultSet m_rowTimes;
+		private ResultSet m_currentResultSet;
 
 
 		public CQLFilteredRowKeyIterator(String metricName, long startTime, long endTime,
-				SetMultimap<String, String> filterTags) throws DatastoreException
+				SetMultimap<String, String> filterTags)
 		{
 			m_filterTags = filterTags;
 			m_metricName = metricName;
-			List<ResultSetFuture> futures = new ArrayList<>();
+			m_startTime = startTime;
+			m_maxRowKeyQueries = Math.max(1, m_cassandraConfiguration.getSimultaneousRowKeyQueries());
 
 			//Legacy key index - index is all in one row
 			if ((startTime < 0) && (endTime >= 0))
@@ -778,8 +1443,7 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 				setStartEndKeys(negStatement, metricName, startTime, -1L);
 				negStatement.setConsistencyLevel(m_cassandraConfiguration.getDataReadLevel());
 
-				ResultSetFuture future = m_session.executeAsync(negStatement);
-				futures.add(future);
+				m_legacyQueries.add(m_session.executeAsync(negStatement));
 
 
 				BoundStatement posStatement = new BoundStatement(m_schema.psRowKeyIndexQuery);
@@ -787,8 +1451,7 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 				setStartEndKeys(posStatement, metricName, 0L, endTime);
 				posStatement.setConsistencyLevel(m_cassandraConfiguration.getDataReadLevel());
 
-				future = m_session.executeAsync(posStatement);
-				futures.add(future);
+				m_legacyQueries.add(m_session.executeAsync(posStatement));
 			}
 			else
 			{
@@ -797,39 +1460,76 @@ public class CassandraDatastore implements Datastore, ProcessorHandler, KairosMe
 				setStartEndKeys(statement, metricName, startTime, endTime);
 				statement.setConsistencyLevel(m_cassandraConfiguration.getDataReadLevel());
 
-				ResultSetFuture future = m_session.executeAsync(statement);
-				futures.add(future);
+				m_legacyQueries.add(m_session.executeAsync(statement));
 			}
 
 			//New index query index is broken up by time tier
-			List<Long> queryKeyList = createQueryKeyList(metricName, startTime, endTime);
-			for (Long keyTime : queryKeyList)
+			BoundStatement statement = new BoundStatement(m_schema.psRowKeyTimeQuery);
+			statement.setString(0, metricName);
+			statement.setTimestamp(1, new Date(calculateRowSearchStart(startTime,
+					m_rowWidths.getMaxRowWidth(metricName, startTime))));
+			statement.setTimestamp(2, new Date(endTime));
+			statement.setConsistencyLevel(m_cassandraConfiguration.getDataReadLevel());
+
+			m_rowTimeQuery = m_session.executeAsync(statement);
+		}
+
+		private void prefetch(ResultSet resultSet)
+		{
+			if (!resultSet.isFullyFetched() && resultSet.getAvailableWithoutFetching() < PREFETCH_ROWS)
+				resultSet.fetchMoreResults();
+		}
+
+		/**
+		 Sends row_keys queries for the next row times until the limit of
+		 queries in flight is reached.
+		 */
+		private void sendRowKeyQueries()
+		{
+			if (m_rowTimes == null)
+			{
+				if (m_rowTimeQuery == null)
+					return;
+
+				m_rowTimes = m_rowTimeQuery.getUninterruptibly();
+				m_rowTimeQuery = null;
+			}
+
+			while (m_rowKeyQueries.size() < m_maxRowKeyQueries && !m_rowTimes.isExhausted())
 			{
+				long keyTime = m_rowTimes.one().getTimestamp(0).getTime();
+				prefetch(m_rowTimes);
+
 				BoundStatement statement = new BoundStatement(m_schema.psRowKeyQuery);
-				statement.setString(0, metricName);
+				statement.setString(0, m_metricName);
 				statement.setTimestamp(1, new Date(keyTime));
 				statement.setConsistencyLevel(m_cassandraConfiguration.getDataReadLevel());
 
-				ResultSetFuture future = m_session.executeAsync(statement);
-				futures.add(future);
+				m_rowKeyQueries.add(m_session.executeAsync(statement));
 			}
+		}
 
-			ListenableFuture<List<ResultSet>> listListenableFuture = Futures.allAsList(futures);
+		/**
+		 Moves on to the result of the next index query.
+		 @return false when there are no more queries
+		 */
+		private boolean nextResultSet()
+		{
+			//Row key queries go out while the legacy index is read
+			sendRowKeyQueries();
 
-			try
-			{
-				m_resultSets = listListenableFuture.get().iterator();
-				if (m_resultSets.hasNext())
-					m_currentResultSet = m_resultSets.next();
-			}
-			catch (InterruptedException e)
-			{
-				throw new DatastoreException("Index query interrupted", e);
-			}
-			catch (ExecutionException e)
-			{
-				throw new DatastoreException("Failed to read key index", e);
-			}
+			ResultSetFuture future = m_legacyQueries.poll();
+			if (future == null)
+				future = m_rowKeyQueries.poll();
+
+			if (future == null)
+				return (false);
+
+			m_currentResultSet = future.getUninterruptibly();
+			//Keep the number of row_keys queries in flight up
+			sendRowKeyQueries();
+
+			return (true);
 		}
 
 		private DataPointsRowKey nextKeyFromIterator(ResultSet iterator)
@@ -844,10 +1544,21 @@ outer:
 			{
 				DataPointsRowKey rowKey;
 				Row record = iterator.one();
+				prefetch(iterator);
 
 				if (newIndex)
+				{
 					rowKey = new DataPointsRowKey(m_metricName, record.getTimestamp(0).getTime(),
 							record.getString(1), new TreeMap<String, String>(record.getMap(2, String.class, String.class)));
+
+					String rowWidth = record.getString(3);
+					if (rowWidth != null)
+						rowKey.setRowWidth(Long.parseLong(rowWidth));
+
+					//The time index is searched far enough back to find rows of any width
+					if (rowKey.getTimestamp() + rowKey.getRowWidth() <= m_startTime)
+						continue;
+				}
 				else
 					rowKey = DATA_POINTS_ROW_KEY_SERIALIZER.fromByteBuffer(record.getBytes(0));
 
@@ -866,27 +1577,6 @@ outer:
 			return (next);
 		}
 
-		private List<Long> createQueryKeyList(String metricName,
-				long startTime, long endTime)
-		{
-			List<Long> ret = new ArrayList<>();
-
-			BoundStatement statement = new BoundStatement(m_schema.psRowKeyTimeQuery);
-			statement.setString(0, metricName);
-			statement.setTimestamp(1, new Date(calculateRowTime(startTime)));
-			statement.setTimestamp(2, new Date(endTime));
-			statement.setConsistencyLevel(m_cassandraConfiguration.getDataReadLevel());
-
-			ResultSet rows = m_session.execute(statement);
-
-			while (!rows.isExhausted())
-			{
-				ret.add(rows.one().getTimestamp(0).getTime());
-			}
-
-			return ret;
-		}
-
 		private void setStartEndKeys(
 				BoundStatement boundStatement,
 				String metricName, long startTime, long endTime)
@@ -905,16 +1595,16 @@ outer:
 		@Override
 		public boolean hasNext()
 		{
-			m_nextKey = null;
-			while (m_currentResultSet != null && (!m_currentResultSet.isExhausted() || m_resultSets.hasNext()))
+			//hasNext can be called more than once before next
+			while (m_nextKey == null)
 			{
-				m_nextKey = nextKeyFromIterator(m_currentResultSet);
-
-				if (m_nextKey != null)
+				if (m_currentResultSet == null && !nextResultSet())
 					break;
 
-				if (m_resultSets.hasNext())
-					m_currentResultSet = m_resultSets.next();
+				m_nextKey = nextKeyFromIterator(m_currentResultSet);
+
+				if (m_nextKey == null)
+					m_currentResultSet = null;
 			}
 
 			return (m_nextKey != null);
@@ -923,7 +1613,9 @@ outer:
 		@Override
 		public DataPointsRowKey next()
 		{
-			return m_nextKey;
+			DataPointsRowKey next = m_nextKey;
+			m_nextKey = null;
+			return next;
 		}
 
 		@Override
@@ -35,9 +35,12 @@ public class CassandraModule extends AbstractModule
 	public static final String CASSANDRA_HECTOR_MAP = "cassandra.hector.map";
 	public static final String AUTH_PREFIX = "kairosdb.datastore.cassandra.auth.";
 	public static final String HECTOR_PREFIX = "kairosdb.datastore.cassandra.hector.";
+	public static final String CASSANDRA_ROW_WIDTH_MAP = "cassandra.row_width.map";
+	public static final String ROW_WIDTH_PREFIX = "kairosdb.datastore.cassandra.row_width.";
 
 	private Map<String, String> m_authMap = new HashMap<String, String>();
 	private Map<String, Object> m_hectorMap = new HashMap<String, Object>();
+	private Map<String, String> m_rowWidthMap = new HashMap<String, String>();
 
 	public CassandraModule(Properties props)
 	{
@@ -57,6 +60,11 @@ public class CassandraModule extends AbstractModule
 				String configKey = strKey.substring(HECTOR_PREFIX.length());
 				m_hectorMap.put(configKey, props.get(key));
 			}
+			else if (strKey.startsWith(ROW_WIDTH_PREFIX))
+			{
+				String metricPrefix = strKey.substring(ROW_WIDTH_PREFIX.length());
+				m_rowWidthMap.put(metricPrefix, (String)props.get(key));
+			}
 		}
 	}
 
@@ -68,6 +76,7 @@ public class CassandraModule extends AbstractModule
 		bind(ServiceKeyStore.class).to(CassandraDatastore.class).in(Scopes.SINGLETON);
 		bind(CassandraDatastore.class).in(Scopes.SINGLETON);
 		bind(CleanRowKeyCache.class).in(Scopes.SINGLETON);
+		bind(SealBlocks.class).in(Scopes.SINGLETON);
 		bind(CassandraConfiguration.class).in(Scopes.SINGLETON);
 		bind(CassandraClient.class).to(CassandraClientImpl.class);
 		bind(CassandraClientImpl.class).in(Scopes.SINGLETON);
@@ -77,5 +86,8 @@ public class CassandraModule extends AbstractModule
 
 		bind(new TypeLiteral<Map<String, Object>>(){}).annotatedWith(Names.named(CASSANDRA_HECTOR_MAP))
 				.toInstance(m_hectorMap);
+
+		bind(new TypeLiteral<Map<String, String>>(){}).annotatedWith(Names.named(CASSANDRA_ROW_WIDTH_MAP))
+				.toInstance(m_rowWidthMap);
 	}
 }
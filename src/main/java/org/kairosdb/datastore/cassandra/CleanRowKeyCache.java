@@ -46,5 +46,6 @@ public class CleanRowKeyCache implements KairosDBJob
 	public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException
 	{
 		m_datastore.cleanRowKeyCache();
+		m_datastore.refreshRowWidths();
 	}
 }
@@ -16,8 +16,11 @@
 
 package org.kairosdb.datastore.cassandra;
 
+import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  This cache serves two purposes.
@@ -29,22 +32,31 @@ import java.util.concurrent.ConcurrentHashMap;
  can use the same row key object over and over.  With row keys we store the
  serialized form of the key so we only have to serialize a row key once.
 
+ The cache is split into segments by hash code, each with its own LRU list and
+ lock, so ingest threads do not all serialize on one monitor.  A hit is a
+ lock free map lookup; the item is only moved to the front of its LRU list if
+ the segment lock is free, so under contention the ordering is approximate.
+
  The data type must implement hashcode and equal methods.
  */
 public class DataCache<T>
 {
-	private final Object m_lock = new Object();
+	private static final int MAX_SEGMENTS = 16;
+	private static final int MIN_SEGMENT_SIZE = 1024;
 
-	private final LinkItem<T> m_front = new LinkItem<T>(null);
-	private final LinkItem<T> m_back = new LinkItem<T>(null);
+	private final Segment<T>[] m_segments;
+	private final int m_segmentMask;
 
-	private int m_maxSize;
+	private final LongAdder m_hits = new LongAdder();
+	private final LongAdder m_misses = new LongAdder();
+	private final LongAdder m_evictions = new LongAdder();
 
 
-	private class LinkItem<T>
+	private static class LinkItem<T>
 	{
 		private LinkItem<T> m_prev;
 		private LinkItem<T> m_next;
+		private boolean m_linked;
 
 		private final T m_data;
 
@@ -54,17 +66,27 @@ public class DataCache<T>
 		}
 	}
 
-	//Using a ConcurrentHashMap so we can use the putIfAbsent method.
-	private ConcurrentHashMap<T, LinkItem<T>> m_hashMap;
-
 	public DataCache(int cacheSize)
 	{
-		//m_cache = new InternalCache(cacheSize);
-		m_hashMap = new ConcurrentHashMap<>();
-		m_maxSize = cacheSize;
+		//Small caches use a single segment so they behave as an exact LRU
+		int segmentCount = 1;
+		while (segmentCount < MAX_SEGMENTS && (segmentCount * 2 * MIN_SEGMENT_SIZE) <= cacheSize)
+			segmentCount *= 2;
 
-		m_front.m_next = m_back;
-		m_back.m_prev = m_front;
+		m_segmentMask = segmentCount - 1;
+		@SuppressWarnings("unchecked")
+		Segment<T>[] segments = (Segment<T>[]) new Segment<?>[segmentCount];
+		m_segments = segments;
+		int segmentSize = (cacheSize + segmentCount - 1) / segmentCount;
+		for (int I = 0; I < segmentCount; I++)
+			m_segments[I] = new Segment<T>(segmentSize, m_evictions);
+	}
+
+	private Segment<T> segmentFor(Object data)
+	{
+		int h = data.hashCode();
+		h ^= (h >>> 16);  //Spread the high bits
+		return (m_segments[h & m_segmentMask]);
 	}
 
 	/**
@@ -76,71 +98,199 @@ public class DataCache<T>
 	 */
 	public T cacheItem(T cacheData)
 	{
-		LinkItem<T> mappedItem = null;
+		T ret = segmentFor(cacheData).cacheItem(cacheData);
 
-		synchronized (m_lock)
-		{
-			LinkItem<T> li = new LinkItem<T>(cacheData);
-			mappedItem = m_hashMap.putIfAbsent(cacheData, li);
+		if (ret == null)
+			m_misses.increment();
+		else
+			m_hits.increment();
 
-			if (mappedItem != null)
-			{
-				remove(mappedItem);
-				addItem(mappedItem);
-			}
-			else
-				addItem(li);
+		return (ret);
+	}
 
-			if (m_hashMap.size() > m_maxSize)
-			{
-				LinkItem<T> last = m_back.m_prev;
-				remove(last);
+	public Set<T> getCachedKeys()
+	{
+		Set<T> ret = new HashSet<T>();
+		for (Segment<T> segment : m_segments)
+			ret.addAll(segment.m_hashMap.keySet());
 
-				m_hashMap.remove(last.m_data);
-			}
-		}
+		return (ret);
+	}
 
-		return (mappedItem == null ? null : mappedItem.m_data);
+	public void removeKey(T key)
+	{
+		segmentFor(key).removeKey(key);
 	}
 
-	private void remove(LinkItem<T> li)
+	public void clear()
 	{
-		li.m_prev.m_next = li.m_next;
-		li.m_next.m_prev = li.m_prev;
+		for (Segment<T> segment : m_segments)
+			segment.clear();
 	}
 
-	private void addItem(LinkItem<T> li)
+	public int size()
 	{
-		li.m_prev = m_front;
-		li.m_next = m_front.m_next;
+		int size = 0;
+		for (Segment<T> segment : m_segments)
+			size += segment.m_hashMap.size();
 
-		m_front.m_next = li;
-		li.m_next.m_prev = li;
+		return (size);
 	}
 
-	public Set<T> getCachedKeys()
+	/**
+	 Number of calls to cacheItem that found the item since the last call
+	 */
+	public long getAndResetHits()
 	{
-		return (m_hashMap.keySet());
+		return (m_hits.sumThenReset());
 	}
 
-	public void removeKey(T key)
+	/**
+	 Number of calls to cacheItem that did not find the item since the last call
+	 */
+	public long getAndResetMisses()
 	{
-		synchronized (m_lock)
-		{
-			LinkItem<T> li = m_hashMap.remove(key);
-			if (li != null)
-				remove(li);
-		}
+		return (m_misses.sumThenReset());
 	}
 
-	public void clear()
+	/**
+	 Number of items pushed out of the cache since the last call
+	 */
+	public long getAndResetEvictions()
 	{
-		synchronized (m_lock)
+		return (m_evictions.sumThenReset());
+	}
+
+	//===========================================================================
+	private static class Segment<T>
+	{
+		private final ReentrantLock m_lock = new ReentrantLock();
+		private final LongAdder m_evictions;
+
+		private final LinkItem<T> m_front = new LinkItem<T>(null);
+		private final LinkItem<T> m_back = new LinkItem<T>(null);
+
+		private final int m_maxSize;
+
+		//Using a ConcurrentHashMap so lookups do not need the lock
+		private final ConcurrentHashMap<T, LinkItem<T>> m_hashMap;
+
+		private Segment(int maxSize, LongAdder evictions)
 		{
+			m_hashMap = new ConcurrentHashMap<>();
+			m_maxSize = maxSize;
+			m_evictions = evictions;
+
 			m_front.m_next = m_back;
 			m_back.m_prev = m_front;
+		}
 
-			m_hashMap.clear();
+		private T cacheItem(T cacheData)
+		{
+			LinkItem<T> mappedItem = m_hashMap.get(cacheData);
+
+			if (mappedItem != null)
+			{
+				//Skip the reordering if another thread is busy with this segment
+				if (m_lock.tryLock())
+				{
+					try
+					{
+						if (mappedItem.m_linked)
+						{
+							remove(mappedItem);
+							addItem(mappedItem);
+						}
+					}
+					finally
+					{
+						m_lock.unlock();
+					}
+				}
+
+				return (mappedItem.m_data);
+			}
+
+			m_lock.lock();
+			try
+			{
+				LinkItem<T> li = new LinkItem<T>(cacheData);
+				mappedItem = m_hashMap.putIfAbsent(cacheData, li);
+
+				if (mappedItem != null)
+				{
+					remove(mappedItem);
+					addItem(mappedItem);
+				}
+				else
+					addItem(li);
+
+				if (m_hashMap.size() > m_maxSize)
+				{
+					LinkItem<T> last = m_back.m_prev;
+					remove(last);
+
+					m_hashMap.remove(last.m_data);
+					m_evictions.increment();
+				}
+			}
+			finally
+			{
+				m_lock.unlock();
+			}
+
+			return (mappedItem == null ? null : mappedItem.m_data);
+		}
+
+		private void remove(LinkItem<T> li)
+		{
+			li.m_prev.m_next = li.m_next;
+			li.m_next.m_prev = li.m_prev;
+			li.m_linked = false;
+		}
+
+		private void addItem(LinkItem<T> li)
+		{
+			li.m_prev = m_front;
+			li.m_next = m_front.m_next;
+
+			m_front.m_next = li;
+			li.m_next.m_prev = li;
+			li.m_linked = true;
+		}
+
+		private void removeKey(T key)
+		{
+			m_lock.lock();
+			try
+			{
+				LinkItem<T> li = m_hashMap.remove(key);
+				if (li != null)
+					remove(li);
+			}
+			finally
+			{
+				m_lock.unlock();
+			}
+		}
+
+		private void clear()
+		{
+			m_lock.lock();
+			try
+			{
+				for (LinkItem<T> li = m_front.m_next; li != m_back; li = li.m_next)
+					li.m_linked = false;
+
+				m_front.m_next = m_back;
+				m_back.m_prev = m_front;
+
+				m_hashMap.clear();
+			}
+			finally
+			{
+				m_lock.unlock();
+			}
 		}
 	}
 }
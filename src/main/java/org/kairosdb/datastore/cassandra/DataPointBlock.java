@@ -0,0 +1,218 @@
+package org.kairosdb.datastore.cassandra;
+
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.datapoints.DoubleDataPoint;
+import org.kairosdb.core.datapoints.LongDataPoint;
+import org.kairosdb.util.BitReader;
+import org.kairosdb.util.BitWriter;
+import org.kairosdb.util.DeltaOfDeltaDecoder;
+import org.kairosdb.util.DeltaOfDeltaEncoder;
+import org.kairosdb.util.DoubleXorDecoder;
+import org.kairosdb.util.DoubleXorEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.kairosdb.core.datapoints.DoubleDataPointFactoryImpl.DST_DOUBLE;
+import static org.kairosdb.core.datapoints.LongDataPointFactoryImpl.DST_LONG;
+
+/**
+ The data points of one row key within a time window packed into a single
+ cell of the data_point_blocks table.
+
+ A block starts with a byte for the value type and the number of data points
+ as an int.  The bits that follow hold the timestamp of each data point,
+ delta of delta encoded from the window start, followed by its value, delta
+ of delta encoded for longs or XOR encoded for doubles.
+ */
+public class DataPointBlock
+{
+	private static final byte LONG_VALUES = 0;
+	private static final byte DOUBLE_VALUES = 1;
+	private static final int HEADER_SIZE = 5;
+
+	private DataPointBlock()
+	{
+	}
+
+	/**
+	 Only long and double rows are packed into blocks.
+	 */
+	public static boolean canStore(String dataType)
+	{
+		return (DST_LONG.equals(dataType) || DST_DOUBLE.equals(dataType));
+	}
+
+	/**
+	 @param dataType data store type of the row, see canStore
+	 @param windowStart start of the window the data points belong to
+	 @param dataPoints data points in ascending order with unique timestamps
+	 */
+	public static ByteBuffer encode(String dataType, long windowStart, List<DataPoint> dataPoints)
+	{
+		checkArgument(canStore(dataType), "Unsupported data type %s", dataType);
+		boolean longValues = DST_LONG.equals(dataType);
+
+		BitWriter writer = new BitWriter(dataPoints.size() * 2 + 16);
+		DeltaOfDeltaEncoder timestamps = new DeltaOfDeltaEncoder(writer, windowStart);
+		DeltaOfDeltaEncoder longs = new DeltaOfDeltaEncoder(writer, 0);
+		DoubleXorEncoder doubles = new DoubleXorEncoder(writer);
+
+		for (DataPoint dataPoint : dataPoints)
+		{
+			timestamps.write(dataPoint.getTimestamp());
+			if (longValues)
+				longs.write(dataPoint.getLongValue());
+			else
+				doubles.write(dataPoint.getDoubleValue());
+		}
+
+		ByteBuffer block = ByteBuffer.allocate(HEADER_SIZE + writer.getByteCount());
+		block.put(longValues ? LONG_VALUES : DOUBLE_VALUES);
+		block.putInt(dataPoints.size());
+		block.put(writer.getBuffer(), 0, writer.getByteCount());
+		block.flip();
+
+		return (block);
+	}
+
+	/**
+	 @param block block as written by encode, it is not modified
+	 @param windowStart the window start the block was encoded with
+	 @return data points in ascending order
+	 */
+	public static List<DataPoint> decode(ByteBuffer block, long windowStart)
+	{
+		byte[] buffer;
+		int offset;
+		int length = block.remaining();
+		if (block.hasArray())
+		{
+			buffer = block.array();
+			offset = block.arrayOffset() + block.position();
+		}
+		else
+		{
+			buffer = new byte[length];
+			block.duplicate().get(buffer);
+			offset = 0;
+		}
+
+		checkArgument(length >= HEADER_SIZE, "Block is too short");
+		boolean longValues = buffer[offset] == LONG_VALUES;
+		int count = ByteBuffer.wrap(buffer, offset + 1, 4).getInt();
+
+		BitReader reader = new BitReader(buffer, offset + HEADER_SIZE, length - HEADER_SIZE);
+		DeltaOfDeltaDecoder timestamps = new DeltaOfDeltaDecoder(reader, windowStart);
+		DeltaOfDeltaDecoder longs = new DeltaOfDeltaDecoder(reader, 0);
+		DoubleXorDecoder doubles = new DoubleXorDecoder(reader);
+
+		List<DataPoint> dataPoints = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+		{
+			long timestamp = timestamps.read();
+			if (longValues)
+				dataPoints.add(new LongDataPoint(timestamp, longs.read()));
+			else
+				dataPoints.add(new DoubleDataPoint(timestamp, doubles.read()));
+		}
+
+		return (dataPoints);
+	}
+
+	/**
+	 Combines the data points of the blocks of a row.  Blocks written with
+	 different window sizes can overlap, where they do the data point of the
+	 block written last is kept.
+	 @param blocks data points of each block in ascending order, the blocks
+	               in column order
+	 @param writeTimes write time of each block
+	 @return data points in ascending order
+	 */
+	public static List<DataPoint> combine(List<List<DataPoint>> blocks, final List<Long> writeTimes)
+	{
+		List<DataPoint> ret = new ArrayList<>();
+		boolean overlap = false;
+		for (List<DataPoint> block : blocks)
+		{
+			if (block.isEmpty())
+				continue;
+
+			if (!ret.isEmpty() && ret.get(ret.size() - 1).getTimestamp() >= block.get(0).getTimestamp())
+			{
+				overlap = true;
+				break;
+			}
+
+			ret.addAll(block);
+		}
+
+		if (!overlap)
+			return (ret);
+
+		List<Integer> writeOrder = new ArrayList<>();
+		for (int i = 0; i < blocks.size(); i++)
+			writeOrder.add(i);
+
+		Collections.sort(writeOrder, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer i1, Integer i2)
+			{
+				return (Long.compare(writeTimes.get(i1), writeTimes.get(i2)));
+			}
+		});
+
+		ret = new ArrayList<>();
+		for (int index : writeOrder)
+			ret = merge(ret, blocks.get(index));
+
+		return (ret);
+	}
+
+	/**
+	 Merges the data points read from blocks with the ones read from cells.
+	 Both lists have to be in ascending order, a cell replaces a block data
+	 point with the same timestamp as it was written later.
+	 @return data points in ascending order
+	 */
+	public static List<DataPoint> merge(List<DataPoint> blockDataPoints, List<DataPoint> cellDataPoints)
+	{
+		if (blockDataPoints.isEmpty())
+			return (cellDataPoints);
+		if (cellDataPoints.isEmpty())
+			return (blockDataPoints);
+
+		List<DataPoint> ret = new ArrayList<>(blockDataPoints.size() + cellDataPoints.size());
+		int blockIndex = 0;
+		int cellIndex = 0;
+		while (blockIndex < blockDataPoints.size() && cellIndex < cellDataPoints.size())
+		{
+			DataPoint block = blockDataPoints.get(blockIndex);
+			DataPoint cell = cellDataPoints.get(cellIndex);
+
+			if (block.getTimestamp() < cell.getTimestamp())
+			{
+				ret.add(block);
+				blockIndex++;
+			}
+			else
+			{
+				if (block.getTimestamp() == cell.getTimestamp())
+					blockIndex++;
+
+				ret.add(cell);
+				cellIndex++;
+			}
+		}
+
+		ret.addAll(blockDataPoints.subList(blockIndex, blockDataPoints.size()));
+		ret.addAll(cellDataPoints.subList(cellIndex, cellDataPoints.size()));
+
+		return (ret);
+	}
+}
@@ -32,6 +32,8 @@ public class DataPointsRowKey
 	//adds a 0xFF after the timestamp to make sure we get all data for that timestamp.
 
 	private ByteBuffer m_serializedBuffer;
+	//Not part of the key, the width is stored next to it in the row key index
+	private long m_rowWidth = CassandraDatastore.ROW_WIDTH;
 
 	public DataPointsRowKey(String metricName, long timestamp, String dataType)
 	{
@@ -68,6 +70,19 @@ public class DataPointsRowKey
 		return m_timestamp;
 	}
 
+	/**
+	 Milliseconds of data held by the row starting at the row key timestamp.
+	 */
+	public long getRowWidth()
+	{
+		return m_rowWidth;
+	}
+
+	public void setRowWidth(long rowWidth)
+	{
+		m_rowWidth = rowWidth;
+	}
+
 	public boolean isEndSearchKey()
 	{
 		return m_endSearchKey;
@@ -0,0 +1,31 @@
+package org.kairosdb.datastore.cassandra;
+
+import static org.kairosdb.datastore.cassandra.CassandraDatastore.calculateRowTime;
+
+/**
+ Row key cache that keeps the row key objects on the heap.  Cached row keys
+ hold on to their serialized form so it is only created once.
+ */
+public class HeapRowKeyCache extends DataCache<DataPointsRowKey> implements RowKeyCache
+{
+	public HeapRowKeyCache(int cacheSize)
+	{
+		super(cacheSize);
+	}
+
+	@Override
+	public void removeItem(DataPointsRowKey rowKey)
+	{
+		removeKey(rowKey);
+	}
+
+	@Override
+	public void retainCurrentRows(long now)
+	{
+		for (DataPointsRowKey key : getCachedKeys())
+		{
+			if (key.getTimestamp() != calculateRowTime(now, key.getRowWidth()))
+				removeKey(key);
+		}
+	}
+}
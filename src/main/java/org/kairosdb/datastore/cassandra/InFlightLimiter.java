@@ -0,0 +1,68 @@
+package org.kairosdb.datastore.cassandra;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ Limits the number of statements and bytes that have been sent to Cassandra
+ asynchronously and are waiting on a response.  A request larger than a limit
+ is allowed through once everything else in flight has completed.
+ */
+public class InFlightLimiter
+{
+	private final int m_maxStatements;
+	private final int m_maxBytes;
+	private final Semaphore m_statements;
+	private final Semaphore m_bytes;
+
+	public InFlightLimiter(int maxStatements, int maxBytes)
+	{
+		m_maxStatements = maxStatements;
+		m_maxBytes = maxBytes;
+		m_statements = new Semaphore(maxStatements);
+		m_bytes = new Semaphore(maxBytes);
+	}
+
+	/**
+	 Blocks until the statements and bytes can be sent.
+	 @return permit that must be released when the statements complete
+	 */
+	public Permit acquire(int statements, int bytes)
+	{
+		int statementPermits = Math.min(statements, m_maxStatements);
+		int bytePermits = Math.min(bytes, m_maxBytes);
+
+		m_statements.acquireUninterruptibly(statementPermits);
+		m_bytes.acquireUninterruptibly(bytePermits);
+
+		return (new Permit(statementPermits, bytePermits));
+	}
+
+	public int getAvailableStatements()
+	{
+		return (m_statements.availablePermits());
+	}
+
+	public int getAvailableBytes()
+	{
+		return (m_bytes.availablePermits());
+	}
+
+	//===========================================================================
+	public class Permit
+	{
+		private final int m_statementPermits;
+		private final int m_bytePermits;
+
+		private Permit(int statementPermits, int bytePermits)
+		{
+			m_statementPermits = statementPermits;
+			m_bytePermits = bytePermits;
+		}
+
+		public void release()
+		{
+			m_bytes.release(m_bytePermits);
+			m_statements.release(m_statementPermits);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package org.kairosdb.datastore.cassandra;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import org.kairosdb.core.DataPoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Remembers the data points read for each row key so a repeat of a query
+ (typically a dashboard refreshing a relative time range) only has to read
+ the columns written since the last read.
+
+ Each entry records the time range it is complete for.  Data points that
+ arrive late are picked up by re-reading the last refetchWindow milliseconds
+ of the cached range every time.
+ */
+public class IncrementalQueryCache
+{
+	private final Cache<DataPointsRowKey, CachedRow> m_cache;
+	private final long m_refetchWindow;
+
+	/**
+	 @param maxDataPoints total number of data points held by the cache
+	 @param expireSeconds seconds an entry is kept after it was last used
+	 @param refetchWindow milliseconds at the end of a cached range that are always read again
+	 */
+	public IncrementalQueryCache(long maxDataPoints, long expireSeconds, long refetchWindow)
+	{
+		m_refetchWindow = refetchWindow;
+		m_cache = CacheBuilder.newBuilder()
+				.maximumWeight(maxDataPoints)
+				.weigher(new Weigher<DataPointsRowKey, CachedRow>()
+				{
+					@Override
+					public int weigh(DataPointsRowKey key, CachedRow value)
+					{
+						return (value.m_dataPoints.size() + 1);
+					}
+				})
+				.expireAfterAccess(expireSeconds, TimeUnit.SECONDS)
+				.build();
+	}
+
+	/**
+	 Returns the cached row if it can be used for a query starting at startTime,
+	 null otherwise.
+	 */
+	public CachedRow getRow(DataPointsRowKey rowKey, long startTime)
+	{
+		CachedRow row = m_cache.getIfPresent(rowKey);
+		if (row != null && row.m_startTime > startTime)
+			row = null;
+
+		return (row);
+	}
+
+	/**
+	 Returns the time from which data has to be read from Cassandra for a
+	 query starting at startTime.  If there is no cached row this is startTime.
+	 */
+	public long getFetchStart(CachedRow row, long startTime)
+	{
+		if (row == null)
+			return (startTime);
+
+		return (Math.max(startTime, row.m_endTime - m_refetchWindow + 1));
+	}
+
+	/**
+	 Stores the data points for the range startTime to endTime.  Points in the
+	 cached row before fetchStart are combined with the newly read points.
+	 The cached entry is kept if it reaches further than the new range, a
+	 query inside an earlier one does not narrow what is cached.
+
+	 The range is only complete up to readTime, the time the row was read, as
+	 data points can be written after it.  Queries without an end time would
+	 otherwise cache a range that never needs reading again.
+	 */
+	public void putRow(DataPointsRowKey rowKey, CachedRow cachedRow, long startTime,
+			long endTime, long fetchStart, long readTime, List<DataPoint> fetchedDataPoints)
+	{
+		endTime = Math.min(endTime, readTime);
+		if (startTime > endTime)
+			return;
+
+		CachedRow current = m_cache.getIfPresent(rowKey);
+		if (current != null && (current.m_endTime > endTime ||
+				(current.m_endTime == endTime && current.m_startTime < startTime)))
+			return;
+
+		List<DataPoint> dataPoints;
+		if (cachedRow != null)
+		{
+			dataPoints = new ArrayList<DataPoint>(cachedRow.getDataPoints(startTime,
+					Math.min(fetchStart - 1, endTime)));
+			dataPoints.addAll(fetchedDataPoints);
+		}
+		else
+			dataPoints = new ArrayList<DataPoint>(fetchedDataPoints);
+
+		m_cache.put(rowKey, new CachedRow(startTime, endTime, dataPoints));
+	}
+
+	public void clear()
+	{
+		m_cache.invalidateAll();
+	}
+
+	public long size()
+	{
+		return (m_cache.size());
+	}
+
+	//===========================================================================
+	/**
+	 Data points of a row key in ascending order, complete for startTime to
+	 endTime.  Instances are never modified once they are in the cache.
+	 */
+	public static class CachedRow
+	{
+		private final long m_startTime;
+		private final long m_endTime;
+		private final List<DataPoint> m_dataPoints;
+
+		public CachedRow(long startTime, long endTime, List<DataPoint> dataPoints)
+		{
+			m_startTime = startTime;
+			m_endTime = endTime;
+			m_dataPoints = Collections.unmodifiableList(dataPoints);
+		}
+
+		public long getStartTime()
+		{
+			return m_startTime;
+		}
+
+		public long getEndTime()
+		{
+			return m_endTime;
+		}
+
+		/**
+		 Returns the data points between startTime and endTime inclusive
+		 */
+		public List<DataPoint> getDataPoints(long startTime, long endTime)
+		{
+			int start = findIndex(startTime);
+			int end = findIndex(endTime + 1);
+			if (endTime == Long.MAX_VALUE)
+				end = m_dataPoints.size();
+
+			if (start >= end)
+				return (Collections.emptyList());
+
+			return (m_dataPoints.subList(start, end));
+		}
+
+		/**
+		 Index of the first data point with a timestamp >= timestamp
+		 */
+		private int findIndex(long timestamp)
+		{
+			int low = 0;
+			int high = m_dataPoints.size();
+			while (low < high)
+			{
+				int mid = (low + high) >>> 1;
+				if (m_dataPoints.get(mid).getTimestamp() < timestamp)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+
+			return (low);
+		}
+	}
+}
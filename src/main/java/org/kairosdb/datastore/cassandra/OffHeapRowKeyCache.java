@@ -0,0 +1,304 @@
+package org.kairosdb.datastore.cassandra;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.kairosdb.datastore.cassandra.CassandraDatastore.DATA_POINTS_ROW_KEY_SERIALIZER;
+import static org.kairosdb.datastore.cassandra.CassandraDatastore.calculateRowTime;
+
+/**
+ Row key cache that only stores a 96 bit hash of the serialized row key, its
+ row width and its row time in a direct buffer.  The size is given in bytes so millions
+ of row keys can be tracked without holding the row key objects on the heap.
+
+ The table uses open addressing with linear probing.  When it is full the
+ entry in the home slot of the new key is replaced, which amounts to random
+ eviction.  Because the objects are not kept cacheItem returns the row key
+ it was given when it is found.
+ */
+public class OffHeapRowKeyCache implements RowKeyCache
+{
+	private static final int ENTRY_SIZE = 24;  //hash, hash and row width, row time
+	//The low bits of the second hash long hold the row width, it fits in an int
+	private static final long H2_MASK = 0xFFFFFFFF00000000L;
+	private static final float LOAD_FACTOR = 0.75f;
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+	private final ByteBuffer m_table;
+	private final int m_mask;
+	private final int m_maxEntries;
+	private int m_size;
+
+	private final ReentrantReadWriteLock m_lock = new ReentrantReadWriteLock();
+
+	private final LongAdder m_hits = new LongAdder();
+	private final LongAdder m_misses = new LongAdder();
+	private final LongAdder m_evictions = new LongAdder();
+
+	public OffHeapRowKeyCache(long sizeInBytes)
+	{
+		long slots = Long.highestOneBit(Math.max(sizeInBytes / ENTRY_SIZE, 2));
+		//A single direct buffer is limited to 2GB
+		slots = Math.min(slots, Integer.highestOneBit(Integer.MAX_VALUE / ENTRY_SIZE));
+
+		m_table = ByteBuffer.allocateDirect((int) slots * ENTRY_SIZE);
+		m_mask = (int) slots - 1;
+		m_maxEntries = Math.max(1, (int) (slots * LOAD_FACTOR));
+	}
+
+	private static long[] hash(DataPointsRowKey rowKey)
+	{
+		ByteBuffer serialized = DATA_POINTS_ROW_KEY_SERIALIZER.toByteBuffer(rowKey);
+		byte[] bytes = new byte[serialized.remaining()];
+		serialized.get(bytes);
+
+		HashCode hashCode = HASH_FUNCTION.hashBytes(bytes);
+		ByteBuffer hash = ByteBuffer.wrap(hashCode.asBytes());
+
+		long h1 = hash.getLong();
+		long h2 = hash.getLong() & H2_MASK;
+
+		//Zero is used to mark an empty slot
+		if (h1 == 0L && h2 == 0L)
+			h1 = 1L;
+
+		return (new long[] {h1, h2});
+	}
+
+	private long getH1(int slot)
+	{
+		return (m_table.getLong(slot * ENTRY_SIZE));
+	}
+
+	private long getH2(int slot)
+	{
+		return (m_table.getLong(slot * ENTRY_SIZE + 8) & H2_MASK);
+	}
+
+	private long getRowWidth(int slot)
+	{
+		return (m_table.getLong(slot * ENTRY_SIZE + 8) & ~H2_MASK);
+	}
+
+	private long getRowTime(int slot)
+	{
+		return (m_table.getLong(slot * ENTRY_SIZE + 16));
+	}
+
+	private boolean isEmpty(int slot)
+	{
+		return (getH1(slot) == 0L && getH2(slot) == 0L);
+	}
+
+	private void setSlot(int slot, long h1, long h2, long rowWidth, long rowTime)
+	{
+		int offset = slot * ENTRY_SIZE;
+		m_table.putLong(offset, h1);
+		m_table.putLong(offset + 8, h2 | rowWidth);
+		m_table.putLong(offset + 16, rowTime);
+	}
+
+	private int homeSlot(long h1)
+	{
+		return ((int) h1 & m_mask);
+	}
+
+	/**
+	 Returns the slot holding the hash or -1
+	 */
+	private int find(long h1, long h2)
+	{
+		int slot = homeSlot(h1);
+		while (!isEmpty(slot))
+		{
+			if (getH1(slot) == h1 && getH2(slot) == h2)
+				return (slot);
+
+			slot = (slot + 1) & m_mask;
+		}
+
+		return (-1);
+	}
+
+	/**
+	 Removes the entry in slot and shifts following entries of the probe
+	 sequence back so lookups do not stop at the hole.
+	 */
+	private void delete(int slot)
+	{
+		int hole = slot;
+		int next = (hole + 1) & m_mask;
+		while (!isEmpty(next))
+		{
+			int home = homeSlot(getH1(next));
+			//Move the entry if its home slot is not between the hole and its position
+			boolean move;
+			if (next > hole)
+				move = (home <= hole || home > next);
+			else
+				move = (home <= hole && home > next);
+
+			if (move)
+			{
+				setSlot(hole, getH1(next), getH2(next), getRowWidth(next), getRowTime(next));
+				hole = next;
+			}
+
+			next = (next + 1) & m_mask;
+		}
+
+		setSlot(hole, 0L, 0L, 0L, 0L);
+		m_size --;
+	}
+
+	@Override
+	public DataPointsRowKey cacheItem(DataPointsRowKey rowKey)
+	{
+		long[] hash = hash(rowKey);
+
+		m_lock.readLock().lock();
+		try
+		{
+			if (find(hash[0], hash[1]) != -1)
+			{
+				m_hits.increment();
+				return (rowKey);
+			}
+		}
+		finally
+		{
+			m_lock.readLock().unlock();
+		}
+
+		m_lock.writeLock().lock();
+		try
+		{
+			//Another thread may have added it
+			if (find(hash[0], hash[1]) != -1)
+			{
+				m_hits.increment();
+				return (rowKey);
+			}
+
+			m_misses.increment();
+
+			int slot = homeSlot(hash[0]);
+			if (m_size >= m_maxEntries)
+			{
+				//Find an entry to replace, starting at the home slot
+				while (isEmpty(slot))
+					slot = (slot + 1) & m_mask;
+
+				delete(slot);
+				m_evictions.increment();
+				slot = homeSlot(hash[0]);
+			}
+
+			while (!isEmpty(slot))
+				slot = (slot + 1) & m_mask;
+
+			setSlot(slot, hash[0], hash[1], rowKey.getRowWidth(), rowKey.getTimestamp());
+			m_size ++;
+		}
+		finally
+		{
+			m_lock.writeLock().unlock();
+		}
+
+		return (null);
+	}
+
+	@Override
+	public void removeItem(DataPointsRowKey rowKey)
+	{
+		long[] hash = hash(rowKey);
+
+		m_lock.writeLock().lock();
+		try
+		{
+			int slot = find(hash[0], hash[1]);
+			if (slot != -1)
+				delete(slot);
+		}
+		finally
+		{
+			m_lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void retainCurrentRows(long now)
+	{
+		m_lock.writeLock().lock();
+		try
+		{
+			int slot = 0;
+			while (slot <= m_mask)
+			{
+				//Deleting shifts the next entry into this slot so check it again
+				if (!isEmpty(slot) && getRowTime(slot) != calculateRowTime(now, getRowWidth(slot)))
+					delete(slot);
+				else
+					slot ++;
+			}
+		}
+		finally
+		{
+			m_lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void clear()
+	{
+		m_lock.writeLock().lock();
+		try
+		{
+			for (int slot = 0; slot <= m_mask; slot++)
+				setSlot(slot, 0L, 0L, 0L, 0L);
+
+			m_size = 0;
+		}
+		finally
+		{
+			m_lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public int size()
+	{
+		m_lock.readLock().lock();
+		try
+		{
+			return (m_size);
+		}
+		finally
+		{
+			m_lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public long getAndResetHits()
+	{
+		return (m_hits.sumThenReset());
+	}
+
+	@Override
+	public long getAndResetMisses()
+	{
+		return (m_misses.sumThenReset());
+	}
+
+	@Override
+	public long getAndResetEvictions()
+	{
+		return (m_evictions.sumThenReset());
+	}
+}
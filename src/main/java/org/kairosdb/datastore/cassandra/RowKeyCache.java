@@ -0,0 +1,34 @@
+package org.kairosdb.datastore.cassandra;
+
+/**
+ Remembers which row keys have already been written to the row key index.
+ */
+public interface RowKeyCache
+{
+	/**
+	 Returns null if the row key was not in the cache, the row key is then added.
+	 Otherwise returns the cached row key or one equal to it.
+	 */
+	DataPointsRowKey cacheItem(DataPointsRowKey rowKey);
+
+	/**
+	 Removes the row key so the next cacheItem call for it returns null
+	 */
+	void removeItem(DataPointsRowKey rowKey);
+
+	/**
+	 Removes every row key of a row that does not hold now, by the width its
+	 row time was calculated with.
+	 */
+	void retainCurrentRows(long now);
+
+	void clear();
+
+	int size();
+
+	long getAndResetHits();
+
+	long getAndResetMisses();
+
+	long getAndResetEvictions();
+}
@@ -0,0 +1,184 @@
+package org.kairosdb.datastore.cassandra;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.kairosdb.datastore.cassandra.CassandraDatastore.ROW_WIDTH;
+
+/**
+ Width of the rows new data points are written to, configured by metric
+ name prefix.  The longest matching prefix wins, metrics without a match
+ use ROW_WIDTH.
+
+ The width of a row is stored with its row key so changing the
+ configuration only affects rows written afterwards.  Widths can not be
+ larger than ROW_WIDTH as the column name only has room for an offset of
+ about 24 days.
+
+ Every width configured for a prefix is kept in a history shared by the
+ nodes, see setHistory.  It tells how wide the existing rows of a metric can
+ be so the time index is only searched back that far.
+ */
+public class RowWidths
+{
+	//Reverse order so longer prefixes are checked before their own prefixes
+	private final TreeMap<String, Long> m_prefixWidths = new TreeMap<>((a, b) -> b.compareTo(a));
+	private volatile Map<String, PrefixHistory> m_history = Collections.emptyMap();
+
+	/**
+	 @param prefixWidths row width in milliseconds for each metric name prefix
+	 */
+	public RowWidths(Map<String, String> prefixWidths)
+	{
+		for (Map.Entry<String, String> entry : prefixWidths.entrySet())
+		{
+			long width = Long.parseLong(entry.getValue().trim());
+			checkArgument(width > 0 && width <= ROW_WIDTH,
+					"Row width for %s must be between 1 and %s", entry.getKey(), ROW_WIDTH);
+
+			m_prefixWidths.put(entry.getKey(), width);
+		}
+	}
+
+	public boolean hasPrefixes()
+	{
+		return (!m_prefixWidths.isEmpty());
+	}
+
+	/**
+	 @return the longest configured prefix of the metric name, null if there is none
+	 */
+	private String getPrefix(String metricName)
+	{
+		if (m_prefixWidths.isEmpty())
+			return (null);
+
+		//Candidates sort before the metric name in reverse order, the first
+		//one that is a prefix is the longest
+		for (String prefix : m_prefixWidths.tailMap(metricName, true).keySet())
+		{
+			if (metricName.startsWith(prefix))
+				return (prefix);
+		}
+
+		return (null);
+	}
+
+	public long getRowWidth(String metricName)
+	{
+		String prefix = getPrefix(metricName);
+		if (prefix == null)
+			return (ROW_WIDTH);
+
+		return (m_prefixWidths.get(prefix));
+	}
+
+	/**
+	 Widest the rows of the metric that hold data points around time can be.
+	 Before a prefix has been in the history for ROW_WIDTH the metric may still
+	 have rows written with the default width.
+	 */
+	public long getMaxRowWidth(String metricName, long time)
+	{
+		String prefix = getPrefix(metricName);
+		if (prefix == null)
+			return (ROW_WIDTH);
+
+		Map<String, PrefixHistory> history = m_history;
+		if (!history.containsKey(prefix))
+			return (ROW_WIDTH);
+
+		long ret = m_prefixWidths.get(prefix);
+		for (Map.Entry<String, PrefixHistory> entry : history.entrySet())
+		{
+			if (!metricName.startsWith(entry.getKey()))
+				continue;
+
+			PrefixHistory prefixHistory = entry.getValue();
+			if (time < prefixHistory.m_firstUse + ROW_WIDTH)
+				return (ROW_WIDTH);
+
+			ret = Math.max(ret, prefixHistory.m_maxWidth);
+		}
+
+		return (ret);
+	}
+
+	/**
+	 Sets the widths used so far, each key is the width, the time it was
+	 first used and the prefix separated by '/'.  Keys that can not be parsed
+	 are skipped.
+	 */
+	public void setHistory(Iterable<String> keys)
+	{
+		Map<String, PrefixHistory> history = new HashMap<>();
+		for (String key : keys)
+		{
+			String[] parts = key.split("/", 3);
+			if (parts.length != 3)
+				continue;
+
+			long width;
+			long firstUse;
+			try
+			{
+				width = Long.parseLong(parts[0]);
+				firstUse = Long.parseLong(parts[1]);
+			}
+			catch (NumberFormatException e)
+			{
+				continue;
+			}
+
+			PrefixHistory prefixHistory = history.get(parts[2]);
+			if (prefixHistory == null)
+			{
+				prefixHistory = new PrefixHistory();
+				history.put(parts[2], prefixHistory);
+			}
+
+			prefixHistory.add(width, firstUse);
+		}
+
+		m_history = history;
+	}
+
+	/**
+	 Keys for the configured widths that are not in the history yet.
+	 @param now time the widths are first used
+	 */
+	public List<String> getNewHistoryKeys(long now)
+	{
+		List<String> ret = new ArrayList<>();
+		Map<String, PrefixHistory> history = m_history;
+		for (Map.Entry<String, Long> entry : m_prefixWidths.entrySet())
+		{
+			PrefixHistory prefixHistory = history.get(entry.getKey());
+			if (prefixHistory == null || !prefixHistory.m_widths.contains(entry.getValue()))
+				ret.add(entry.getValue() + "/" + now + "/" + entry.getKey());
+		}
+
+		return (ret);
+	}
+
+	private static class PrefixHistory
+	{
+		private final Set<Long> m_widths = new HashSet<>();
+		private long m_maxWidth = 0;
+		private long m_firstUse = Long.MAX_VALUE;
+
+		private void add(long width, long firstUse)
+		{
+			m_widths.add(width);
+			m_maxWidth = Math.max(m_maxWidth, width);
+			m_firstUse = Math.min(m_firstUse, firstUse);
+		}
+	}
+}
@@ -21,6 +21,14 @@ public class Schema
 			"  PRIMARY KEY ((key), column1)\n" +
 			") WITH COMPACT STORAGE";
 
+	public static final String DATA_POINT_BLOCKS_TABLE = "" +
+			"CREATE TABLE IF NOT EXISTS data_point_blocks (\n" +
+			"  key blob,\n" +
+			"  column1 blob,\n" +
+			"  value blob,\n" +
+			"  PRIMARY KEY ((key), column1)\n" +
+			") WITH COMPACT STORAGE";
+
 	public static final String ROW_KEY_INDEX_TABLE = "" +
 			"CREATE TABLE IF NOT EXISTS row_key_index (\n" +
 			"  key blob,\n" +
@@ -73,8 +81,9 @@ public class Schema
 	public static final String ROW_KEY_TIME_INSERT = "INSERT INTO row_key_time_index " +
 			"(metric, row_time) VALUES (?, ?) USING TTL ? AND TIMESTAMP ?";
 
+	//The value holds the row width, rows written before it was stored are ROW_WIDTH wide
 	public static final String ROW_KEY_INSERT = "INSERT INTO row_keys " +
-			"(metric, row_time, data_type, tags) VALUES (?, ?, ?, ?) USING TTL ?"; // AND TIMESTAMP ?";
+			"(metric, row_time, data_type, tags, value) VALUES (?, ?, ?, ?, ?) USING TTL ?"; // AND TIMESTAMP ?";
 
 	public static final String STRING_INDEX_INSERT = "INSERT INTO string_index " +
 			"(key, column1, value) VALUES (?, ?, 0x00)";
@@ -100,6 +109,25 @@ public class Schema
 	public static final String DATA_POINTS_DELETE_ROW = "DELETE FROM data_points " +
 			"WHERE key = ?";
 
+	//Block storage, a block holds the data points of a window and is keyed by the column of the window start
+	public static final String DATA_POINTS_SEAL_QUERY = "SELECT column1, value, TTL(value), WRITETIME(value) " +
+			"FROM data_points WHERE key = ? AND column1 >= ? AND column1 <= ?";
+
+	public static final String DATA_POINTS_SEAL_DELETE = "DELETE FROM data_points USING TIMESTAMP ? " +
+			"WHERE key = ? AND column1 >= ? AND column1 <= ?";
+
+	public static final String DATA_POINT_BLOCKS_INSERT = "INSERT INTO data_point_blocks " +
+			"(key, column1, value) VALUES (?, ?, ?) USING TTL ?";
+
+	public static final String DATA_POINT_BLOCKS_QUERY = "SELECT column1, value, TTL(value), WRITETIME(value) FROM data_point_blocks " +
+			"WHERE key = ? AND column1 >= ? AND column1 < ?";
+
+	public static final String DATA_POINT_BLOCKS_DELETE = "DELETE FROM data_point_blocks " +
+			"WHERE key = ? AND column1 = ?";
+
+	public static final String DATA_POINT_BLOCKS_DELETE_ROW = "DELETE FROM data_point_blocks " +
+			"WHERE key = ?";
+
 
 
 	//This is the old row key index query
@@ -117,10 +145,13 @@ public class Schema
 			"FROM row_key_time_index WHERE metric = ? AND " +
 			"row_time >= ? AND row_time <= ?";
 
-	public static final String ROW_KEY_QUERY = "SELECT row_time, data_type, tags " +
+	public static final String ROW_KEY_QUERY = "SELECT row_time, data_type, tags, value " +
 			"FROM row_keys WHERE metric = ? AND row_time = ?";
 
-	public static final String ROW_KEY_TAG_QUERY_WITH_TYPE = "SELECT row_time, data_type, tags " +
+	public static final String ROW_KEY_WIDTH_QUERY = "SELECT value FROM row_keys " +
+			"WHERE metric = ? AND row_time = ? AND data_type = ? AND tags = ?";
+
+	public static final String ROW_KEY_TAG_QUERY_WITH_TYPE = "SELECT row_time, data_type, tags, value " +
 			"FROM row_keys WHERE metric = ? AND row_time = ? AND data_type IN %s"; //Use ValueSequence when setting this
 
 	//Service index queries
@@ -151,6 +182,7 @@ public class Schema
 	public final PreparedStatement psStringIndexDelete;
 	public final PreparedStatement psRowKeyIndexQuery;
 	public final PreparedStatement psRowKeyQuery;
+	public final PreparedStatement psRowKeyWidthQuery;
 	public final PreparedStatement psRowKeyTimeQuery;
 	public final PreparedStatement psDataPointsDeleteRow;
 	public final PreparedStatement psDataPointsDelete;
@@ -167,6 +199,12 @@ public class Schema
 	public final PreparedStatement psServiceIndexListKeysPrefix;
 	public final PreparedStatement psServiceIndexListServiceKeys;
 	public final PreparedStatement psServiceIndexDeleteKey;
+	public final PreparedStatement psDataPointsSealQuery;
+	public final PreparedStatement psDataPointsSealDelete;
+	public final PreparedStatement psDataPointBlocksInsert;
+	public final PreparedStatement psDataPointBlocksQuery;
+	public final PreparedStatement psDataPointBlocksDelete;
+	public final PreparedStatement psDataPointBlocksDeleteRow;
 
 	private final Session m_session;
 
@@ -190,12 +228,20 @@ public class Schema
 		psDataPointsQueryDescLimit = m_session.prepare(DATA_POINTS_QUERY_DESC_LIMIT);
 		psRowKeyIndexQuery = m_session.prepare(ROW_KEY_INDEX_QUERY);
 		psRowKeyQuery = m_session.prepare(ROW_KEY_QUERY);
+		psRowKeyWidthQuery = m_session.prepare(ROW_KEY_WIDTH_QUERY);
 		psRowKeyTimeQuery = m_session.prepare(ROW_KEY_TIME_QUERY);
 		psDataPointsDelete = m_session.prepare(DATA_POINTS_DELETE);
 		psDataPointsDeleteRow = m_session.prepare(DATA_POINTS_DELETE_ROW);
 		psRowKeyIndexDelete = m_session.prepare(ROW_KEY_INDEX_DELETE);
 		psRowKeyIndexDeleteRow = m_session.prepare(ROW_KEY_INDEX_DELETE_ROW);
 
+		psDataPointsSealQuery = m_session.prepare(DATA_POINTS_SEAL_QUERY);
+		psDataPointsSealDelete = m_session.prepare(DATA_POINTS_SEAL_DELETE);
+		psDataPointBlocksInsert = m_session.prepare(DATA_POINT_BLOCKS_INSERT);
+		psDataPointBlocksQuery = m_session.prepare(DATA_POINT_BLOCKS_QUERY);
+		psDataPointBlocksDelete = m_session.prepare(DATA_POINT_BLOCKS_DELETE);
+		psDataPointBlocksDeleteRow = m_session.prepare(DATA_POINT_BLOCKS_DELETE_ROW);
+
 		psServiceIndexInsert = m_session.prepare(SERVICE_INDEX_INSERT);
 		psServiceIndexGet = m_session.prepare(SERVICE_INDEX_GET);
 		psServiceIndexListKeys = m_session.prepare(SERVICE_INDEX_LIST_KEYS);
@@ -219,6 +265,7 @@ public class Schema
 		try (Session session = cassandraClient.getKeyspaceSession())
 		{
 			session.execute(DATA_POINTS_TABLE);
+			session.execute(DATA_POINT_BLOCKS_TABLE);
 			session.execute(ROW_KEY_INDEX_TABLE);
 			session.execute(STRING_INDEX_TABLE);
 			session.execute(ROW_KEYS);
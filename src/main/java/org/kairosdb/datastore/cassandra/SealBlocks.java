@@ -0,0 +1,49 @@
+package org.kairosdb.datastore.cassandra;
+
+import com.google.inject.Inject;
+import org.kairosdb.core.scheduler.KairosDBJob;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.Trigger;
+
+import static org.quartz.SimpleScheduleBuilder.simpleSchedule;
+import static org.quartz.TriggerBuilder.newTrigger;
+
+/**
+ Packs the data points of windows that are no longer written to into blocks
+ when block storage is enabled.
+ */
+@DisallowConcurrentExecution
+public class SealBlocks implements KairosDBJob
+{
+	private final CassandraDatastore m_datastore;
+
+	@Inject
+	public SealBlocks(CassandraDatastore datastore)
+	{
+		m_datastore = datastore;
+	}
+
+	@Override
+	public Trigger getTrigger()
+	{
+		return newTrigger()
+				.withIdentity(this.getClass().getSimpleName())
+				.withSchedule(simpleSchedule()
+						.withIntervalInMinutes(10)
+						.repeatForever())
+				.build();
+	}
+
+	@Override
+	public void interrupt()
+	{
+	}
+
+	@Override
+	public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException
+	{
+		m_datastore.sealBlocks();
+	}
+}
@@ -2,12 +2,20 @@ package org.kairosdb.eventbus;
 
 import com.google.common.eventbus.DeadEvent;
 import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import org.kairosdb.events.DataPointBatchEvent;
+import org.kairosdb.events.DataPointEvent;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,6 +33,13 @@ public class EventBusWithFilters extends EventBus
     private final FilterRegistry filters = new FilterRegistry(this);
     private final EventBusConfiguration config;
 
+    /**
+     * Listeners that subscribe to DataPointEvent but not DataPointBatchEvent
+     * are also registered here so batches can be handed to them one data point at a time.
+     */
+    private final EventBus dataPointEventBus = new EventBus("data_point_events");
+    private final Set<Object> dataPointListeners = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+
     @Inject
     public EventBusWithFilters(EventBusConfiguration config)
     {
@@ -37,6 +52,12 @@ public class EventBusWithFilters extends EventBus
     {
         filters.register(listener, config.getFilterPriority(listener.getClass().getName()));
         super.register(listener);
+
+        if (hasSubscriber(listener, DataPointEvent.class) && !hasSubscriber(listener, DataPointBatchEvent.class)
+                && dataPointListeners.add(listener))
+        {
+            dataPointEventBus.register(listener);
+        }
     }
 
     @Override
@@ -44,28 +65,89 @@ public class EventBusWithFilters extends EventBus
     {
         filters.unregister(listener);
         super.unregister(listener);
+
+        if (dataPointListeners.remove(listener))
+            dataPointEventBus.unregister(listener);
+    }
+
+    private static boolean hasSubscriber(Object listener, Class<?> eventType)
+    {
+        for (Class<?> clazz = listener.getClass(); clazz != null; clazz = clazz.getSuperclass())
+        {
+            for (Method method : clazz.getDeclaredMethods())
+            {
+                Class<?>[] parameterTypes = method.getParameterTypes();
+                if (method.isAnnotationPresent(Subscribe.class) && parameterTypes.length == 1
+                        && parameterTypes[0].equals(eventType))
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Runs the event through the filters registered for its type.
+     */
+    private Object filter(Object event)
+    {
+        Iterator<FilterSubscriber> subscribers = filters.getSubscribers(event);
+        Object previousEvent = event;
+        while (subscribers.hasNext()) {
+            event = subscribers.next().dispatchEvent(event);
+            if (event ==  null)
+            {
+                event = previousEvent;
+                break;
+            }
+            else
+            {
+                previousEvent = event;
+            }
+        }
+
+        return event;
+    }
+
+    /**
+     * Data point filters are applied to each data point in the batch.  The batch is
+     * posted once to listeners that handle batches and the data points are posted
+     * individually to listeners that only handle DataPointEvent.
+     */
+    private void postBatch(DataPointBatchEvent batch)
+    {
+        List<DataPointEvent> events = batch.getEvents();
+        if (!events.isEmpty() && filters.getSubscribers(events.get(0)).hasNext())
+        {
+            List<DataPointEvent> filtered = new ArrayList<>(events.size());
+            for (DataPointEvent event : events)
+                filtered.add((DataPointEvent) filter(event));
+
+            batch = new DataPointBatchEvent(filtered);
+        }
+
+        super.post(batch);
+
+        if (!dataPointListeners.isEmpty())
+        {
+            for (DataPointEvent event : batch.getEvents())
+                dataPointEventBus.post(event);
+        }
     }
 
     @Override
     public void post(Object event)
     {
-        Iterator<FilterSubscriber> subscribers = filters.getSubscribers(event);
-        if (subscribers.hasNext()) {
+        if (event instanceof DataPointBatchEvent)
+        {
+            postBatch((DataPointBatchEvent) event);
+            return;
+        }
+
+        if (filters.getSubscribers(event).hasNext()) {
             checkNotNull(event);
 
-            Object previousEvent = event;
-            while (subscribers.hasNext()) {
-                event = subscribers.next().dispatchEvent(event);
-                if (event ==  null)
-                {
-                    event = previousEvent;
-                    break;
-                }
-                else
-                {
-                    previousEvent = event;
-                }
-            }
+            event = filter(event);
         } else if (!(event instanceof DeadEvent)) {
             // the event had no subscribers and was not itself a DeadEvent
             post(new DeadEvent(this, event));
@@ -0,0 +1,28 @@
+package org.kairosdb.events;
+
+import java.util.List;
+
+/**
+ A group of data points posted together, typically everything from one
+ ingest request.  Listeners that only subscribe to DataPointEvent receive the
+ data points one at a time from EventBusWithFilters.
+ */
+public class DataPointBatchEvent
+{
+	private final List<DataPointEvent> m_events;
+
+	public DataPointBatchEvent(List<DataPointEvent> events)
+	{
+		m_events = events;
+	}
+
+	public List<DataPointEvent> getEvents()
+	{
+		return m_events;
+	}
+
+	public int size()
+	{
+		return m_events.size();
+	}
+}
@@ -0,0 +1,60 @@
+package org.kairosdb.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ Reads the bits written by BitWriter.
+ */
+public class BitReader
+{
+	private final byte[] m_buffer;
+	private final long m_endBit;
+	private long m_position;
+
+	public BitReader(byte[] buffer)
+	{
+		this(buffer, 0, buffer.length);
+	}
+
+	public BitReader(byte[] buffer, int offset, int length)
+	{
+		m_buffer = buffer;
+		m_position = (long) offset << 3;
+		m_endBit = (long) (offset + length) << 3;
+	}
+
+	public boolean readBit()
+	{
+		checkAvailable(1);
+		boolean bit = (m_buffer[(int) (m_position >>> 3)] & (0x80 >>> (m_position & 7))) != 0;
+		m_position++;
+
+		return (bit);
+	}
+
+	public long readBits(int count)
+	{
+		checkArgument(count >= 0 && count <= 64, "count must be between 0 and 64");
+		checkAvailable(count);
+
+		long value = 0;
+		while (count > 0)
+		{
+			int available = 8 - (int) (m_position & 7);
+			int size = Math.min(available, count);
+			int bits = (m_buffer[(int) (m_position >>> 3)] >>> (available - size)) & ((1 << size) - 1);
+
+			value = (value << size) | bits;
+			m_position += size;
+			count -= size;
+		}
+
+		return (value);
+	}
+
+	private void checkAvailable(int bits)
+	{
+		if (m_position + bits > m_endBit)
+			throw new IllegalStateException("Read past the end of the bits");
+	}
+}
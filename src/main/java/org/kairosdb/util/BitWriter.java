@@ -0,0 +1,92 @@
+package org.kairosdb.util;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ Writes values of any number of bits into a byte array, most significant bit
+ first.  The unused bits of the last byte are left as 0.
+ */
+public class BitWriter
+{
+	private byte[] m_buffer;
+	private long m_bitCount;
+
+	public BitWriter()
+	{
+		this(64);
+	}
+
+	public BitWriter(int initialSize)
+	{
+		m_buffer = new byte[Math.max(initialSize, 1)];
+	}
+
+	public void writeBit(boolean bit)
+	{
+		ensureCapacity(1);
+		if (bit)
+			m_buffer[(int) (m_bitCount >>> 3)] |= 0x80 >>> (m_bitCount & 7);
+		m_bitCount++;
+	}
+
+	/**
+	 Writes the low count bits of value.
+	 */
+	public void writeBits(long value, int count)
+	{
+		checkArgument(count >= 0 && count <= 64, "count must be between 0 and 64");
+		ensureCapacity(count);
+
+		while (count > 0)
+		{
+			int free = 8 - (int) (m_bitCount & 7);
+			int size = Math.min(free, count);
+			int bits = (int) (value >>> (count - size)) & ((1 << size) - 1);
+
+			m_buffer[(int) (m_bitCount >>> 3)] |= bits << (free - size);
+			m_bitCount += size;
+			count -= size;
+		}
+	}
+
+	private void ensureCapacity(int bits)
+	{
+		int bytes = (int) ((m_bitCount + bits + 7) >>> 3);
+		if (bytes > m_buffer.length)
+			m_buffer = Arrays.copyOf(m_buffer, Math.max(bytes, m_buffer.length * 2));
+	}
+
+	public long getBitCount()
+	{
+		return (m_bitCount);
+	}
+
+	/**
+	 Number of bytes holding the bits written.
+	 */
+	public int getByteCount()
+	{
+		return ((int) ((m_bitCount + 7) >>> 3));
+	}
+
+	/**
+	 The buffer holding the bits, only the first getByteCount bytes are used.
+	 */
+	public byte[] getBuffer()
+	{
+		return (m_buffer);
+	}
+
+	public byte[] toByteArray()
+	{
+		return (Arrays.copyOf(m_buffer, getByteCount()));
+	}
+
+	public void reset()
+	{
+		Arrays.fill(m_buffer, 0, getByteCount(), (byte) 0);
+		m_bitCount = 0;
+	}
+}
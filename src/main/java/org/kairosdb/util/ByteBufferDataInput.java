@@ -1,6 +1,7 @@
 package org.kairosdb.util;
 
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
@@ -73,7 +74,7 @@ public class ByteBufferDataInput implements DataInput
 	{
 		byte a = m_buffer.get();
 		byte b = m_buffer.get();
-		return ((a & 0xff << 8) | (b & 0xff));
+		return (((a & 0xff) << 8) | (b & 0xff));
 	}
 
 	@Override
@@ -115,6 +116,6 @@ public class ByteBufferDataInput implements DataInput
 	@Override
 	public String readUTF() throws IOException
 	{
-		return m_buffer.toString();
+		return DataInputStream.readUTF(this);
 	}
 }
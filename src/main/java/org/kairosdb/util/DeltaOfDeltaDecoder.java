@@ -0,0 +1,43 @@
+package org.kairosdb.util;
+
+/**
+ Reads longs written by DeltaOfDeltaEncoder.  The number of values has to be
+ known by the caller.
+ */
+public class DeltaOfDeltaDecoder
+{
+	private final BitReader m_reader;
+	private long m_previous;
+	private long m_previousDelta;
+
+	/**
+	 @param reader bits to read
+	 @param base the same base the values were encoded with
+	 */
+	public DeltaOfDeltaDecoder(BitReader reader, long base)
+	{
+		m_reader = reader;
+		m_previous = base;
+	}
+
+	public long read()
+	{
+		long zigzag;
+		if (!m_reader.readBit())
+			zigzag = 0;
+		else if (!m_reader.readBit())
+			zigzag = m_reader.readBits(7);
+		else if (!m_reader.readBit())
+			zigzag = m_reader.readBits(9);
+		else if (!m_reader.readBit())
+			zigzag = m_reader.readBits(12);
+		else
+			zigzag = m_reader.readBits(64);
+
+		long deltaOfDelta = (zigzag >>> 1) ^ -(zigzag & 1);
+		m_previousDelta += deltaOfDelta;
+		m_previous += m_previousDelta;
+
+		return (m_previous);
+	}
+}
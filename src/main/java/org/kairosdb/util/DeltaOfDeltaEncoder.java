@@ -0,0 +1,65 @@
+package org.kairosdb.util;
+
+/**
+ Compresses a series of longs by writing the difference between consecutive
+ deltas, as Gorilla does for timestamps (Pelkonen et al., 2015).  Values
+ that grow at a steady rate, like timestamps at a fixed interval or
+ counters, compress to a single bit per value.
+
+ Each delta of delta is zigzag encoded and written as a 0 bit when it is 0,
+ or as 10 and 7 bits, 110 and 9 bits, 1110 and 12 bits or 1111 and 64 bits.
+ Deltas are computed with overflowing arithmetic so any long round trips.
+ */
+public class DeltaOfDeltaEncoder
+{
+	private final BitWriter m_writer;
+	private long m_previous;
+	private long m_previousDelta;
+
+	/**
+	 @param writer where the bits are written
+	 @param base value the first delta is taken from
+	 */
+	public DeltaOfDeltaEncoder(BitWriter writer, long base)
+	{
+		m_writer = writer;
+		m_previous = base;
+	}
+
+	public void write(long value)
+	{
+		long delta = value - m_previous;
+		long zigzag = zigzag(delta - m_previousDelta);
+
+		if (zigzag == 0)
+			m_writer.writeBit(false);
+		else if (zigzag >>> 7 == 0)
+		{
+			m_writer.writeBits(0x2, 2);
+			m_writer.writeBits(zigzag, 7);
+		}
+		else if (zigzag >>> 9 == 0)
+		{
+			m_writer.writeBits(0x6, 3);
+			m_writer.writeBits(zigzag, 9);
+		}
+		else if (zigzag >>> 12 == 0)
+		{
+			m_writer.writeBits(0xE, 4);
+			m_writer.writeBits(zigzag, 12);
+		}
+		else
+		{
+			m_writer.writeBits(0xF, 4);
+			m_writer.writeBits(zigzag, 64);
+		}
+
+		m_previous = value;
+		m_previousDelta = delta;
+	}
+
+	private static long zigzag(long value)
+	{
+		return ((value << 1) ^ (value >> 63));
+	}
+}
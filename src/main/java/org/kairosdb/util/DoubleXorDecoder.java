@@ -0,0 +1,42 @@
+package org.kairosdb.util;
+
+/**
+ Reads doubles written by DoubleXorEncoder.  The number of values has to be
+ known by the caller.
+ */
+public class DoubleXorDecoder
+{
+	private final BitReader m_reader;
+	private boolean m_first = true;
+	private long m_previous;
+	private int m_leading;
+	private int m_trailing;
+
+	public DoubleXorDecoder(BitReader reader)
+	{
+		m_reader = reader;
+	}
+
+	public double read()
+	{
+		if (m_first)
+		{
+			m_previous = m_reader.readBits(64);
+			m_first = false;
+		}
+		else if (m_reader.readBit())
+		{
+			if (m_reader.readBit())
+			{
+				m_leading = (int) m_reader.readBits(5);
+				int size = (int) m_reader.readBits(6) + 1;
+				m_trailing = 64 - m_leading - size;
+			}
+
+			long xor = m_reader.readBits(64 - m_leading - m_trailing) << m_trailing;
+			m_previous ^= xor;
+		}
+
+		return (Double.longBitsToDouble(m_previous));
+	}
+}
@@ -0,0 +1,73 @@
+package org.kairosdb.util;
+
+/**
+ Compresses a series of doubles by writing each value XORed with the one
+ before it, as described in "Gorilla: A Fast, Scalable, In-Memory Time Series
+ Database" (Pelkonen et al., 2015).  Slowly changing series compress to a
+ few bits per value.
+
+ The first value is written as 64 bits.  After that a 0 bit means the value
+ did not change.  A 1 bit is followed by a 0 bit and the changed bits if
+ they fit in the window of the last value written with a window, or by a 1
+ bit, 5 bits of leading zeros, 6 bits of the window size less one and the
+ changed bits.
+ */
+public class DoubleXorEncoder
+{
+	private final BitWriter m_writer;
+	private boolean m_first = true;
+	private long m_previous;
+	private int m_leading = -1;
+	private int m_trailing;
+
+	public DoubleXorEncoder(BitWriter writer)
+	{
+		m_writer = writer;
+	}
+
+	public void write(double value)
+	{
+		long bits = Double.doubleToRawLongBits(value);
+
+		if (m_first)
+		{
+			m_writer.writeBits(bits, 64);
+			m_first = false;
+		}
+		else
+		{
+			long xor = bits ^ m_previous;
+			if (xor == 0)
+			{
+				m_writer.writeBit(false);
+			}
+			else
+			{
+				m_writer.writeBit(true);
+
+				//Leading zeros are written in 5 bits
+				int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+				int trailing = Long.numberOfTrailingZeros(xor);
+
+				if (m_leading != -1 && leading >= m_leading && trailing >= m_trailing)
+				{
+					m_writer.writeBit(false);
+					m_writer.writeBits(xor >>> m_trailing, 64 - m_leading - m_trailing);
+				}
+				else
+				{
+					int size = 64 - leading - trailing;
+					m_writer.writeBit(true);
+					m_writer.writeBits(leading, 5);
+					m_writer.writeBits(size - 1, 6);
+					m_writer.writeBits(xor >>> trailing, size);
+
+					m_leading = leading;
+					m_trailing = trailing;
+				}
+			}
+		}
+
+		m_previous = bits;
+	}
+}
@@ -6,21 +6,21 @@ import com.github.rholder.retry.Retryer;
 import com.github.rholder.retry.RetryerBuilder;
 import com.github.rholder.retry.WaitStrategies;
 import com.google.common.base.Stopwatch;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import org.kairosdb.congestion.AdaptiveCongestionController;
 import org.kairosdb.core.DataPointSet;
 import org.kairosdb.core.datapoints.DoubleDataPointFactory;
 import org.kairosdb.core.datapoints.DoubleDataPointFactoryImpl;
 import org.kairosdb.core.reporting.KairosMetricReporter;
 import org.kairosdb.eventbus.EventBusWithFilters;
 
-import javax.inject.Inject;
-import javax.inject.Named;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
@@ -30,15 +30,19 @@ import java.util.concurrent.TimeUnit;
 public class IngestExecutorService implements KairosMetricReporter
 {
 	public static final String PERMIT_COUNT = "kairosdb.ingest_executor.thread_count";
+	public static final String MIN_PERMIT_COUNT = "kairosdb.ingest_executor.min_thread_count";
+	public static final String MAX_PERMIT_COUNT = "kairosdb.ingest_executor.max_thread_count";
+	public static final String LATENCY_TOLERANCE = "kairosdb.ingest_executor.latency_tolerance";
 
 	private final EventBusWithFilters m_eventBus;
 	private final ExecutorService m_internalExecutor;
 	private final ThreadGroup m_threadGroup;
-	//Original idea behind this is that the number of threads could
-	//adjust via incrementing or decrementing the semaphore count.
-	private final CongestionSemaphore m_semaphore;
+	//Adjusts the number of threads from the time each batch takes to write
+	private final AdaptiveCongestionController m_congestionController;
 	private final SimpleStats m_ingestTimeStats = new SimpleStats();
 	private int m_permitCount = 10;
+	private int m_minPermitCount;
+	private int m_maxPermitCount;
 	private final Retryer<Boolean> m_retryer;
 
 	@Inject
@@ -47,13 +51,20 @@ public class IngestExecutorService implements KairosMetricReporter
 	@Inject
 	private SimpleStatsReporter m_simpleStatsReporter = new SimpleStatsReporter();
 
+	@Inject(optional = true)
+	@Named("HOSTNAME")
+	private String m_hostName = "localhost";
+
 	@Inject
 	public IngestExecutorService(EventBusWithFilters eventBus, @Named(PERMIT_COUNT) int permitCount)
 	{
 		m_eventBus = eventBus;
 		m_permitCount = permitCount;
-		//m_congestionTimer = new CongestionTimer(m_permitCount);
-		m_semaphore = new CongestionSemaphore(m_permitCount);
+		//With the min and max equal to the permit count the limit does not change
+		m_minPermitCount = permitCount;
+		m_maxPermitCount = permitCount;
+		m_congestionController = new AdaptiveCongestionController(m_permitCount,
+				m_minPermitCount, m_maxPermitCount, 2.0);
 		m_threadGroup = new ThreadGroup("KairosDynamic");
 		m_internalExecutor = Executors.newCachedThreadPool(new ThreadFactory()
 		{
@@ -73,16 +84,34 @@ public class IngestExecutorService implements KairosMetricReporter
 				.build();
 	}
 
-	/*private void increasePermitCount()
+	@Inject(optional = true)
+	public void setMinPermitCount(@Named(MIN_PERMIT_COUNT) int minPermitCount)
+	{
+		m_minPermitCount = minPermitCount;
+		m_congestionController.setLimits(m_permitCount, m_minPermitCount, m_maxPermitCount);
+	}
+
+	@Inject(optional = true)
+	public void setMaxPermitCount(@Named(MAX_PERMIT_COUNT) int maxPermitCount)
+	{
+		m_maxPermitCount = maxPermitCount;
+		m_congestionController.setLimits(m_permitCount, m_minPermitCount, m_maxPermitCount);
+	}
+
+	@Inject(optional = true)
+	public void setLatencyTolerance(@Named(LATENCY_TOLERANCE) double latencyTolerance)
 	{
-		m_permitCount ++;
-		//m_congestionTimer.setTaskPerBatch(m_permitCount);
-		m_semaphore.release();
-	}*/
+		m_congestionController.setLatencyTolerance(latencyTolerance);
+	}
 
 	public void shutdown()
 	{
+		m_congestionController.shutdown();
+	}
 
+	public double getPermitLimit()
+	{
+		return (m_congestionController.getLimit());
 	}
 
 
@@ -91,23 +120,19 @@ public class IngestExecutorService implements KairosMetricReporter
 	/**
 	 Calls to submit will block until a permit is available to process the request
 	 @param callable
+	 @param pointCount number of data points the callable writes, the latency
+	 given to the congestion controller is per data point so batch size
+	 does not look like congestion
 	 */
-	public void submit(Callable<Boolean> callable)
+	public void submit(Callable<Boolean> callable, int pointCount)
 	{
-		try
-		{
-			//System.out.println("Execute called");
-			m_semaphore.acquire();
-			//System.out.println("Submitting");
-			m_internalExecutor.submit(
-					new IngestFutureTask(m_retryer.wrap(callable)));
-			//System.out.println("Done submitting");
-		}
-		//Potentially thrown by acquire
-		catch (InterruptedException e)
-		{
-			e.printStackTrace();
-		}
+		if (!m_congestionController.acquireProcess())
+			return; //Shutting down
+
+		ReportingCallable reportingCallable = new ReportingCallable(callable, pointCount);
+
+		m_internalExecutor.submit(
+				new IngestFutureTask(m_retryer.wrap(reportingCallable), reportingCallable));
 	}
 
 	@Override
@@ -118,24 +143,71 @@ public class IngestExecutorService implements KairosMetricReporter
 		m_simpleStatsReporter.reportStats(m_ingestTimeStats.getAndClear(), now,
 				"kairosdb.ingest_executor.write_time_micro", ret);
 
+		DataPointSet permitLimit = new DataPointSet("kairosdb.ingest_executor.permit_limit");
+		permitLimit.addTag("host", m_hostName);
+		permitLimit.addDataPoint(m_dataPointFactory.createDataPoint(now, getPermitLimit()));
+		ret.add(permitLimit);
+
 		return ret;
 	}
 
 
+	/**
+	 Each failed attempt reduces the limit, even if a retry succeeds.
+	 Only the call itself is timed, not the retry back off.
+	 */
+	private class ReportingCallable implements Callable<Boolean>
+	{
+		private final Callable<Boolean> m_callable;
+		private final int m_pointCount;
+		//Nanoseconds per data point of the attempt that succeeded
+		private volatile long m_latency;
+
+		public ReportingCallable(Callable<Boolean> callable, int pointCount)
+		{
+			m_callable = callable;
+			m_pointCount = Math.max(1, pointCount);
+		}
+
+		public long getLatency()
+		{
+			return (m_latency);
+		}
+
+		@Override
+		public Boolean call() throws Exception
+		{
+			Stopwatch stopwatch = Stopwatch.createStarted();
+			try
+			{
+				Boolean ret = m_callable.call();
+				m_latency = stopwatch.elapsed(TimeUnit.NANOSECONDS) / m_pointCount;
+				return ret;
+			}
+			catch (Exception e)
+			{
+				m_congestionController.reportFailure();
+				throw e;
+			}
+		}
+	}
+
 	private class IngestFutureTask extends FutureTask<Boolean>
 	{
 		private final Stopwatch m_stopwatch;
+		private final ReportingCallable m_reportingCallable;
+		private boolean m_failed = false;
 
-		public IngestFutureTask(Callable<Boolean> callable)
+		public IngestFutureTask(Callable<Boolean> callable, ReportingCallable reportingCallable)
 		{
 			super(callable);
 			m_stopwatch = Stopwatch.createUnstarted();
+			m_reportingCallable = reportingCallable;
 		}
 
 		@Override
 		public void run()
 		{
-			//System.out.println("DynamicFutureTask.run");
 			try
 			{
 				m_stopwatch.start();
@@ -146,32 +218,20 @@ public class IngestExecutorService implements KairosMetricReporter
 			}
 			finally
 			{
-				m_semaphore.release();
+				//Returns the permit and lets the controller adjust the limit,
+				//failures were already reported by each attempt
+				if (m_failed)
+					m_congestionController.returnProcess();
+				else
+					m_congestionController.finishedProcess(m_reportingCallable.getLatency());
 			}
 		}
 
 		@Override
-		public void set(Boolean full)
-		{
-			//Todo Calculate time to run and adjust number of threads
-			/*if (full)
-			{
-			}*/
-
-			super.set(full);
-		}
-	}
-
-	private static class CongestionSemaphore extends Semaphore
-	{
-		public CongestionSemaphore(int permits)
-		{
-			super(permits);
-		}
-
-		public void reducePermits(int reduction)
+		protected void setException(Throwable t)
 		{
-			super.reducePermits(reduction);
+			m_failed = true;
+			super.setException(t);
 		}
 	}
 }
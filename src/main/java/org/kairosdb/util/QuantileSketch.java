@@ -0,0 +1,286 @@
+package org.kairosdb.util;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ Quantile sketch with a relative accuracy guarantee, based on DDSketch
+ (Masson, Rim and Lee, "DDSketch: A fast and fully-mergeable quantile sketch
+ with relative-error guarantees", 2019).
+
+ Values are counted in buckets whose bounds grow by a constant factor so any
+ quantile read from the sketch is within the relative accuracy of the real
+ value.  Adding a value is O(1) and sketches with the same accuracy can be
+ merged without losing accuracy.
+
+ Each sign keeps at most maxBuckets buckets, past that the buckets closest to
+ zero are combined which only affects the accuracy of the smallest values.
+ NaN and infinite values are ignored.
+ */
+public class QuantileSketch
+{
+	public static final int DEFAULT_MAX_BUCKETS = 2048;
+
+	//Values closer to zero than this are counted as zero
+	private static final double MIN_INDEXABLE = Double.MIN_NORMAL;
+
+	private final double m_relativeAccuracy;
+	private final double m_gamma;
+	private final double m_logGamma;
+	private final BucketStore m_positive;
+	private final BucketStore m_negative;
+	private long m_zeroCount;
+	private long m_count;
+	private double m_min = Double.POSITIVE_INFINITY;
+	private double m_max = Double.NEGATIVE_INFINITY;
+
+	public QuantileSketch(double relativeAccuracy)
+	{
+		this(relativeAccuracy, DEFAULT_MAX_BUCKETS);
+	}
+
+	public QuantileSketch(double relativeAccuracy, int maxBuckets)
+	{
+		checkArgument(relativeAccuracy > 0 && relativeAccuracy < 1, "relative accuracy must be between 0 and 1");
+		checkArgument(maxBuckets > 0, "max buckets must be greater than zero");
+
+		m_relativeAccuracy = relativeAccuracy;
+		m_gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+		m_logGamma = Math.log(m_gamma);
+		m_positive = new BucketStore(maxBuckets);
+		m_negative = new BucketStore(maxBuckets);
+	}
+
+	public double getRelativeAccuracy()
+	{
+		return (m_relativeAccuracy);
+	}
+
+	/**
+	 Number of values added to the sketch.
+	 */
+	public long getCount()
+	{
+		return (m_count);
+	}
+
+	public void add(double value)
+	{
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			return;
+
+		if (value > MIN_INDEXABLE)
+			m_positive.add(getIndex(value), 1);
+		else if (value < -MIN_INDEXABLE)
+			m_negative.add(getIndex(-value), 1);
+		else
+			m_zeroCount++;
+
+		m_count++;
+		m_min = Math.min(m_min, value);
+		m_max = Math.max(m_max, value);
+	}
+
+	/**
+	 Adds the values of the other sketch to this one.  Both sketches have to
+	 have the same relative accuracy.
+	 */
+	public void merge(QuantileSketch other)
+	{
+		checkArgument(other.m_gamma == m_gamma, "sketches with different accuracy can not be merged");
+
+		m_positive.merge(other.m_positive);
+		m_negative.merge(other.m_negative);
+		m_zeroCount += other.m_zeroCount;
+		m_count += other.m_count;
+		m_min = Math.min(m_min, other.m_min);
+		m_max = Math.max(m_max, other.m_max);
+	}
+
+	public void clear()
+	{
+		m_positive.clear();
+		m_negative.clear();
+		m_zeroCount = 0;
+		m_count = 0;
+		m_min = Double.POSITIVE_INFINITY;
+		m_max = Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 Returns the value at the given quantile or NaN if the sketch is empty.
+
+	 @param quantile quantile in [0..1]
+	 */
+	public double getQuantile(double quantile)
+	{
+		checkArgument(quantile >= 0 && quantile <= 1, quantile + " is not in [0..1]");
+
+		if (m_count == 0)
+			return (Double.NaN);
+
+		//The ends are known exactly
+		if (quantile == 0.0)
+			return (m_min);
+		if (quantile == 1.0)
+			return (m_max);
+
+		double rank = quantile * (m_count - 1);
+		long seen = 0;
+
+		for (int index = m_negative.getMaxIndex(); index >= m_negative.getMinIndex(); index--)
+		{
+			seen += m_negative.getCount(index);
+			if (seen > rank)
+				return (clamp(-getValue(index)));
+		}
+
+		seen += m_zeroCount;
+		if (seen > rank)
+			return (clamp(0.0));
+
+		for (int index = m_positive.getMinIndex(); index <= m_positive.getMaxIndex(); index++)
+		{
+			seen += m_positive.getCount(index);
+			if (seen > rank)
+				return (clamp(getValue(index)));
+		}
+
+		return (m_max);
+	}
+
+	private int getIndex(double value)
+	{
+		return ((int) Math.ceil(Math.log(value) / m_logGamma));
+	}
+
+	/**
+	 The value within the relative accuracy of everything in the bucket
+	 (gamma^(index-1), gamma^index].
+	 */
+	private double getValue(int index)
+	{
+		return (2 * Math.pow(m_gamma, index) / (m_gamma + 1));
+	}
+
+	private double clamp(double value)
+	{
+		return (Math.max(m_min, Math.min(m_max, value)));
+	}
+
+	/**
+	 Counts for a contiguous range of bucket indexes.
+	 */
+	private static class BucketStore
+	{
+		private final int m_maxBuckets;
+		private long[] m_counts = new long[64];
+		private int m_offset; //bucket index of m_counts[0]
+		private int m_minIndex = Integer.MAX_VALUE;
+		private int m_maxIndex = Integer.MIN_VALUE;
+
+		private BucketStore(int maxBuckets)
+		{
+			m_maxBuckets = maxBuckets;
+		}
+
+		public int getMinIndex()
+		{
+			return (m_minIndex);
+		}
+
+		public int getMaxIndex()
+		{
+			return (m_maxIndex);
+		}
+
+		public boolean isEmpty()
+		{
+			return (m_minIndex > m_maxIndex);
+		}
+
+		public long getCount(int index)
+		{
+			return (m_counts[index - m_offset]);
+		}
+
+		public void add(int index, long count)
+		{
+			if (isEmpty())
+			{
+				m_offset = index - m_counts.length / 2;
+				m_minIndex = index;
+				m_maxIndex = index;
+			}
+			else if (index < m_minIndex)
+			{
+				//Too far below the largest bucket, count it in the lowest one allowed
+				index = Math.max(index, m_maxIndex - m_maxBuckets + 1);
+				ensureCapacity(index, m_maxIndex);
+				m_minIndex = index;
+			}
+			else if (index > m_maxIndex)
+			{
+				long collapsed = 0;
+				int newMinIndex = index - m_maxBuckets + 1;
+				if (newMinIndex > m_minIndex)
+				{
+					//Combine the buckets that fall out of the range into the lowest one
+					int end = Math.min(newMinIndex - 1, m_maxIndex);
+					for (int i = m_minIndex; i <= end; i++)
+					{
+						collapsed += m_counts[i - m_offset];
+						m_counts[i - m_offset] = 0;
+					}
+					m_minIndex = newMinIndex;
+				}
+
+				ensureCapacity(m_minIndex, index);
+				m_counts[m_minIndex - m_offset] += collapsed;
+				m_maxIndex = index;
+			}
+
+			m_counts[index - m_offset] += count;
+		}
+
+		private void ensureCapacity(int minIndex, int maxIndex)
+		{
+			if (minIndex >= m_offset && maxIndex - m_offset < m_counts.length)
+				return;
+
+			//Only grows when the range does not fit, otherwise the range is re-centered
+			int span = maxIndex - minIndex + 1;
+			int length = m_counts.length;
+			if (length < span * 2)
+				length = Math.max(length * 2, span * 2);
+			long[] counts = new long[length];
+			int offset = minIndex - (length - span) / 2;
+
+			for (int i = m_minIndex; i <= m_maxIndex; i++)
+				counts[i - offset] = m_counts[i - m_offset];
+
+			m_counts = counts;
+			m_offset = offset;
+		}
+
+		public void merge(BucketStore other)
+		{
+			for (int i = other.m_minIndex; i <= other.m_maxIndex; i++)
+			{
+				long count = other.getCount(i);
+				if (count != 0)
+					add(i, count);
+			}
+		}
+
+		public void clear()
+		{
+			if (!isEmpty())
+				Arrays.fill(m_counts, m_minIndex - m_offset, m_maxIndex - m_offset + 1, 0);
+
+			m_minIndex = Integer.MAX_VALUE;
+			m_maxIndex = Integer.MIN_VALUE;
+		}
+	}
+}
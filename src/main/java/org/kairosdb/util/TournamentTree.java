@@ -15,94 +15,163 @@
  */
 package org.kairosdb.util;
 
-
-
 import org.kairosdb.core.datastore.Order;
 
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.TreeSet;
-
-public class TournamentTree<T>
-	{
-	private static class TreeValue<T>
-		{
-		private int m_iteratorNum;
-		private T m_value;
-		private Iterator<T> m_iterator;
-
-		public TreeValue(Iterator<T> iterator, T value, int iteratorNum)
-			{
-			m_iterator = iterator;
-			m_value = value;
-			m_iteratorNum = iteratorNum;
-			}
 
-		public int getIteratorNum() { return (m_iteratorNum); }
-		public void setValue(T value) { m_value = value; }
-		public T getValue() { return (m_value); }
-		public Iterator<T> getIterator() { return (m_iterator); }
-		}
+/**
+ Merges sorted iterators using a loser tree.  Each internal node of the tree
+ holds the iterator that lost the match played at that node and node 0 holds
+ the overall winner.  Taking the next element only replays the matches on the
+ path from the winning iterator to the root, that is log2(n) comparisons with
+ no allocation.
 
-	private class TreeComparator implements Comparator<TreeValue<T>>
-		{
-		public int compare(TreeValue<T> tv1, TreeValue<T> tv2)
-			{
-			int resp = m_comparator.compare(tv1.getValue(), tv2.getValue());
-
-			if (resp == 0)
-				return (tv1.getIteratorNum() - tv2.getIteratorNum());
-			else
-				return (resp);
-			}
-		}
-
-	//===========================================================================
-	private TreeSet<TreeValue<T>> m_treeSet;
-	private Comparator<T> m_comparator;
-	private int m_iteratorIndex = 0;
-	private Order m_order;
+ Equal elements are returned in the order the iterators were added, or the
+ reverse of it for descending order.
+ */
+public class TournamentTree<T>
+{
+	private final Comparator<T> m_comparator;
+	private final Order m_order;
+
+	//Per iterator state, indexed by the order the iterators were added
+	private Iterator<T>[] m_iterators;
+	private T[] m_values;
+	private boolean[] m_done;
+	private int m_size;
+	private int m_remaining;
+
+	//m_tree[0] is the winner, m_tree[1..size-1] are the losers, iterator i
+	//is leaf i + size
+	private int[] m_tree = new int[0];
+	private boolean m_rebuild;
 
 	public TournamentTree(Comparator<T> comparator, Order order)
 	{
 		m_comparator = comparator;
-		m_treeSet = new TreeSet<TreeValue<T>>(new TreeComparator());
 		m_order = order;
+		@SuppressWarnings("unchecked")
+		Iterator<T>[] iterators = (Iterator<T>[]) new Iterator<?>[8];
+		m_iterators = iterators;
+		@SuppressWarnings("unchecked")
+		T[] values = (T[]) new Object[8];
+		m_values = values;
+		m_done = new boolean[8];
 	}
 
 	//---------------------------------------------------------------------------
 	public void addIterator(Iterator<T> iterator)
 	{
-		if (iterator.hasNext())
-			m_treeSet.add(new TreeValue<T>(iterator, iterator.next(), m_iteratorIndex ++));
+		if (!iterator.hasNext())
+			return;
+
+		if (m_size == m_iterators.length)
+		{
+			int length = m_size * 2;
+			m_iterators = Arrays.copyOf(m_iterators, length);
+			m_values = Arrays.copyOf(m_values, length);
+			m_done = Arrays.copyOf(m_done, length);
+		}
+
+		m_iterators[m_size] = iterator;
+		m_values[m_size] = iterator.next();
+		m_size++;
+		m_remaining++;
+		m_rebuild = true;
 	}
 
 	//---------------------------------------------------------------------------
 	public boolean hasNext()
 	{
-		return !m_treeSet.isEmpty();
+		return (m_remaining != 0);
 	}
 
 	//---------------------------------------------------------------------------
 	public T nextElement()
 	{
-		TreeValue<T> value;
-		if (m_order == Order.ASC)
-			value = m_treeSet.pollFirst();
-		else
-			value = m_treeSet.pollLast();
-
-		if (value == null)
+		if (m_remaining == 0)
 			return (null);
 
-		T ret = value.getValue();
+		if (m_rebuild)
+			build();
 
-		if (value.getIterator().hasNext())
+		int winner = m_tree[0];
+		T ret = m_values[winner];
+
+		Iterator<T> iterator = m_iterators[winner];
+		if (iterator.hasNext())
+			m_values[winner] = iterator.next();
+		else
 		{
-			value.setValue(value.getIterator().next());
-			m_treeSet.add(value);
+			m_values[winner] = null;
+			m_iterators[winner] = null;
+			m_done[winner] = true;
+			m_remaining--;
+		}
+
+		//Replay the matches from the leaf up
+		for (int node = (winner + m_size) >>> 1; node != 0; node >>>= 1)
+		{
+			int loser = m_tree[node];
+			if (beats(loser, winner))
+			{
+				m_tree[node] = winner;
+				winner = loser;
+			}
 		}
+		m_tree[0] = winner;
 
 		return (ret);
 	}
+
+	/**
+	 Plays all the matches, needed after iterators are added.
+	 */
+	private void build()
+	{
+		int[] winners = new int[m_size * 2];
+		m_tree = new int[Math.max(m_size, 1)];
+
+		for (int i = 0; i < m_size; i++)
+			winners[i + m_size] = i;
+
+		for (int node = m_size - 1; node > 0; node--)
+		{
+			int left = winners[node * 2];
+			int right = winners[node * 2 + 1];
+			if (beats(left, right))
+			{
+				winners[node] = left;
+				m_tree[node] = right;
+			}
+			else
+			{
+				winners[node] = right;
+				m_tree[node] = left;
+			}
+		}
+
+		m_tree[0] = m_size == 1 ? 0 : winners[1];
+		m_rebuild = false;
+	}
+
+	/**
+	 Returns true if the current value of iterator i1 comes before the one of
+	 iterator i2.
+	 */
+	private boolean beats(int i1, int i2)
+	{
+		if (m_done[i1])
+			return (false);
+		if (m_done[i2])
+			return (true);
+
+		int resp = m_comparator.compare(m_values[i1], m_values[i2]);
+		if (m_order == Order.ASC)
+			return (resp < 0 || (resp == 0 && i1 < i2));
+		else
+			return (resp > 0 || (resp == 0 && i1 > i2));
+	}
 }
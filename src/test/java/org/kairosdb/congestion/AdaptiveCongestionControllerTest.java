@@ -0,0 +1,96 @@
+package org.kairosdb.congestion;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveCongestionControllerTest
+{
+	/**
+	 Fills every permit and then completes them all with the given latency
+	 */
+	private void runRound(AdaptiveCongestionController controller, long latency)
+	{
+		int permits = (int) controller.getLimit();
+		for (int i = 0; i < permits; i++)
+			controller.getProcessTracker();
+
+		for (int i = 0; i < permits; i++)
+			controller.finishedProcess(latency);
+	}
+
+	@Test
+	public void test_slowStartGrowsLimit()
+	{
+		AdaptiveCongestionController controller = new AdaptiveCongestionController(2, 1, 20, 2.0);
+
+		runRound(controller, 1000);
+
+		assertTrue(controller.getLimit() > 2);
+		assertThat(controller.getProcessCount(), equalTo(0));
+	}
+
+	@Test
+	public void test_limitNeverAboveMax()
+	{
+		AdaptiveCongestionController controller = new AdaptiveCongestionController(2, 1, 20, 2.0);
+
+		for (int i = 0; i < 20; i++)
+			runRound(controller, 1000);
+
+		assertThat(controller.getLimit(), equalTo(20.0));
+	}
+
+	@Test
+	public void test_highLatencyReducesLimit()
+	{
+		AdaptiveCongestionController controller = new AdaptiveCongestionController(10, 1, 20, 2.0);
+		runRound(controller, 1000);
+		double limit = controller.getLimit();
+
+		for (int i = 0; i < 5; i++)
+			runRound(controller, 10000);
+
+		assertTrue(controller.getLimit() < limit);
+		assertTrue(controller.getLimit() >= 1);
+	}
+
+	@Test
+	public void test_failureHalvesLimit()
+	{
+		AdaptiveCongestionController controller = new AdaptiveCongestionController(16, 1, 20, 2.0);
+
+		controller.getProcessTracker();
+		controller.failedProcess();
+
+		assertThat(controller.getLimit(), equalTo(8.0));
+		assertThat(controller.getProcessCount(), equalTo(0));
+	}
+
+	@Test
+	public void test_reportedFailureIsNotCountedTwice()
+	{
+		AdaptiveCongestionController controller = new AdaptiveCongestionController(16, 1, 20, 2.0);
+
+		assertTrue(controller.acquireProcess());
+		controller.reportFailure();
+		controller.returnProcess();
+
+		assertThat(controller.getLimit(), equalTo(8.0));
+		assertThat(controller.getProcessCount(), equalTo(0));
+	}
+
+	@Test
+	public void test_fixedLimit()
+	{
+		AdaptiveCongestionController controller = new AdaptiveCongestionController(10, 10, 10, 2.0);
+
+		runRound(controller, 1000);
+		runRound(controller, 100000);
+		controller.reportFailure();
+
+		assertThat(controller.getLimit(), equalTo(10.0));
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 KairosDB Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.kairosdb.core.aggregator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.datapoints.DoubleDataPoint;
+import org.kairosdb.core.datapoints.DoubleDataPointFactoryImpl;
+import org.kairosdb.core.datapoints.LongDataPoint;
+import org.kairosdb.core.datastore.DataPointGroup;
+import org.kairosdb.testing.ListDataPointGroup;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class MovingMinAggregatorTest
+{
+	private MovingMinAggregator aggregator;
+
+	@Before
+	public void setup()
+	{
+		aggregator = new MovingMinAggregator(new DoubleDataPointFactoryImpl());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void test_nullSet_invalid()
+	{
+		aggregator.setSize(3);
+		aggregator.aggregate(null);
+	}
+
+	@Test
+	public void test_mixedTypeValues()
+	{
+		ListDataPointGroup group = new ListDataPointGroup("group");
+		group.addDataPoint(new DoubleDataPoint(1, 10.0));
+		group.addDataPoint(new DoubleDataPoint(1, 20.0));
+		group.addDataPoint(new LongDataPoint(1, 3));
+		group.addDataPoint(new LongDataPoint(2, 1));
+		group.addDataPoint(new DoubleDataPoint(2, 5.0));
+		group.addDataPoint(new DoubleDataPoint(3, 6.0));
+
+		aggregator.setSize(3);
+		DataPointGroup results = aggregator.aggregate(group);
+
+		DataPoint dataPoint = results.next();
+		assertThat(dataPoint.getTimestamp(), equalTo(1L));
+		assertThat(dataPoint.getDoubleValue(), equalTo(3.0));
+
+		dataPoint = results.next();
+		assertThat(dataPoint.getTimestamp(), equalTo(2L));
+		assertThat(dataPoint.getDoubleValue(), equalTo(1.0));
+
+		dataPoint = results.next();
+		assertThat(dataPoint.getTimestamp(), equalTo(2L));
+		assertThat(dataPoint.getDoubleValue(), equalTo(1.0));
+
+		dataPoint = results.next();
+		assertThat(dataPoint.getTimestamp(), equalTo(3L));
+		assertThat(dataPoint.getDoubleValue(), equalTo(1.0));
+
+		assertThat(results.hasNext(), equalTo(false));
+	}
+
+	@Test
+	public void test_nanValuesIgnored()
+	{
+		ListDataPointGroup group = new ListDataPointGroup("group");
+		group.addDataPoint(new DoubleDataPoint(1, Double.NaN));
+		group.addDataPoint(new DoubleDataPoint(2, Double.NaN));
+		group.addDataPoint(new DoubleDataPoint(3, 1.0));
+		group.addDataPoint(new DoubleDataPoint(4, 3.0));
+
+		aggregator.setSize(2);
+		DataPointGroup results = aggregator.aggregate(group);
+
+		assertThat(Double.isNaN(results.next().getDoubleValue()), equalTo(true));
+		assertThat(results.next().getDoubleValue(), equalTo(1.0));
+		assertThat(results.next().getDoubleValue(), equalTo(1.0));
+		assertThat(results.hasNext(), equalTo(false));
+	}
+
+	@Test
+	public void test_randomValuesMatchFullScan()
+	{
+		Random random = new Random(42);
+		ListDataPointGroup group = new ListDataPointGroup("group");
+		double[] values = new double[5000];
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] = random.nextInt(1000);
+			group.addDataPoint(new DoubleDataPoint(i, values[i]));
+		}
+
+		aggregator.setSize(50);
+		DataPointGroup results = aggregator.aggregate(group);
+
+		for (int i = 49; i < values.length; i++)
+		{
+			double expected = values[i - 49];
+			for (int j = i - 48; j <= i; j++)
+				expected = Math.min(expected, values[j]);
+
+			assertThat(results.next().getDoubleValue(), equalTo(expected));
+		}
+
+		assertThat(results.hasNext(), equalTo(false));
+	}
+}
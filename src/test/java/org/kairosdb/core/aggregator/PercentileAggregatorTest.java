@@ -25,6 +25,7 @@ import org.kairosdb.core.datapoints.DoubleDataPoint;
 import org.kairosdb.core.datapoints.DoubleDataPointFactoryImpl;
 import org.kairosdb.core.datapoints.LongDataPoint;
 import org.kairosdb.core.datastore.DataPointGroup;
+import org.kairosdb.core.datastore.TimeUnit;
 import org.kairosdb.testing.ListDataPointGroup;
 
 import java.util.Arrays;
@@ -260,4 +261,55 @@ public class PercentileAggregatorTest
 		test_percentileValue_long(1.00001, 10);
 	}
 
+	@Test
+	public void test_sketchAccuracy()
+	{
+		Random random = new Random(7);
+		aggregator.setPercentile(0.99);
+		aggregator.setAccuracy(0.01);
+		ListDataPointGroup group = new ListDataPointGroup("group");
+		double[] values = new double[50000];
+		for (int i = 0; i < values.length; i++)
+		{
+			//Latency like values with a long tail
+			values[i] = Math.exp(random.nextGaussian() + 4);
+			group.addDataPoint(new DoubleDataPoint(1, values[i]));
+		}
+
+		DataPointGroup results = aggregator.aggregate(group);
+		assertThat(results.hasNext(), equalTo(true));
+		DataPoint dataPoint = results.next();
+
+		Arrays.sort(values);
+		double expected = values[(int) floor(0.99 * (values.length - 1))];
+		assertThat(dataPoint.getDoubleValue(), closeTo(expected, expected * 0.01));
+		assertThat(results.hasNext(), equalTo(false));
+	}
+
+	@Test
+	public void test_sketchEachRange()
+	{
+		aggregator.setPercentile(0.5);
+		aggregator.setAccuracy(0.01);
+		aggregator.setSampling(new Sampling(10, TimeUnit.MILLISECONDS));
+		aggregator.setStartTime(0);
+		ListDataPointGroup group = new ListDataPointGroup("group");
+		for (int i = 0; i < 10; i++)
+			group.addDataPoint(new LongDataPoint(i, 100));
+		for (int i = 10; i < 20; i++)
+			group.addDataPoint(new LongDataPoint(i, 5));
+
+		DataPointGroup results = aggregator.aggregate(group);
+
+		assertThat(results.next().getDoubleValue(), equalTo(100.0));
+		assertThat(results.next().getDoubleValue(), equalTo(5.0));
+		assertThat(results.hasNext(), equalTo(false));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_accuracyOne_invalid()
+	{
+		aggregator.setAccuracy(1.0);
+	}
+
 }
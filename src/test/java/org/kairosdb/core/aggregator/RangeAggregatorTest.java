@@ -6,8 +6,11 @@
 
 package org.kairosdb.core.aggregator;
 
+import org.joda.time.Chronology;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeField;
 import org.joda.time.DateTimeZone;
+import org.joda.time.chrono.GregorianChronology;
 import org.junit.Test;
 import org.kairosdb.core.DataPoint;
 import org.kairosdb.core.datapoints.DoubleDataPointFactoryImpl;
@@ -16,6 +19,12 @@ import org.kairosdb.core.datastore.DataPointGroup;
 import org.kairosdb.core.datastore.TimeUnit;
 import org.kairosdb.testing.ListDataPointGroup;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -557,4 +566,121 @@ public class RangeAggregatorTest
 
 
 	}
+
+	/**
+	 Ranges of a fixed width are computed without Joda, this checks them
+	 against the Joda fields for time zones with and without an offset.
+	 */
+	@Test
+	public void test_fixedWidthRangesMatchJoda()
+	{
+		DateTimeZone[] zones = {DateTimeZone.UTC, DateTimeZone.forOffsetHoursMinutes(5, 30)};
+		TimeUnit[] units = {TimeUnit.MILLISECONDS, TimeUnit.SECONDS, TimeUnit.MINUTES,
+				TimeUnit.HOURS, TimeUnit.DAYS, TimeUnit.WEEKS};
+		long startTime = new DateTime(2014, 1, 1, 3, 7, 11, 13, DateTimeZone.UTC).getMillis();
+		Random random = new Random(42);
+
+		for (DateTimeZone zone : zones)
+		{
+			for (TimeUnit unit : units)
+			{
+				for (int samplingValue : new int[]{1, 7, 15})
+				{
+					ListDataPointGroup group = new ListDataPointGroup("fixed_width");
+					long timestamp = startTime - 100L * 24 * 3600 * 1000;
+					List<Long> timestamps = new ArrayList<Long>();
+					for (int i = 0; i < 200; i++)
+					{
+						timestamp += (long) (random.nextDouble() * 24 * 3600 * 1000);
+						timestamps.add(timestamp);
+						group.addDataPoint(new LongDataPoint(timestamp, 1));
+					}
+
+					RangeAggregator aggregator = new RangeStartAggregator();
+					aggregator.setSampling(new Sampling(samplingValue, unit));
+					aggregator.setTimeZone(zone);
+					aggregator.setAlignStartTime(true);
+					aggregator.setStartTime(startTime);
+
+					List<Long> expected = new ArrayList<Long>();
+					DateTimeField field = getField(GregorianChronology.getInstance(zone), unit);
+					int index = 0;
+					while (index < timestamps.size())
+					{
+						//Each range takes the data points before the end of the range of its first data point
+						long periods = field.getDifferenceAsLong(timestamps.get(index), startTime) / samplingValue;
+						expected.add(field.add(startTime, periods * samplingValue));
+						long rangeEnd = field.add(startTime, (periods + 1) * samplingValue);
+						while (index < timestamps.size() && timestamps.get(index) < rangeEnd)
+							index++;
+					}
+
+					List<Long> actual = new ArrayList<Long>();
+					DataPointGroup aggregated = aggregator.aggregate(group);
+					while (aggregated.hasNext())
+						actual.add(aggregated.next().getTimestamp());
+
+					assertThat(zone + " " + samplingValue + " " + unit, actual, equalTo(expected));
+				}
+			}
+		}
+	}
+
+	private static DateTimeField getField(Chronology chronology, TimeUnit unit)
+	{
+		switch (unit)
+		{
+			case WEEKS:
+				return chronology.weekOfWeekyear();
+			case DAYS:
+				return chronology.dayOfMonth();
+			case HOURS:
+				return chronology.hourOfDay();
+			case MINUTES:
+				return chronology.minuteOfHour();
+			case SECONDS:
+				return chronology.secondOfDay();
+			default:
+				return chronology.millisOfSecond();
+		}
+	}
+
+	/**
+	 Returns one data point per range at the time passed in, the sub aggregator
+	 only implements the iterator method.
+	 */
+	private static class RangeStartAggregator extends RangeAggregator
+	{
+		@Override
+		protected RangeSubAggregator getSubAggregator()
+		{
+			return new RangeSubAggregator()
+			{
+				@Override
+				public Iterable<DataPoint> getNextDataPoints(long returnTime, Iterator<DataPoint> dataPointRange)
+				{
+					long count = 0;
+					while (dataPointRange.hasNext())
+					{
+						dataPointRange.next();
+						count++;
+					}
+
+					return Collections.<DataPoint>singletonList(new LongDataPoint(returnTime, count));
+				}
+			};
+		}
+
+		@Override
+		public boolean canAggregate(String groupType)
+		{
+			return true;
+		}
+
+		@Override
+		public String getAggregatedGroupType(String groupType)
+		{
+			return groupType;
+		}
+	}
 }
@@ -145,4 +145,49 @@ public class SmaAggregatorTest
 		assertThat(results.hasNext(), equalTo(false));
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void test_largeWindowMatchesFullSum()
+	{
+		ListDataPointGroup group = new ListDataPointGroup("group");
+		double[] values = new double[10000];
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] = Math.sin(i) * 1000 + (i % 7) * 0.1;
+			group.addDataPoint(new DoubleDataPoint(i, values[i]));
+		}
+
+		aggregator.setSize(1000);
+		DataPointGroup results = aggregator.aggregate(group);
+
+		for (int i = 999; i < values.length; i++)
+		{
+			double sum = 0;
+			for (int j = i - 999; j <= i; j++)
+				sum += values[j];
+
+			DataPoint dataPoint = results.next();
+			assertThat(dataPoint.getTimestamp(), equalTo((long) i));
+			assertThat(dataPoint.getDoubleValue(), closeTo(sum / 1000, 1e-9));
+		}
+
+		assertThat(results.hasNext(), equalTo(false));
+	}
+
+	@Test
+	public void test_nanOnlyWhileInWindow()
+	{
+		ListDataPointGroup group = new ListDataPointGroup("group");
+		group.addDataPoint(new DoubleDataPoint(1, 1.0));
+		group.addDataPoint(new DoubleDataPoint(2, Double.NaN));
+		group.addDataPoint(new DoubleDataPoint(3, 3.0));
+		group.addDataPoint(new DoubleDataPoint(4, 5.0));
+
+		aggregator.setSize(2);
+		DataPointGroup results = aggregator.aggregate(group);
+
+		assertThat(Double.isNaN(results.next().getDoubleValue()), equalTo(true));
+		assertThat(Double.isNaN(results.next().getDoubleValue()), equalTo(true));
+		assertThat(results.next().getDoubleValue(), equalTo(4.0));
+		assertThat(results.hasNext(), equalTo(false));
+	}
+}
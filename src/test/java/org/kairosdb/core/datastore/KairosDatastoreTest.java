@@ -35,6 +35,7 @@ import org.kairosdb.plugin.Aggregator;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -253,6 +254,44 @@ public class KairosDatastoreTest
 		assertThat(getTagGroupMap(dataPoints.get(1)), hasEntry("tag2", ""));
 	}
 
+	@Test
+	public void test_groupByTypeAndTag_RowsWithSameTagValues() throws DatastoreException, FormatterException
+	{
+		TestKairosDatastore datastore = new TestKairosDatastore(new TestDatastore(), new QueryQueuingManager(1, "hostname"),
+				new TestDataPointFactory());
+
+		TagGroupBy groupBy = new TagGroupBy("tag1");
+		List<DataPointRow> rows = new ArrayList<>();
+
+		for (int i = 0; i < 4; i++)
+		{
+			DataPointRowImpl row = new DataPointRowImpl();
+			row.addTag("tag1", "value" + (i % 2));
+			row.addTag("host", "host" + i);
+			row.addDataPoint(new LongDataPoint(1234 + i, i));
+			rows.add(row);
+		}
+
+		List<DataPointGroup> dataPoints = datastore.groupByTypeAndTag("metricName", rows, groupBy, Order.ASC);
+
+		assertThat(dataPoints.size(), equalTo(2));
+
+		assertThat(getTagGroupMap(dataPoints.get(0)), hasEntry("tag1", "value0"));
+		assertThat(getTimestamps(dataPoints.get(0)), equalTo(Arrays.asList(1234L, 1236L)));
+
+		assertThat(getTagGroupMap(dataPoints.get(1)), hasEntry("tag1", "value1"));
+		assertThat(getTimestamps(dataPoints.get(1)), equalTo(Arrays.asList(1235L, 1237L)));
+	}
+
+	private static List<Long> getTimestamps(DataPointGroup group)
+	{
+		List<Long> timestamps = new ArrayList<>();
+		while (group.hasNext())
+			timestamps.add(group.next().getTimestamp());
+
+		return timestamps;
+	}
+
 	@Test
 	public void test_groupByTypeAndTag_MultipleTags() throws DatastoreException, FormatterException
 	{
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 KairosDB Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.kairosdb.core.datastore;
+
+import org.junit.Test;
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.KairosDataPointFactory;
+import org.kairosdb.core.TestDataPointFactory;
+import org.kairosdb.core.datapoints.LegacyDataPointFactory;
+import org.kairosdb.core.datapoints.LegacyDoubleDataPoint;
+import org.kairosdb.core.datapoints.LegacyLongDataPoint;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.TestCase.assertEquals;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class StreamingSearchResultTest
+{
+	private static KairosDataPointFactory dataPointFactory = new TestDataPointFactory();
+
+	private void addRows(SearchResult result, long now) throws IOException
+	{
+		Map<String, String> tags = new HashMap<>();
+		tags.put("host", "A");
+		result.startDataPointSet(LegacyDataPointFactory.DATASTORE_TYPE, tags);
+
+		result.addDataPoint(new LegacyLongDataPoint(now, 42));
+		result.addDataPoint(new LegacyDoubleDataPoint(now + 1, 42.1));
+		result.addDataPoint(new LegacyLongDataPoint(now + 2, 43));
+
+		tags = new HashMap<>();
+		tags.put("host", "B");
+		result.startDataPointSet(LegacyDataPointFactory.DATASTORE_TYPE, tags);
+
+		result.addDataPoint(new LegacyLongDataPoint(now, 1));
+		result.addDataPoint(new LegacyDoubleDataPoint(now + 1, 1.1));
+		result.addDataPoint(new LegacyLongDataPoint(now + 2, 2));
+
+		result.endDataPoints();
+	}
+
+	@Test
+	public void test_rowsStayInMemory() throws IOException
+	{
+		String tempFile = System.getProperty("java.io.tmpdir") + "/streamingBaseFile";
+		StreamingSearchResult result = new StreamingSearchResult("metric1", tempFile,
+				dataPointFactory, 100);
+
+		addRows(result, System.currentTimeMillis());
+
+		assertThat(result.isSpilled(), equalTo(false));
+
+		List<DataPointRow> rows = result.getRows();
+		assertEquals(2, rows.size());
+		assertThat(rows.get(0).getTagValue("host"), equalTo("A"));
+		assertThat(rows.get(0).getDataPointCount(), equalTo(3));
+		assertValues(rows.get(0), 42L, 42.1, 43L);
+		assertValues(rows.get(1), 1L, 1.1, 2L);
+
+		rows.get(0).close();
+		rows.get(1).close();
+	}
+
+	@Test
+	public void test_spillsWhenBufferIsFull() throws IOException
+	{
+		String tempFile = System.getProperty("java.io.tmpdir") + "/streamingBaseFile";
+		StreamingSearchResult result = new StreamingSearchResult("metric1", tempFile,
+				dataPointFactory, 4);
+
+		addRows(result, System.currentTimeMillis());
+
+		assertThat(result.isSpilled(), equalTo(true));
+
+		List<DataPointRow> rows = result.getRows();
+		assertEquals(2, rows.size());
+		assertThat(rows.get(1).getTagValue("host"), equalTo("B"));
+		assertValues(rows.get(0), 42L, 42.1, 43L);
+		assertValues(rows.get(1), 1L, 1.1, 2L);
+
+		rows.get(0).close();
+		rows.get(1).close();
+	}
+
+	private void assertValues(DataPointRow dataPoints, Number... numbers)
+	{
+		int count = 0;
+		while (dataPoints.hasNext())
+		{
+			DataPoint dp = dataPoints.next();
+
+			if (dp.isLong())
+			{
+				Long value = (Long)numbers[count];
+				assertEquals(value.longValue(), dp.getLongValue());
+			}
+			else
+			{
+				Double value = (Double)numbers[count];
+				assertEquals(value, dp.getDoubleValue());
+			}
+
+			count ++;
+		}
+
+		assertEquals(numbers.length, count);
+	}
+}
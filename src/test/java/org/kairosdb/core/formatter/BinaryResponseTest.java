@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 KairosDB Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.kairosdb.core.formatter;
+
+import org.json.JSONException;
+import org.junit.Test;
+import org.kairosdb.core.datapoints.DoubleDataPoint;
+import org.kairosdb.core.datapoints.LongDataPoint;
+import org.kairosdb.core.datapoints.StringDataPoint;
+import org.kairosdb.core.datastore.DataPointGroup;
+import org.kairosdb.core.groupby.ValueGroupBy;
+import org.kairosdb.testing.BinaryResponseReader;
+import org.kairosdb.testing.ListDataPointGroup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryResponseTest
+{
+	private static List<DataPointGroup> createGroups()
+	{
+		List<DataPointGroup> groups = new ArrayList<>();
+
+		ListDataPointGroup group1 = new ListDataPointGroup("metric1");
+		group1.addTag("host", "server1");
+		group1.addTag("host", "server2");
+		group1.addTag("dc", "east");
+		group1.addGroupByResult(new ValueGroupBy(10).getGroupByResult(1));
+		group1.addDataPoint(new LongDataPoint(1000, 5));
+		group1.addDataPoint(new LongDataPoint(2000, -7));
+		group1.addDataPoint(new DoubleDataPoint(3000, 2.5));
+		group1.addDataPoint(new DoubleDataPoint(3500, 2.5));
+		group1.addDataPoint(new DoubleDataPoint(4000, 60.2));
+		group1.addDataPoint(new StringDataPoint(5000, "a \"quoted\" value"));
+		group1.addDataPoint(new LongDataPoint(6000, Long.MAX_VALUE));
+		group1.addDataPoint(new LongDataPoint(7000, Long.MIN_VALUE));
+		groups.add(group1);
+
+		//More data points than fit in one record
+		ListDataPointGroup group2 = new ListDataPointGroup("metric2");
+		group2.addTag("host", "server3");
+		for (int i = 0; i < BinaryResponse.MAX_BLOCK_SIZE * 2 + 10; i++)
+			group2.addDataPoint(new DoubleDataPoint(1000L * i, Math.floor(Math.sin(i / 100.0) * 1000)));
+		groups.add(group2);
+
+		//Values that do not compress
+		ListDataPointGroup group3 = new ListDataPointGroup("metric3");
+		Random random = new Random(11);
+		for (int i = 0; i < 100; i++)
+			group3.addDataPoint(new DoubleDataPoint(1000L * i, random.nextDouble()));
+		groups.add(group3);
+
+		groups.add(new ListDataPointGroup("empty"));
+
+		return (groups);
+	}
+
+	private static String formatJson(boolean excludeTags) throws FormatterException
+	{
+		StringWriter writer = new StringWriter();
+		JsonResponse response = new JsonResponse(writer);
+		response.begin();
+		response.formatQuery(createGroups(), excludeTags, 10);
+		response.formatQuery(createGroups(), excludeTags, -1);
+		response.end();
+
+		return (writer.toString());
+	}
+
+	private static byte[] formatBinary(boolean excludeTags, boolean xorDoubles) throws IOException, FormatterException
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		BinaryResponse response = new BinaryResponse(output, xorDoubles);
+		response.begin();
+		response.formatQuery(createGroups(), excludeTags, 10);
+		response.formatQuery(createGroups(), excludeTags, -1);
+		response.end();
+		response.flush();
+
+		return (output.toByteArray());
+	}
+
+	@Test
+	public void test_matchesJson() throws IOException, FormatterException, JSONException
+	{
+		String json = formatJson(false);
+
+		assertThat(BinaryResponseReader.toJson(formatBinary(false, false)), equalTo(json));
+		assertThat(BinaryResponseReader.toJson(formatBinary(false, true)), equalTo(json));
+	}
+
+	@Test
+	public void test_excludeTags() throws IOException, FormatterException, JSONException
+	{
+		assertThat(BinaryResponseReader.toJson(formatBinary(true, true)), equalTo(formatJson(true)));
+	}
+
+	@Test
+	public void test_xorDoublesAreSmaller() throws IOException, FormatterException
+	{
+		assertTrue(formatBinary(false, true).length < formatBinary(false, false).length);
+	}
+
+	@Test
+	public void test_appendQuery() throws IOException, FormatterException, JSONException
+	{
+		ByteArrayOutputStream queryOutput = new ByteArrayOutputStream();
+		BinaryResponse query = new BinaryResponse(queryOutput, true);
+		query.formatQuery(createGroups(), false, -1);
+		query.flush();
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		BinaryResponse response = new BinaryResponse(output, true);
+		response.begin();
+		response.formatQuery(createGroups(), false, 10);
+		response.appendQuery(new ByteArrayInputStream(queryOutput.toByteArray()));
+		response.end();
+		response.flush();
+
+		assertThat(BinaryResponseReader.toJson(output.toByteArray()), equalTo(formatJson(false)));
+	}
+}
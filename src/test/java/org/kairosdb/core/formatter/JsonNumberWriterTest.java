@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 KairosDB Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.kairosdb.core.formatter;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class JsonNumberWriterTest
+{
+	private static String writeLong(long value) throws IOException
+	{
+		StringWriter writer = new StringWriter();
+		new JsonNumberWriter(writer).writeLong(value);
+		return (writer.toString());
+	}
+
+	private static String writeDouble(double value) throws IOException
+	{
+		StringWriter writer = new StringWriter();
+		new JsonNumberWriter(writer).writeDouble(value);
+		return (writer.toString());
+	}
+
+	@Test
+	public void test_writeLong() throws IOException
+	{
+		long[] values = {0, 1, -1, 9, 10, -10, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1};
+
+		for (long value : values)
+			assertThat(writeLong(value), equalTo(Long.toString(value)));
+	}
+
+	@Test
+	public void test_writeDouble_matchesJSONObject() throws IOException, JSONException
+	{
+		double[] values = {0.0, -0.0, 1.0, -1.0, 60.2, 30.200000000000003, 0.001, 0.0001,
+				9999999.0, 1.0E7, -1.0E7, 1.5E300, 4.9E-324, Double.MAX_VALUE, 123456.789};
+
+		for (double value : values)
+			assertThat(writeDouble(value), equalTo(JSONObject.numberToString(value)));
+
+		Random random = new Random(42);
+		for (int i = 0; i < 10000; i++)
+		{
+			double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 5);
+			assertThat(writeDouble(value), equalTo(JSONObject.numberToString(value)));
+
+			double whole = Math.rint(value);
+			assertThat(writeDouble(whole), equalTo(JSONObject.numberToString(whole)));
+		}
+	}
+}
@@ -29,6 +29,7 @@ import org.kairosdb.core.groupby.ValueGroupBy;
 import org.kairosdb.testing.ListDataPointGroup;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
@@ -117,6 +118,34 @@ public class JsonResponseTest
 		assertJson(writer.toString(), json);
 	}
 
+	@Test
+	public void test_appendQuery_mixedWithFormatQuery() throws FormatterException
+	{
+		StringWriter queryWriter = new StringWriter();
+		new JsonResponse(queryWriter).formatQuery(singleGroup("metric2", 2), false, -1);
+
+		response.begin();
+		response.appendQuery(new StringReader(queryWriter.toString()));
+		response.formatQuery(singleGroup("metric1", 1), false, -1);
+		response.appendQuery(new StringReader(queryWriter.toString()));
+		response.end();
+
+		assertThat(writer.toString(), equalTo("{\"queries\":[" +
+				"{\"results\":[{\"name\":\"metric2\",\"tags\":{},\"values\":[[1,2]]}]}," +
+				"{\"results\":[{\"name\":\"metric1\",\"tags\":{},\"values\":[[1,1]]}]}," +
+				"{\"results\":[{\"name\":\"metric2\",\"tags\":{},\"values\":[[1,2]]}]}]}"));
+	}
+
+	private static List<DataPointGroup> singleGroup(String name, long value)
+	{
+		ListDataPointGroup group = new ListDataPointGroup(name);
+		group.addDataPoint(new LongDataPoint(1, value));
+
+		List<DataPointGroup> groups = new ArrayList<DataPointGroup>();
+		groups.add(group);
+		return groups;
+	}
+
 	@Test(expected = IllegalStateException.class)
 	public void test_infinite_double_invalid() throws IOException, FormatterException
 	{
@@ -12,6 +12,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.kairosdb.core.groupby.GrouperTest.assertDataPoint;
 
 /**
@@ -43,4 +45,36 @@ public class GroupTest
 
 		cachedGroup.close();
 	}
+
+	@Test
+	public void test_spillKeepsDataPoints() throws IOException
+	{
+		KairosDataPointFactory kairosDataPointFactory = new TestDataPointFactory();
+		ListDataPointGroup dataPointGroup = new ListDataPointGroup("TestGroup");
+		dataPointGroup.addTag("host", "server1");
+
+		Group group = Group.createGroup(dataPointGroup, Collections.singletonList(1),
+				Collections.<GroupByResult>emptyList(), kairosDataPointFactory);
+		assertThat(group.getMemorySize(), equalTo(0L));
+
+		for (int i = 0; i < 100; i++)
+			group.addDataPoint(new LongDataPoint(i, i * 10));
+
+		assertThat(group.getMemorySize() > 0, equalTo(true));
+		assertThat(group.isSpilled(), equalTo(false));
+
+		group.spill();
+		assertThat(group.isSpilled(), equalTo(true));
+		assertThat(group.getMemorySize(), equalTo(0L));
+
+		for (int i = 100; i < 150; i++)
+			group.addDataPoint(new LongDataPoint(i, i * 10));
+
+		DataPointGroup cachedGroup = group.getDataPointGroup();
+		for (int i = 0; i < 150; i++)
+			assertDataPoint(cachedGroup.next(), i, i * 10);
+
+		assertThat(cachedGroup.hasNext(), equalTo(false));
+		cachedGroup.close();
+	}
 }
@@ -116,4 +116,42 @@ public class GrouperTest
 		assertThat(dataPoint.getLongValue(), equalTo(expectedValue));
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void test_memoryBudgetDoesNotChangeGroups() throws IOException
+	{
+		List<List<DataPoint>> expected = groupAll(new Grouper(new TestDataPointFactory()));
+
+		assertThat(groupAll(new Grouper(new TestDataPointFactory(), 0L)), equalTo(expected));
+		assertThat(groupAll(new Grouper(new TestDataPointFactory(), 2000L)), equalTo(expected));
+	}
+
+	private List<List<DataPoint>> groupAll(Grouper grouper) throws IOException
+	{
+		List<GroupBy> groupBys = new ArrayList<GroupBy>();
+		groupBys.add(new ValueGroupBy(10));
+
+		List<DataPointGroup> dataPointGroups = new ArrayList<DataPointGroup>();
+		for (int i = 0; i < 3; i++)
+		{
+			ListDataPointGroup dataPointGroup = new ListDataPointGroup("dataPointGroup" + i);
+			dataPointGroup.addTag("host", "server" + i);
+			for (int j = 0; j < 500; j++)
+				dataPointGroup.addDataPoint(new LongDataPoint(j, (j * 7 + i) % 100));
+
+			dataPointGroups.add(dataPointGroup);
+		}
+
+		List<List<DataPoint>> ret = new ArrayList<List<DataPoint>>();
+		for (DataPointGroup group : grouper.group(groupBys, dataPointGroups))
+		{
+			List<DataPoint> dataPoints = new ArrayList<DataPoint>();
+			while (group.hasNext())
+				dataPoints.add(group.next());
+
+			group.close();
+			ret.add(dataPoints);
+		}
+
+		return ret;
+	}
+}
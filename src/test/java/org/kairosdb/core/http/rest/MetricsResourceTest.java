@@ -18,8 +18,17 @@ package org.kairosdb.core.http.rest;
 import ch.qos.logback.classic.Level;
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONException;
 import org.junit.Test;
 import org.kairosdb.core.exception.DatastoreException;
+import org.kairosdb.core.formatter.BinaryResponse;
+import org.kairosdb.testing.BinaryResponseReader;
 import org.kairosdb.testing.JsonResponse;
 import org.kairosdb.util.LoggingUtils;
 
@@ -119,6 +128,76 @@ public class MetricsResourceTest extends ResourceBase
 						"[{\"name\":\"abc.123\",\"group_by\":[{\"name\":\"type\",\"type\":\"number\"}],\"tags\":{\"server\":[\"server1\",\"server2\"]},\"values\":[[1,60.2],[2,30.200000000000003],[3,20.1]]}]}]}");
 	}
 
+	@Test
+	public void testQueryResponseFile() throws IOException
+	{
+		String json = Resources.toString(Resources.getResource("query-metric-absolute-dates.json"), Charsets.UTF_8);
+
+		metricsResource.setStreamingResponse(false);
+		try
+		{
+			JsonResponse response = client.post(json, GET_METRIC_URL);
+
+			assertResponse(response, 200,
+					"{\"queries\":" +
+							"[{\"sample_size\":10,\"results\":" +
+							"[{\"name\":\"abc.123\",\"group_by\":[{\"name\":\"type\",\"type\":\"number\"}],\"tags\":{\"server\":[\"server1\",\"server2\"]},\"values\":[[1,60.2],[2,30.200000000000003],[3,20.1]]}]}]}");
+		}
+		finally
+		{
+			metricsResource.setStreamingResponse(true);
+		}
+	}
+
+	@Test
+	public void testQueryMultipleMetricsKeepsOrder() throws IOException
+	{
+		String json = Resources.toString(Resources.getResource("query-multiple-metrics-absolute-dates.json"), Charsets.UTF_8);
+
+		JsonResponse response = client.post(json, GET_METRIC_URL);
+
+		assertResponse(response, 200,
+				"{\"queries\":[" +
+						"{\"sample_size\":10,\"results\":" +
+						"[{\"name\":\"abc.123\",\"group_by\":[{\"name\":\"type\",\"type\":\"number\"}],\"tags\":{\"server\":[\"server1\",\"server2\"]},\"values\":[[1,60.2],[2,30.200000000000003],[3,20.1]]}]}," +
+						"{\"sample_size\":10,\"results\":" +
+						"[{\"name\":\"def.456\",\"group_by\":[{\"name\":\"type\",\"type\":\"number\"}],\"values\":[[1,60.2],[2,30.200000000000003],[3,20.1]]}]}," +
+						"{\"sample_size\":10,\"results\":" +
+						"[{\"name\":\"ghi.789\",\"group_by\":[{\"name\":\"type\",\"type\":\"number\"}],\"tags\":{\"server\":[\"server1\",\"server2\"]},\"values\":[[1,60.2],[2,30.200000000000003],[3,20.1]]}]}]}");
+		assertEquals(3, queuingManager.getAvailableThreads());
+	}
+
+	@Test
+	public void testQueryBinaryResponse() throws IOException, JSONException
+	{
+		String json = Resources.toString(Resources.getResource("query-multiple-metrics-absolute-dates.json"), Charsets.UTF_8);
+		String expected = client.post(json, GET_METRIC_URL).getJson();
+
+		for (boolean streaming : new boolean[]{true, false})
+		{
+			metricsResource.setStreamingResponse(streaming);
+			try
+			{
+				HttpPost post = new HttpPost(GET_METRIC_URL);
+				post.setHeader("Content-Type", "application/json");
+				post.setHeader("Accept", BinaryResponse.CONTENT_TYPE);
+				post.setEntity(new StringEntity(json));
+
+				try (CloseableHttpClient httpClient = HttpClients.createDefault();
+						CloseableHttpResponse response = httpClient.execute(post))
+				{
+					assertThat(response.getStatusLine().getStatusCode(), equalTo(200));
+					assertThat(response.getFirstHeader("Content-Type").getValue(), startsWith(BinaryResponse.CONTENT_TYPE));
+					assertThat(BinaryResponseReader.toJson(EntityUtils.toByteArray(response.getEntity())), equalTo(expected));
+				}
+			}
+			finally
+			{
+				metricsResource.setStreamingResponse(true);
+			}
+		}
+	}
+
 	@Test
 	public void testQueryWithBeanValidationException() throws IOException
 	{
@@ -173,6 +252,7 @@ public class MetricsResourceTest extends ResourceBase
 		try
 		{
 			datastore.throwException(new DatastoreException("bogus"));
+			metricsResource.setStreamingResponse(false);
 
 			String json = Resources.toString(Resources.getResource("query-metric-absolute-dates.json"), Charsets.UTF_8);
 
@@ -186,6 +266,32 @@ public class MetricsResourceTest extends ResourceBase
 		}
 		finally
 		{
+			datastore.throwException(null);
+			metricsResource.setStreamingResponse(true);
+			LoggingUtils.setLogLevel(previousLogLevel);
+		}
+	}
+
+	@Test
+	public void test_datastoreThrowsException_streamingResponse() throws DatastoreException, IOException
+	{
+		Level previousLogLevel = LoggingUtils.setLogLevel(Level.OFF);
+
+		try
+		{
+			datastore.throwException(new DatastoreException("bogus"));
+
+			String json = Resources.toString(Resources.getResource("query-multiple-metrics-absolute-dates.json"), Charsets.UTF_8);
+
+			JsonResponse response = client.post(json, GET_METRIC_URL);
+
+			//The error is thrown while writing the response so there is no json body
+			assertThat(response.getStatusCode(), equalTo(500));
+			assertEquals(3, queuingManager.getAvailableThreads());
+		}
+		finally
+		{
+			datastore.throwException(null);
 			LoggingUtils.setLogLevel(previousLogLevel);
 		}
 	}
@@ -68,6 +68,7 @@ public abstract class ResourceBase
     static QueryQueuingManager queuingManager;
     static Client client;
     static TestDatastore datastore;
+    static MetricsResource metricsResource;
 
     @BeforeClass
     public static void startup() throws Exception
@@ -113,6 +114,8 @@ public abstract class ResourceBase
                 bindConstant().annotatedWith(Names.named("HOSTNAME")).to("HOST");
                 bindConstant().annotatedWith(Names.named("kairosdb.datastore.concurrentQueryThreads")).to(1);
                 bindConstant().annotatedWith(Names.named("kairosdb.query_cache.keep_cache_files")).to(false);
+                bindConstant().annotatedWith(Names.named(MetricsResource.QUERY_METRIC_THREADS)).to(2);
+                bindConstant().annotatedWith(Names.named(MetricsResource.QUERY_STREAMING_RESPONSE)).to(true);
                 bind(KairosDataPointFactory.class).to(GuiceKairosDataPointFactory.class);
                 bind(QueryPluginFactory.class).to(TestQueryPluginFactory.class);
                 bind(SimpleStatsReporter.class);
@@ -147,6 +150,7 @@ public abstract class ResourceBase
 
             }
         });
+        metricsResource = injector.getInstance(MetricsResource.class);
         server = injector.getInstance(WebServer.class);
         server.start();
 
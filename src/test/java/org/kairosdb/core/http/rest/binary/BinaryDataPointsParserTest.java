@@ -0,0 +1,257 @@
+package org.kairosdb.core.http.rest.binary;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.Subscribe;
+import org.junit.Before;
+import org.junit.Test;
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.KairosDataPointFactory;
+import org.kairosdb.core.TestDataPointFactory;
+import org.kairosdb.core.datapoints.DoubleDataPoint;
+import org.kairosdb.core.datapoints.LongDataPoint;
+import org.kairosdb.core.datapoints.StringDataPoint;
+import org.kairosdb.core.http.rest.json.ValidationErrors;
+import org.kairosdb.eventbus.EventBusConfiguration;
+import org.kairosdb.eventbus.EventBusWithFilters;
+import org.kairosdb.events.DataPointEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.kairosdb.util.Util.packLong;
+import static org.kairosdb.util.Util.packUnsignedLong;
+
+public class BinaryDataPointsParserTest
+{
+	private static KairosDataPointFactory dataPointFactory = new TestDataPointFactory();
+
+	private EventBusWithFilters eventBus;
+	private List<DataPointEvent> events;
+
+	@Before
+	public void setup()
+	{
+		eventBus = new EventBusWithFilters(new EventBusConfiguration(new Properties()));
+		events = new ArrayList<>();
+		eventBus.register(new Object()
+		{
+			@Subscribe
+			public void putDataPoint(DataPointEvent event)
+			{
+				events.add(event);
+			}
+		});
+	}
+
+	private ValidationErrors parse(byte[] bytes) throws IOException
+	{
+		BinaryDataPointsParser parser = new BinaryDataPointsParser(eventBus,
+				new ByteArrayInputStream(bytes), dataPointFactory);
+
+		return parser.parse();
+	}
+
+	@Test
+	public void test_roundTrip() throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryDataPointsWriter writer = new BinaryDataPointsWriter(out);
+		writer.addMetric("metric1", ImmutableMap.of("host", "server1", "dc", "dc1"), "long", 0,
+				Arrays.<DataPoint>asList(new LongDataPoint(1000, 5), new LongDataPoint(900, -7)));
+		writer.addMetric("metric2", ImmutableMap.of("host", "server1", "dc", "dc1"), "double", 300,
+				Collections.<DataPoint>singletonList(new DoubleDataPoint(2000, 1.5)));
+		writer.addMetric("metric3", ImmutableMap.of("host", "server2"), "string", 0,
+				Collections.<DataPoint>singletonList(new StringDataPoint(3000, "text")));
+		writer.close();
+
+		ValidationErrors errors = parse(out.toByteArray());
+
+		assertThat(errors.hasErrors(), equalTo(false));
+		assertThat(events.size(), equalTo(4));
+
+		assertThat(events.get(0).getMetricName(), equalTo("metric1"));
+		assertThat(events.get(0).getTags().get("host"), equalTo("server1"));
+		assertThat(events.get(0).getTags().get("dc"), equalTo("dc1"));
+		assertThat(events.get(0).getDataPoint().getTimestamp(), equalTo(1000L));
+		assertThat(events.get(0).getDataPoint().getLongValue(), equalTo(5L));
+		assertThat(events.get(1).getDataPoint().getTimestamp(), equalTo(900L));
+		assertThat(events.get(1).getDataPoint().getLongValue(), equalTo(-7L));
+
+		assertThat(events.get(2).getMetricName(), equalTo("metric2"));
+		assertThat(events.get(2).getTtl(), equalTo(300));
+		assertThat(events.get(2).getDataPoint().getDoubleValue(), equalTo(1.5));
+		assertThat(events.get(2).getTags(), sameInstance(events.get(0).getTags()));
+
+		assertThat(events.get(3).getMetricName(), equalTo("metric3"));
+		assertThat(((StringDataPoint) events.get(3).getDataPoint()).getValue(), equalTo("text"));
+	}
+
+	@Test
+	public void test_validationErrors() throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryDataPointsWriter writer = new BinaryDataPointsWriter(out);
+		writer.addMetric("", ImmutableMap.of("host", "server1"), "long", 0,
+				Collections.<DataPoint>singletonList(new LongDataPoint(1000, 5)));
+		writer.addMetric("metric1", Collections.<String, String>emptyMap(), "long", 0,
+				Collections.<DataPoint>singletonList(new LongDataPoint(1000, 5)));
+		writer.addMetric("metric2", ImmutableMap.of("host", ""), "long", 0,
+				Collections.<DataPoint>singletonList(new LongDataPoint(1000, 5)));
+		writer.addMetric("metric3", ImmutableMap.of("host", "server1"), "bogus", 0,
+				Collections.<DataPoint>singletonList(new LongDataPoint(1000, 5)));
+		writer.addMetric("metric4", ImmutableMap.of("host", "server1"), "long", 0,
+				Collections.<DataPoint>singletonList(new LongDataPoint(1000, 5)));
+		writer.close();
+
+		ValidationErrors errors = parse(out.toByteArray());
+
+		assertThat(errors.size(), equalTo(4));
+		assertThat(errors.getErrors(), hasItem("metric[0].name may not be empty."));
+		assertThat(errors.getErrors(), hasItem("metric[1](name=metric1).tags count must be greater than or equal to 1."));
+		assertThat(errors.getErrors(), hasItem("metric[2](name=metric2).tag[host].value may not be empty."));
+		assertThat(errors.getErrors(), hasItem("Unregistered data point type 'bogus'"));
+
+		//Valid metrics are still added
+		assertThat(events.size(), equalTo(1));
+		assertThat(events.get(0).getMetricName(), equalTo("metric4"));
+	}
+
+	@Test
+	public void test_skipValidate() throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryDataPointsWriter writer = new BinaryDataPointsWriter(out);
+		writer.addMetric("metric1", Collections.<String, String>emptyMap(), "long", 0,
+				Collections.<DataPoint>singletonList(new LongDataPoint(1000, 5)), true);
+		writer.close();
+
+		ValidationErrors errors = parse(out.toByteArray());
+
+		assertThat(errors.hasErrors(), equalTo(false));
+		assertThat(events.size(), equalTo(1));
+	}
+
+	@Test
+	public void test_emptyInput_invalid() throws IOException
+	{
+		ValidationErrors errors = parse(new byte[0]);
+
+		assertThat(errors.size(), equalTo(1));
+		assertThat(errors.getFirstError(), equalTo("Invalid binary data. No content due to end of input."));
+	}
+
+	@Test
+	public void test_badHeader_invalid() throws IOException
+	{
+		ValidationErrors errors = parse("[{\"name\": \"metric1\"}]".getBytes("UTF-8"));
+
+		assertThat(errors.size(), equalTo(1));
+		assertThat(errors.getFirstError(), equalTo("Invalid binary data. Unrecognized header."));
+	}
+
+	@Test
+	public void test_truncated_invalid() throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryDataPointsWriter writer = new BinaryDataPointsWriter(out);
+		writer.addMetric("metric1", ImmutableMap.of("host", "server1"), "long", 0,
+				Collections.<DataPoint>singletonList(new LongDataPoint(1000, 5)));
+		writer.addMetric("metric2", ImmutableMap.of("host", "server1"), "long", 0,
+				Collections.<DataPoint>singletonList(new LongDataPoint(1000, 5)));
+		writer.close();
+
+		byte[] bytes = out.toByteArray();
+		ValidationErrors errors = parse(Arrays.copyOf(bytes, bytes.length - 2));
+
+		assertThat(errors.size(), equalTo(1));
+		assertThat(errors.getFirstError(), equalTo("Invalid binary data. Unexpected end of input."));
+		assertThat(events.size(), equalTo(1));
+	}
+
+	@Test
+	public void test_unknownRecordKind_skipped() throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(BinaryDataPointsParser.MAGIC);
+		out.write(99);
+		out.write(3);
+		out.write(new byte[]{1, 2, 3});
+
+		ValidationErrors errors = parse(out.toByteArray());
+
+		assertThat(errors.hasErrors(), equalTo(false));
+		assertThat(events.size(), equalTo(0));
+	}
+
+	private void writeRecord(DataOutputStream out, int kind, byte[] body) throws IOException
+	{
+		out.write(kind);
+		packUnsignedLong(body.length, out);
+		out.write(body);
+	}
+
+	private void writeStrings(DataOutputStream out, String... strings) throws IOException
+	{
+		for (String string : strings)
+			writeRecord(out, BinaryDataPointsParser.STRING_RECORD, string.getBytes("UTF-8"));
+	}
+
+	@Test
+	public void test_duplicateTag_invalid() throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.write(BinaryDataPointsParser.MAGIC);
+		writeStrings(out, "metric1", "long", "host", "server1", "server2");
+
+		ByteArrayOutputStream metric = new ByteArrayOutputStream();
+		DataOutputStream metricOut = new DataOutputStream(metric);
+		packUnsignedLong(0, metricOut); //flags
+		packUnsignedLong(0, metricOut); //name
+		packUnsignedLong(1, metricOut); //type
+		packUnsignedLong(0, metricOut); //ttl
+		packUnsignedLong(2, metricOut);
+		packUnsignedLong(2, metricOut);
+		packUnsignedLong(3, metricOut);
+		packUnsignedLong(2, metricOut);
+		packUnsignedLong(4, metricOut);
+		packUnsignedLong(1, metricOut);
+		packLong(1000, metricOut);
+		new LongDataPoint(1000, 5).writeValueToBuffer(metricOut);
+		writeRecord(out, BinaryDataPointsParser.METRIC_RECORD, metric.toByteArray());
+
+		ValidationErrors errors = parse(bytes.toByteArray());
+
+		assertThat(errors.size(), equalTo(1));
+		assertThat(errors.getFirstError(), equalTo("metric[0](name=metric1).tag[host] is specified more than once."));
+		assertThat(events.size(), equalTo(0));
+	}
+
+	@Test
+	public void test_malformedVarint_invalid() throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.write(BinaryDataPointsParser.MAGIC);
+
+		byte[] metric = new byte[12];
+		Arrays.fill(metric, (byte) 0xFF);
+		writeRecord(out, BinaryDataPointsParser.METRIC_RECORD, metric);
+
+		ValidationErrors errors = parse(bytes.toByteArray());
+
+		assertThat(errors.size(), equalTo(1));
+		assertThat(errors.getFirstError(), equalTo("metric[0] could not be read. Variable length quantity is too long"));
+	}
+}
@@ -26,6 +26,8 @@ import org.kairosdb.core.DataPoint;
 import org.kairosdb.core.DataPointSet;
 import org.kairosdb.core.KairosDataPointFactory;
 import org.kairosdb.core.TestDataPointFactory;
+import org.kairosdb.core.datapoints.DoubleDataPoint;
+import org.kairosdb.core.datapoints.LongDataPoint;
 import org.kairosdb.core.datapoints.StringDataPoint;
 import org.kairosdb.core.datastore.Datastore;
 import org.kairosdb.core.datastore.DatastoreMetricQuery;
@@ -51,6 +53,7 @@ import java.util.zip.GZIPInputStream;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 @SuppressWarnings("ThrowableResultOfMethodCallIgnored")
@@ -643,6 +646,95 @@ public class DataPointsParserTest
 		assertThat(parser.getDataPointCount(), equalTo(1));
 	}
 
+	@Test
+	public void test_datapointsBeforeNameAndTags() throws DatastoreException, IOException
+	{
+		String json = "{\"datapoints\": [[1, 2], [3, 4.5], [5, \"text\"]], \"tags\":{\"foo\":\"bar\"}, \"name\": \"metric1\"}";
+
+		FakeDataStore fakeds = new FakeDataStore();
+		eventBus.register(fakeds);
+		DataPointsParser parser = new DataPointsParser(eventBus, new StringReader(json),
+				new Gson(), dataPointFactory);
+
+		ValidationErrors validationErrors = parser.parse();
+
+		assertThat(validationErrors.hasErrors(), equalTo(false));
+
+		List<DataPointSet> dataPointSetList = fakeds.getDataPointSetList();
+		assertThat(dataPointSetList.size(), equalTo(1));
+		assertThat(dataPointSetList.get(0).getName(), equalTo("metric1"));
+		assertThat(dataPointSetList.get(0).getTags().get("foo"), equalTo("bar"));
+
+		List<DataPoint> dataPoints = dataPointSetList.get(0).getDataPoints();
+		assertThat(dataPoints.size(), equalTo(3));
+		assertThat(dataPoints.get(0), instanceOf(LongDataPoint.class));
+		assertThat(dataPoints.get(0).getLongValue(), equalTo(2L));
+		assertThat(dataPoints.get(1), instanceOf(DoubleDataPoint.class));
+		assertThat(dataPoints.get(1).getDoubleValue(), equalTo(4.5));
+		assertThat(dataPoints.get(2), instanceOf(StringDataPoint.class));
+		assertThat(((StringDataPoint) dataPoints.get(2)).getValue(), equalTo("text"));
+	}
+
+	@Test
+	public void test_datapointsExponentAndExplicitType() throws DatastoreException, IOException
+	{
+		String json = "{\"name\": \"metric1\", \"tags\":{\"foo\":\"bar\"}, \"datapoints\": [[1, 1e3], [2, 5, \"double\"], [3, 7.9, \"long\"]]}";
+
+		FakeDataStore fakeds = new FakeDataStore();
+		eventBus.register(fakeds);
+		DataPointsParser parser = new DataPointsParser(eventBus, new StringReader(json),
+				new Gson(), dataPointFactory);
+
+		ValidationErrors validationErrors = parser.parse();
+
+		assertThat(validationErrors.hasErrors(), equalTo(false));
+
+		List<DataPoint> dataPoints = fakeds.getDataPointSetList().get(0).getDataPoints();
+		assertThat(dataPoints.size(), equalTo(3));
+		assertThat(dataPoints.get(0), instanceOf(LongDataPoint.class));
+		assertThat(dataPoints.get(0).getLongValue(), equalTo(1000L));
+		assertThat(dataPoints.get(1), instanceOf(DoubleDataPoint.class));
+		assertThat(dataPoints.get(1).getDoubleValue(), equalTo(5.0));
+		assertThat(dataPoints.get(2), instanceOf(LongDataPoint.class));
+		assertThat(dataPoints.get(2).getLongValue(), equalTo(7L));
+	}
+
+	@Test(expected = JsonSyntaxException.class)
+	public void test_duplicateTag_invalid() throws DatastoreException, IOException
+	{
+		String json = "{\"name\": \"metric1\", \"timestamp\": 1234, \"value\": 1, \"tags\":{\"foo\":\"bar\", \"foo\":\"baz\"}}";
+
+		DataPointsParser parser = new DataPointsParser(eventBus, new StringReader(json),
+				new Gson(), dataPointFactory);
+
+		parser.parse();
+	}
+
+	@Test
+	public void test_sameTagsShareMap() throws DatastoreException, IOException
+	{
+		String json = "[{\"name\": \"metric1\", \"timestamp\": 1, \"value\": 1, \"tags\":{\"host\":\"a\", \"dc\":\"b\"}}," +
+				"{\"name\": \"metric2\", \"timestamp\": 1, \"value\": 1, \"tags\":{\"dc\":\"b\", \"host\":\"a\"}}]";
+
+		final List<DataPointEvent> events = new ArrayList<>();
+		eventBus.register(new Object()
+		{
+			@Subscribe
+			public void putDataPoint(DataPointEvent event)
+			{
+				events.add(event);
+			}
+		});
+		DataPointsParser parser = new DataPointsParser(eventBus, new StringReader(json),
+				new Gson(), dataPointFactory);
+
+		ValidationErrors validationErrors = parser.parse();
+
+		assertThat(validationErrors.hasErrors(), equalTo(false));
+		assertThat(events.size(), equalTo(2));
+		assertThat(events.get(1).getTags(), sameInstance(events.get(0).getTags()));
+	}
+
 	@Test
 	public void test_valueType_invalid() throws DatastoreException, IOException
 	{
@@ -9,8 +9,13 @@ import org.kairosdb.core.datapoints.LongDataPointFactory;
 import org.kairosdb.core.datapoints.LongDataPointFactoryImpl;
 import org.kairosdb.events.DataPointEvent;
 
+import java.io.File;
+import java.io.IOException;
+
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 /**
  Created by bhawkins on 10/25/16.
@@ -40,4 +45,175 @@ public class DataPointEventSerializerTest
 
 		assertThat(original, equalTo(processedEvent));
 	}
+
+	private DataPointEvent createEvent(String metricName)
+	{
+		ImmutableSortedMap<String, String> tags =
+				ImmutableSortedMap.<String, String>naturalOrder()
+						.put("host", "server1")
+						.put("datacenter", "east")
+						.put("customer", "acme").build();
+
+		DataPoint dataPoint = m_longDataPointFactory.createDataPoint(1490000000123L, 43);
+		return new DataPointEvent(metricName, tags, dataPoint, 500);
+	}
+
+	private File createDictionaryFile() throws IOException
+	{
+		File file = File.createTempFile("queue_dictionary", ".dat");
+		file.delete();
+		file.deleteOnExit();
+		return file;
+	}
+
+	@Test
+	public void test_compactFormat_serializeDeserialize() throws IOException
+	{
+		KairosDataPointFactory dataPointFactory = new TestDataPointFactory();
+		StringDictionary dictionary = new StringDictionary(createDictionaryFile(), 100);
+		DataPointEventSerializer serializer = new DataPointEventSerializer(dataPointFactory, dictionary);
+		DataPointEventSerializer legacySerializer = new DataPointEventSerializer(dataPointFactory);
+
+		DataPointEvent original = createEvent("new_metric");
+
+		byte[] bytes = serializer.serializeEvent(original);
+
+		assertThat(serializer.deserializeEvent(bytes), equalTo(original));
+		assertTrue(bytes.length < legacySerializer.serializeEvent(original).length / 3);
+
+		//Events written before switching formats can still be read
+		assertThat(serializer.deserializeEvent(legacySerializer.serializeEvent(original)), equalTo(original));
+		dictionary.close();
+	}
+
+	@Test
+	public void test_compactFormat_readableAfterRestart() throws IOException
+	{
+		KairosDataPointFactory dataPointFactory = new TestDataPointFactory();
+		File dictionaryFile = createDictionaryFile();
+		StringDictionary dictionary = new StringDictionary(dictionaryFile, 100);
+		DataPointEventSerializer serializer = new DataPointEventSerializer(dataPointFactory, dictionary);
+
+		DataPointEvent original = createEvent("new_metric");
+		byte[] bytes = serializer.serializeEvent(original);
+		dictionary.close();
+
+		StringDictionary reopened = new StringDictionary(dictionaryFile, 100);
+		serializer = new DataPointEventSerializer(dataPointFactory, reopened);
+
+		assertThat(serializer.deserializeEvent(bytes), equalTo(original));
+
+		//New strings get new ids
+		DataPointEvent another = createEvent("another_metric");
+		assertThat(serializer.deserializeEvent(serializer.serializeEvent(another)), equalTo(another));
+		assertThat(reopened.size(), equalTo(dictionary.size() + 1));
+		reopened.close();
+	}
+
+	@Test
+	public void test_compactFormat_dictionaryFull() throws IOException
+	{
+		KairosDataPointFactory dataPointFactory = new TestDataPointFactory();
+		StringDictionary dictionary = new StringDictionary(createDictionaryFile(), 2);
+		DataPointEventSerializer serializer = new DataPointEventSerializer(dataPointFactory, dictionary);
+
+		DataPointEvent original = createEvent("new_metric");
+
+		assertThat(serializer.deserializeEvent(serializer.serializeEvent(original)), equalTo(original));
+		assertThat(dictionary.size(), equalTo(2));
+		dictionary.close();
+	}
+
+	@Test
+	public void test_compactFormat_readableWithFlagOff() throws IOException
+	{
+		KairosDataPointFactory dataPointFactory = new TestDataPointFactory();
+		File queueDir = createDictionaryFile();
+		queueDir.mkdirs();
+		new File(queueDir, DataPointEventSerializer.DICTIONARY_FILE).deleteOnExit();
+		queueDir.deleteOnExit();
+
+		DataPointEventSerializer serializer = new DataPointEventSerializer(dataPointFactory);
+		serializer.setCompactFormat(true, queueDir.getPath(), 100);
+
+		DataPointEvent original = createEvent("new_metric");
+		byte[] bytes = serializer.serializeEvent(original);
+		serializer.close();
+
+		serializer = new DataPointEventSerializer(dataPointFactory);
+		serializer.setCompactFormat(false, queueDir.getPath(), 100);
+
+		assertThat(serializer.deserializeEvent(bytes), equalTo(original));
+
+		//New events are written in the original format
+		assertFalse((serializer.serializeEvent(original)[0] & 0xFF) == 0xFF);
+		serializer.close();
+	}
+
+	@Test
+	public void test_dictionaryNearlyFull() throws IOException
+	{
+		KairosDataPointFactory dataPointFactory = new TestDataPointFactory();
+		StringDictionary dictionary = new StringDictionary(createDictionaryFile(), 10);
+		DataPointEventSerializer serializer = new DataPointEventSerializer(dataPointFactory, dictionary);
+
+		//Metric name, data type and three tags
+		serializer.serializeEvent(createEvent("new_metric"));
+		assertThat(dictionary.size(), equalTo(8));
+		assertFalse(serializer.isDictionaryNearlyFull());
+
+		serializer.serializeEvent(createEvent("another_metric"));
+		assertTrue(serializer.isDictionaryNearlyFull());
+		dictionary.close();
+	}
+
+	@Test
+	public void test_dictionaryWrittenOnFlush() throws IOException
+	{
+		KairosDataPointFactory dataPointFactory = new TestDataPointFactory();
+		File dictionaryFile = createDictionaryFile();
+		StringDictionary dictionary = new StringDictionary(dictionaryFile, 100);
+		DataPointEventSerializer serializer = new DataPointEventSerializer(dataPointFactory, dictionary);
+
+		long headerLength = dictionaryFile.length();
+		DataPointEvent original = createEvent("new_metric");
+		byte[] bytes = serializer.serializeEvent(original);
+		assertThat(dictionaryFile.length(), equalTo(headerLength));
+
+		serializer.flush();
+		assertTrue(dictionaryFile.length() > headerLength);
+
+		StringDictionary reopened = new StringDictionary(dictionaryFile, 100);
+		assertThat(new DataPointEventSerializer(dataPointFactory, reopened).deserializeEvent(bytes),
+				equalTo(original));
+		reopened.close();
+		dictionary.close();
+	}
+
+	@Test
+	public void test_resetDictionary() throws IOException
+	{
+		KairosDataPointFactory dataPointFactory = new TestDataPointFactory();
+		File dictionaryFile = createDictionaryFile();
+		StringDictionary dictionary = new StringDictionary(dictionaryFile, 100);
+		DataPointEventSerializer serializer = new DataPointEventSerializer(dataPointFactory, dictionary);
+
+		serializer.serializeEvent(createEvent("old_metric"));
+		serializer.resetDictionary(42);
+
+		assertThat(dictionary.size(), equalTo(0));
+		assertThat(serializer.getFirstReadableIndex(), equalTo(42L));
+
+		DataPointEvent original = createEvent("new_metric");
+		byte[] bytes = serializer.serializeEvent(original);
+		dictionary.close();
+
+		StringDictionary reopened = new StringDictionary(dictionaryFile, 100);
+		serializer = new DataPointEventSerializer(dataPointFactory, reopened);
+
+		assertThat(reopened.getFirstIndex(), equalTo(42L));
+		assertThat(reopened.size(), equalTo(dictionary.size()));
+		assertThat(serializer.deserializeEvent(bytes), equalTo(original));
+		reopened.close();
+	}
 }
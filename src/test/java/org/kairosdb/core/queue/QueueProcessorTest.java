@@ -179,4 +179,33 @@ public class QueueProcessorTest
 		//verify(bigArray, times(1)).get(anyLong()); //Item taken from memory
 		verify(bigArray, times(1)).removeBeforeIndex(eq(1l));
 	}
+
+	@Test
+	public void test_batchIsAddedToMemoryQueue()
+	{
+		BigArray bigArray = mock(BigArray.class);
+
+		when(bigArray.append(Matchers.<byte[]>any())).thenReturn(0L, 1L, 2L);
+		when(bigArray.getTailIndex()).thenReturn(0L);
+		when(bigArray.getHeadIndex()).thenReturn(3L);
+
+		DataPointEventSerializer serializer = new DataPointEventSerializer(new TestDataPointFactory());
+		ProcessorHandler processorHandler = mock(ProcessorHandler.class);
+
+		QueueProcessor queueProcessor = new FileQueueProcessor(serializer,
+				bigArray, new TestExecutor(), 3, 10, 500, 1);
+
+		queueProcessor.setProcessorHandler(processorHandler);
+
+		DataPointEvent event = createDataPointEvent();
+
+		queueProcessor.put(Arrays.asList(event, event, event));
+
+		m_deliveryThread.setRunOnce(true);
+		m_deliveryThread.run();
+
+		verify(bigArray, times(3)).append(eq(serializer.serializeEvent(event)));
+		verify(processorHandler, times(1)).handleEvents(eq(Arrays.asList(event, event, event)), Matchers.<EventCompletionCallBack>any(), eq(true));
+		verify(bigArray, times(0)).get(anyLong());
+	}
 }
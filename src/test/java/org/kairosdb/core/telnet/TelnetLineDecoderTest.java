@@ -0,0 +1,203 @@
+package org.kairosdb.core.telnet;
+
+import com.google.common.collect.ImmutableSortedMap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.kairosdb.core.datapoints.DoubleDataPoint;
+import org.kairosdb.core.datapoints.DoubleDataPointFactoryImpl;
+import org.kairosdb.core.datapoints.LongDataPoint;
+import org.kairosdb.core.datapoints.LongDataPointFactoryImpl;
+import org.kairosdb.eventbus.EventBusWithFilters;
+import org.kairosdb.events.DataPointBatchEvent;
+import org.kairosdb.events.DataPointEvent;
+import org.kairosdb.util.Tags;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TelnetLineDecoderTest
+{
+	private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+	private EventBusWithFilters m_eventBus;
+	private PutCommand m_putCommand;
+	private PutMillisecondCommand m_putmCommand;
+	private TelnetLineDecoder m_decoder;
+	private ChannelHandlerContext m_context;
+
+	@Before
+	public void setup()
+	{
+		m_eventBus = mock(EventBusWithFilters.class);
+		m_putCommand = new PutCommand(m_eventBus, "localhost",
+				new LongDataPointFactoryImpl(), new DoubleDataPointFactoryImpl());
+		m_putmCommand = new PutMillisecondCommand(m_eventBus, "localhost",
+				new LongDataPointFactoryImpl(), new DoubleDataPointFactoryImpl());
+
+		TestCommandProvider commandProvider = new TestCommandProvider();
+		commandProvider.putCommand("put", m_putCommand);
+		commandProvider.putCommand("putm", m_putmCommand);
+
+		m_decoder = new TelnetLineDecoder(1024, commandProvider);
+		m_context = mock(ChannelHandlerContext.class);
+		when(m_context.getChannel()).thenReturn(mock(Channel.class));
+	}
+
+	private static ChannelBuffer buffer(String text)
+	{
+		return (ChannelBuffers.wrappedBuffer(text.getBytes(CHARSET)));
+	}
+
+	private Object decode(ChannelBuffer buffer) throws Exception
+	{
+		return (m_decoder.decode(m_context, null, buffer));
+	}
+
+	private TelnetLineDecoder.PutBatch decodeBatch(ChannelBuffer buffer) throws Exception
+	{
+		Object message = decode(buffer);
+		assertThat(message, instanceOf(TelnetLineDecoder.PutBatch.class));
+
+		return ((TelnetLineDecoder.PutBatch) message);
+	}
+
+	@Test
+	public void test_putLinesBatched() throws Exception
+	{
+		ChannelBuffer buffer = buffer("put metric1 1000 42 host=a\n" +
+				"put metric1  1001 42.5 host=a\r\n" +
+				"put metric2 1002 -7 host=b customer=c\n");
+
+		TelnetLineDecoder.PutBatch batch = decodeBatch(buffer);
+		List<DataPointEvent> events = batch.getEvents();
+
+		assertThat(batch.getCommand(), sameInstance((PutMillisecondCommand) m_putCommand));
+		assertThat(events.size(), equalTo(3));
+		assertThat(events.get(0).getMetricName(), equalTo("metric1"));
+		assertThat(events.get(0).getTags(), equalTo(Tags.create().put("host", "a").build()));
+		assertThat(events.get(0).getDataPoint(), equalTo(new LongDataPoint(1000000, 42)));
+		assertThat(events.get(1).getDataPoint(), equalTo(new DoubleDataPoint(1001000, 42.5)));
+		assertThat(events.get(2).getMetricName(), equalTo("metric2"));
+		assertThat(events.get(2).getTags(), equalTo(Tags.create().put("customer", "c").put("host", "b").build()));
+		assertThat(events.get(2).getDataPoint(), equalTo(new LongDataPoint(1002000, -7)));
+
+		assertThat(buffer.readable(), equalTo(false));
+		assertThat(decode(buffer), nullValue());
+	}
+
+	@Test
+	public void test_putmTimestampNotConverted() throws Exception
+	{
+		TelnetLineDecoder.PutBatch batch = decodeBatch(buffer("putm metric1 1000 42 host=a\n"));
+
+		assertThat(batch.getCommand(), sameInstance(m_putmCommand));
+		assertThat(batch.getEvents().get(0).getDataPoint(), equalTo(new LongDataPoint(1000, 42)));
+	}
+
+	@Test
+	public void test_repeatedSeriesShareNameAndTags() throws Exception
+	{
+		TelnetLineDecoder.PutBatch batch = decodeBatch(buffer("put metric1 1000 1 host=a dc=x\n" +
+				"put metric1 1001 2 host=a dc=x\n"));
+
+		DataPointEvent first = batch.getEvents().get(0);
+		DataPointEvent second = batch.getEvents().get(1);
+		assertThat(second.getMetricName(), sameInstance(first.getMetricName()));
+		assertThat(second.getTags(), sameInstance(first.getTags()));
+
+		//The cache lives as long as the connection
+		batch = decodeBatch(buffer("put metric1 1002 3 host=a dc=x\n"));
+		assertThat(batch.getEvents().get(0).getTags(), sameInstance(first.getTags()));
+	}
+
+	@Test
+	public void test_ttlAndNoTags() throws Exception
+	{
+		TelnetLineDecoder.PutBatch batch = decodeBatch(buffer("put metric1 1000 1 kairos_opt.ttl=30\n" +
+				"put metric1 1000 1\n"));
+
+		ImmutableSortedMap<String, String> defaultTags = Tags.create().put("add", "tag").build();
+		assertThat(batch.getEvents().get(0).getTags(), equalTo(defaultTags));
+		assertThat(batch.getEvents().get(0).getTtl(), equalTo(30));
+		assertThat(batch.getEvents().get(1).getTags(), equalTo(defaultTags));
+		assertThat(batch.getEvents().get(1).getTtl(), equalTo(0));
+	}
+
+	@Test
+	public void test_invalidLinePassedToCommand() throws Exception
+	{
+		ChannelBuffer buffer = buffer("put metric1 1000 1 host=a\n" +
+				"put metric1 1000 1 host\n" +
+				"put metric1 1000 abc host=a\n");
+
+		assertThat(decodeBatch(buffer).size(), equalTo(1));
+		assertThat((String[]) decode(buffer), equalTo(new String[]{"put", "metric1", "1000", "1", "host"}));
+		assertThat((String[]) decode(buffer), equalTo(new String[]{"put", "metric1", "1000", "abc", "host=a"}));
+		assertThat(decode(buffer), nullValue());
+	}
+
+	@Test
+	public void test_otherCommandsSplitIntoWords() throws Exception
+	{
+		ChannelBuffer buffer = buffer("version\n  put\tmetric1 1000 1 host=a\n");
+
+		assertThat((String[]) decode(buffer), equalTo(new String[]{"version"}));
+		assertThat(decodeBatch(buffer).size(), equalTo(1));
+	}
+
+	@Test
+	public void test_partialLineWaitsForNewLine() throws Exception
+	{
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+		buffer.writeBytes("put metric1 1000 1 ho".getBytes(CHARSET));
+
+		assertThat(decode(buffer), nullValue());
+		assertThat(buffer.readerIndex(), equalTo(0));
+
+		buffer.writeBytes("st=a\n".getBytes(CHARSET));
+		TelnetLineDecoder.PutBatch batch = decodeBatch(buffer);
+		assertThat(batch.getEvents().get(0).getTags(), equalTo(Tags.create().put("host", "a").build()));
+	}
+
+	@Test
+	public void test_tooLongLineDropped() throws Exception
+	{
+		StringBuilder longName = new StringBuilder();
+		for (int i = 0; i < 2048; i++)
+			longName.append('k');
+
+		ChannelBuffer buffer = buffer("put " + longName + " 1000 1 host=a\nput metric1 1000 1 host=a\n");
+
+		TelnetLineDecoder.PutBatch batch = decodeBatch(buffer);
+		assertThat(batch.size(), equalTo(1));
+		assertThat(batch.getEvents().get(0).getMetricName(), equalTo("metric1"));
+		verify(m_context).sendUpstream(any(ExceptionEvent.class));
+	}
+
+	@Test
+	public void test_postSendsBatchEvent() throws Exception
+	{
+		TelnetLineDecoder.PutBatch batch = decodeBatch(buffer("put metric1 1000 1 host=a\n"));
+		batch.post();
+
+		ArgumentCaptor<DataPointBatchEvent> event = ArgumentCaptor.forClass(DataPointBatchEvent.class);
+		verify(m_eventBus).post(event.capture());
+		assertThat(event.getValue().getEvents(), equalTo(batch.getEvents()));
+	}
+}
@@ -27,15 +27,27 @@ import org.kairosdb.core.datapoints.LongDataPointFactoryImpl;
 import org.kairosdb.core.exception.DatastoreException;
 import org.kairosdb.core.exception.KairosDBException;
 import org.kairosdb.eventbus.EventBusWithFilters;
+import org.kairosdb.events.DataPointBatchEvent;
+import org.kairosdb.events.DataPointEvent;
 import org.kairosdb.util.Tags;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.kairosdb.util.DataPointEventUtil.verifyEvent;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 
 /**
@@ -220,6 +232,64 @@ public class TelnetServerTest
 		verifyEvent(m_eventBus, metricName, tags, dp, 0);
 	}
 
+	@Test
+	public void test_batchIngest() throws KairosDBException, IOException
+	{
+		m_server.stop();
+		m_server = new TelnetServer(TELNET_PORT, MAX_COMMAND_LENGTH, commandProvider);
+		m_server.setBatchIngest(true);
+		m_server.start();
+		m_client = new TelnetClient("127.0.0.1", TELNET_PORT);
+
+		long now = System.currentTimeMillis() / 1000;
+		m_client.sendText("put test.metric " + now + " 123 host=test_host");
+
+		ArgumentCaptor<DataPointBatchEvent> batch = ArgumentCaptor.forClass(DataPointBatchEvent.class);
+		verify(m_eventBus, timeout(5000)).post(batch.capture());
+
+		DataPointEvent event = batch.getValue().getEvents().get(0);
+		assertThat(event.getMetricName(), equalTo("test.metric"));
+		assertThat(event.getTags(), equalTo(Tags.create().put("host", "test_host").build()));
+		assertThat(event.getDataPoint(), equalTo((DataPoint) new LongDataPoint(now * 1000, 123)));
+	}
+
+	@Test
+	public void test_batchIngest_keepsConnectionOrder() throws Exception
+	{
+		final List<Long> timestamps = Collections.synchronizedList(new ArrayList<Long>());
+		doAnswer(new Answer<Void>()
+		{
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable
+			{
+				//A slow post gives later batches a chance to pass this one
+				Thread.sleep(1);
+				DataPointBatchEvent batch = (DataPointBatchEvent) invocation.getArguments()[0];
+				for (DataPointEvent event : batch.getEvents())
+					timestamps.add(event.getDataPoint().getTimestamp());
+				return null;
+			}
+		}).when(m_eventBus).post(any(DataPointBatchEvent.class));
+
+		m_server.stop();
+		m_server = new TelnetServer(TELNET_PORT, MAX_COMMAND_LENGTH, commandProvider);
+		m_server.setBatchIngest(true);
+		m_server.start();
+		m_client = new TelnetClient("127.0.0.1", TELNET_PORT);
+
+		int count = 200;
+		for (int i = 0; i < count; i++)
+			m_client.sendText("put test.metric " + (1000 + i) + " 123 host=test_host");
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (timestamps.size() < count && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+
+		assertThat(timestamps.size(), equalTo(count));
+		for (int i = 0; i < count; i++)
+			assertThat(timestamps.get(i), equalTo((1000L + i) * 1000));
+	}
+
 	private String createLongString(int length)
 	{
 		StringBuilder builder = new StringBuilder();
@@ -0,0 +1,170 @@
+package org.kairosdb.datastore.cassandra;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.google.common.collect.ImmutableSortedMap;
+import org.junit.Test;
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.datapoints.LongDataPoint;
+import org.kairosdb.core.queue.EventCompletionCallBack;
+import org.kairosdb.eventbus.EventBusWithFilters;
+import org.kairosdb.events.DataPointEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.kairosdb.datastore.cassandra.CassandraDatastore.ROW_WIDTH;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BatchHandlerTest
+{
+	/**
+	 Records the row keys and metric names added, the first batch submitted fails.
+	 */
+	private static class RecordingBatch extends CQLBatch
+	{
+		private final List<String> m_calls;
+		private final boolean m_fail;
+
+		public RecordingBatch(List<String> calls, boolean fail)
+		{
+			super(null, null, null, null, null, null);
+			m_calls = calls;
+			m_fail = fail;
+		}
+
+		@Override
+		public void addRowKey(String metricName, DataPointsRowKey rowKey, int rowKeyTtl)
+		{
+			m_calls.add("rowKey:" + metricName);
+		}
+
+		@Override
+		public void addMetricName(String metricName)
+		{
+			m_calls.add("metricName:" + metricName);
+		}
+
+		@Override
+		public void addDataPoint(DataPointsRowKey rowKey, int columnTime, DataPoint dataPoint, int ttl)
+		{
+		}
+
+		@Override
+		public List<ResultSetFuture> submitBatch()
+		{
+			ResultSetFuture future = mock(ResultSetFuture.class);
+			if (m_fail)
+				when(future.getUninterruptibly()).thenThrow(new RuntimeException("write timed out"));
+
+			return (Collections.singletonList(future));
+		}
+	}
+
+	@Test
+	public void test_failedWriteIsRetriedWithRowKey() throws Exception
+	{
+		List<DataPointEvent> events = new ArrayList<>();
+		ImmutableSortedMap<String, String> tags = ImmutableSortedMap.of("host", "a");
+		for (int i = 0; i < 20; i++)
+			events.add(new DataPointEvent("metric", tags, new LongDataPoint(1000L + i, i), 0));
+
+		HeapRowKeyCache rowKeyCache = new HeapRowKeyCache(1024);
+		DataCache<String> metricNameCache = new DataCache<>(1024);
+		final List<List<String>> batches = new ArrayList<>();
+
+		BatchHandler handler = new BatchHandler(events, mock(EventCompletionCallBack.class),
+				0, null, rowKeyCache, metricNameCache, mock(EventBusWithFilters.class),
+				null, null, false, new BatchStats(), null, null, null,
+				new RowWidths(Collections.<String, String>emptyMap()))
+		{
+			@Override
+			CQLBatch createBatch()
+			{
+				boolean fail = batches.isEmpty();
+				List<String> calls = new ArrayList<>();
+				batches.add(calls);
+				return (new RecordingBatch(calls, fail));
+			}
+		};
+
+		handler.call();
+
+		//First attempt fails, the retry splits the events in two batches
+		assertThat(batches.size(), equalTo(3));
+		assertThat(batches.get(0), equalTo(newList("rowKey:metric", "metricName:metric")));
+		assertThat(batches.get(1), equalTo(newList("rowKey:metric", "metricName:metric")));
+		assertThat(batches.get(2).isEmpty(), equalTo(true));
+	}
+
+	@Test
+	public void test_widerStoredRowWidthIsKept() throws Exception
+	{
+		final long hour = 3600000L;
+		List<DataPointEvent> events = new ArrayList<>();
+		for (String host : new String[] {"a", "b"})
+			events.add(new DataPointEvent("metric", ImmutableSortedMap.of("host", host),
+					new LongDataPoint(hour * 1000, 1), 0));
+
+		final List<String> rowKeys = new ArrayList<>();
+		final List<DataPointsRowKey> widthQueries = new ArrayList<>();
+		HeapRowKeyCache rowKeyCache = new HeapRowKeyCache(1024);
+
+		BatchHandler handler = new BatchHandler(events, mock(EventCompletionCallBack.class),
+				0, null, rowKeyCache, new DataCache<String>(1024), mock(EventBusWithFilters.class),
+				null, null, false, new BatchStats(), null, null, null,
+				new RowWidths(Collections.singletonMap("metric", Long.toString(hour))))
+		{
+			@Override
+			CQLBatch createBatch()
+			{
+				return (new RecordingBatch(new ArrayList<String>(), false)
+				{
+					@Override
+					public void addRowKey(String metricName, DataPointsRowKey rowKey, int rowKeyTtl)
+					{
+						rowKeys.add(rowKey.getTags().get("host") + ":" + rowKey.getRowWidth());
+					}
+				});
+			}
+
+			@Override
+			ResultSetFuture queryRowWidth(DataPointsRowKey rowKey)
+			{
+				widthQueries.add(rowKey);
+
+				//Host a was written before widths were stored, host b is new
+				Row row = null;
+				if (rowKey.getTags().get("host").equals("a"))
+					row = mock(Row.class);
+
+				ResultSet resultSet = mock(ResultSet.class);
+				when(resultSet.one()).thenReturn(row);
+				ResultSetFuture future = mock(ResultSetFuture.class);
+				when(future.getUninterruptibly()).thenReturn(resultSet);
+				return (future);
+			}
+		};
+
+		handler.call();
+
+		assertThat(widthQueries.size(), equalTo(2));
+		assertThat(rowKeys, equalTo(newList("a:" + ROW_WIDTH, "b:" + hour)));
+
+		//The cached row keys keep the width their row time was calculated with
+		for (DataPointsRowKey rowKey : widthQueries)
+			assertThat(rowKey.getRowWidth(), equalTo(hour));
+	}
+
+	private static List<String> newList(String... values)
+	{
+		List<String> ret = new ArrayList<>();
+		Collections.addAll(ret, values);
+		return (ret);
+	}
+}
@@ -0,0 +1,45 @@
+package org.kairosdb.datastore.cassandra;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class BlockTtlTest
+{
+	private static final int DAY = 86400;
+
+	@Test
+	public void test_sameTtlWrittenOverTheWindow()
+	{
+		BlockTtl ttl = new BlockTtl(DAY, 3 * 3600000L);
+
+		assertThat(ttl.add(DAY - 7200), equalTo(true));
+		assertThat(ttl.add(DAY + 60), equalTo(true));
+		assertThat(ttl.get(), equalTo(DAY + 60));
+	}
+
+	@Test
+	public void test_differentTtlLeftAsCell()
+	{
+		BlockTtl ttl = new BlockTtl(DAY, 3 * 3600000L);
+
+		assertThat(ttl.add(30 * DAY), equalTo(false));
+		assertThat(ttl.add(3600), equalTo(false));
+		assertThat(ttl.get(), equalTo(DAY));
+	}
+
+	@Test
+	public void test_noTtlOnlyWithNoTtl()
+	{
+		BlockTtl ttl = new BlockTtl(0, 3 * 3600000L);
+
+		assertThat(ttl.add(DAY), equalTo(false));
+		assertThat(ttl.add(0), equalTo(true));
+		assertThat(ttl.get(), equalTo(0));
+
+		ttl = new BlockTtl(60, 3 * 3600000L);
+		assertThat(ttl.add(0), equalTo(false));
+		assertThat(ttl.get(), equalTo(60));
+	}
+}
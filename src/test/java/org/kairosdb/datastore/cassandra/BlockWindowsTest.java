@@ -0,0 +1,79 @@
+package org.kairosdb.datastore.cassandra;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.kairosdb.core.datapoints.LongDataPointFactoryImpl.DST_LONG;
+import static org.kairosdb.datastore.cassandra.CassandraDatastore.ROW_WIDTH;
+
+public class BlockWindowsTest
+{
+	private static final long HOUR = 3600000L;
+
+	@Test
+	public void test_windowBoundaries()
+	{
+		BlockWindows windows = new BlockWindows(2 * HOUR);
+		long rowTime = CassandraDatastore.calculateRowTime(1500000000000L);
+
+		assertThat(windows.getWindowStart(rowTime, rowTime), equalTo(rowTime));
+		assertThat(windows.getWindowStart(rowTime, rowTime - 5), equalTo(rowTime));
+		assertThat(windows.getWindowStart(rowTime, rowTime + 2 * HOUR - 1), equalTo(rowTime));
+		assertThat(windows.getWindowStart(rowTime, rowTime + 2 * HOUR), equalTo(rowTime + 2 * HOUR));
+		assertThat(windows.getWindowEnd(rowTime, ROW_WIDTH, rowTime), equalTo(rowTime + 2 * HOUR));
+
+		//The last window is cut short at the end of the row
+		long lastStart = windows.getWindowStart(rowTime, rowTime + ROW_WIDTH - 1);
+		assertThat(windows.getWindowEnd(rowTime, ROW_WIDTH, lastStart), equalTo(rowTime + ROW_WIDTH));
+
+		//Narrow rows end sooner
+		assertThat(windows.getWindowEnd(rowTime, 3 * HOUR, rowTime + 2 * HOUR), equalTo(rowTime + 3 * HOUR));
+	}
+
+	@Test
+	public void test_searchStart_usesLargestWindowSize()
+	{
+		BlockWindows windows = new BlockWindows(HOUR);
+		long rowTime = CassandraDatastore.calculateRowTime(1500000000000L);
+
+		assertThat(windows.getSearchStart(rowTime, rowTime + 10 * HOUR), equalTo(rowTime + 9 * HOUR + 1));
+		assertThat(windows.getSearchStart(rowTime, rowTime + 10), equalTo(rowTime));
+		assertThat(windows.getSearchStart(rowTime, Long.MIN_VALUE), equalTo(rowTime));
+
+		//Blocks written with a 4 hour window start up to 4 hours back
+		windows.setMaxWindowSize(4 * HOUR);
+		assertThat(windows.getSearchStart(rowTime, rowTime + 10 * HOUR), equalTo(rowTime + 6 * HOUR + 1));
+
+		//Never less than the window size of this node
+		windows.setMaxWindowSize(HOUR / 2);
+		assertThat(windows.getMaxWindowSize(), equalTo(HOUR));
+	}
+
+	@Test
+	public void test_takeSealable()
+	{
+		BlockWindows windows = new BlockWindows(HOUR);
+		long rowTime = CassandraDatastore.calculateRowTime(1500000000000L);
+		DataPointsRowKey rowKey = new DataPointsRowKey("metric", rowTime, DST_LONG);
+
+		windows.dataPointWritten(rowKey, rowTime + 10);
+		windows.dataPointWritten(rowKey, rowTime + 20);
+		windows.dataPointWritten(rowKey, rowTime + HOUR + 10);
+		windows.dataPointWritten(new DataPointsRowKey("metric", rowTime, "kairos_string"), rowTime);
+
+		assertThat(windows.size(), equalTo(2));
+
+		List<BlockWindows.Window> sealable = windows.takeSealable(rowTime + 2 * HOUR, HOUR);
+		assertThat(sealable.size(), equalTo(1));
+		assertThat(sealable.get(0).getStart(), equalTo(rowTime));
+		assertThat(sealable.get(0).getEnd(), equalTo(rowTime + HOUR));
+		assertThat(windows.size(), equalTo(1));
+
+		windows.addWindow(sealable.get(0));
+		assertThat(windows.takeSealable(rowTime + 3 * HOUR, HOUR).size(), equalTo(2));
+		assertThat(windows.size(), equalTo(0));
+	}
+}
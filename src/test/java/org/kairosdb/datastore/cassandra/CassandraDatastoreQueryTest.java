@@ -0,0 +1,323 @@
+package org.kairosdb.datastore.cassandra;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.CodecRegistry;
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.PreparedId;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.google.common.collect.HashMultimap;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Before;
+import org.junit.Test;
+import org.kairosdb.core.KairosDataPointFactory;
+import org.kairosdb.core.datastore.DatastoreMetricQuery;
+import org.kairosdb.core.datastore.Order;
+import org.kairosdb.core.datastore.QueryCallback;
+import org.kairosdb.core.datastore.QueryPlugin;
+import org.kairosdb.core.exception.DatastoreException;
+import org.kairosdb.core.queue.QueueProcessor;
+import org.kairosdb.eventbus.EventBusWithFilters;
+import org.kairosdb.util.IngestExecutorService;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ Runs queries against a mocked session that answers the index tables with
+ one row key per row time.
+ */
+public class CassandraDatastoreQueryTest
+{
+	private static final long START_TIME = 1000000000000L;
+	private static final int PARTITION_COUNT = 15;
+
+	private Map<String, PreparedStatement> m_statements;
+	private List<Long> m_rowKeyQueryTimes;
+	private long m_failRowKeyTime;
+	private boolean m_failDataQueries;
+	private CassandraDatastore m_datastore;
+
+	/**
+	 Completed future that throws the driver exception of a failed query the
+	 way the driver does.
+	 */
+	private static class TestResultSetFuture extends AbstractFuture<ResultSet> implements ResultSetFuture
+	{
+		public TestResultSetFuture(ResultSet resultSet)
+		{
+			set(resultSet);
+		}
+
+		public TestResultSetFuture(Throwable failure)
+		{
+			setException(failure);
+		}
+
+		@Override
+		public ResultSet getUninterruptibly()
+		{
+			try
+			{
+				return (Uninterruptibles.getUninterruptibly(this));
+			}
+			catch (ExecutionException e)
+			{
+				throw (RuntimeException) e.getCause();
+			}
+		}
+
+		@Override
+		public ResultSet getUninterruptibly(long timeout, TimeUnit unit) throws TimeoutException
+		{
+			return (getUninterruptibly());
+		}
+	}
+
+	@Before
+	public void setup() throws DatastoreException
+	{
+		m_statements = new HashMap<>();
+		m_rowKeyQueryTimes = new ArrayList<>();
+		m_failRowKeyTime = -1;
+		m_failDataQueries = false;
+
+		Session session = mock(Session.class);
+		when(session.prepare(anyString())).thenAnswer(new Answer<PreparedStatement>()
+		{
+			@Override
+			public PreparedStatement answer(InvocationOnMock invocation)
+			{
+				PreparedStatement statement = preparedStatement();
+				m_statements.put((String) invocation.getArguments()[0], statement);
+				return (statement);
+			}
+		});
+		when(session.executeAsync(any(Statement.class))).thenAnswer(new Answer<ResultSetFuture>()
+		{
+			@Override
+			public ResultSetFuture answer(InvocationOnMock invocation)
+			{
+				return (execute((BoundStatement) invocation.getArguments()[0]));
+			}
+		});
+
+		CassandraClient client = mock(CassandraClient.class);
+		when(client.getSession()).thenReturn(mock(Session.class));
+		when(client.getKeyspaceSession()).thenReturn(mock(Session.class), session);
+
+		m_datastore = new CassandraDatastore("localhost", client, new CassandraConfiguration(),
+				mock(KairosDataPointFactory.class), mock(QueueProcessor.class),
+				mock(EventBusWithFilters.class), mock(IngestExecutorService.class));
+	}
+
+	private static PreparedStatement preparedStatement()
+	{
+		ColumnDefinitions variables = mock(ColumnDefinitions.class);
+		when(variables.size()).thenReturn(4);
+		when(variables.getType(0)).thenReturn(DataType.text());
+		when(variables.getType(1)).thenReturn(DataType.timestamp());
+		when(variables.getType(2)).thenReturn(DataType.timestamp());
+		when(variables.getType(3)).thenReturn(DataType.cint());
+
+		PreparedStatement statement = mock(PreparedStatement.class);
+		when(statement.getVariables()).thenReturn(variables);
+		when(statement.getPreparedId()).thenReturn(mock(PreparedId.class));
+		when(statement.getCodecRegistry()).thenReturn(CodecRegistry.DEFAULT_INSTANCE);
+		return (statement);
+	}
+
+	private ResultSetFuture execute(BoundStatement statement)
+	{
+		PreparedStatement prepared = statement.preparedStatement();
+
+		if (prepared == m_statements.get(Schema.ROW_KEY_TIME_QUERY))
+		{
+			List<Row> rows = new ArrayList<>();
+			for (int i = 0; i < PARTITION_COUNT; i++)
+			{
+				Row row = mock(Row.class);
+				when(row.getTimestamp(0)).thenReturn(new Date(rowTime(i)));
+				rows.add(row);
+			}
+
+			return (new TestResultSetFuture(resultSet(rows, false)));
+		}
+		else if (prepared == m_statements.get(Schema.ROW_KEY_QUERY))
+		{
+			long rowTime = statement.getTimestamp(1).getTime();
+			m_rowKeyQueryTimes.add(rowTime);
+			if (rowTime == m_failRowKeyTime)
+				return (new TestResultSetFuture(new NoHostAvailableException(
+						Collections.<InetSocketAddress, Throwable>emptyMap())));
+
+			Row row = mock(Row.class);
+			when(row.getTimestamp(0)).thenReturn(new Date(rowTime));
+			when(row.getString(1)).thenReturn("kairos_long");
+			when(row.getMap(2, String.class, String.class)).thenReturn(Collections.singletonMap("host", "a"));
+
+			return (new TestResultSetFuture(resultSet(Collections.singletonList(row), true)));
+		}
+		else if (m_failDataQueries && prepared == m_statements.get(Schema.DATA_POINTS_QUERY_ASC))
+		{
+			return (new TestResultSetFuture(new NoHostAvailableException(
+					Collections.<InetSocketAddress, Throwable>emptyMap())));
+		}
+
+		//Legacy index and data points are empty
+		return (new TestResultSetFuture(resultSet(Collections.<Row>emptyList(), false)));
+	}
+
+	private static ResultSet resultSet(List<Row> rows, boolean newIndex)
+	{
+		final Iterator<Row> iterator = rows.iterator();
+
+		ColumnDefinitions columns = mock(ColumnDefinitions.class);
+		when(columns.contains("row_time")).thenReturn(newIndex);
+
+		ResultSet resultSet = mock(ResultSet.class);
+		when(resultSet.getColumnDefinitions()).thenReturn(columns);
+		when(resultSet.isFullyFetched()).thenReturn(true);
+		when(resultSet.isExhausted()).thenAnswer(new Answer<Boolean>()
+		{
+			@Override
+			public Boolean answer(InvocationOnMock invocation)
+			{
+				return (!iterator.hasNext());
+			}
+		});
+		when(resultSet.one()).thenAnswer(new Answer<Row>()
+		{
+			@Override
+			public Row answer(InvocationOnMock invocation)
+			{
+				return (iterator.next());
+			}
+		});
+
+		return (resultSet);
+	}
+
+	private static long rowTime(int partition)
+	{
+		return (CassandraDatastore.calculateRowTime(START_TIME) + partition * CassandraDatastore.ROW_WIDTH);
+	}
+
+	private static DatastoreMetricQuery query()
+	{
+		DatastoreMetricQuery query = mock(DatastoreMetricQuery.class);
+		when(query.getName()).thenReturn("metric");
+		when(query.getStartTime()).thenReturn(START_TIME);
+		when(query.getEndTime()).thenReturn(rowTime(PARTITION_COUNT) - 1);
+		when(query.getTags()).thenReturn(HashMultimap.<String, String>create());
+		when(query.getOrder()).thenReturn(Order.ASC);
+		when(query.getPlugins()).thenReturn(Collections.<QueryPlugin>emptyList());
+		return (query);
+	}
+
+	@Test
+	public void test_rowKeysAreReadAsTheIteratorIsUsed() throws DatastoreException
+	{
+		Iterator<DataPointsRowKey> rowKeys = m_datastore.getKeysForQueryIterator(query());
+
+		assertThat(m_rowKeyQueryTimes.size(), equalTo(0));
+		assertThat(rowKeys.hasNext(), equalTo(true));
+
+		//Only the first few partitions are queried to return the first key
+		assertThat(m_rowKeyQueryTimes.size() < PARTITION_COUNT, equalTo(true));
+
+		List<Long> keyTimes = new ArrayList<>();
+		while (rowKeys.hasNext())
+			keyTimes.add(rowKeys.next().getTimestamp());
+
+		List<Long> expected = new ArrayList<>();
+		for (int i = 0; i < PARTITION_COUNT; i++)
+			expected.add(rowTime(i));
+
+		assertThat(m_rowKeyQueryTimes, equalTo(expected));
+		assertThat(keyTimes, equalTo(expected));
+	}
+
+	@Test
+	public void test_queryDatabase_readsEveryPartition() throws Exception
+	{
+		QueryCallback callback = mock(QueryCallback.class);
+
+		m_datastore.queryDatabase(query(), callback);
+
+		verify(callback, times(PARTITION_COUNT)).startDataPointSet(eq("kairos_long"), anyMapOf(String.class, String.class));
+		verify(callback).endDataPoints();
+	}
+
+	@Test
+	public void test_queryDatabase_rowKeyFailure() throws Exception
+	{
+		m_failRowKeyTime = rowTime(12);
+		QueryCallback callback = mock(QueryCallback.class);
+
+		try
+		{
+			m_datastore.queryDatabase(query(), callback);
+			fail("Expected DatastoreException");
+		}
+		catch (DatastoreException e)
+		{
+			assertThat(e.getCause() instanceof NoHostAvailableException, equalTo(true));
+		}
+
+		//Rows before the failure are done before the query returns
+		verify(callback, times(12)).startDataPointSet(eq("kairos_long"), anyMapOf(String.class, String.class));
+		verify(callback, never()).endDataPoints();
+	}
+
+	@Test
+	public void test_queryDatabase_dataQueryFailure() throws Exception
+	{
+		m_failDataQueries = true;
+		QueryCallback callback = mock(QueryCallback.class);
+
+		try
+		{
+			m_datastore.queryDatabase(query(), callback);
+			fail("Expected DatastoreException");
+		}
+		catch (DatastoreException e)
+		{
+			assertThat(e.getCause() instanceof NoHostAvailableException, equalTo(true));
+		}
+
+		verify(callback, never()).startDataPointSet(anyString(), anyMapOf(String.class, String.class));
+		verify(callback, never()).endDataPoints();
+	}
+}
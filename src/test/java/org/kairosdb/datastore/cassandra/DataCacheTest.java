@@ -18,7 +18,12 @@ package org.kairosdb.datastore.cassandra;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
@@ -91,4 +96,68 @@ public class DataCacheTest
 		ret = cache.cacheItem(new TestObject("td3"));
 		assertTrue(td3 == ret);
 	}
+
+	@Test
+	public void test_stats()
+	{
+		DataCache<String> cache = new DataCache<String>(2);
+
+		cache.cacheItem("one");
+		cache.cacheItem("two");
+		cache.cacheItem("one");
+		cache.cacheItem("three"); //Boots 'two'
+
+		assertEquals(1, cache.getAndResetHits());
+		assertEquals(3, cache.getAndResetMisses());
+		assertEquals(1, cache.getAndResetEvictions());
+		assertEquals(2, cache.size());
+
+		assertEquals(0, cache.getAndResetHits());
+	}
+
+	@Test
+	public void test_segmentedCacheSize()
+	{
+		DataCache<String> cache = new DataCache<String>(50000);
+
+		for (int i = 0; i < 100000; i++)
+			cache.cacheItem("item" + i);
+
+		assertTrue(cache.size() <= 50000);
+		assertTrue(cache.size() > 40000);
+		assertEquals(cache.size(), cache.getCachedKeys().size());
+	}
+
+	@Test
+	public void test_concurrentCacheItem() throws InterruptedException
+	{
+		final DataCache<String> cache = new DataCache<String>(100000);
+		final AtomicInteger misses = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+
+		for (int t = 0; t < 8; t++)
+		{
+			Thread thread = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					for (int i = 0; i < 10000; i++)
+					{
+						if (cache.cacheItem("item" + i) == null)
+							misses.incrementAndGet();
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+
+		for (Thread thread : threads)
+			thread.join();
+
+		//Each item is only reported missing once no matter how many threads add it
+		assertEquals(10000, misses.get());
+		assertEquals(10000, cache.size());
+	}
 }
@@ -0,0 +1,157 @@
+package org.kairosdb.datastore.cassandra;
+
+import org.junit.Test;
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.datapoints.DoubleDataPoint;
+import org.kairosdb.core.datapoints.LongDataPoint;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.kairosdb.core.datapoints.DoubleDataPointFactoryImpl.DST_DOUBLE;
+import static org.kairosdb.core.datapoints.LongDataPointFactoryImpl.DST_LONG;
+
+public class DataPointBlockTest
+{
+	private static final long WINDOW_START = 1500000000000L;
+
+	@Test
+	public void test_canStore()
+	{
+		assertTrue(DataPointBlock.canStore(DST_LONG));
+		assertTrue(DataPointBlock.canStore(DST_DOUBLE));
+		assertFalse(DataPointBlock.canStore("kairos_string"));
+		assertFalse(DataPointBlock.canStore("kairos_legacy"));
+	}
+
+	@Test
+	public void test_longRoundTrip()
+	{
+		List<DataPoint> dataPoints = new ArrayList<>();
+		for (int i = 0; i < 720; i++)
+			dataPoints.add(new LongDataPoint(WINDOW_START + i * 10000L + (i % 7), i * 42L));
+		dataPoints.add(new LongDataPoint(WINDOW_START + 7200000L, Long.MIN_VALUE));
+		dataPoints.add(new LongDataPoint(WINDOW_START + 7200001L, Long.MAX_VALUE));
+
+		ByteBuffer block = DataPointBlock.encode(DST_LONG, WINDOW_START, dataPoints);
+
+		assertThat(DataPointBlock.decode(block, WINDOW_START), equalTo(dataPoints));
+		//Steady series take a few bits per data point instead of a cell each
+		assertTrue(block.remaining() < dataPoints.size() * 2);
+	}
+
+	@Test
+	public void test_doubleRoundTrip()
+	{
+		List<DataPoint> dataPoints = new ArrayList<>();
+		for (int i = 0; i < 720; i++)
+			dataPoints.add(new DoubleDataPoint(WINDOW_START + i * 10000L, Math.floor(Math.sin(i / 50.0) * 100)));
+		dataPoints.add(new DoubleDataPoint(WINDOW_START + 7200000L, Double.NaN));
+
+		ByteBuffer block = DataPointBlock.encode(DST_DOUBLE, WINDOW_START, dataPoints);
+		List<DataPoint> decoded = DataPointBlock.decode(block, WINDOW_START);
+
+		assertThat(decoded.size(), equalTo(dataPoints.size()));
+		for (int i = 0; i < dataPoints.size(); i++)
+		{
+			assertThat(decoded.get(i).getTimestamp(), equalTo(dataPoints.get(i).getTimestamp()));
+			assertThat(Double.doubleToLongBits(decoded.get(i).getDoubleValue()),
+					equalTo(Double.doubleToLongBits(dataPoints.get(i).getDoubleValue())));
+		}
+	}
+
+	@Test
+	public void test_decodeDoesNotModifyBuffer()
+	{
+		List<DataPoint> dataPoints = Arrays.<DataPoint>asList(new LongDataPoint(WINDOW_START, 1));
+		ByteBuffer block = DataPointBlock.encode(DST_LONG, WINDOW_START, dataPoints);
+
+		//Blocks read from Cassandra may be a slice of a larger buffer
+		ByteBuffer padded = ByteBuffer.allocate(block.remaining() + 3);
+		padded.position(3);
+		padded.put(block.duplicate());
+		padded.position(3);
+		ByteBuffer slice = padded.slice();
+
+		assertThat(DataPointBlock.decode(slice, WINDOW_START), equalTo(dataPoints));
+		assertThat(DataPointBlock.decode(slice, WINDOW_START), equalTo(dataPoints));
+		assertThat(DataPointBlock.decode(directCopy(block), WINDOW_START), equalTo(dataPoints));
+	}
+
+	private static ByteBuffer directCopy(ByteBuffer buffer)
+	{
+		ByteBuffer direct = ByteBuffer.allocateDirect(buffer.remaining());
+		direct.put(buffer.duplicate());
+		direct.flip();
+		return (direct);
+	}
+
+	@Test
+	public void test_emptyBlock()
+	{
+		ByteBuffer block = DataPointBlock.encode(DST_DOUBLE, WINDOW_START, new ArrayList<DataPoint>());
+
+		assertTrue(DataPointBlock.decode(block, WINDOW_START).isEmpty());
+	}
+
+	@Test
+	public void test_merge_cellsReplaceBlockDataPoints()
+	{
+		List<DataPoint> block = Arrays.<DataPoint>asList(
+				new LongDataPoint(1, 1), new LongDataPoint(3, 3), new LongDataPoint(5, 5));
+		List<DataPoint> cells = Arrays.<DataPoint>asList(
+				new LongDataPoint(2, 20), new LongDataPoint(3, 30), new LongDataPoint(6, 60));
+
+		List<DataPoint> merged = DataPointBlock.merge(block, cells);
+
+		assertThat(merged, equalTo(Arrays.<DataPoint>asList(new LongDataPoint(1, 1),
+				new LongDataPoint(2, 20), new LongDataPoint(3, 30), new LongDataPoint(5, 5),
+				new LongDataPoint(6, 60))));
+	}
+
+	@Test
+	public void test_merge_empty()
+	{
+		List<DataPoint> dataPoints = Arrays.<DataPoint>asList(new LongDataPoint(1, 1));
+
+		assertThat(DataPointBlock.merge(dataPoints, new ArrayList<DataPoint>()), equalTo(dataPoints));
+		assertThat(DataPointBlock.merge(new ArrayList<DataPoint>(), dataPoints), equalTo(dataPoints));
+	}
+
+	@Test
+	public void test_combine_adjacentBlocks()
+	{
+		List<DataPoint> first = Arrays.<DataPoint>asList(new LongDataPoint(1, 1), new LongDataPoint(2, 2));
+		List<DataPoint> second = Arrays.<DataPoint>asList(new LongDataPoint(3, 3));
+
+		List<DataPoint> combined = DataPointBlock.combine(Arrays.asList(first, second), Arrays.asList(20L, 10L));
+
+		assertThat(combined, equalTo(Arrays.<DataPoint>asList(new LongDataPoint(1, 1),
+				new LongDataPoint(2, 2), new LongDataPoint(3, 3))));
+	}
+
+	@Test
+	public void test_combine_overlappingBlocksLastWrittenWins()
+	{
+		//A wide block from an earlier window size and a narrow one written after it
+		List<DataPoint> wide = Arrays.<DataPoint>asList(new LongDataPoint(1, 1),
+				new LongDataPoint(5, 5), new LongDataPoint(9, 9));
+		List<DataPoint> narrow = Arrays.<DataPoint>asList(new LongDataPoint(5, 50), new LongDataPoint(6, 60));
+
+		List<DataPoint> combined = DataPointBlock.combine(Arrays.asList(wide, narrow), Arrays.asList(10L, 20L));
+
+		assertThat(combined, equalTo(Arrays.<DataPoint>asList(new LongDataPoint(1, 1),
+				new LongDataPoint(5, 50), new LongDataPoint(6, 60), new LongDataPoint(9, 9))));
+
+		combined = DataPointBlock.combine(Arrays.asList(wide, narrow), Arrays.asList(30L, 20L));
+
+		assertThat(combined, equalTo(Arrays.<DataPoint>asList(new LongDataPoint(1, 1),
+				new LongDataPoint(5, 5), new LongDataPoint(6, 60), new LongDataPoint(9, 9))));
+	}
+}
@@ -0,0 +1,72 @@
+package org.kairosdb.datastore.cassandra;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class InFlightLimiterTest
+{
+	@Test
+	public void test_acquireAndRelease()
+	{
+		InFlightLimiter limiter = new InFlightLimiter(10, 1000);
+
+		InFlightLimiter.Permit permit = limiter.acquire(4, 300);
+
+		assertThat(limiter.getAvailableStatements(), equalTo(6));
+		assertThat(limiter.getAvailableBytes(), equalTo(700));
+
+		permit.release();
+
+		assertThat(limiter.getAvailableStatements(), equalTo(10));
+		assertThat(limiter.getAvailableBytes(), equalTo(1000));
+	}
+
+	@Test
+	public void test_requestLargerThanLimit()
+	{
+		InFlightLimiter limiter = new InFlightLimiter(10, 1000);
+
+		InFlightLimiter.Permit permit = limiter.acquire(50, 5000);
+
+		assertThat(limiter.getAvailableStatements(), equalTo(0));
+		assertThat(limiter.getAvailableBytes(), equalTo(0));
+
+		permit.release();
+
+		assertThat(limiter.getAvailableStatements(), equalTo(10));
+		assertThat(limiter.getAvailableBytes(), equalTo(1000));
+	}
+
+	@Test(timeout = 5000)
+	public void test_blocksUntilReleased() throws InterruptedException
+	{
+		final InFlightLimiter limiter = new InFlightLimiter(10, 1000);
+		final InFlightLimiter.Permit permit = limiter.acquire(8, 100);
+
+		Thread releaser = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					Thread.sleep(100);
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+				permit.release();
+			}
+		});
+		releaser.start();
+
+		InFlightLimiter.Permit second = limiter.acquire(5, 100);
+		assertThat(limiter.getAvailableStatements(), equalTo(5));
+
+		second.release();
+		releaser.join();
+	}
+}
@@ -0,0 +1,162 @@
+package org.kairosdb.datastore.cassandra;
+
+import org.junit.Test;
+import org.kairosdb.core.DataPoint;
+import org.kairosdb.core.datapoints.LongDataPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertNull;
+
+public class IncrementalQueryCacheTest
+{
+	private static final DataPointsRowKey ROW_KEY = new DataPointsRowKey("metric", 0L, "kairos_long");
+	//Rows are read after every data point in the tests was written
+	private static final long READ_TIME = 1000;
+
+	private List<DataPoint> createDataPoints(long start, long end)
+	{
+		List<DataPoint> ret = new ArrayList<DataPoint>();
+		for (long time = start; time <= end; time += 10)
+			ret.add(new LongDataPoint(time, time));
+
+		return ret;
+	}
+
+	@Test
+	public void test_getRow_notCached()
+	{
+		IncrementalQueryCache cache = new IncrementalQueryCache(1000, 60, 20);
+
+		IncrementalQueryCache.CachedRow row = cache.getRow(ROW_KEY, 100);
+
+		assertNull(row);
+		assertThat(cache.getFetchStart(row, 100), equalTo(100L));
+	}
+
+	@Test
+	public void test_getRow_startsBeforeCachedRange()
+	{
+		IncrementalQueryCache cache = new IncrementalQueryCache(1000, 60, 20);
+		cache.putRow(ROW_KEY, null, 100, 200, 100, READ_TIME, createDataPoints(100, 200));
+
+		assertNull(cache.getRow(ROW_KEY, 50));
+	}
+
+	@Test
+	public void test_fetchStart_refetchesWindow()
+	{
+		IncrementalQueryCache cache = new IncrementalQueryCache(1000, 60, 20);
+		cache.putRow(ROW_KEY, null, 100, 200, 100, READ_TIME, createDataPoints(100, 200));
+
+		IncrementalQueryCache.CachedRow row = cache.getRow(ROW_KEY, 150);
+
+		assertThat(cache.getFetchStart(row, 150), equalTo(181L));
+	}
+
+	@Test
+	public void test_putRow_openEndedQuery()
+	{
+		IncrementalQueryCache cache = new IncrementalQueryCache(1000, 60, 20);
+		cache.putRow(ROW_KEY, null, 100, Long.MAX_VALUE, 100, 200, createDataPoints(100, 200));
+
+		//Data points written after the first read are read by the repeat
+		IncrementalQueryCache.CachedRow row = cache.getRow(ROW_KEY, 100);
+		assertThat(row.getEndTime(), equalTo(200L));
+		long fetchStart = cache.getFetchStart(row, 100);
+		assertThat(fetchStart, equalTo(181L));
+
+		cache.putRow(ROW_KEY, row, 100, Long.MAX_VALUE, fetchStart, 300, createDataPoints(190, 300));
+
+		row = cache.getRow(ROW_KEY, 100);
+		assertThat(row.getEndTime(), equalTo(300L));
+		assertThat(cache.getFetchStart(row, 100), equalTo(281L));
+
+		List<DataPoint> dataPoints = row.getDataPoints(100, Long.MAX_VALUE);
+		assertThat(dataPoints.size(), equalTo(21));
+		for (int i = 0; i < dataPoints.size(); i++)
+			assertThat(dataPoints.get(i).getTimestamp(), equalTo(100L + i * 10));
+	}
+
+	@Test
+	public void test_putRow_combinesCachedAndFetched()
+	{
+		IncrementalQueryCache cache = new IncrementalQueryCache(1000, 60, 20);
+		cache.putRow(ROW_KEY, null, 100, 200, 100, READ_TIME, createDataPoints(100, 200));
+
+		IncrementalQueryCache.CachedRow row = cache.getRow(ROW_KEY, 150);
+		long fetchStart = cache.getFetchStart(row, 150);
+		cache.putRow(ROW_KEY, row, 150, 250, fetchStart, READ_TIME, createDataPoints(190, 250));
+
+		row = cache.getRow(ROW_KEY, 150);
+		assertThat(row.getStartTime(), equalTo(150L));
+		assertThat(row.getEndTime(), equalTo(250L));
+
+		List<DataPoint> dataPoints = row.getDataPoints(150, 250);
+		assertThat(dataPoints.size(), equalTo(11));
+		for (int i = 0; i < dataPoints.size(); i++)
+			assertThat(dataPoints.get(i).getTimestamp(), equalTo(150L + i * 10));
+	}
+
+	@Test
+	public void test_getDataPoints_range()
+	{
+		IncrementalQueryCache.CachedRow row = new IncrementalQueryCache.CachedRow(0, 100,
+				createDataPoints(0, 100));
+
+		assertThat(row.getDataPoints(15, 45).size(), equalTo(3));
+		assertThat(row.getDataPoints(20, 40).size(), equalTo(3));
+		assertThat(row.getDataPoints(101, 200).size(), equalTo(0));
+		assertThat(row.getDataPoints(0, Long.MAX_VALUE).size(), equalTo(11));
+	}
+
+	@Test
+	public void test_queryInsideCachedRange()
+	{
+		IncrementalQueryCache cache = new IncrementalQueryCache(1000, 60, 20);
+		cache.putRow(ROW_KEY, null, 100, 200, 100, READ_TIME, createDataPoints(100, 200));
+
+		IncrementalQueryCache.CachedRow row = cache.getRow(ROW_KEY, 130);
+		long fetchStart = cache.getFetchStart(row, 130);
+		//Everything is cached so nothing is read
+		assertThat(fetchStart > 170, equalTo(true));
+		cache.putRow(ROW_KEY, row, 130, 170, fetchStart, READ_TIME, new ArrayList<DataPoint>());
+
+		row = cache.getRow(ROW_KEY, 100);
+		assertThat(row.getStartTime(), equalTo(100L));
+		assertThat(row.getEndTime(), equalTo(200L));
+		assertThat(row.getDataPoints(100, 200).size(), equalTo(11));
+	}
+
+	@Test
+	public void test_putRow_doesNotStorePointsPastEndTime()
+	{
+		IncrementalQueryCache cache = new IncrementalQueryCache(1000, 60, 20);
+		IncrementalQueryCache.CachedRow cached = new IncrementalQueryCache.CachedRow(100, 200,
+				createDataPoints(100, 200));
+
+		//An empty cache entry for the same key, as when the first entry expired
+		cache.putRow(ROW_KEY, cached, 130, 170, 181, READ_TIME, new ArrayList<DataPoint>());
+
+		IncrementalQueryCache.CachedRow row = cache.getRow(ROW_KEY, 130);
+		assertThat(row.getEndTime(), equalTo(170L));
+		assertThat(row.getDataPoints(130, Long.MAX_VALUE).size(), equalTo(5));
+	}
+
+	@Test
+	public void test_putRow_sameRangeReplaces()
+	{
+		IncrementalQueryCache cache = new IncrementalQueryCache(1000, 60, 20);
+		cache.putRow(ROW_KEY, null, 100, 200, 100, READ_TIME, createDataPoints(100, 200));
+
+		IncrementalQueryCache.CachedRow row = cache.getRow(ROW_KEY, 100);
+		List<DataPoint> refetched = createDataPoints(190, 200);
+		refetched.add(1, new LongDataPoint(195, 1));
+		cache.putRow(ROW_KEY, row, 100, 200, 181, READ_TIME, refetched);
+
+		assertThat(cache.getRow(ROW_KEY, 100).getDataPoints(100, 200).size(), equalTo(12));
+	}
+}
@@ -0,0 +1,115 @@
+package org.kairosdb.datastore.cassandra;
+
+import org.junit.Test;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.kairosdb.datastore.cassandra.CassandraDatastore.ROW_WIDTH;
+
+public class OffHeapRowKeyCacheTest
+{
+	private static final long HOUR = 3600000L;
+
+	private DataPointsRowKey createRowKey(String host, long rowTime)
+	{
+		SortedMap<String, String> tags = new TreeMap<String, String>();
+		tags.put("host", host);
+		return (new DataPointsRowKey("metric", rowTime, "kairos_long", tags));
+	}
+
+	@Test
+	public void test_cacheItem()
+	{
+		OffHeapRowKeyCache cache = new OffHeapRowKeyCache(1024);
+
+		assertNull(cache.cacheItem(createRowKey("A", 0L)));
+		assertNotNull(cache.cacheItem(createRowKey("A", 0L)));
+		assertNull(cache.cacheItem(createRowKey("B", 0L)));
+		assertNull(cache.cacheItem(createRowKey("A", 100L)));
+
+		assertThat(cache.size(), equalTo(3));
+		assertThat(cache.getAndResetHits(), equalTo(1L));
+		assertThat(cache.getAndResetMisses(), equalTo(3L));
+		assertThat(cache.getAndResetHits(), equalTo(0L));
+	}
+
+	@Test
+	public void test_evictsWhenFull()
+	{
+		//32 slots with room for 24 entries
+		OffHeapRowKeyCache cache = new OffHeapRowKeyCache(32 * 24);
+
+		for (int i = 0; i < 100; i++)
+			cache.cacheItem(createRowKey("host" + i, 0L));
+
+		assertThat(cache.size(), equalTo(24));
+		assertThat(cache.getAndResetEvictions(), equalTo(76L));
+
+		//The last row key added can not have been evicted
+		assertNotNull(cache.cacheItem(createRowKey("host99", 0L)));
+	}
+
+	@Test
+	public void test_retainCurrentRows()
+	{
+		OffHeapRowKeyCache cache = new OffHeapRowKeyCache(8192);
+
+		for (int i = 0; i < 50; i++)
+		{
+			cache.cacheItem(createRowKey("host" + i, 0L));
+			cache.cacheItem(createRowKey("host" + i, ROW_WIDTH));
+		}
+
+		assertThat(cache.size(), equalTo(100));
+
+		cache.retainCurrentRows(ROW_WIDTH + 100L);
+
+		assertThat(cache.size(), equalTo(50));
+		for (int i = 0; i < 50; i++)
+		{
+			assertNotNull(cache.cacheItem(createRowKey("host" + i, ROW_WIDTH)));
+			assertNull(cache.cacheItem(createRowKey("host" + i, 0L)));
+		}
+	}
+
+	@Test
+	public void test_retainCurrentRows_byOwnWidth()
+	{
+		OffHeapRowKeyCache cache = new OffHeapRowKeyCache(8192);
+		long now = 1500000000000L;
+
+		DataPointsRowKey current = createRowKey("A", CassandraDatastore.calculateRowTime(now, HOUR));
+		current.setRowWidth(HOUR);
+		DataPointsRowKey previous = createRowKey("A", current.getTimestamp() - HOUR);
+		previous.setRowWidth(HOUR);
+		DataPointsRowKey wide = createRowKey("B", CassandraDatastore.calculateRowTime(now));
+
+		cache.cacheItem(current);
+		cache.cacheItem(previous);
+		cache.cacheItem(wide);
+
+		cache.retainCurrentRows(now);
+
+		assertThat(cache.size(), equalTo(2));
+		assertNotNull(cache.cacheItem(current));
+		assertNotNull(cache.cacheItem(wide));
+		assertNull(cache.cacheItem(previous));
+	}
+
+	@Test
+	public void test_clear()
+	{
+		OffHeapRowKeyCache cache = new OffHeapRowKeyCache(1024);
+		cache.cacheItem(createRowKey("A", 0L));
+
+		cache.clear();
+
+		assertThat(cache.size(), equalTo(0));
+		assertNull(cache.cacheItem(createRowKey("A", 0L)));
+	}
+}
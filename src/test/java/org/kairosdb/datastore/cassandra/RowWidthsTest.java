@@ -0,0 +1,122 @@
+package org.kairosdb.datastore.cassandra;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.kairosdb.datastore.cassandra.CassandraDatastore.ROW_WIDTH;
+
+public class RowWidthsTest
+{
+	private static final long DAY = 86400000L;
+
+	@Test
+	public void test_noPrefixes()
+	{
+		RowWidths rowWidths = new RowWidths(Collections.<String, String>emptyMap());
+
+		assertThat(rowWidths.getRowWidth("sys.cpu"), equalTo(ROW_WIDTH));
+	}
+
+	@Test
+	public void test_longestPrefixWins()
+	{
+		RowWidths rowWidths = new RowWidths(ImmutableMap.of(
+				"sys.", Long.toString(DAY),
+				"sys.cpu.", " 3600000 ",
+				"sys.cpu.idle.x", "60000"));
+
+		assertThat(rowWidths.getRowWidth("sys.cpu.idle"), equalTo(3600000L));
+		assertThat(rowWidths.getRowWidth("sys.cpu.user"), equalTo(3600000L));
+		assertThat(rowWidths.getRowWidth("sys.disk"), equalTo(DAY));
+		assertThat(rowWidths.getRowWidth("sys."), equalTo(DAY));
+		assertThat(rowWidths.getRowWidth("sys"), equalTo(ROW_WIDTH));
+		assertThat(rowWidths.getRowWidth("app.requests"), equalTo(ROW_WIDTH));
+		assertThat(rowWidths.getRowWidth("tsys.cpu"), equalTo(ROW_WIDTH));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_widthLargerThanDefault()
+	{
+		new RowWidths(ImmutableMap.of("sys.", Long.toString(ROW_WIDTH + 1)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_zeroWidth()
+	{
+		new RowWidths(ImmutableMap.of("sys.", "0"));
+	}
+
+	@Test
+	public void test_calculateRowSearchStart()
+	{
+		long time = 1500000000000L;
+		long rowTime = CassandraDatastore.calculateRowTime(time, DAY);
+
+		//A narrow row holding the time is found from the search start
+		assertThat(CassandraDatastore.calculateRowSearchStart(time) <= rowTime, equalTo(true));
+		assertThat(CassandraDatastore.calculateRowSearchStart(time) <= CassandraDatastore.calculateRowTime(time),
+				equalTo(true));
+		assertThat(CassandraDatastore.calculateRowSearchStart(time) > time - ROW_WIDTH, equalTo(true));
+		assertThat(CassandraDatastore.calculateRowSearchStart(Long.MIN_VALUE),
+				equalTo(CassandraDatastore.calculateRowTime(Long.MIN_VALUE)));
+
+		//Bounded by the widest row of the metric
+		assertThat(CassandraDatastore.calculateRowSearchStart(time, DAY), equalTo(time - DAY + 1));
+		assertThat(CassandraDatastore.calculateRowSearchStart(time, DAY) <= rowTime, equalTo(true));
+		assertThat(CassandraDatastore.calculateRowSearchStart(Long.MIN_VALUE, DAY),
+				equalTo(CassandraDatastore.calculateRowTime(Long.MIN_VALUE, DAY)));
+	}
+
+	@Test
+	public void test_maxRowWidth_defaultWithoutHistory()
+	{
+		RowWidths rowWidths = new RowWidths(ImmutableMap.of("sys.", Long.toString(DAY)));
+
+		assertThat(rowWidths.getMaxRowWidth("sys.cpu", 1500000000000L), equalTo(ROW_WIDTH));
+		assertThat(rowWidths.getMaxRowWidth("app.requests", 1500000000000L), equalTo(ROW_WIDTH));
+	}
+
+	@Test
+	public void test_maxRowWidth_widestInHistory()
+	{
+		long firstUse = 1500000000000L;
+		RowWidths rowWidths = new RowWidths(ImmutableMap.of(
+				"sys.", Long.toString(DAY),
+				"sys.cpu.", "3600000"));
+
+		rowWidths.setHistory(Arrays.asList(
+				"3600000/" + firstUse + "/sys.cpu.",
+				(2 * DAY) + "/" + (firstUse + DAY) + "/sys.cpu.",
+				DAY + "/" + firstUse + "/sys.",
+				"not a key"));
+
+		long later = firstUse + 2 * ROW_WIDTH;
+		assertThat(rowWidths.getMaxRowWidth("sys.cpu.idle", later), equalTo(2 * DAY));
+		assertThat(rowWidths.getMaxRowWidth("sys.disk", later), equalTo(DAY));
+
+		//Rows written with the default width before the prefix was configured
+		assertThat(rowWidths.getMaxRowWidth("sys.disk", firstUse + DAY), equalTo(ROW_WIDTH));
+	}
+
+	@Test
+	public void test_newHistoryKeys()
+	{
+		long now = 1500000000000L;
+		RowWidths rowWidths = new RowWidths(ImmutableMap.of(
+				"sys.", Long.toString(DAY),
+				"sys.cpu.", "3600000"));
+
+		rowWidths.setHistory(Collections.singletonList(DAY + "/1/sys."));
+
+		assertThat(rowWidths.getNewHistoryKeys(now),
+				equalTo(Collections.singletonList("3600000/" + now + "/sys.cpu.")));
+
+		rowWidths.setHistory(Arrays.asList(DAY + "/1/sys.", "3600000/" + now + "/sys.cpu."));
+		assertThat(rowWidths.getNewHistoryKeys(now).size(), equalTo(0));
+	}
+}
@@ -1,6 +1,19 @@
 package org.kairosdb.eventbus;
 
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.eventbus.Subscribe;
 import org.junit.Test;
+import org.kairosdb.core.datapoints.LongDataPoint;
+import org.kairosdb.events.DataPointBatchEvent;
+import org.kairosdb.events.DataPointEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
 
 public class EventBusWithFiltersTest
 {
@@ -9,4 +22,90 @@ public class EventBusWithFiltersTest
     {
         new EventBusWithFilters(null);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void test_postBatch_dataPointListenerGetsEachEvent()
+    {
+        EventBusWithFilters eventBus = new EventBusWithFilters(new EventBusConfiguration(new Properties()));
+        DataPointListener dataPointListener = new DataPointListener();
+        BatchListener batchListener = new BatchListener();
+        eventBus.register(dataPointListener);
+        eventBus.register(batchListener);
+
+        DataPointEvent event1 = new DataPointEvent("metric", ImmutableSortedMap.<String, String>of(), new LongDataPoint(1L, 1));
+        DataPointEvent event2 = new DataPointEvent("metric", ImmutableSortedMap.<String, String>of(), new LongDataPoint(2L, 2));
+
+        eventBus.post(new DataPointBatchEvent(Arrays.asList(event1, event2)));
+
+        assertThat(dataPointListener.events, equalTo(Arrays.asList(event1, event2)));
+        assertThat(batchListener.batchEvents, equalTo(Arrays.asList(event1, event2)));
+        assertThat(batchListener.events.size(), equalTo(0));
+    }
+
+    @Test
+    public void test_postBatch_filtersApplyToEachEvent()
+    {
+        EventBusWithFilters eventBus = new EventBusWithFilters(new EventBusConfiguration(new Properties()));
+        BatchListener batchListener = new BatchListener();
+        eventBus.register(new RenameFilter());
+        eventBus.register(batchListener);
+
+        DataPointEvent event = new DataPointEvent("metric", ImmutableSortedMap.<String, String>of(), new LongDataPoint(1L, 1));
+
+        eventBus.post(new DataPointBatchEvent(Arrays.asList(event)));
+
+        assertThat(batchListener.batchEvents.get(0).getMetricName(), equalTo("renamed"));
+    }
+
+    @Test
+    public void test_unregister_dataPointListener()
+    {
+        EventBusWithFilters eventBus = new EventBusWithFilters(new EventBusConfiguration(new Properties()));
+        DataPointListener dataPointListener = new DataPointListener();
+        eventBus.register(dataPointListener);
+        eventBus.unregister(dataPointListener);
+
+        DataPointEvent event = new DataPointEvent("metric", ImmutableSortedMap.<String, String>of(), new LongDataPoint(1L, 1));
+        eventBus.post(new DataPointBatchEvent(Arrays.asList(event)));
+
+        assertThat(dataPointListener.events.size(), equalTo(0));
+    }
+
+    public static class DataPointListener
+    {
+        private final List<DataPointEvent> events = new ArrayList<>();
+
+        @Subscribe
+        public void dataPoint(DataPointEvent event)
+        {
+            events.add(event);
+        }
+    }
+
+    public static class BatchListener
+    {
+        private final List<DataPointEvent> events = new ArrayList<>();
+        private final List<DataPointEvent> batchEvents = new ArrayList<>();
+
+        @Subscribe
+        public void dataPoint(DataPointEvent event)
+        {
+            events.add(event);
+        }
+
+        @Subscribe
+        public void dataPoints(DataPointBatchEvent event)
+        {
+            batchEvents.addAll(event.getEvents());
+        }
+    }
+
+    public static class RenameFilter
+    {
+        @Filter
+        public DataPointEvent filter(DataPointEvent event)
+        {
+            return new DataPointEvent("renamed", event.getTags(), event.getDataPoint(), event.getTtl());
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2016 KairosDB Authors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.kairosdb.testing;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.kairosdb.core.formatter.BinaryResponse;
+import org.kairosdb.util.BitReader;
+import org.kairosdb.util.DoubleXorDecoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.kairosdb.util.Util.unpackLong;
+import static org.kairosdb.util.Util.unpackUnsignedLong;
+
+/**
+ Reads a BinaryResponse and writes it out as the json JsonResponse would
+ have written for the same results.
+ */
+public class BinaryResponseReader
+{
+	private final StringBuilder m_json = new StringBuilder();
+	private boolean m_inQuery;
+	private boolean m_inGroup;
+	private boolean m_firstValue;
+	private long m_lastTimestamp;
+
+	public static String toJson(byte[] response) throws IOException, JSONException
+	{
+		return (new BinaryResponseReader().read(response));
+	}
+
+	private String read(byte[] response) throws IOException, JSONException
+	{
+		if (!Arrays.equals(Arrays.copyOf(response, 4), BinaryResponse.MAGIC))
+			throw new IOException("Not a binary response");
+
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(response, 4, response.length - 4));
+
+		m_json.append("{\"queries\":[");
+		boolean firstQuery = true;
+		int kind;
+		while ((kind = input.read()) != -1)
+		{
+			byte[] body = new byte[(int) unpackUnsignedLong(input)];
+			input.readFully(body);
+			DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+
+			if (kind == BinaryResponse.QUERY_RECORD)
+			{
+				endQuery();
+				if (!firstQuery)
+					m_json.append(",");
+				firstQuery = false;
+				readQuery(record);
+			}
+			else if (kind == BinaryResponse.GROUP_RECORD)
+			{
+				endGroup();
+				readGroup(record);
+			}
+			else if (kind == BinaryResponse.DATA_RECORD)
+			{
+				readData(record, body.length);
+			}
+		}
+		endQuery();
+		m_json.append("]}");
+
+		return (m_json.toString());
+	}
+
+	private void readQuery(DataInputStream record) throws IOException
+	{
+		long sampleSize = unpackLong(record);
+		m_json.append("{");
+		if (sampleSize != -1)
+			m_json.append("\"sample_size\":").append(sampleSize).append(",");
+		m_json.append("\"results\":[");
+		m_inQuery = true;
+	}
+
+	private void endQuery()
+	{
+		endGroup();
+		if (m_inQuery)
+			m_json.append("]}");
+		m_inQuery = false;
+	}
+
+	private void readGroup(DataInputStream record) throws IOException
+	{
+		if (m_json.charAt(m_json.length() - 1) == '}')
+			m_json.append(",");
+
+		long flags = unpackUnsignedLong(record);
+		m_json.append("{\"name\":").append(JSONObject.quote(readString(record)));
+
+		long groupByCount = unpackUnsignedLong(record);
+		if (groupByCount != 0)
+		{
+			m_json.append(",\"group_by\":[");
+			for (int i = 0; i < groupByCount; i++)
+			{
+				if (i != 0)
+					m_json.append(",");
+				m_json.append(readString(record));
+			}
+			m_json.append("]");
+		}
+
+		long tagCount = unpackUnsignedLong(record);
+		if ((flags & BinaryResponse.FLAG_TAGS_EXCLUDED) == 0)
+		{
+			m_json.append(",\"tags\":{");
+			for (int i = 0; i < tagCount; i++)
+			{
+				if (i != 0)
+					m_json.append(",");
+				m_json.append(JSONObject.quote(readString(record))).append(":[");
+				long valueCount = unpackUnsignedLong(record);
+				for (int j = 0; j < valueCount; j++)
+				{
+					if (j != 0)
+						m_json.append(",");
+					m_json.append(JSONObject.quote(readString(record)));
+				}
+				m_json.append("]");
+			}
+			m_json.append("}");
+		}
+
+		m_json.append(",\"values\":[");
+		m_inGroup = true;
+		m_firstValue = true;
+		m_lastTimestamp = 0L;
+	}
+
+	private void endGroup()
+	{
+		if (m_inGroup)
+			m_json.append("]}");
+		m_inGroup = false;
+	}
+
+	private void readData(DataInputStream record, int length) throws IOException, JSONException
+	{
+		int count = (int) unpackUnsignedLong(record);
+		int type = record.readByte();
+
+		long[] timestamps = new long[count];
+		for (int i = 0; i < count; i++)
+		{
+			m_lastTimestamp += unpackLong(record);
+			timestamps[i] = m_lastTimestamp;
+		}
+
+		String[] values = new String[count];
+		if (type == BinaryResponse.LONG_VALUES)
+		{
+			long lastValue = 0L;
+			for (int i = 0; i < count; i++)
+			{
+				lastValue += unpackLong(record);
+				values[i] = Long.toString(lastValue);
+			}
+		}
+		else if (type == BinaryResponse.DOUBLE_VALUES)
+		{
+			for (int i = 0; i < count; i++)
+				values[i] = JSONObject.numberToString(record.readDouble());
+		}
+		else if (type == BinaryResponse.XOR_DOUBLE_VALUES)
+		{
+			byte[] bits = new byte[record.available()];
+			record.readFully(bits);
+			DoubleXorDecoder decoder = new DoubleXorDecoder(new BitReader(bits));
+			for (int i = 0; i < count; i++)
+				values[i] = JSONObject.numberToString(decoder.read());
+		}
+		else
+		{
+			for (int i = 0; i < count; i++)
+				values[i] = readString(record);
+		}
+
+		for (int i = 0; i < count; i++)
+		{
+			if (!m_firstValue)
+				m_json.append(",");
+			m_firstValue = false;
+			m_json.append("[").append(timestamps[i]).append(",").append(values[i]).append("]");
+		}
+	}
+
+	private static String readString(DataInputStream record) throws IOException
+	{
+		byte[] bytes = new byte[(int) unpackUnsignedLong(record)];
+		record.readFully(bytes);
+		return (new String(bytes, StandardCharsets.UTF_8));
+	}
+}
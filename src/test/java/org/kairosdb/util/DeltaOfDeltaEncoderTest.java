@@ -0,0 +1,66 @@
+package org.kairosdb.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class DeltaOfDeltaEncoderTest
+{
+	private static void assertRoundTrip(long base, long[] values)
+	{
+		BitWriter writer = new BitWriter(8);
+		DeltaOfDeltaEncoder encoder = new DeltaOfDeltaEncoder(writer, base);
+		for (long value : values)
+			encoder.write(value);
+
+		DeltaOfDeltaDecoder decoder = new DeltaOfDeltaDecoder(new BitReader(writer.toByteArray()), base);
+		for (long value : values)
+			assertThat(decoder.read(), equalTo(value));
+	}
+
+	@Test
+	public void test_extremeValues()
+	{
+		assertRoundTrip(0, new long[]{Long.MAX_VALUE, Long.MIN_VALUE, 0, -1, 1, Long.MIN_VALUE,
+				Long.MAX_VALUE, Long.MAX_VALUE, 63, -64, 255, -256, 2047, -2048});
+		assertRoundTrip(Long.MIN_VALUE, new long[]{Long.MAX_VALUE, 0});
+	}
+
+	@Test
+	public void test_randomValues()
+	{
+		Random random = new Random(11);
+		long[] values = new long[10000];
+		long value = 0;
+		for (int i = 0; i < values.length; i++)
+		{
+			switch (random.nextInt(4))
+			{
+				case 0: value += random.nextInt(100); break;
+				case 1: value = random.nextLong(); break;
+				case 2: value += random.nextInt(5000) - 2500; break;
+				default: value += 10000;
+			}
+			values[i] = value;
+		}
+
+		assertRoundTrip(1234, values);
+	}
+
+	@Test
+	public void test_fixedIntervalCompresses()
+	{
+		BitWriter writer = new BitWriter();
+		long base = 1500000000000L;
+		DeltaOfDeltaEncoder encoder = new DeltaOfDeltaEncoder(writer, base);
+		for (int i = 0; i < 1000; i++)
+			encoder.write(base + i * 10000L + (i % 10 == 0 ? 3 : 0));
+
+		//A bit for each steady value and 9 bits for each jittered one, against 8 bytes a value
+		assertTrue(writer.getByteCount() < 500);
+	}
+}
@@ -0,0 +1,81 @@
+package org.kairosdb.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class DoubleXorEncoderTest
+{
+	private static void assertRoundTrip(double[] values)
+	{
+		BitWriter writer = new BitWriter(8);
+		DoubleXorEncoder encoder = new DoubleXorEncoder(writer);
+		for (double value : values)
+			encoder.write(value);
+
+		DoubleXorDecoder decoder = new DoubleXorDecoder(new BitReader(writer.toByteArray()));
+		for (double value : values)
+			assertThat(Double.doubleToRawLongBits(decoder.read()), equalTo(Double.doubleToRawLongBits(value)));
+	}
+
+	@Test
+	public void test_specialValues()
+	{
+		assertRoundTrip(new double[]{0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE, 1.0, 1.0, -1.0});
+	}
+
+	@Test
+	public void test_randomValues()
+	{
+		Random random = new Random(7);
+		double[] values = new double[10000];
+		for (int i = 0; i < values.length; i++)
+		{
+			switch (random.nextInt(4))
+			{
+				case 0: values[i] = random.nextDouble(); break;
+				case 1: values[i] = Double.longBitsToDouble(random.nextLong()); break;
+				case 2: values[i] = i == 0 ? 1.0 : values[i - 1]; break;
+				default: values[i] = random.nextInt(100);
+			}
+		}
+
+		assertRoundTrip(values);
+	}
+
+	@Test
+	public void test_slowlyChangingSeriesCompresses()
+	{
+		BitWriter writer = new BitWriter();
+		DoubleXorEncoder encoder = new DoubleXorEncoder(writer);
+		for (int i = 0; i < 1000; i++)
+			encoder.write(20.0 + (i / 100));
+
+		//Mostly repeated values take about one bit each
+		assertTrue(writer.getByteCount() < 1000);
+	}
+
+	@Test
+	public void test_bitWriterRoundTrip()
+	{
+		Random random = new Random(3);
+		long[] values = new long[1000];
+		int[] sizes = new int[1000];
+		BitWriter writer = new BitWriter(1);
+		for (int i = 0; i < values.length; i++)
+		{
+			sizes[i] = random.nextInt(65);
+			values[i] = sizes[i] == 64 ? random.nextLong() : random.nextLong() & ((1L << sizes[i]) - 1);
+			writer.writeBits(values[i], sizes[i]);
+		}
+
+		BitReader reader = new BitReader(writer.toByteArray());
+		for (int i = 0; i < values.length; i++)
+			assertThat(reader.readBits(sizes[i]), equalTo(values[i]));
+	}
+}
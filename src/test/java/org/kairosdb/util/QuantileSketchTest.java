@@ -0,0 +1,190 @@
+package org.kairosdb.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class QuantileSketchTest
+{
+	private static final double[] QUANTILES = {0.0, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99, 0.999, 1.0};
+
+	/**
+	 The value at the rank the sketch uses, the sketch has to be within the
+	 relative accuracy of it.
+	 */
+	private static double getExpected(double[] sorted, double quantile)
+	{
+		return (sorted[(int) Math.floor(quantile * (sorted.length - 1))]);
+	}
+
+	private static void assertAccurate(QuantileSketch sketch, double[] values)
+	{
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+
+		for (double quantile : QUANTILES)
+		{
+			double expected = getExpected(sorted, quantile);
+			double actual = sketch.getQuantile(quantile);
+			double error = Math.abs(expected) * sketch.getRelativeAccuracy() + 1e-12;
+			assertTrue("quantile " + quantile + " expected " + expected + " was " + actual,
+					Math.abs(actual - expected) <= error);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_zeroAccuracy_invalid()
+	{
+		new QuantileSketch(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_quantileGreaterThanOne_invalid()
+	{
+		new QuantileSketch(0.01).getQuantile(1.1);
+	}
+
+	@Test
+	public void test_empty()
+	{
+		QuantileSketch sketch = new QuantileSketch(0.01);
+
+		assertThat(sketch.getCount(), equalTo(0L));
+		assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+	}
+
+	@Test
+	public void test_singleValue()
+	{
+		QuantileSketch sketch = new QuantileSketch(0.01);
+		sketch.add(42.5);
+
+		//Clamped to the min and max
+		assertThat(sketch.getQuantile(0.0), equalTo(42.5));
+		assertThat(sketch.getQuantile(0.99), equalTo(42.5));
+	}
+
+	@Test
+	public void test_latencyDistribution()
+	{
+		Random random = new Random(1);
+		QuantileSketch sketch = new QuantileSketch(0.01);
+		double[] values = new double[100000];
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] = Math.exp(random.nextGaussian() * 2 + 3);
+			sketch.add(values[i]);
+		}
+
+		assertThat(sketch.getCount(), equalTo(100000L));
+		assertAccurate(sketch, values);
+	}
+
+	@Test
+	public void test_negativeAndZeroValues()
+	{
+		Random random = new Random(2);
+		QuantileSketch sketch = new QuantileSketch(0.02);
+		double[] values = new double[10000];
+		for (int i = 0; i < values.length; i++)
+		{
+			if (i % 10 == 0)
+				values[i] = 0;
+			else
+				values[i] = random.nextGaussian() * 1000;
+			sketch.add(values[i]);
+		}
+
+		assertAccurate(sketch, values);
+	}
+
+	@Test
+	public void test_nanAndInfinityIgnored()
+	{
+		QuantileSketch sketch = new QuantileSketch(0.01);
+		sketch.add(Double.NaN);
+		sketch.add(Double.POSITIVE_INFINITY);
+		sketch.add(5);
+
+		assertThat(sketch.getCount(), equalTo(1L));
+		assertThat(sketch.getQuantile(1.0), equalTo(5.0));
+	}
+
+	@Test
+	public void test_merge()
+	{
+		Random random = new Random(3);
+		QuantileSketch first = new QuantileSketch(0.01);
+		QuantileSketch second = new QuantileSketch(0.01);
+		QuantileSketch all = new QuantileSketch(0.01);
+		double[] values = new double[20000];
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] = random.nextDouble() * (i < 10000 ? 10 : 100000);
+			(i < 10000 ? first : second).add(values[i]);
+			all.add(values[i]);
+		}
+
+		first.merge(second);
+
+		assertThat(first.getCount(), equalTo(20000L));
+		for (double quantile : QUANTILES)
+			assertThat(first.getQuantile(quantile), equalTo(all.getQuantile(quantile)));
+		assertAccurate(first, values);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_mergeDifferentAccuracy_invalid()
+	{
+		new QuantileSketch(0.01).merge(new QuantileSketch(0.02));
+	}
+
+	@Test
+	public void test_collapseKeepsLargeValuesAccurate()
+	{
+		QuantileSketch sketch = new QuantileSketch(0.01, 100);
+		double[] values = new double[10000];
+		for (int i = 0; i < values.length; i++)
+		{
+			//Spans far more than 100 buckets
+			values[i] = Math.pow(10, (i % 1000) / 100.0);
+			sketch.add(values[i]);
+		}
+
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		//100 buckets cover a factor of about 7 below the largest value
+		for (double quantile : new double[]{0.95, 0.99, 0.999})
+		{
+			double expected = getExpected(sorted, quantile);
+			assertThat(sketch.getQuantile(quantile), closeTo(expected, expected * 0.01));
+		}
+
+		//Smaller values were combined into the lowest bucket
+		assertTrue(sketch.getQuantile(0.5) > getExpected(sorted, 0.5));
+		assertThat(sketch.getQuantile(0.0), equalTo(1.0));
+	}
+
+	@Test
+	public void test_clear()
+	{
+		QuantileSketch sketch = new QuantileSketch(0.01);
+		for (int i = 1; i <= 100; i++)
+			sketch.add(-i);
+
+		sketch.clear();
+		sketch.add(7);
+		sketch.add(9);
+
+		assertThat(sketch.getCount(), equalTo(2L));
+		assertThat(sketch.getQuantile(0.0), equalTo(7.0));
+		assertThat(sketch.getQuantile(0.4), closeTo(7.0, 0.07));
+		assertThat(sketch.getQuantile(1.0), equalTo(9.0));
+	}
+}
@@ -20,8 +20,10 @@ import org.junit.Test;
 import org.kairosdb.core.datastore.Order;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -176,4 +178,89 @@ public class TournamentTreeTest
 		assertFalse(tt.hasNext());
 		assertNull(tt.nextElement());
 	}
+
+	@Test
+	public void testManyIteratorsRandomData()
+	{
+		Random random = new Random(7);
+		TournamentTree<RowData> tt = new TournamentTree<>(new RowDataComparator(), Order.ASC);
+		List<RowData> all = new ArrayList<>();
+
+		for (int i = 0; i < 37; i++)
+		{
+			List<RowData> list = new ArrayList<>();
+			long ts = 0;
+			int count = random.nextInt(50);
+			for (int j = 0; j < count; j++)
+			{
+				ts += random.nextInt(5);
+				list.add(new RowData(ts, i));
+			}
+
+			all.addAll(list);
+			tt.addIterator(list.iterator());
+		}
+
+		//Stable sort keeps equal timestamps in iterator order
+		Collections.sort(all, new RowDataComparator());
+
+		for (RowData expected : all)
+			assertSame(expected, tt.nextElement());
+
+		assertFalse(tt.hasNext());
+		assertNull(tt.nextElement());
+	}
+
+	@Test
+	public void testDescendingOrder()
+	{
+		TournamentTree<RowData> tt = new TournamentTree<>(new RowDataComparator(), Order.DESC);
+
+		List<RowData> list1 = new ArrayList<>();
+		list1.add(new RowData(7, 1));
+		list1.add(new RowData(3, 1));
+
+		List<RowData> list2 = new ArrayList<>();
+		list2.add(new RowData(8, 2));
+		list2.add(new RowData(3, 2));
+		list2.add(new RowData(1, 2));
+
+		tt.addIterator(list1.iterator());
+		tt.addIterator(new ArrayList<RowData>().iterator());
+		tt.addIterator(list2.iterator());
+
+		assertEquals(8, tt.nextElement().getTimeStamp());
+		assertEquals(7, tt.nextElement().getTimeStamp());
+		RowData rowData = tt.nextElement();
+		assertEquals(3, rowData.getTimeStamp());
+		assertEquals(2, rowData.getValue());
+		rowData = tt.nextElement();
+		assertEquals(3, rowData.getTimeStamp());
+		assertEquals(1, rowData.getValue());
+		assertEquals(1, tt.nextElement().getTimeStamp());
+		assertFalse(tt.hasNext());
+	}
+
+	@Test
+	public void testAddIteratorWhileMerging()
+	{
+		TournamentTree<RowData> tt = new TournamentTree<>(new RowDataComparator(), Order.ASC);
+
+		List<RowData> list1 = new ArrayList<>();
+		list1.add(new RowData(1, 0));
+		list1.add(new RowData(4, 0));
+
+		List<RowData> list2 = new ArrayList<>();
+		list2.add(new RowData(2, 0));
+		list2.add(new RowData(3, 0));
+
+		tt.addIterator(list1.iterator());
+		assertEquals(1, tt.nextElement().getTimeStamp());
+
+		tt.addIterator(list2.iterator());
+		assertEquals(2, tt.nextElement().getTimeStamp());
+		assertEquals(3, tt.nextElement().getTimeStamp());
+		assertEquals(4, tt.nextElement().getTimeStamp());
+		assertFalse(tt.hasNext());
+	}
 }